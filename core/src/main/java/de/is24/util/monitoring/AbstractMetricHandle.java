@@ -0,0 +1,89 @@
+package de.is24.util.monitoring;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Base class of the handles returned by {@link InApplicationMonitor#counter(String)} and
+ * {@link InApplicationMonitor#timer(String)}.
+ *
+ * A handle resolves the escaped key, the monitor instance of the {@link CorePlugin} and the
+ * list of other plugins once and keeps them in an immutable binding. The binding is resolved again
+ * as soon as the configuration version of the InApplicationMonitor changes, i.e. after
+ * initInstance, registerPlugin, removeAllPlugins or when async dispatch is switched on or off, and when the
+ * bound monitor was evicted for being idle.
+ *
+ * @param <T> the type of monitor bound by this handle
+ */
+abstract class AbstractMetricHandle<T extends Reportable> {
+  private final InApplicationMonitor monitor;
+  private final String name;
+  private volatile Binding<T> binding;
+
+  AbstractMetricHandle(InApplicationMonitor monitor, String name) {
+    this.monitor = monitor;
+    this.name = name;
+  }
+
+  /**
+   * @return the name this handle was created with (not escaped)
+   */
+  public String getName() {
+    return name;
+  }
+
+  final boolean isMonitorActive() {
+    return monitor.isMonitorActive();
+  }
+
+  final Binding<T> binding() {
+    int version = monitor.getConfigurationVersion();
+    Binding<T> current = binding;
+    if ((current == null) || (current.version != version) || isEvicted(current.monitor)) {
+      current = bind(version);
+      binding = current;
+    }
+    return current;
+  }
+
+  private static boolean isEvicted(Object monitor) {
+    return (monitor instanceof TrackedMetric) && ((TrackedMetric) monitor).isEvicted();
+  }
+
+  private Binding<T> bind(int version) {
+    String key = monitor.getKeyHandler().handle(name);
+    CorePlugin corePlugin = monitor.getCorePlugin();
+    T resolved = null;
+    List<MonitorPlugin> otherPlugins = new ArrayList<MonitorPlugin>();
+    for (MonitorPlugin plugin : monitor.getDispatchTargets()) {
+      if (plugin == corePlugin) {
+        resolved = resolve(corePlugin, key);
+      } else {
+        otherPlugins.add(plugin);
+      }
+    }
+    return new Binding<T>(version, key, resolved, otherPlugins.toArray(new MonitorPlugin[otherPlugins.size()]));
+  }
+
+  /**
+   * @param corePlugin the current core plugin
+   * @param key the escaped key
+   * @return the monitor instance registered for the key in the core plugin
+   */
+  abstract T resolve(CorePlugin corePlugin, String key);
+
+  static final class Binding<T> {
+    final int version;
+    final String key;
+    final T monitor;
+    final MonitorPlugin[] otherPlugins;
+
+    Binding(int version, String key, T monitor, MonitorPlugin[] otherPlugins) {
+      this.version = version;
+      this.key = key;
+      this.monitor = monitor;
+      this.otherPlugins = otherPlugins;
+    }
+  }
+}
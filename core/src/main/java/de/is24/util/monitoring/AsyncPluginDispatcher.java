@@ -0,0 +1,453 @@
+package de.is24.util.monitoring;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Decouples the plugins registered at the {@link InApplicationMonitor} from the threads reporting events,
+ * see {@link InApplicationMonitor#enableAsyncDispatch(int, OverflowPolicy)}.
+ *
+ * Events are written into a bounded, preallocated ring of (type, key, value) records that
+ * many threads may write to. A single daemon thread drains the ring in batches and calls all
+ * registered plugins except the {@link CorePlugin}, which is still called synchronously by the
+ * InApplicationMonitor, so that in process reads stay exact.
+ *
+ * The dispatcher registers state values for the current queue depth and the number of dispatched,
+ * dropped and failed events at the core plugin.
+ */
+public final class AsyncPluginDispatcher implements UnitAwareMonitorPlugin {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AsyncPluginDispatcher.class);
+  public static final String METRICS_PREFIX = "appmon4j.asyncDispatch.";
+  private static final int BATCH_SIZE = 256;
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+  private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  private static final byte INITIALIZE_COUNTER = 0;
+  private static final byte INCREMENT_COUNTER = 1;
+  private static final byte INCREMENT_HIGH_RATE_COUNTER = 2;
+  private static final byte ADD_TIMER_MEASUREMENT = 3;
+  private static final byte ADD_SINGLE_EVENT_TIMER_MEASUREMENT = 4;
+  private static final byte ADD_HIGH_RATE_TIMER_MEASUREMENT = 5;
+  private static final byte INITIALIZE_TIMER_MEASUREMENT = 6;
+  private static final byte ADD_NANOS_TIMER_MEASUREMENT = 7;
+
+  /**
+   * What to do with an event if the ring is full.
+   */
+  public enum OverflowPolicy {
+    /** drop the event and count it as dropped */
+    DROP,
+    /** wait until the dispatcher thread made room for the event */
+    BLOCK
+  }
+
+  private final InApplicationMonitor monitor;
+  private final OverflowPolicy overflowPolicy;
+  private final int capacity;
+  private final int mask;
+
+  // slot i is free for the write at position p if sequences[i] == p, and readable if sequences[i] == p + 1
+  private final AtomicLongArray sequences;
+  private final byte[] types;
+  private final String[] keys;
+  private final long[] values;
+  private final AtomicLong tail = new AtomicLong();
+  private volatile long head;
+
+  private final AtomicLong dispatched = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+
+  private final Thread dispatcherThread;
+  private final Thread shutdownHook;
+  private volatile boolean running = true;
+  private final Object stopLock = new Object();
+  private boolean stopped;
+  private volatile DispatchTargets dispatchTargets;
+
+  /**
+   * @param monitor the monitor whose plugins are called
+   * @param capacity number of events the ring can hold, rounded up to the next power of two
+   * @param overflowPolicy what to do if the ring is full
+   */
+  AsyncPluginDispatcher(InApplicationMonitor monitor, int capacity, OverflowPolicy overflowPolicy) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    this.monitor = monitor;
+    this.overflowPolicy = overflowPolicy;
+    this.capacity = (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+    this.mask = this.capacity - 1;
+    this.sequences = new AtomicLongArray(this.capacity);
+    for (int i = 0; i < this.capacity; i++) {
+      sequences.set(i, i);
+    }
+    this.types = new byte[this.capacity];
+    this.keys = new String[this.capacity];
+    this.values = new long[this.capacity];
+
+    dispatcherThread = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            dispatchLoop();
+          }
+        }, "appmon4j-async-dispatcher");
+    dispatcherThread.setDaemon(true);
+    shutdownHook = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            shutdown(TimeUnit.SECONDS.toMillis(5));
+          }
+        }, "appmon4j-async-dispatcher-shutdown");
+  }
+
+  void start() {
+    registerStateValues(monitor.getCorePlugin());
+    dispatcherThread.start();
+    Runtime.getRuntime().addShutdownHook(shutdownHook);
+    LOGGER.info("started async plugin dispatch with capacity {} and overflow policy {}", capacity, overflowPolicy);
+  }
+
+  private void registerStateValues(CorePlugin corePlugin) {
+    corePlugin.registerStateValue(new AbstractStateValueProvider(METRICS_PREFIX + "queueDepth") {
+        @Override
+        public long getValue() {
+          return getQueueDepth();
+        }
+      });
+    corePlugin.registerStateValue(new AbstractStateValueProvider(METRICS_PREFIX + "dispatchedEvents") {
+        @Override
+        public long getValue() {
+          return getDispatchedEvents();
+        }
+      });
+    corePlugin.registerStateValue(new AbstractStateValueProvider(METRICS_PREFIX + "droppedEvents") {
+        @Override
+        public long getValue() {
+          return getDroppedEvents();
+        }
+      });
+    corePlugin.registerStateValue(new AbstractStateValueProvider(METRICS_PREFIX + "failedEvents") {
+        @Override
+        public long getValue() {
+          return getFailedEvents();
+        }
+      });
+  }
+
+  /**
+   * Stops accepting events, dispatches all events still in the ring and stops the dispatcher thread. Events
+   * written concurrently with the shutdown are dispatched by the shutting down or the writing thread once the
+   * dispatcher thread has stopped.
+   *
+   * @param timeoutMillis maximum time to wait for the dispatcher thread
+   */
+  void shutdown(long timeoutMillis) {
+    if (!running) {
+      return;
+    }
+    running = false;
+    LockSupport.unpark(dispatcherThread);
+    try {
+      dispatcherThread.join(timeoutMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (dispatcherThread.isAlive()) {
+      LOGGER.warn("async plugin dispatcher thread did not stop within {} ms, {} events not dispatched",
+        timeoutMillis, getQueueDepth());
+    } else {
+      synchronized (stopLock) {
+        stopped = true;
+        drainStopped();
+      }
+    }
+    if (Thread.currentThread() != shutdownHook) {
+      try {
+        Runtime.getRuntime().removeShutdownHook(shutdownHook);
+      } catch (IllegalStateException e) {
+        // JVM is already shutting down
+      }
+    }
+    LOGGER.info("stopped async plugin dispatch, {} events dispatched, {} dropped, {} failed",
+      new Object[] { getDispatchedEvents(), getDroppedEvents(), getFailedEvents() });
+  }
+
+  /**
+   * @return the targets the InApplicationMonitor calls while async dispatch is enabled:
+   *         the given core plugin and this dispatcher
+   */
+  List<MonitorPlugin> getDispatchTargets(CorePlugin corePlugin) {
+    DispatchTargets current = dispatchTargets;
+    if ((current == null) || (current.corePlugin != corePlugin)) {
+      current = new DispatchTargets(corePlugin, Arrays.<MonitorPlugin>asList(corePlugin, this));
+      dispatchTargets = current;
+    }
+    return current.targets;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  /**
+   * @return number of queued events, including the batch that is currently dispatched
+   */
+  public long getQueueDepth() {
+    return java.lang.Math.max(0, tail.get() - head);
+  }
+
+  public long getDispatchedEvents() {
+    return dispatched.get();
+  }
+
+  public long getDroppedEvents() {
+    return dropped.get();
+  }
+
+  public long getFailedEvents() {
+    return failed.get();
+  }
+
+  private void offer(byte type, String key, long value) {
+    if (!running) {
+      dropped.incrementAndGet();
+      return;
+    }
+
+    // blocking the dispatcher thread on its own ring would never end
+    boolean block = (overflowPolicy == OverflowPolicy.BLOCK) && (Thread.currentThread() != dispatcherThread);
+    while (!tryOffer(type, key, value)) {
+      if (!block || !running) {
+        dropped.incrementAndGet();
+        return;
+      }
+      LockSupport.parkNanos(FULL_PARK_NANOS);
+    }
+    if (!running) {
+      // the shutdown started while writing, the dispatcher thread may have missed the event
+      drainStopped();
+    }
+  }
+
+  /**
+   * Dispatches the events left in the ring, once the dispatcher thread has stopped.
+   */
+  private void drainStopped() {
+    synchronized (stopLock) {
+      if (stopped) {
+        while (dispatchBatch() > 0) {
+        }
+      }
+    }
+  }
+
+  private boolean tryOffer(byte type, String key, long value) {
+    while (true) {
+      long position = tail.get();
+      int slot = (int) (position & mask);
+      long difference = sequences.get(slot) - position;
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          types[slot] = type;
+          keys[slot] = key;
+          values[slot] = value;
+          // a volatile write, so either the writer sees the shutdown or the shutdown sees the event
+          sequences.set(slot, position + 1);
+          return true;
+        }
+      } else if (difference < 0) {
+        return false;
+      }
+    }
+  }
+
+  private void dispatchLoop() {
+    while (true) {
+      int count = dispatchBatch();
+      if (count == 0) {
+        if (!running) {
+          // events written while we noticed the shutdown
+          if (dispatchBatch() == 0) {
+            return;
+          }
+        } else {
+          LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return number of dispatched events
+   */
+  int dispatchBatch() {
+    long position = head;
+    List<MonitorPlugin> plugins = monitor.getPlugins();
+    CorePlugin corePlugin = monitor.getCorePlugin();
+    int count = 0;
+    while (count < BATCH_SIZE) {
+      int slot = (int) (position & mask);
+      if (sequences.get(slot) != (position + 1)) {
+        break;
+      }
+
+      byte type = types[slot];
+      String key = keys[slot];
+      long value = values[slot];
+      keys[slot] = null;
+      sequences.lazySet(slot, position + capacity);
+      position++;
+      count++;
+
+      for (MonitorPlugin plugin : plugins) {
+        if (plugin != corePlugin) {
+          dispatch(plugin, type, key, value);
+        }
+      }
+    }
+    if (count > 0) {
+      head = position;
+      dispatched.addAndGet(count);
+    }
+    return count;
+  }
+
+  private void dispatch(MonitorPlugin plugin, byte type, String key, long value) {
+    try {
+      switch (type) {
+        case INITIALIZE_COUNTER: {
+          plugin.initializeCounter(key);
+          break;
+        }
+
+        case INCREMENT_COUNTER: {
+          plugin.incrementCounter(key, (int) value);
+          break;
+        }
+
+        case INCREMENT_HIGH_RATE_COUNTER: {
+          plugin.incrementHighRateCounter(key, (int) value);
+          break;
+        }
+
+        case ADD_TIMER_MEASUREMENT: {
+          plugin.addTimerMeasurement(key, value);
+          break;
+        }
+
+        case ADD_SINGLE_EVENT_TIMER_MEASUREMENT: {
+          plugin.addSingleEventTimerMeasurement(key, value);
+          break;
+        }
+
+        case ADD_HIGH_RATE_TIMER_MEASUREMENT: {
+          plugin.addHighRateTimerMeasurement(key, value);
+          break;
+        }
+
+        case INITIALIZE_TIMER_MEASUREMENT: {
+          plugin.initializeTimerMeasurement(key);
+          break;
+        }
+
+        case ADD_NANOS_TIMER_MEASUREMENT: {
+          if (plugin instanceof UnitAwareMonitorPlugin) {
+            ((UnitAwareMonitorPlugin) plugin).addTimerMeasurement(key, value, TimeUnit.NANOSECONDS);
+          } else {
+            plugin.addTimerMeasurement(key, TimeUnit.NANOSECONDS.toMillis(value));
+          }
+          break;
+        }
+
+        default: {
+          throw new IllegalStateException("unknown event type " + type);
+        }
+      }
+    } catch (RuntimeException e) {
+      failed.incrementAndGet();
+      LOGGER.warn("plugin " + plugin.getUniqueName() + " failed to handle event for " + key, e);
+    }
+  }
+
+  @Override
+  public String getUniqueName() {
+    return "AsyncPluginDispatcher";
+  }
+
+  @Override
+  public void initializeCounter(String name) {
+    offer(INITIALIZE_COUNTER, name, 0);
+  }
+
+  @Override
+  public void incrementCounter(String name, int increment) {
+    offer(INCREMENT_COUNTER, name, increment);
+  }
+
+  @Override
+  public void incrementHighRateCounter(String name, int increment) {
+    offer(INCREMENT_HIGH_RATE_COUNTER, name, increment);
+  }
+
+  @Override
+  public void addTimerMeasurement(String name, long timing) {
+    offer(ADD_TIMER_MEASUREMENT, name, timing);
+  }
+
+  /**
+   * Queues the measurement in nanoseconds, each plugin gets it in the finest unit it supports.
+   */
+  @Override
+  public void addTimerMeasurement(String name, long timing, TimeUnit unit) {
+    offer(ADD_NANOS_TIMER_MEASUREMENT, name, unit.toNanos(timing));
+  }
+
+  @Override
+  public void addSingleEventTimerMeasurement(String name, long timing) {
+    offer(ADD_SINGLE_EVENT_TIMER_MEASUREMENT, name, timing);
+  }
+
+  @Override
+  public void addHighRateTimerMeasurement(String name, long timing) {
+    offer(ADD_HIGH_RATE_TIMER_MEASUREMENT, name, timing);
+  }
+
+  @Override
+  public void initializeTimerMeasurement(String name) {
+    offer(INITIALIZE_TIMER_MEASUREMENT, name, 0);
+  }
+
+  /**
+   * Does nothing, the dispatcher is not registered as a plugin but used by the InApplicationMonitor directly,
+   * see {@link InApplicationMonitor#enableAsyncDispatch(int, OverflowPolicy)}.
+   */
+  @Override
+  public void register() {
+  }
+
+  @Override
+  public void afterRemovalNotification() {
+  }
+
+  private static final class DispatchTargets {
+    private final CorePlugin corePlugin;
+    private final List<MonitorPlugin> targets;
+
+    private DispatchTargets(CorePlugin corePlugin, List<MonitorPlugin> targets) {
+      this.corePlugin = corePlugin;
+      this.targets = targets;
+    }
+  }
+}
@@ -0,0 +1,305 @@
+package de.is24.util.monitoring;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * Limits the number of counters, timers and histograms a {@link CorePlugin} creates, protecting the heap from keys
+ * built from unbounded input, e.g. request paths or SQL statements.
+ *
+ * There is a global limit and any number of limits for key prefixes, the longest matching prefix applies. A key
+ * not monitored yet is rejected if a limit it falls under is reached, its values are then recorded under the
+ * overflow key instead. The overflow key itself is never rejected. Rejections are cached, so updates of rejected
+ * keys cost a map lookup. The cache holds two generations of up to {@link #MAX_CACHED_REJECTIONS} keys: when the
+ * current generation is full it replaces the previous one, and keys found in the previous generation are moved to
+ * the current one, so frequently updated rejected keys stay cached. The cache is cleared when a limit changes or an
+ * evicted monitor frees capacity.
+ *
+ * Keys are counted when their monitor is created and limits are checked before, so concurrently created keys may
+ * exceed a limit slightly. Keys of evicted monitors are not counted anymore. A prefix limit only counts the keys
+ * created after it was set. All limits default to {@link #UNLIMITED}.
+ */
+public class CardinalityLimiter implements CardinalityLimiterMBean {
+  public static final int UNLIMITED = Integer.MAX_VALUE;
+  public static final String DEFAULT_OVERFLOW_KEY = "appmon4j.cardinality.overflow";
+  static final int MAX_CACHED_REJECTIONS = 10000;
+  // a power of two, so the ring index can wrap around
+  static final int RECENT_OFFENDERS = 16;
+  private static final Logger LOGGER = LoggerFactory.getLogger(CardinalityLimiter.class);
+
+  private final AtomicInteger keyCount = new AtomicInteger();
+  private final AtomicLong rejectedKeyCount = new AtomicLong();
+  private final AtomicReferenceArray<String> recentOffenders = new AtomicReferenceArray<String>(RECENT_OFFENDERS);
+  private final AtomicInteger nextOffender = new AtomicInteger();
+  private volatile RejectedKeys rejectedKeys = new RejectedKeys(null);
+  private volatile String overflowKey = DEFAULT_OVERFLOW_KEY;
+  private volatile int globalLimit = UNLIMITED;
+  private volatile PrefixLimit[] prefixLimits = new PrefixLimit[0];
+
+  /**
+   * Decides about a key that is not monitored yet.
+   *
+   * @return the key itself, or the overflow key if the key is rejected
+   */
+  String admit(String key) {
+    String overflow = overflowKey;
+    if (rejectedKeys.contains(key)) {
+      return overflow;
+    }
+    if (key.equals(overflow)) {
+      return key;
+    }
+
+    PrefixLimit prefixLimit = prefixLimitFor(key);
+    if ((keyCount.get() < globalLimit) &&
+        ((prefixLimit == null) || (prefixLimit.keyCount.get() < prefixLimit.limit))) {
+      return key;
+    }
+
+    reject(key, overflow);
+    return overflow;
+  }
+
+  /**
+   * Counts a key whose monitor was created.
+   */
+  void created(String key) {
+    if (key.equals(overflowKey)) {
+      return;
+    }
+    keyCount.incrementAndGet();
+
+    PrefixLimit prefixLimit = prefixLimitFor(key);
+    if (prefixLimit != null) {
+      prefixLimit.keyCount.incrementAndGet();
+    }
+  }
+
+  /**
+   * Stops counting a key whose monitor was removed.
+   */
+  void removed(String key) {
+    if (key.equals(overflowKey)) {
+      return;
+    }
+    decrementIfPositive(keyCount);
+
+    PrefixLimit prefixLimit = prefixLimitFor(key);
+    if (prefixLimit != null) {
+      // the key may have been created before the limit was set
+      decrementIfPositive(prefixLimit.keyCount);
+    }
+    clearRejectedKeys();
+  }
+
+  @Override
+  public int getGlobalLimit() {
+    return globalLimit;
+  }
+
+  @Override
+  public void setGlobalLimit(int globalLimit) {
+    if (globalLimit < 0) {
+      throw new IllegalArgumentException("limit must not be negative: " + globalLimit);
+    }
+    this.globalLimit = globalLimit;
+    clearRejectedKeys();
+  }
+
+  @Override
+  public String getOverflowKey() {
+    return overflowKey;
+  }
+
+  /**
+   * Sets the key rejected keys are recorded as, default is {@value #DEFAULT_OVERFLOW_KEY}.
+   */
+  public void setOverflowKey(String overflowKey) {
+    if ((overflowKey == null) || (overflowKey.length() == 0)) {
+      throw new IllegalArgumentException("overflow key must not be empty");
+    }
+    this.overflowKey = overflowKey;
+    clearRejectedKeys();
+  }
+
+  /**
+   * @return number of keys created, not counting the overflow key
+   */
+  @Override
+  public int getKeyCount() {
+    return keyCount.get();
+  }
+
+  /**
+   * @return number of rejected keys, a key is counted again once its rejection dropped out of the cache
+   */
+  @Override
+  public long getRejectedKeyCount() {
+    return rejectedKeyCount.get();
+  }
+
+  /**
+   * @return the most recently rejected keys, latest first
+   */
+  @Override
+  public String[] getRecentOffenders() {
+    List<String> result = new ArrayList<String>(RECENT_OFFENDERS);
+    int next = nextOffender.get();
+    for (int i = 1; i <= RECENT_OFFENDERS; i++) {
+      String offender = recentOffenders.get((next - i) & (RECENT_OFFENDERS - 1));
+      if (offender != null) {
+        result.add(offender);
+      }
+    }
+    return result.toArray(new String[result.size()]);
+  }
+
+  /**
+   * @return the prefix limits as "prefix=limit (keys created)", longest prefix first
+   */
+  @Override
+  public String[] getPrefixLimits() {
+    List<String> result = new ArrayList<String>();
+    for (PrefixLimit prefixLimit : prefixLimits) {
+      result.add(prefixLimit.prefix + "=" + prefixLimit.limit + " (" + prefixLimit.keyCount.get() + ")");
+    }
+    return result.toArray(new String[result.size()]);
+  }
+
+  /**
+   * Limits the number of keys starting with the given prefix, replacing a former limit of the prefix but keeping
+   * its count.
+   */
+  @Override
+  public synchronized void setPrefixLimit(String prefix, int limit) {
+    if ((prefix == null) || (prefix.length() == 0)) {
+      throw new IllegalArgumentException("prefix must not be empty");
+    }
+    if (limit < 0) {
+      throw new IllegalArgumentException("limit must not be negative: " + limit);
+    }
+
+    List<PrefixLimit> limits = new ArrayList<PrefixLimit>(Arrays.asList(prefixLimits));
+    int index = 0;
+    while ((index < limits.size()) && (limits.get(index).prefix.length() >= prefix.length())) {
+      if (limits.get(index).prefix.equals(prefix)) {
+        limits.set(index, new PrefixLimit(prefix, limit, limits.get(index).keyCount));
+        replacePrefixLimits(limits);
+        return;
+      }
+      index++;
+    }
+    limits.add(index, new PrefixLimit(prefix, limit, new AtomicInteger()));
+    replacePrefixLimits(limits);
+  }
+
+  @Override
+  public synchronized boolean removePrefixLimit(String prefix) {
+    List<PrefixLimit> limits = new ArrayList<PrefixLimit>(Arrays.asList(prefixLimits));
+    for (PrefixLimit prefixLimit : limits) {
+      if (prefixLimit.prefix.equals(prefix)) {
+        limits.remove(prefixLimit);
+        replacePrefixLimits(limits);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void replacePrefixLimits(List<PrefixLimit> limits) {
+    prefixLimits = limits.toArray(new PrefixLimit[limits.size()]);
+    clearRejectedKeys();
+  }
+
+  private synchronized void clearRejectedKeys() {
+    if (!rejectedKeys.isEmpty()) {
+      rejectedKeys = new RejectedKeys(null);
+    }
+  }
+
+  private static void decrementIfPositive(AtomicInteger count) {
+    int current = count.get();
+    while ((current > 0) && !count.compareAndSet(current, current - 1)) {
+      current = count.get();
+    }
+  }
+
+  private PrefixLimit prefixLimitFor(String key) {
+    for (PrefixLimit prefixLimit : prefixLimits) {
+      if (key.startsWith(prefixLimit.prefix)) {
+        return prefixLimit;
+      }
+    }
+    return null;
+  }
+
+  private void reject(String key, String overflow) {
+    RejectedKeys rejected = rejectedKeys;
+    if (rejected.current.putIfAbsent(key, Boolean.TRUE) != null) {
+      // rejected concurrently
+      return;
+    }
+    if (rejected.current.size() >= MAX_CACHED_REJECTIONS) {
+      startGeneration(rejected);
+    }
+
+    if (rejectedKeyCount.incrementAndGet() == 1) {
+      LOGGER.warn("cardinality limit reached, recording {} and further new keys as {}", key, overflow);
+    }
+    recentOffenders.set(nextOffender.getAndIncrement() & (RECENT_OFFENDERS - 1), key);
+  }
+
+  private synchronized void startGeneration(RejectedKeys full) {
+    // another thread may have started a generation or cleared the cache meanwhile
+    if (rejectedKeys == full) {
+      rejectedKeys = new RejectedKeys(full.current);
+    }
+  }
+
+  /**
+   * The current and the previous generation of cached rejections.
+   */
+  private static final class RejectedKeys {
+    private final ConcurrentHashMap<String, Boolean> current = new ConcurrentHashMap<String, Boolean>();
+    private final ConcurrentHashMap<String, Boolean> previous;
+
+    private RejectedKeys(ConcurrentHashMap<String, Boolean> previous) {
+      this.previous = previous;
+    }
+
+    private boolean contains(String key) {
+      if (current.containsKey(key)) {
+        return true;
+      }
+      if ((previous != null) && previous.containsKey(key)) {
+        current.putIfAbsent(key, Boolean.TRUE);
+        return true;
+      }
+      return false;
+    }
+
+    private boolean isEmpty() {
+      return current.isEmpty() && ((previous == null) || previous.isEmpty());
+    }
+  }
+
+  private static final class PrefixLimit {
+    private final String prefix;
+    private final int limit;
+    private final AtomicInteger keyCount;
+
+    private PrefixLimit(String prefix, int limit, AtomicInteger keyCount) {
+      this.prefix = prefix;
+      this.limit = limit;
+      this.keyCount = keyCount;
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package de.is24.util.monitoring;
+
+/**
+ * JMX view of the {@link CardinalityLimiter} of a {@link CorePlugin}.
+ */
+public interface CardinalityLimiterMBean {
+  int getGlobalLimit();
+
+  void setGlobalLimit(int globalLimit);
+
+  String getOverflowKey();
+
+  int getKeyCount();
+
+  long getRejectedKeyCount();
+
+  String[] getRecentOffenders();
+
+  String[] getPrefixLimits();
+
+  void setPrefixLimit(String prefix, int limit);
+
+  boolean removePrefixLimit(String prefix);
+}
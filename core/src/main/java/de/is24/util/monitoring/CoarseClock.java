@@ -0,0 +1,26 @@
+package de.is24.util.monitoring;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Seconds since the clock was created, advanced by {@link #tick()} instead of reading the system clock, so metrics
+ * can stamp every update with a single volatile read.
+ */
+final class CoarseClock {
+  private final long origin = System.nanoTime();
+  private volatile int seconds;
+
+  int seconds() {
+    return seconds;
+  }
+
+  /**
+   * Advances the clock to the current time, called about once per second.
+   */
+  int tick() {
+    int now = (int) TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - origin);
+    seconds = now;
+    return now;
+  }
+}
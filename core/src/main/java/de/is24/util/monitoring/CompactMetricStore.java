@@ -0,0 +1,281 @@
+package de.is24.util.monitoring;
+
+import de.is24.util.monitoring.tools.LongSlab;
+import de.is24.util.monitoring.tools.NameDictionary;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+
+/**
+ * Storage of the counters and timers of a {@link CorePlugin} using {@link CorePlugin.MetricStorage#COMPACT}.
+ *
+ * Names are interned into a {@link NameDictionary} per kind, values are kept in a {@link LongSlab} at the offset
+ * computed from the id: one long per counter, count, sum and sum of squares per timer. There are no objects per
+ * metric. {@link Counter} and {@link Timer} instances are views on the stored values, created on demand for
+ * visitors, observers and handles; two views of the same metric are equal.
+ *
+ * Each value is a single atomic long, so heavily contended metrics scale worse than with the striped counters of
+ * the object storage.
+ */
+final class CompactMetricStore {
+  private static final int TIMER_WIDTH = 3;
+
+  private final ReportableNotifier notifier;
+  private final CardinalityLimiter cardinalityLimiter;
+  private final NameDictionary counterNames = new NameDictionary();
+  private final NameDictionary timerNames = new NameDictionary();
+  private final LongSlab counterValues = new LongSlab();
+  private final LongSlab timerValues = new LongSlab();
+
+  CompactMetricStore(ReportableNotifier notifier, CardinalityLimiter cardinalityLimiter) {
+    this.notifier = notifier;
+    this.cardinalityLimiter = cardinalityLimiter;
+  }
+
+  void incrementCounter(String name, long increment) {
+    counterValues.add(counterId(name), increment);
+  }
+
+  void initializeCounter(String name) {
+    counterValues.set(counterId(name), 0);
+  }
+
+  void addTimerMeasurement(String name, long timing) {
+    addTimerValues(timerId(name), 1, timing, timing * timing);
+  }
+
+  void initializeTimer(String name) {
+    int offset = TIMER_WIDTH * timerId(name);
+    timerValues.set(offset, 0);
+    timerValues.set(offset + 1, 0);
+    timerValues.set(offset + 2, 0);
+  }
+
+  /**
+   * Adds counts and sums of another timer, used when syncing from another plugin.
+   */
+  void addTimerValues(String name, long count, long sum, long sumOfSquares) {
+    addTimerValues(timerId(name), count, sum, sumOfSquares);
+  }
+
+  boolean containsCounter(String name) {
+    return counterNames.lookup(name) >= 0;
+  }
+
+  boolean containsTimer(String name) {
+    return timerNames.lookup(name) >= 0;
+  }
+
+  Counter getCounter(String name) {
+    return new CounterView(this, counterId(name));
+  }
+
+  Timer getTimer(String name) {
+    return new TimerView(this, timerId(name));
+  }
+
+  List<Counter> getCounters() {
+    int size = counterNames.size();
+    List<Counter> result = new ArrayList<Counter>(size);
+    for (int id = 0; id < size; id++) {
+      result.add(new CounterView(this, id));
+    }
+    return result;
+  }
+
+  List<Timer> getTimers() {
+    int size = timerNames.size();
+    List<Timer> result = new ArrayList<Timer>(size);
+    for (int id = 0; id < size; id++) {
+      result.add(new TimerView(this, id));
+    }
+    return result;
+  }
+
+  void accept(ReportVisitor reportVisitor) {
+    int counters = counterNames.size();
+    for (int id = 0; id < counters; id++) {
+      reportVisitor.reportCounter(new CounterView(this, id));
+    }
+
+    int timers = timerNames.size();
+    for (int id = 0; id < timers; id++) {
+      reportVisitor.reportTimer(new TimerView(this, id));
+    }
+  }
+
+  /**
+   * @return approximate number of bytes of heap used for names and values
+   */
+  long getFootprint() {
+    return counterNames.getFootprint() + timerNames.getFootprint() + counterValues.getFootprint() +
+      timerValues.getFootprint();
+  }
+
+  private void addTimerValues(int id, long count, long sum, long sumOfSquares) {
+    int offset = TIMER_WIDTH * id;
+    timerValues.add(offset, count);
+    timerValues.add(offset + 1, sum);
+    timerValues.add(offset + 2, sumOfSquares);
+  }
+
+  private int counterId(String name) {
+    int id = counterNames.lookup(name);
+    if (id < 0) {
+      id = create(counterNames, counterValues, 1, cardinalityLimiter.admit(name));
+    }
+    return id;
+  }
+
+  private int timerId(String name) {
+    int id = timerNames.lookup(name);
+    if (id < 0) {
+      id = create(timerNames, timerValues, TIMER_WIDTH, cardinalityLimiter.admit(name));
+    }
+    return id;
+  }
+
+  /**
+   * @return the id of the name, interned by this call and published to the observers unless interned concurrently
+   */
+  private synchronized int create(NameDictionary names, LongSlab values, int width, String name) {
+    int id = names.lookup(name);
+    if (id >= 0) {
+      return id;
+    }
+
+    // the capacity is ensured before the id is published by the dictionary
+    values.ensureCapacity(width * (names.size() + 1));
+    cardinalityLimiter.created(name);
+
+    Lock publication = notifier.publication();
+    publication.lock();
+    try {
+      id = names.intern(name);
+      notifier.published((names == counterNames) ? new CounterView(this, id) : new TimerView(this, id));
+    } finally {
+      publication.unlock();
+    }
+    return id;
+  }
+
+  private static final class CounterView extends Counter {
+    private final CompactMetricStore store;
+    private final int id;
+
+    CounterView(CompactMetricStore store, int id) {
+      this.store = store;
+      this.id = id;
+    }
+
+    @Override
+    public void increment() {
+      store.counterValues.add(id, 1);
+    }
+
+    @Override
+    public void increment(long increment) {
+      store.counterValues.add(id, increment);
+    }
+
+    @Override
+    public void initialize() {
+      store.counterValues.set(id, 0);
+    }
+
+    @Override
+    public long getCount() {
+      return store.counterValues.get(id);
+    }
+
+    @Override
+    public String getName() {
+      return store.counterNames.getName(id);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return (o instanceof CounterView) && (((CounterView) o).store == store) && (((CounterView) o).id == id);
+    }
+
+    @Override
+    public int hashCode() {
+      return id;
+    }
+  }
+
+  private static final class TimerView extends Timer {
+    private final CompactMetricStore store;
+    private final int offset;
+
+    TimerView(CompactMetricStore store, int id) {
+      this.store = store;
+      this.offset = TIMER_WIDTH * id;
+    }
+
+    @Override
+    public void addMeasurement(long durationInMillis) {
+      store.addTimerValues(offset / TIMER_WIDTH, 1, durationInMillis, durationInMillis * durationInMillis);
+    }
+
+    @Override
+    public void initializeMeasurement() {
+      store.timerValues.set(offset, 0);
+      store.timerValues.set(offset + 1, 0);
+      store.timerValues.set(offset + 2, 0);
+    }
+
+    @Override
+    public String getName() {
+      return store.timerNames.getName(offset / TIMER_WIDTH);
+    }
+
+    @Override
+    public long getCount() {
+      return store.timerValues.get(offset);
+    }
+
+    @Override
+    public long getTimerSum() {
+      return store.timerValues.get(offset + 1);
+    }
+
+    @Override
+    public long getTimerSumOfSquares() {
+      return store.timerValues.get(offset + 2);
+    }
+
+    @Override
+    public double getTimerSumOfSquaresAsDouble() {
+      return getTimerSumOfSquares();
+    }
+
+    @Override
+    public double getTimerAvg() {
+      return Math.average(getCount(), getTimerSum());
+    }
+
+    @Override
+    public double getTimerStdDev() {
+      return Math.stdDeviation(getCount(), getTimerSum(), getTimerSumOfSquares());
+    }
+
+    @Override
+    void readInto(int id, long[] counts, long[] sums, long[] sumsOfSquares) {
+      counts[id] = getCount();
+      sums[id] = getTimerSum();
+      sumsOfSquares[id] = getTimerSumOfSquares();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return (o instanceof TimerView) && (((TimerView) o).store == store) && (((TimerView) o).offset == offset);
+    }
+
+    @Override
+    public int hashCode() {
+      return offset;
+    }
+  }
+}
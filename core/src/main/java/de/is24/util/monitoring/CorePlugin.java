@@ -13,8 +13,14 @@ import javax.management.ObjectName;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -26,17 +32,41 @@ import java.util.concurrent.CopyOnWriteArrayList;
  * data locally in the JVM. Other plugins (namely the statsd plugin) move data aggregation out of the JVM.
  * And thus it makes no sense to let them implement some of the patterns like reportableObserver etc.
  */
-public class CorePlugin extends AbstractMonitorPlugin {
+public class CorePlugin extends AbstractMonitorPlugin implements UnitAwareMonitorPlugin {
+  /**
+   * How a CorePlugin keeps its counters and timers.
+   */
+  public enum MetricStorage {
+    /** one {@link Counter} or {@link Timer} object per metric, with striped values for contended updates */
+    OBJECTS,
+
+    /**
+     * names interned into byte arrays and values in long arrays, a few dozen bytes per metric for applications
+     * with very many metrics. Does not support {@link CorePlugin#createCursor()} and
+     * {@link CorePlugin#enableIdleMetricEviction(long, TimeUnit)}.
+     */
+    COMPACT
+  }
+
   private static final Logger LOGGER = LoggerFactory.getLogger(CorePlugin.class);
   private volatile int maxHistoryEntriesToKeep = 5;
-  private final CopyOnWriteArrayList<ReportableObserver> reportableObservers =
-    new CopyOnWriteArrayList<ReportableObserver>();
-  private final Monitors<Counter> counters = new Monitors<Counter>(reportableObservers);
-  private final Monitors<Timer> timers = new Monitors<Timer>(reportableObservers);
-  private final Monitors<StateValueProvider> stateValues = new Monitors<StateValueProvider>(reportableObservers);
-  private final Monitors<MultiValueProvider> multiValues = new Monitors<MultiValueProvider>(reportableObservers);
-  private final Monitors<Version> versions = new Monitors<Version>(reportableObservers);
-  private final Monitors<HistorizableList> historizableLists = new Monitors<HistorizableList>(reportableObservers);
+  private volatile int histogramPrecision = Histogram.DEFAULT_PRECISION;
+  private final ReportableNotifier notifier = new ReportableNotifier();
+  private final Monitors<Counter> counters = new Monitors<Counter>(notifier);
+  private final Monitors<Timer> timers = new Monitors<Timer>(notifier);
+  private final Monitors<Histogram> histograms = new Monitors<Histogram>(notifier);
+  private final Monitors<StateValueProvider> stateValues = new Monitors<StateValueProvider>(notifier);
+  private final Monitors<MultiValueProvider> multiValues = new Monitors<MultiValueProvider>(notifier);
+  private final Monitors<Version> versions = new Monitors<Version>(notifier);
+  private final Monitors<HistorizableList> historizableLists = new Monitors<HistorizableList>(notifier);
+  private final MetricNameTable metricNames = new MetricNameTable();
+  private final MetricCursors metricCursors = new MetricCursors(metricNames);
+  private final CardinalityLimiter cardinalityLimiter = new CardinalityLimiter();
+  private final CoarseClock clock = new CoarseClock();
+  private final ConcurrentMap<String, TimeUnit> timerUnits = new ConcurrentHashMap<String, TimeUnit>();
+  private volatile int idleMetricTtlSeconds;
+  private ScheduledExecutorService idleMetricEviction;
+  private final CompactMetricStore compactStore;
   private volatile InApplicationMonitorJMXConnector inApplicationMonitorJMXConnector;
   private KeyHandler keyHandler;
   private final JMXExporter jmxExporter;
@@ -47,6 +77,13 @@ public class CorePlugin extends AbstractMonitorPlugin {
   private final String uniqueName;
 
   public CorePlugin(JmxAppMon4JNamingStrategy jmxAppMon4JNamingStrategy, KeyHandler keyHandler) {
+    this(jmxAppMon4JNamingStrategy, keyHandler, MetricStorage.OBJECTS);
+  }
+
+  public CorePlugin(JmxAppMon4JNamingStrategy jmxAppMon4JNamingStrategy, KeyHandler keyHandler,
+                    MetricStorage metricStorage) {
+    compactStore = (metricStorage == MetricStorage.COMPACT) ? new CompactMetricStore(notifier,
+        cardinalityLimiter) : null;
     synchronized (semaphore) {
       if (keyHandler != null) {
         this.keyHandler = keyHandler;
@@ -104,11 +141,13 @@ public class CorePlugin extends AbstractMonitorPlugin {
   }
 
   public synchronized void destroy() {
+    disableIdleMetricEviction();
     synchronized (semaphore) {
       if (isJMXInitialized()) {
         inApplicationMonitorJMXConnector.shutdown();
         inApplicationMonitorJMXConnector = null;
       }
+      jmxExporter.shutdown();
     }
   }
 
@@ -129,69 +168,61 @@ public class CorePlugin extends AbstractMonitorPlugin {
   }
 
   /**
-   * Set the Number of entries to keep for each Historizable list.
+   * Set the Number of entries to keep for each Historizable list, existing lists are resized keeping their newest
+   * entries.
    * Default is 5.
    *
-   * @param aMaxHistoryEntriesToKeep Number of entries to keep
+   * @param aMaxHistoryEntriesToKeep Number of entries to keep, at least 1
    */
   public void setMaxHistoryEntriesToKeep(int aMaxHistoryEntriesToKeep) {
+    if (aMaxHistoryEntriesToKeep < 1) {
+      throw new IllegalArgumentException("at least one history entry must be kept, but was " +
+        aMaxHistoryEntriesToKeep);
+    }
     maxHistoryEntriesToKeep = aMaxHistoryEntriesToKeep;
+    for (HistorizableList historizableList : historizableLists.getMonitors()) {
+      historizableList.setMaxEntriesToKeep(aMaxHistoryEntriesToKeep);
+    }
   }
 
   /**
-   * adds a new ReportableObserver that wants to be notified about new Reportables that are
-   * registered on the InApplicationMonitor
-   * @param reportableObserver the class that wants to be notified
+   * @return precision of newly created Histograms
    */
-  public void addReportableObserver(final ReportableObserver reportableObserver) {
-    reportableObservers.add(reportableObserver);
-
-    LOGGER.info("registering new ReportableObserver (" + reportableObserver.getClass().getName() + ")");
-
-    // iterate over all reportables that are registered already and call the observer for each one of them
-    reportInto(new ReportVisitor() {
-        public void notifyReportableObserver(Reportable reportable) {
-          reportableObserver.addNewReportable(reportable);
-
-        }
-
-        @Override
-        public void reportCounter(Counter counter) {
-          notifyReportableObserver(counter);
-        }
-
-        @Override
-        public void reportTimer(Timer timer) {
-          notifyReportableObserver(timer);
-        }
-
-        @Override
-        public void reportStateValue(StateValueProvider stateValueProvider) {
-          notifyReportableObserver(stateValueProvider);
-        }
-
-        @Override
-        public void reportMultiValue(MultiValueProvider multiValueProvider) {
-          notifyReportableObserver(multiValueProvider);
-        }
-
-        @Override
-        public void reportHistorizableList(HistorizableList historizableList) {
-          notifyReportableObserver(historizableList);
-        }
+  public int getHistogramPrecision() {
+    return histogramPrecision;
+  }
 
-        @Override
-        public void reportVersion(Version version) {
-          notifyReportableObserver(version);
-        }
+  /**
+   * Set the precision of newly created Histograms, i.e. the number of bits used to divide each
+   * power of two into buckets. Existing Histograms keep their precision.
+   * Default is 5, which means a relative error of about 3% at 1888 buckets per Histogram.
+   *
+   * @param aHistogramPrecision precision between 1 and 10
+   */
+  public void setHistogramPrecision(int aHistogramPrecision) {
+    if ((aHistogramPrecision < Histogram.MIN_PRECISION) || (aHistogramPrecision > Histogram.MAX_PRECISION)) {
+      throw new IllegalArgumentException("precision must be between " + Histogram.MIN_PRECISION + " and " +
+        Histogram.MAX_PRECISION);
+    }
+    histogramPrecision = aHistogramPrecision;
+  }
 
-      });
+  /**
+   * @return the limiter of the number of counters, timers and histograms, to configure limits
+   */
+  public CardinalityLimiter getCardinalityLimiter() {
+    return cardinalityLimiter;
   }
 
-  private void notifyReportableObservers(Reportable reportable) {
-    for (ReportableObserver reportableObserver : reportableObservers) {
-      reportableObserver.addNewReportable(reportable);
-    }
+  /**
+   * adds a new ReportableObserver that wants to be notified about new Reportables that are
+   * registered on the InApplicationMonitor. Returns after the observer got all Reportables registered so far,
+   * later ones are passed to it asynchronously.
+   * @param reportableObserver the class that wants to be notified
+   */
+  public void addReportableObserver(final ReportableObserver reportableObserver) {
+    LOGGER.info("registering new ReportableObserver (" + reportableObserver.getClass().getName() + ")");
+    notifier.addObserver(reportableObserver, this);
   }
 
   /**
@@ -200,7 +231,15 @@ public class CorePlugin extends AbstractMonitorPlugin {
    * @param reportableObserver the observer to be removed
    */
   public void removeReportableObserver(final ReportableObserver reportableObserver) {
-    reportableObservers.remove(reportableObserver);
+    notifier.removeObserver(reportableObserver);
+  }
+
+  /**
+   * Observers are notified about new reportables asynchronously. Waits until they got all reportables created
+   * before this call, mainly for testing.
+   */
+  public void awaitReportableNotifications() {
+    notifier.awaitNotifications();
   }
 
   /**
@@ -211,14 +250,185 @@ public class CorePlugin extends AbstractMonitorPlugin {
    * by all regieteres {@link de.is24.util.monitoring.Reportable} instances.
    */
   public void reportInto(ReportVisitor reportVisitor) {
-    counters.accept(reportVisitor);
-    timers.accept(reportVisitor);
+    if (compactStore != null) {
+      compactStore.accept(reportVisitor);
+    } else {
+      counters.accept(reportVisitor);
+      timers.accept(reportVisitor);
+    }
+    histograms.accept(reportVisitor);
     stateValues.accept(reportVisitor);
     multiValues.accept(reportVisitor);
     versions.accept(reportVisitor);
     historizableLists.accept(reportVisitor);
   }
 
+  /**
+   * Takes a snapshot of all counters and timers. Each value is read once, consumers of the snapshot thus see
+   * consistent values without walking the monitors again.
+   *
+   * @return an immutable snapshot indexed by the stable metric ids of this plugin
+   */
+  public synchronized MetricSnapshot snapshot() {
+    long timestamp = System.currentTimeMillis();
+    List<Counter> counterList = (compactStore != null) ? compactStore.getCounters()
+                                                       : new ArrayList<Counter>(counters.getMonitors());
+    List<Timer> timerList = (compactStore != null) ? compactStore.getTimers()
+                                                   : new ArrayList<Timer>(timers.getMonitors());
+    int[] counterIds = new int[counterList.size()];
+    int[] timerIds = new int[timerList.size()];
+    for (int i = 0; i < counterIds.length; i++) {
+      counterIds[i] = idOf(MetricNameTable.Kind.COUNTER, counterList.get(i));
+    }
+    for (int i = 0; i < timerIds.length; i++) {
+      timerIds[i] = idOf(MetricNameTable.Kind.TIMER, timerList.get(i));
+    }
+
+    int size = metricNames.size();
+    long[] counts = new long[size];
+    long[] sums = new long[size];
+    long[] sumsOfSquares = new long[size];
+    for (int i = 0; i < counterIds.length; i++) {
+      if (counterIds[i] >= 0) {
+        counts[counterIds[i]] = counterList.get(i).getCount();
+      }
+    }
+    for (int i = 0; i < timerIds.length; i++) {
+      if (timerIds[i] >= 0) {
+        timerList.get(i).readInto(timerIds[i], counts, sums, sumsOfSquares);
+      }
+    }
+    return new MetricSnapshot(metricNames, timestamp, 0, counts, sums, sumsOfSquares);
+  }
+
+  private int idOf(MetricNameTable.Kind kind, TrackedMetric metric) {
+    // the counters and timers of compact storage are views created per call, their names are never released
+    return (compactStore != null) ? metricNames.register(kind, metric.getName())
+                                  : metricNames.register(kind, metric);
+  }
+
+  /**
+   * Creates a cursor reporting the changes of all counters and timers since its last read, without resetting them.
+   * The first read reports the changes since the cursor was created.
+   *
+   * @return a new cursor, to be closed when not needed anymore
+   * @throws IllegalStateException if the maximum number of cursors is reached
+   * @throws UnsupportedOperationException if the plugin uses {@link MetricStorage#COMPACT}
+   */
+  public MetricCursor createCursor() {
+    if (compactStore != null) {
+      throw new UnsupportedOperationException("metric cursors are not supported by compact metric storage");
+    }
+    return metricCursors.register(counters.getMonitors(), timers.getMonitors());
+  }
+
+  /**
+   * Removes counters and timers not updated for the given time. Observers implementing
+   * {@link ReportableRemovalObserver} are notified about removed metrics, a metric updated again is created anew.
+   * Updates are stamped with a clock advanced once per second, idle metrics are removed at most half the ttl
+   * (or a minute) after they expired. An update racing with the removal of its metric may get lost. The ids of
+   * removed metrics in the {@link MetricNameTable} are reused, so snapshots and cursors do not grow with the number
+   * of names ever seen.
+   *
+   * @param ttl time without updates after which a metric is removed, at least one second
+   * @param unit unit of the ttl
+   * @throws UnsupportedOperationException if the plugin uses {@link MetricStorage#COMPACT}
+   */
+  public synchronized void enableIdleMetricEviction(long ttl, TimeUnit unit) {
+    if (compactStore != null) {
+      throw new UnsupportedOperationException("idle metric eviction is not supported by compact metric storage");
+    }
+
+    long ttlSeconds = unit.toSeconds(ttl);
+    if ((ttlSeconds < 1) || (ttlSeconds > Integer.MAX_VALUE)) {
+      throw new IllegalArgumentException("ttl must be between one second and " + Integer.MAX_VALUE + " seconds");
+    }
+    disableIdleMetricEviction();
+
+    // the clock did not advance while eviction was off, so all metrics count as updated now
+    int now = clock.tick();
+    for (Counter counter : counters.getMonitors()) {
+      counter.stamp(now);
+    }
+    for (Timer timer : timers.getMonitors()) {
+      timer.stamp(now);
+    }
+    idleMetricTtlSeconds = (int) ttlSeconds;
+
+    final long sweepInterval = java.lang.Math.max(1, java.lang.Math.min(60, ttlSeconds / 2));
+    idleMetricEviction = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "appmon4j-idle-metric-eviction");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    idleMetricEviction.scheduleWithFixedDelay(new Runnable() {
+        private long ticks;
+
+        @Override
+        public void run() {
+          try {
+            int seconds = clock.tick();
+            if ((++ticks % sweepInterval) == 0) {
+              evictIdleMetrics(seconds);
+            }
+          } catch (RuntimeException e) {
+            LOGGER.warn("evicting idle metrics failed", e);
+          }
+        }
+      }, 1, 1, TimeUnit.SECONDS);
+    LOGGER.info("evicting counters and timers of {} idle for {} seconds", uniqueName, ttlSeconds);
+  }
+
+  /**
+   * Stops removing idle counters and timers.
+   */
+  public synchronized void disableIdleMetricEviction() {
+    if (idleMetricEviction != null) {
+      idleMetricEviction.shutdownNow();
+      idleMetricEviction = null;
+    }
+    idleMetricTtlSeconds = 0;
+  }
+
+  /**
+   * @param now the current second of the plugin's clock
+   * @return number of metrics removed
+   */
+  synchronized int evictIdleMetrics(int now) {
+    // synchronized with snapshots, which must not see ids released and reused while they are taken
+    int ttl = idleMetricTtlSeconds;
+    if (ttl == 0) {
+      return 0;
+    }
+    return evictIdleMetrics(counters, MetricNameTable.Kind.COUNTER, now - ttl) +
+      evictIdleMetrics(timers, MetricNameTable.Kind.TIMER, now - ttl);
+  }
+
+  private <T extends TrackedMetric & Reportable> int evictIdleMetrics(Monitors<T> monitors,
+                                                                      MetricNameTable.Kind kind, int idleSince) {
+    int evicted = 0;
+    for (Map.Entry<String, T> entry : monitors.entries()) {
+      T metric = entry.getValue();
+      if (((metric.getLastUpdate() - idleSince) < 0) && monitors.remove(entry.getKey(), metric)) {
+        metric.markEvicted();
+        metricNames.release(kind, metric);
+        cardinalityLimiter.removed(entry.getKey());
+        evicted++;
+      }
+    }
+    if (evicted > 0) {
+      LOGGER.debug("evicted {} idle metrics", evicted);
+    }
+    return evicted;
+  }
+
+  CoarseClock getClock() {
+    return clock;
+  }
+
   /**
   * <p>Increase the specified counter by a variable amount.</p>
   *
@@ -238,7 +448,11 @@ public class CorePlugin extends AbstractMonitorPlugin {
   }
 
   private void incrementInternalCounter(int increment, String name) {
-    getCounter(name).increment(increment);
+    if (compactStore != null) {
+      compactStore.incrementCounter(name, increment);
+    } else {
+      getCounter(name).increment(increment);
+    }
   }
 
   /**
@@ -247,7 +461,11 @@ public class CorePlugin extends AbstractMonitorPlugin {
   */
   @Override
   public void initializeCounter(String name) {
-    getCounter(name).initialize();
+    if (compactStore != null) {
+      compactStore.initializeCounter(name);
+    } else {
+      getCounter(name).initialize();
+    }
   }
 
   /**
@@ -263,7 +481,99 @@ public class CorePlugin extends AbstractMonitorPlugin {
    */
   @Override
   public void addTimerMeasurement(String name, long timing) {
-    getTimer(name).addMeasurement(timing);
+    if (compactStore != null) {
+      compactStore.addTimerMeasurement(name, timing);
+    } else {
+      getTimer(name).addMeasurement(timing);
+    }
+  }
+
+  /**
+   * Add a timer measurement in the given unit. The measurement is converted to the unit of the
+   * {@link de.is24.util.monitoring.Timer}, which is milliseconds unless declared otherwise by
+   * {@link #setTimerUnit(String, TimeUnit)}. Compact storage keeps milliseconds only.
+   *
+   * @param name name of the {@link de.is24.util.monitoring.Timer}
+   * @param timing elapsed time of a single measurement
+   * @param unit unit of the timing
+   */
+  @Override
+  public void addTimerMeasurement(String name, long timing, TimeUnit unit) {
+    if (compactStore != null) {
+      compactStore.addTimerMeasurement(name, TimeUnit.MILLISECONDS.convert(timing, unit));
+    } else {
+      Timer timer = getTimer(name);
+      timer.addMeasurement(timer.getUnit().convert(timing, unit));
+    }
+  }
+
+  /**
+   * Declares the unit a timer keeps its measurements in, e.g. nanoseconds for timers of calls taking less than a
+   * millisecond. Timers not declared keep milliseconds. Measurements added with a unit are converted to the
+   * declared unit, measurements added without a unit are taken as they are. The unit does not depend on the
+   * measurements, so it is stable even if the timer is evicted and created again.
+   *
+   * Declare units before the first measurement, e.g. at startup. A name ending with {@code *} declares the unit
+   * of all timers starting with the part before it, the longest matching declaration applies.
+   *
+   * @param name name of the timer as passed to this plugin, i.e. after the key handler of the
+   *             {@link InApplicationMonitor}, or a prefix followed by {@code *}
+   * @param unit the unit the timer keeps
+   * @throws IllegalStateException if a matching timer already keeps another unit
+   * @throws UnsupportedOperationException if the plugin uses {@link MetricStorage#COMPACT} and the unit is not
+   *                                       milliseconds
+   */
+  public void setTimerUnit(String name, TimeUnit unit) {
+    if ((name == null) || (unit == null)) {
+      throw new IllegalArgumentException("name and unit must not be null");
+    }
+    if ((compactStore != null) && (unit != TimeUnit.MILLISECONDS)) {
+      throw new UnsupportedOperationException("compact metric storage keeps milliseconds only");
+    }
+    synchronized (timerUnits) {
+      TimeUnit previous = timerUnits.put(name, unit);
+      for (Timer timer : timers.getMonitors()) {
+        if (timer.getUnit() != getTimerUnit(timer.getName())) {
+          restoreTimerUnit(name, previous);
+          throw new IllegalStateException("timer " + timer.getName() + " already keeps " + timer.getUnit());
+        }
+      }
+    }
+    LOGGER.info("timer {} keeps {}", name, unit);
+  }
+
+  private void restoreTimerUnit(String name, TimeUnit previous) {
+    if (previous == null) {
+      timerUnits.remove(name);
+    } else {
+      timerUnits.put(name, previous);
+    }
+  }
+
+  /**
+   * @return the unit the timer of the given name keeps, as declared by {@link #setTimerUnit(String, TimeUnit)}
+   */
+  public TimeUnit getTimerUnit(String name) {
+    TimeUnit unit = timerUnits.get(name);
+    if (unit != null) {
+      return unit;
+    }
+    if (timerUnits.isEmpty()) {
+      return TimeUnit.MILLISECONDS;
+    }
+
+    int longestPrefix = -1;
+    unit = TimeUnit.MILLISECONDS;
+    for (Map.Entry<String, TimeUnit> entry : timerUnits.entrySet()) {
+      String declared = entry.getKey();
+      int prefixLength = declared.length() - 1;
+      if (declared.endsWith("*") && (prefixLength > longestPrefix) && name.startsWith(declared.substring(0,
+            prefixLength))) {
+        longestPrefix = prefixLength;
+        unit = entry.getValue();
+      }
+    }
+    return unit;
   }
 
   /**
@@ -311,7 +621,22 @@ public class CorePlugin extends AbstractMonitorPlugin {
    */
   @Override
   public void initializeTimerMeasurement(String name) {
-    getTimer(name).initializeMeasurement();
+    if (compactStore != null) {
+      compactStore.initializeTimer(name);
+    } else {
+      getTimer(name).initializeMeasurement();
+    }
+  }
+
+  /**
+   * Add a value to the {@link de.is24.util.monitoring.Histogram} with the given name.
+   * Histograms are only kept by the CorePlugin, other plugins are not notified.
+   *
+   * @param name name of the {@link de.is24.util.monitoring.Histogram}
+   * @param value the value to record
+   */
+  public void addHistogramValue(String name, long value) {
+    getHistogram(name).addValue(value);
   }
 
   /**
@@ -330,7 +655,6 @@ public class CorePlugin extends AbstractMonitorPlugin {
         stateValueProvider.getName(),
         stateValueProvider);
     }
-    notifyReportableObservers(stateValueProvider);
   }
 
   /**
@@ -349,7 +673,6 @@ public class CorePlugin extends AbstractMonitorPlugin {
         multiValueProvider.getName(),
         multiValueProvider);
     }
-    notifyReportableObservers(multiValueProvider);
   }
 
   /**
@@ -363,7 +686,6 @@ public class CorePlugin extends AbstractMonitorPlugin {
   public void registerVersion(Version versionToAdd) {
     String versionName = keyHandler.handle(versionToAdd.getName());
     versions.put(versionName, versionToAdd);
-    notifyReportableObservers(versionToAdd);
   }
 
   /**
@@ -377,6 +699,18 @@ public class CorePlugin extends AbstractMonitorPlugin {
     listToAddTo.add(historizable);
   }
 
+  /**
+   * Registers a task run before the entries of the {@link de.is24.util.monitoring.HistorizableList} of the given
+   * name are read, which may add historizables produced lazily. The list is created if it does not exist yet, so
+   * it is reported even before the first historizable was added.
+   *
+   * @param name key of the historizable list
+   * @param refresher the task, replacing a task registered before
+   */
+  public void setHistorizableListRefresher(String name, Runnable refresher) {
+    getHistorizableList(name).setRefresher(refresher);
+  }
+
   /**
    * @param name the name of the StatsValueProvider
    * @return the StatsValueProvider
@@ -399,10 +733,24 @@ public class CorePlugin extends AbstractMonitorPlugin {
   * @return {@link de.is24.util.monitoring.Counter} instance registered for the given name
   */
   Counter getCounter(final String name) {
-    return counters.get(name, new Monitors.Factory<Counter>() {
+    if (compactStore != null) {
+      return compactStore.getCounter(name);
+    }
+    Counter counter = counters.get(name);
+    if (counter != null) {
+      return counter;
+    }
+
+    final String key = cardinalityLimiter.admit(name);
+    return counters.get(key, new Monitors.Factory<Counter>() {
         @Override
         public Counter createMonitor() {
-          return new Counter(name);
+          return new Counter(key, metricCursors, clock);
+        }
+
+        @Override
+        public void registered(Counter counter) {
+          cardinalityLimiter.created(key);
         }
       });
   }
@@ -413,10 +761,49 @@ public class CorePlugin extends AbstractMonitorPlugin {
    * @return {@link de.is24.util.monitoring.Timer} instance registered for the given name
    */
   Timer getTimer(final String name) {
-    return (Timer) timers.get(name, new Monitors.Factory<Timer>() {
+    if (compactStore != null) {
+      return compactStore.getTimer(name);
+    }
+    Timer timer = timers.get(name);
+    if (timer != null) {
+      return timer;
+    }
+
+    final String key = cardinalityLimiter.admit(name);
+    return timers.get(key, new Monitors.Factory<Timer>() {
         @Override
         public Timer createMonitor() {
-          return new Timer(name);
+          return new Timer(key, metricCursors, clock, getTimerUnit(key));
+        }
+
+        @Override
+        public void registered(Timer timer) {
+          cardinalityLimiter.created(key);
+        }
+      });
+  }
+
+  /**
+   * internally used method to retrieve or create and register a named {@link de.is24.util.monitoring.Histogram}.
+   * @param name of the required {@link de.is24.util.monitoring.Histogram}
+   * @return {@link de.is24.util.monitoring.Histogram} instance registered for the given name
+   */
+  Histogram getHistogram(final String name) {
+    Histogram histogram = histograms.get(name);
+    if (histogram != null) {
+      return histogram;
+    }
+
+    final String key = cardinalityLimiter.admit(name);
+    return histograms.get(key, new Monitors.Factory<Histogram>() {
+        @Override
+        public Histogram createMonitor() {
+          return new Histogram(key, histogramPrecision);
+        }
+
+        @Override
+        public void registered(Histogram histogram) {
+          cardinalityLimiter.created(key);
         }
       });
   }
@@ -466,7 +853,7 @@ public class CorePlugin extends AbstractMonitorPlugin {
   }
 
   public void syncFrom(CorePlugin corePluginToSyncWith) {
-    for (ReportableObserver reportableObserver : corePluginToSyncWith.reportableObservers) {
+    for (ReportableObserver reportableObserver : corePluginToSyncWith.notifier.getObservers()) {
       LOGGER.warn("while syncing: adding reportable observer {}", reportableObserver.getClass().getName());
       addReportableObserver(reportableObserver);
     }
@@ -476,11 +863,14 @@ public class CorePlugin extends AbstractMonitorPlugin {
     // this is for testing
     syncObserverReference = new WeakReference<ReportableObserver>(syncObserver);
     corePluginToSyncWith.addReportableObserver(syncObserver);
+
+    // the observers of this plugin see the reportables taken over when syncing returns
+    awaitReportableNotifications();
   }
 
   public List<String> getRegisteredReportableObservers() {
     ArrayList<String> list = new ArrayList<String>();
-    for (ReportableObserver observer : reportableObservers) {
+    for (ReportableObserver observer : notifier.getObservers()) {
       list.add(observer.toString());
     }
     return list;
@@ -491,10 +881,33 @@ public class CorePlugin extends AbstractMonitorPlugin {
     public void addNewReportable(Reportable reportable) {
       String name = keyHandler.handle(reportable.getName());
       LOGGER.info("syncing reportable {}", reportable.getName());
-      if ((reportable instanceof Counter)) {
-        counters.putIfAbsent(name, (Counter) reportable);
+      if ((reportable instanceof Counter) && (compactStore != null)) {
+        // compact storage cannot share the counter object, it takes over the current count
+        if (!compactStore.containsCounter(name)) {
+          compactStore.incrementCounter(name, ((Counter) reportable).getCount());
+        }
+      } else if ((reportable instanceof Timer) && (compactStore != null)) {
+        Timer timer = (Timer) reportable;
+        if (!compactStore.containsTimer(name)) {
+          compactStore.addTimerValues(name, timer.getCount(), timer.getTimerSum(), timer.getTimerSumOfSquares());
+        }
+      } else if ((reportable instanceof Counter)) {
+        // counters and timers are stamped by the clock and tracked by the cursors of their plugin, so they are
+        // taken over by value as well
+        if (counters.get(name) == null) {
+          Counter counter = new Counter(name, metricCursors, clock);
+          counter.takeOver((Counter) reportable);
+          counters.putIfAbsent(name, counter);
+        }
       } else if ((reportable instanceof Timer)) {
-        timers.putIfAbsent(name, (Timer) reportable);
+        Timer timer = (Timer) reportable;
+        if (timers.get(name) == null) {
+          Timer ownTimer = new Timer(name, metricCursors, clock, timer.getUnit());
+          ownTimer.takeOver(timer);
+          timers.putIfAbsent(name, ownTimer);
+        }
+      } else if ((reportable instanceof Histogram)) {
+        histograms.putIfAbsent(name, (Histogram) reportable);
       } else if (reportable instanceof Version) {
         versions.putIfAbsent(name, (Version) reportable);
       } else if (reportable instanceof HistorizableList) {
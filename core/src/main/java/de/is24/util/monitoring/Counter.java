@@ -1,8 +1,8 @@
 package de.is24.util.monitoring;
 
+import de.is24.util.monitoring.tools.StripedAccumulator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -16,17 +16,36 @@ import java.util.concurrent.atomic.AtomicLong;
  * </pre>
  * @author OSchmitz
  */
-public class Counter implements Reportable {
+public class Counter extends TrackedMetric implements Reportable {
   private static final Logger LOGGER = LoggerFactory.getLogger(Counter.class);
   private final String fName;
-  private final AtomicLong count = new AtomicLong();
+  private final StripedAccumulator count;
 
   /**
    * This class is only constructed by {@link InApplicationMonitor}
    * @param name name of this Counter
    */
   Counter(String name) {
+    this(name, null);
+  }
+
+  Counter(String name, MetricCursors cursors) {
+    this(name, cursors, null);
+  }
+
+  Counter(String name, MetricCursors cursors, CoarseClock clock) {
+    super(cursors, clock);
     fName = name;
+    count = new StripedAccumulator(1);
+  }
+
+  /**
+   * Constructor of views on counts stored elsewhere, which override all methods of this class.
+   */
+  Counter() {
+    super(null);
+    fName = null;
+    count = null;
   }
 
   /**
@@ -41,7 +60,8 @@ public class Counter implements Reportable {
    * Increment the value of this counter by one
    */
   public void increment() {
-    count.addAndGet(1);
+    count.add(1);
+    markChanged();
   }
 
   /**
@@ -51,14 +71,23 @@ public class Counter implements Reportable {
    *          the added to add
    */
   public void increment(long increment) {
-    count.addAndGet(increment);
+    count.add(increment);
+    markChanged();
   }
 
   /**
    * Initialize with 0
    */
   public void initialize() {
-    count.set(0);
+    count.reset();
+    markChanged();
+  }
+
+  /**
+   * Adds the count of a counter of another plugin, used when syncing from it.
+   */
+  void takeOver(Counter other) {
+    count.add(other.getCount());
   }
 
   /**
@@ -66,7 +95,7 @@ public class Counter implements Reportable {
    * @return current count.
    */
   public long getCount() {
-    return count.get();
+    return count.sum();
   }
 
   /**
@@ -0,0 +1,63 @@
+package de.is24.util.monitoring;
+
+/**
+ * A pre-resolved handle to a {@link Counter}, created by {@link InApplicationMonitor#counter(String)}.
+ * <pre>
+ * private static final CounterHandle ERRORS = InApplicationMonitor.getInstance().counter("my.errors");
+ * ...
+ * ERRORS.increment();
+ * </pre>
+ * Calls are equivalent to the corresponding incrementCounter methods of {@link InApplicationMonitor},
+ * but do not escape the key and look up the counter for every event.
+ */
+public final class CounterHandle extends AbstractMetricHandle<Counter> {
+  CounterHandle(InApplicationMonitor monitor, String name) {
+    super(monitor, name);
+  }
+
+  @Override
+  Counter resolve(CorePlugin corePlugin, String key) {
+    return corePlugin.getCounter(key);
+  }
+
+  /**
+   * Increment the counter by one.
+   */
+  public void increment() {
+    increment(1);
+  }
+
+  /**
+   * Increase the counter by the specified amount.
+   *
+   * @param increment the amount to add
+   */
+  public void increment(int increment) {
+    if (isMonitorActive()) {
+      Binding<Counter> binding = binding();
+      if (binding.monitor != null) {
+        binding.monitor.increment(increment);
+      }
+      for (MonitorPlugin plugin : binding.otherPlugins) {
+        plugin.incrementCounter(binding.key, increment);
+      }
+    }
+  }
+
+  /**
+   * Increment the counter by one, hinting plugins that this event happens very often.
+   *
+   * @see InApplicationMonitor#incrementHighRateCounter(String)
+   */
+  public void incrementHighRate() {
+    if (isMonitorActive()) {
+      Binding<Counter> binding = binding();
+      if (binding.monitor != null) {
+        binding.monitor.increment(1);
+      }
+      for (MonitorPlugin plugin : binding.otherPlugins) {
+        plugin.incrementHighRateCounter(binding.key, 1);
+      }
+    }
+  }
+}
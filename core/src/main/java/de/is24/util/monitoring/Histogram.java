@@ -0,0 +1,210 @@
+package de.is24.util.monitoring;
+
+import de.is24.util.monitoring.tools.StripedAccumulator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Histograms record the distribution of values, e.g. response times or payload sizes,
+ * in a fixed number of log-linear buckets.<br>
+ * Values below 2^precision get a bucket of their own. Above that, each power of two is divided into
+ * 2^precision buckets of equal width, so the relative error of a bucket is at most 2^-precision
+ * (about 3% for the default precision of 5), independent of the magnitude of the value.
+ * <pre> Examples
+ *    DB Query duration
+ *    size of xml input
+ * </pre>
+ * Recording is lock free, count, sum, min and max are exact. Negative values are counted in the lowest bucket.
+ * As with {@link Timer}, reads are not atomic across values.
+ */
+public class Histogram implements Reportable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(Histogram.class);
+  public static final int DEFAULT_PRECISION = 5;
+  public static final int MIN_PRECISION = 1;
+  public static final int MAX_PRECISION = 10;
+  private static final int COUNT = 0;
+  private static final int SUM = 1;
+
+  private final String name;
+  private final int precision;
+  private final int subBuckets;
+  private final AtomicLongArray buckets;
+  private final StripedAccumulator values = new StripedAccumulator(2);
+  private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+  private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+  /**
+   * This class is only constructed by {@link CorePlugin}
+   * @param name name of this Histogram
+   * @param precision number of bits used to divide each power of two into buckets
+   */
+  Histogram(String name, int precision) {
+    if ((precision < MIN_PRECISION) || (precision > MAX_PRECISION)) {
+      throw new IllegalArgumentException("precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION);
+    }
+    this.name = name;
+    this.precision = precision;
+    this.subBuckets = 1 << precision;
+    this.buckets = new AtomicLongArray((64 - precision) * subBuckets);
+  }
+
+  /**
+   * Implements the visitor pattern to read this Histogram
+   */
+  @Override
+  public void accept(ReportVisitor aVisitor) {
+    LOGGER.debug("+++ entering Histogram.accept +++");
+    aVisitor.reportHistogram(this);
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @param value the value to record
+   */
+  public void addValue(long value) {
+    buckets.incrementAndGet(getBucketIndex(value));
+    values.add(COUNT, 1);
+    values.add(SUM, value);
+    updateMin(value);
+    updateMax(value);
+  }
+
+  private void updateMin(long value) {
+    long current = min.get();
+    while ((value < current) && !min.compareAndSet(current, value)) {
+      current = min.get();
+    }
+  }
+
+  private void updateMax(long value) {
+    long current = max.get();
+    while ((value > current) && !max.compareAndSet(current, value)) {
+      current = max.get();
+    }
+  }
+
+  int getBucketIndex(long value) {
+    if (value < subBuckets) {
+      return (value < 0) ? 0 : (int) value;
+    }
+
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int shift = exponent - precision;
+    return ((shift + 1) << precision) + (int) ((value >>> shift) - subBuckets);
+  }
+
+  public int getPrecision() {
+    return precision;
+  }
+
+  public long getCount() {
+    return values.sum(COUNT);
+  }
+
+  public long getSum() {
+    return values.sum(SUM);
+  }
+
+  /**
+   * @return the smallest recorded value, 0 if no value was recorded
+   */
+  public long getMin() {
+    long result = min.get();
+    return (result == Long.MAX_VALUE) ? 0 : result;
+  }
+
+  /**
+   * @return the biggest recorded value, 0 if no value was recorded
+   */
+  public long getMax() {
+    long result = max.get();
+    return (result == Long.MIN_VALUE) ? 0 : result;
+  }
+
+  public double getMean() {
+    return Math.average(getCount(), getSum());
+  }
+
+  /**
+   * Estimates the value below or equal to which the given percentage of all recorded values lie.
+   * The result is the upper limit of the bucket containing that value, but never above
+   * the recorded maximum or below the recorded minimum.
+   *
+   * @param percentile the percentile, between 0 and 100
+   * @return the estimated value, 0 if no value was recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    long[] counts = getBucketCounts();
+    long total = 0;
+    for (long count : counts) {
+      total += count;
+    }
+    if (total == 0) {
+      return 0;
+    }
+
+    double limitedPercentile = java.lang.Math.min(java.lang.Math.max(percentile, 0), 100);
+    long rank = java.lang.Math.max(1, (long) java.lang.Math.ceil((limitedPercentile / 100) * total));
+    long seen = 0;
+    int index = 0;
+    while (index < counts.length) {
+      seen += counts[index];
+      if (seen >= rank) {
+        break;
+      }
+      index++;
+    }
+
+    long result = getBucketUpperBound(index) - 1;
+    return java.lang.Math.max(java.lang.Math.min(result, getMax()), getMin());
+  }
+
+  /**
+   * @return number of buckets of this histogram, i.e. the size of the {@link #getBucketCounts()} array
+   */
+  public int getNumberOfBuckets() {
+    return buckets.length();
+  }
+
+  /**
+   * @return a copy of the number of values recorded per bucket
+   */
+  public long[] getBucketCounts() {
+    long[] result = new long[buckets.length()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = buckets.get(i);
+    }
+    return result;
+  }
+
+  /**
+   * @param index index of the bucket
+   * @return the smallest value counted in the bucket
+   */
+  public long getBucketLowerBound(int index) {
+    int group = index >>> precision;
+    long subBucket = index & (subBuckets - 1);
+    if (group == 0) {
+      return subBucket;
+    }
+    return (subBuckets + subBucket) << (group - 1);
+  }
+
+  /**
+   * @param index index of the bucket
+   * @return the smallest value counted in the next bucket (Long.MAX_VALUE for the last bucket)
+   */
+  public long getBucketUpperBound(int index) {
+    if (index == (buckets.length() - 1)) {
+      return Long.MAX_VALUE;
+    }
+    return getBucketLowerBound(index + 1);
+  }
+}
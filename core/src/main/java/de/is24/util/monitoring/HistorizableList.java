@@ -2,22 +2,32 @@ package de.is24.util.monitoring;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 
 /**
  * This list manages ordering and discarding of registered Historizables
  * with the same name.
  *
+ * The entries are kept in a fixed size ring buffer. Writers claim a slot by incrementing an atomic sequence and
+ * never block each other or readers, readers take a snapshot of the entries without blocking writers. An entry is
+ * only part of a snapshot once it is completely written, so an add still in progress may be missing, but an
+ * overwritten entry never shows up. The capacity may be changed at runtime, adds running concurrently to a
+ * change of the capacity may get lost.
+ *
  * @author OSchmitz
  */
 public class HistorizableList implements Reportable, Iterable<Historizable> {
   private static final long serialVersionUID = -3419108076548380477L;
 
   private String name;
-  private final int fMaxEntriesToKeep;
-  private final LinkedList<Historizable> historizables = new LinkedList<Historizable>();
+  private volatile Ring ring;
+  private volatile Runnable refresher;
 
   private static final Logger LOGGER = LoggerFactory.getLogger(HistorizableList.class);
 
@@ -27,13 +37,13 @@ public class HistorizableList implements Reportable, Iterable<Historizable> {
    */
   HistorizableList(String name, int aMaxEntriesToKeep) {
     this.name = name;
-    fMaxEntriesToKeep = aMaxEntriesToKeep;
+    ring = new Ring(aMaxEntriesToKeep);
   }
 
   /**
    * Implements the visitor pattern to read this Counter
    */
-  public synchronized void accept(ReportVisitor aVisitor) {
+  public void accept(ReportVisitor aVisitor) {
     LOGGER.debug("+++ entering HistorizableList.accept +++");
     aVisitor.reportHistorizableList(this);
   }
@@ -53,23 +63,40 @@ public class HistorizableList implements Reportable, Iterable<Historizable> {
    */
   public void add(Historizable historizable) {
     LOGGER.debug("+++ entering HistorizableList.add +++");
-    synchronized (historizables) {
-      if (historizables.size() >= fMaxEntriesToKeep) {
-        historizables.removeLast();
-      }
-      historizables.addFirst(historizable);
-    }
+    ring.add(historizable);
   }
 
   /**
-   * @return an iterator over the {@link Historizable} entries.
-   * The iterator actually iterates over a clone of the internal list,
-   * to prevent concorrent modification problems.
+   * @return an iterator over the {@link Historizable} entries, newest first.
+   * The iterator actually iterates over a snapshot of the entries,
+   * to prevent concurrent modification problems.
    */
-  @SuppressWarnings("unchecked")
   public Iterator<Historizable> iterator() {
-    synchronized (historizables) {
-      return ((LinkedList<Historizable>) historizables.clone()).iterator();
+    return snapshot().iterator();
+  }
+
+  /**
+   * @return the {@link Historizable} entries currently contained, newest first
+   */
+  public List<Historizable> snapshot() {
+    refresh();
+
+    List<Historizable> entries = new ArrayList<Historizable>();
+    ring.collect(entries);
+    return Collections.unmodifiableList(entries);
+  }
+
+  /**
+   * @param refresher run before the entries are read, may add entries produced lazily
+   */
+  void setRefresher(Runnable refresher) {
+    this.refresher = refresher;
+  }
+
+  private void refresh() {
+    Runnable current = refresher;
+    if (current != null) {
+      current.run();
     }
   }
 
@@ -77,29 +104,116 @@ public class HistorizableList implements Reportable, Iterable<Historizable> {
    * @return the maximum number of entries that can be contained in this list.
    */
   public int getMaxEntriesToKeep() {
-    return fMaxEntriesToKeep;
+    return ring.capacity;
+  }
+
+  /**
+   * Changes the number of entries to keep, keeping the newest entries if the list shrinks.
+   *
+   * @param aMaxEntriesToKeep the maximum number of entries, at least 1
+   */
+  synchronized void setMaxEntriesToKeep(int aMaxEntriesToKeep) {
+    Ring current = ring;
+    if (current.capacity == aMaxEntriesToKeep) {
+      return;
+    }
+
+    Ring resized = new Ring(aMaxEntriesToKeep);
+    List<Historizable> entries = new ArrayList<Historizable>();
+    current.collect(entries);
+    for (int i = java.lang.Math.min(entries.size(), aMaxEntriesToKeep) - 1; i >= 0; i--) {
+      resized.add(entries.get(i));
+    }
+    ring = resized;
   }
 
   /**
    * @return the actual amount of contained {@link Historizable}s.
    */
   public int size() {
-    synchronized (historizables) {
-      return historizables.size();
-    }
+    refresh();
+    return ring.collect(null);
   }
 
   /**
-   * This method is thread-safe in combination with size().
-   * The size returned is always the least available size.
+   * This method is thread-safe, but the list may change between calls,
+   * use {@link #snapshot()} to read several entries consistently.
    *
-   * @param index the index of the {@link Historizable} to be returned. Can never be greater or equal than getMaxEntriesToKeep().
+   * @param index the index of the {@link Historizable} to be returned, 0 being the newest. Can never be greater or equal than getMaxEntriesToKeep().
    * @return the {@link Historizable} at the index position.
    * @throws IndexOutOfBoundsException if the index argument is greater or equal the size of this list.
    */
   public Historizable get(int index) {
-    synchronized (historizables) {
-      return historizables.get(index);
+    return snapshot().get(index);
+  }
+
+  private static final class Ring {
+    private final int capacity;
+    private final AtomicReferenceArray<Entry> slots;
+    private final AtomicLong sequence = new AtomicLong();
+
+    private Ring(int capacity) {
+      if (capacity < 1) {
+        throw new IllegalArgumentException("at least one entry must be kept, but was " + capacity);
+      }
+      this.capacity = capacity;
+      slots = new AtomicReferenceArray<Entry>(capacity);
+    }
+
+    private void add(Historizable historizable) {
+      long claimed = sequence.getAndIncrement();
+      int slot = (int) (claimed % capacity);
+      Entry entry = new Entry(claimed, historizable);
+      while (true) {
+        Entry current = slots.get(slot);
+
+        // a writer of the next round may have overtaken this one
+        if ((current != null) && (current.sequence > claimed)) {
+          return;
+        }
+        if (slots.compareAndSet(slot, current, entry)) {
+          return;
+        }
+      }
+    }
+
+    /**
+     * Walks the entries from the newest to the oldest, skipping slots whose writer did not finish yet.
+     *
+     * @param entries list to add the entries to, may be null to count them only
+     * @return number of entries found
+     */
+    private int collect(List<Historizable> entries) {
+      long end = sequence.get();
+      long start = java.lang.Math.max(0, end - capacity);
+      int found = 0;
+      for (long i = end - 1; i >= start; i--) {
+        Entry entry = slots.get((int) (i % capacity));
+        if (entry == null) {
+          continue;
+        }
+        if (entry.sequence > i) {
+          // writers lapped the reader, all older entries are overwritten as well
+          break;
+        }
+        if (entry.sequence == i) {
+          if (entries != null) {
+            entries.add(entry.historizable);
+          }
+          found++;
+        }
+      }
+      return found;
+    }
+  }
+
+  private static final class Entry {
+    private final long sequence;
+    private final Historizable historizable;
+
+    private Entry(long sequence, Historizable historizable) {
+      this.sequence = sequence;
+      this.historizable = historizable;
     }
   }
 }
@@ -8,6 +8,8 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -30,7 +32,12 @@ public class InApplicationMonitor {
   private volatile boolean monitorActive = true;
   private final CopyOnWriteArrayList<MonitorPlugin> plugins = new CopyOnWriteArrayList<MonitorPlugin>();
 
+  // incremented whenever key handler, core plugin or plugin list change, so that handles know when to rebind
+  private final AtomicInteger configurationVersion = new AtomicInteger();
+
   private volatile KeyHandler keyHandler;
+  private volatile AsyncPluginDispatcher asyncPluginDispatcher;
+  private static final long ASYNC_DISPATCH_FLUSH_TIMEOUT_MILLIS = 10000;
   private volatile CorePlugin corePlugin;
   protected static InApplicationMonitor instance;
 
@@ -70,6 +77,7 @@ public class InApplicationMonitor {
       instance.plugins.add(corePlugin);
       instance.plugins.remove(previousCorePlugin);
       instance.corePlugin = corePlugin;
+      instance.configurationChanged();
       LOGGER.info("InApplicationMonitor updated successfully.");
     }
     if ((previousCorePlugin != null) && (previousCorePlugin != corePlugin)) {
@@ -180,7 +188,7 @@ public class InApplicationMonitor {
   public void incrementHighRateCounter(String name) {
     if (monitorActive) {
       String escapedName = keyHandler.handle(name);
-      for (MonitorPlugin p : getPlugins()) {
+      for (MonitorPlugin p : getDispatchTargets()) {
         p.incrementHighRateCounter(escapedName, 1);
       }
     }
@@ -197,7 +205,7 @@ public class InApplicationMonitor {
   public void incrementCounter(String name, int increment) {
     if (monitorActive) {
       String escapedName = keyHandler.handle(name);
-      for (MonitorPlugin p : getPlugins()) {
+      for (MonitorPlugin p : getDispatchTargets()) {
         p.incrementCounter(escapedName, increment);
       }
     }
@@ -211,7 +219,7 @@ public class InApplicationMonitor {
    */
   public void initializeCounter(String name) {
     String escapedName = keyHandler.handle(name);
-    for (MonitorPlugin p : getPlugins()) {
+    for (MonitorPlugin p : getDispatchTargets()) {
       p.initializeCounter(escapedName);
     }
   }
@@ -230,12 +238,36 @@ public class InApplicationMonitor {
   public void addTimerMeasurement(String name, long timing) {
     if (monitorActive) {
       String escapedName = keyHandler.handle(name);
-      for (MonitorPlugin p : getPlugins()) {
+      for (MonitorPlugin p : getDispatchTargets()) {
         p.addTimerMeasurement(escapedName, timing);
       }
     }
   }
 
+  /**
+   * Add a timer measurement in the given unit for the given name, e.g. nanoseconds measured by
+   * {@link PerfTimer#start()} and {@link PerfTimer#stop(String, long)}.
+   * The core plugin converts the timing to the unit of its {@link Timer}, see
+   * {@link CorePlugin#setTimerUnit(String, TimeUnit)}, plugins not implementing {@link UnitAwareMonitorPlugin} get
+   * the timing in milliseconds.
+   *
+   * @param name name of the {@link Timer}
+   * @param timing elapsed time of a single measurement
+   * @param unit unit of the timing
+   */
+  public void addTimerMeasurement(String name, long timing, TimeUnit unit) {
+    if (monitorActive) {
+      String escapedName = keyHandler.handle(name);
+      for (MonitorPlugin p : getDispatchTargets()) {
+        if (p instanceof UnitAwareMonitorPlugin) {
+          ((UnitAwareMonitorPlugin) p).addTimerMeasurement(escapedName, timing, unit);
+        } else {
+          p.addTimerMeasurement(escapedName, TimeUnit.MILLISECONDS.convert(timing, unit));
+        }
+      }
+    }
+  }
+
   /**
    * Add a timer measurement for a rarely occuring event with given name.
    * This allows Plugins to to react on the estimated rate of the event.
@@ -253,7 +285,7 @@ public class InApplicationMonitor {
   public void addSingleEventTimerMeasurement(String name, long timing) {
     if (monitorActive) {
       String escapedName = keyHandler.handle(name);
-      for (MonitorPlugin p : getPlugins()) {
+      for (MonitorPlugin p : getDispatchTargets()) {
         p.addSingleEventTimerMeasurement(escapedName, timing);
       }
     }
@@ -276,7 +308,7 @@ public class InApplicationMonitor {
     if (monitorActive) {
       String escapedName = keyHandler.handle(name);
 
-      for (MonitorPlugin p : getPlugins()) {
+      for (MonitorPlugin p : getDispatchTargets()) {
         p.addHighRateTimerMeasurement(escapedName, timing);
       }
     }
@@ -299,6 +331,49 @@ public class InApplicationMonitor {
     addTimerMeasurement(name, end - begin);
   }
 
+  /**
+   * Add a value to the named {@link Histogram}.
+   * {@link Histogram}s record the distribution of values in log-linear buckets and allow
+   * percentile queries, e.g. for response times or payload sizes.
+   * Histograms are kept by the core plugin only.
+   *
+   * @param name name of the {@link Histogram}
+   * @param value the value to record
+   */
+  public void addHistogramValue(String name, long value) {
+    if (monitorActive) {
+      getCorePlugin().addHistogramValue(keyHandler.handle(name), value);
+    }
+  }
+
+  /**
+   * Returns a handle bound to the named {@link Counter}.
+   * The handle resolves the escaped key, the {@link Counter} instance and the plugins to notify
+   * only once, so that incrementing via the handle avoids key escaping and map lookups.
+   * Keep the handle (e.g. in a static field) instead of calling this method for each event.
+   * The handle stays valid if the core plugin or the registered plugins change.
+   *
+   * @param name name of the {@link Counter}
+   * @return a handle to increment the counter
+   */
+  public CounterHandle counter(String name) {
+    return new CounterHandle(this, name);
+  }
+
+  /**
+   * Returns a handle bound to the named {@link Timer}.
+   * The handle resolves the escaped key, the {@link Timer} instance and the plugins to notify
+   * only once, so that adding measurements via the handle avoids key escaping and map lookups.
+   * Keep the handle (e.g. in a static field) instead of calling this method for each event.
+   * The handle stays valid if the core plugin or the registered plugins change.
+   *
+   * @param name name of the {@link Timer}
+   * @return a handle to add timer measurements
+   */
+  public TimerHandle timer(String name) {
+    return new TimerHandle(this, name);
+  }
+
   /**
    * If you want to ensure existence of a timer, for example you want to prevent
    * spelling errors in an operational monitoring configuration, you may initialize a timer
@@ -307,7 +382,7 @@ public class InApplicationMonitor {
    */
   public void initializeTimerMeasurement(String name) {
     String escapedName = keyHandler.handle(name);
-    for (MonitorPlugin p : getPlugins()) {
+    for (MonitorPlugin p : getDispatchTargets()) {
       p.initializeTimerMeasurement(escapedName);
     }
   }
@@ -346,6 +421,17 @@ public class InApplicationMonitor {
     getCorePlugin().addHistorizable(keyHandler.handle(historizable.getName()), historizable);
   }
 
+  /**
+   * register a task run before the list of historizables with the given name is read
+   *
+   * @param name the name of the historizables
+   * @param refresher the task, may add historizables produced lazily
+   * @see CorePlugin#setHistorizableListRefresher(String, Runnable)
+   */
+  public void setHistorizableListRefresher(String name, Runnable refresher) {
+    getCorePlugin().setHistorizableListRefresher(keyHandler.handle(name), refresher);
+  }
+
 
   /**
    * Register a plugin to able to hook into monitoring with your own monitor.
@@ -353,7 +439,9 @@ public class InApplicationMonitor {
    * @param plugin the plugin to adapt a new monitor.
    */
   public void registerPlugin(MonitorPlugin plugin) {
-    plugins.addIfAbsent(plugin);
+    if (plugins.addIfAbsent(plugin)) {
+      configurationChanged();
+    }
   }
 
   public List<String> getRegisteredPluginKeys() {
@@ -367,8 +455,76 @@ public class InApplicationMonitor {
   public void removeAllPlugins() {
     getPlugins().clear();
     getPlugins().add(corePlugin);
+    configurationChanged();
+  }
+
+  /**
+   * Switches to asynchronous dispatch of events to the plugins.
+   * The {@link CorePlugin} is still called synchronously, all other plugins are called by a
+   * single dispatcher thread that drains a bounded ring of events, see {@link AsyncPluginDispatcher}.
+   * Use this to keep slow plugins (e.g. network based ones) out of the threads reporting events.
+   *
+   * @param capacity number of events that may be queued, rounded up to the next power of two
+   * @param overflowPolicy whether to drop events or to block the reporting thread if the queue is full
+   */
+  public void enableAsyncDispatch(int capacity, AsyncPluginDispatcher.OverflowPolicy overflowPolicy) {
+    synchronized (semaphore) {
+      if (asyncPluginDispatcher != null) {
+        throw new IllegalStateException("async dispatch already enabled");
+      }
+
+      AsyncPluginDispatcher dispatcher = new AsyncPluginDispatcher(this, capacity, overflowPolicy);
+      dispatcher.start();
+      asyncPluginDispatcher = dispatcher;
+      configurationChanged();
+    }
+  }
+
+  /**
+   * Switches back to synchronous dispatch of events to the plugins, after all queued events have been dispatched
+   * (waiting at most 10 seconds for slow plugins).
+   */
+  public void disableAsyncDispatch() {
+    AsyncPluginDispatcher dispatcher;
+    synchronized (semaphore) {
+      dispatcher = asyncPluginDispatcher;
+      asyncPluginDispatcher = null;
+      configurationChanged();
+    }
+    if (dispatcher != null) {
+      dispatcher.shutdown(ASYNC_DISPATCH_FLUSH_TIMEOUT_MILLIS);
+    }
+  }
+
+  /**
+   * @return the async dispatcher or null if events are dispatched synchronously
+   */
+  public AsyncPluginDispatcher getAsyncPluginDispatcher() {
+    return asyncPluginDispatcher;
+  }
+
+  /**
+   * @return the plugins to call for an event, either all plugins, or the core plugin and the async dispatcher
+   */
+  List<MonitorPlugin> getDispatchTargets() {
+    AsyncPluginDispatcher dispatcher = asyncPluginDispatcher;
+    if (dispatcher == null) {
+      return getPlugins();
+    }
+    return dispatcher.getDispatchTargets(getCorePlugin());
+  }
+
+  /**
+   * Invalidates all handles created by {@link #counter(String)} and {@link #timer(String)},
+   * forcing them to resolve key, monitor and plugins again on their next use.
+   */
+  protected void configurationChanged() {
+    configurationVersion.incrementAndGet();
   }
 
+  int getConfigurationVersion() {
+    return configurationVersion.get();
+  }
 
   protected KeyHandler getKeyHandler() {
     return keyHandler;
@@ -42,7 +42,8 @@ public class Math {
     double stdDev = 0;
     if (n > 1) { // std deviation for 1 entry is 0 by definition
 
-      final double numerator = sumOfSquares - ((sum * sum) / n);
+      // rounding of large sums may turn a variance of about 0 negative
+      final double numerator = java.lang.Math.max(0, sumOfSquares - ((sum * sum) / n));
       stdDev = java.lang.Math.sqrt(numerator / (n - 1));
     }
     return stdDev;
@@ -0,0 +1,181 @@
+package de.is24.util.monitoring;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+
+/**
+ * A consumer's position in the counters and timers of a {@link CorePlugin}, see {@link CorePlugin#createCursor()}.
+ *
+ * Each {@link #read()} returns the changes of all counters and timers since the last read of this cursor, without
+ * resetting the metrics, so any number of consumers can compute interval values independently. Metrics enqueue
+ * themselves at the cursor on their first change after a read, so the cost of a read depends on the number of
+ * changed metrics only. The last values read are kept in arrays indexed by the ids of the plugin's
+ * {@link MetricNameTable}, a metric evicted after its last change is not reported anymore.
+ *
+ * A cursor should be closed when it is not needed anymore, a plugin supports at most
+ * {@value MetricCursors#MAX_CURSORS} cursors.
+ */
+public final class MetricCursor {
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final MetricCursors cursors;
+  private final MetricNameTable names;
+  private final int slot;
+  private final long slotBit;
+  private final ConcurrentLinkedQueue<TrackedMetric> changed = new ConcurrentLinkedQueue<TrackedMetric>();
+  private long[] counts = new long[INITIAL_CAPACITY];
+  private long[] sums = new long[INITIAL_CAPACITY];
+  private long[] sumsOfSquares = new long[INITIAL_CAPACITY];
+  private int[] generations = new int[INITIAL_CAPACITY];
+  private long lastRead;
+
+  MetricCursor(MetricCursors cursors, MetricNameTable names, int slot) {
+    this.cursors = cursors;
+    this.names = names;
+    this.slot = slot;
+    this.slotBit = 1L << slot;
+  }
+
+  int getSlot() {
+    return slot;
+  }
+
+  void enqueue(TrackedMetric metric) {
+    changed.add(metric);
+  }
+
+  synchronized void startFrom(Collection<Counter> counters, Collection<Timer> timers) {
+    lastRead = System.currentTimeMillis();
+    for (Counter counter : counters) {
+      int id = idOf(MetricNameTable.Kind.COUNTER, counter);
+      if (id >= 0) {
+        counts[id] = counter.getCount();
+        generations[id] = counter.getIdGeneration();
+      }
+    }
+    for (Timer timer : timers) {
+      int id = idOf(MetricNameTable.Kind.TIMER, timer);
+      if (id >= 0) {
+        timer.readInto(id, counts, sums, sumsOfSquares);
+        generations[id] = timer.getIdGeneration();
+      }
+    }
+  }
+
+  /**
+   * @return the changes of all counters and timers changed since the last read, or since the cursor was created
+   */
+  public synchronized MetricDeltas read() {
+    long now = System.currentTimeMillis();
+    List<TrackedMetric> metrics = new ArrayList<TrackedMetric>();
+    TrackedMetric metric;
+    while ((metric = changed.poll()) != null) {
+      metrics.add(metric);
+    }
+
+    int size = metrics.size();
+    int[] ids = new int[size];
+    String[] metricNames = new String[size];
+    MetricNameTable.Kind[] kinds = new MetricNameTable.Kind[size];
+    long[] deltaCounts = new long[size];
+    long[] deltaSums = new long[size];
+    long[] deltaSumsOfSquares = new long[size];
+    long[] mins = new long[size];
+    long[] maxs = new long[size];
+    int i = 0;
+    for (TrackedMetric changedMetric : metrics) {
+      // changes from now on enqueue the metric again
+      changedMetric.clearChanged(slotBit);
+
+      MetricNameTable.Kind kind = (changedMetric instanceof Timer) ? MetricNameTable.Kind.TIMER
+                                                                  : MetricNameTable.Kind.COUNTER;
+      int id = idOf(kind, changedMetric);
+      if (id < 0) {
+        // evicted, its id may belong to another metric already
+        continue;
+      }
+
+      long count;
+      long sum = 0;
+      long sumOfSquares = 0;
+      if (changedMetric instanceof Timer) {
+        Timer timer = (Timer) changedMetric;
+        count = timer.getCount();
+        sum = timer.getTimerSum();
+        sumOfSquares = timer.getTimerSumOfSquares();
+        mins[i] = timer.takeMin(slot);
+        maxs[i] = timer.takeMax(slot);
+      } else {
+        count = ((Counter) changedMetric).getCount();
+      }
+
+      ids[i] = id;
+      metricNames[i] = changedMetric.getName();
+      kinds[i] = kind;
+
+      // a reused id starts anew
+      int generation = changedMetric.getIdGeneration();
+      if ((generations[id] == generation) && (count >= counts[id])) {
+        deltaCounts[i] = count - counts[id];
+        deltaSums[i] = sum - sums[id];
+        deltaSumsOfSquares[i] = sumOfSquares - sumsOfSquares[id];
+      } else {
+        // initialized since the last read
+        deltaCounts[i] = count;
+        deltaSums[i] = sum;
+        deltaSumsOfSquares[i] = sumOfSquares;
+      }
+      counts[id] = count;
+      sums[id] = sum;
+      sumsOfSquares[id] = sumOfSquares;
+      generations[id] = generation;
+      i++;
+    }
+
+    if (i < size) {
+      ids = Arrays.copyOf(ids, i);
+      metricNames = Arrays.copyOf(metricNames, i);
+      kinds = Arrays.copyOf(kinds, i);
+      deltaCounts = Arrays.copyOf(deltaCounts, i);
+      deltaSums = Arrays.copyOf(deltaSums, i);
+      deltaSumsOfSquares = Arrays.copyOf(deltaSumsOfSquares, i);
+      mins = Arrays.copyOf(mins, i);
+      maxs = Arrays.copyOf(maxs, i);
+    }
+
+    MetricDeltas deltas = new MetricDeltas(now, now - lastRead, ids, metricNames, kinds, deltaCounts, deltaSums,
+      deltaSumsOfSquares, mins, maxs);
+    lastRead = now;
+    return deltas;
+  }
+
+  /**
+   * Frees the slot of this cursor, it must not be read afterwards.
+   */
+  public void close() {
+    cursors.remove(this);
+    changed.clear();
+  }
+
+  /**
+   * @return the id of the metric, -1 if it was evicted
+   */
+  private int idOf(MetricNameTable.Kind kind, TrackedMetric metric) {
+    int id = names.register(kind, metric);
+    if (id >= counts.length) {
+      int capacity = counts.length;
+      while (capacity <= id) {
+        capacity *= 2;
+      }
+      counts = Arrays.copyOf(counts, capacity);
+      sums = Arrays.copyOf(sums, capacity);
+      sumsOfSquares = Arrays.copyOf(sumsOfSquares, capacity);
+      generations = Arrays.copyOf(generations, capacity);
+    }
+    return id;
+  }
+}
@@ -0,0 +1,76 @@
+package de.is24.util.monitoring;
+
+import java.util.Collection;
+
+
+/**
+ * The {@link MetricCursor}s of a {@link CorePlugin}. Each cursor occupies one of {@value #MAX_CURSORS} slots,
+ * the bits of the slots in use form the active mask read by the metrics on every update.
+ */
+final class MetricCursors {
+  static final int MAX_CURSORS = 8;
+
+  private final MetricNameTable names;
+  private final MetricCursor[] slots = new MetricCursor[MAX_CURSORS];
+  private volatile long activeMask;
+
+  MetricCursors(MetricNameTable names) {
+    this.names = names;
+  }
+
+  long getActiveMask() {
+    return activeMask;
+  }
+
+  void enqueue(TrackedMetric metric, long slotBits) {
+    for (int slot = 0; slot < MAX_CURSORS; slot++) {
+      if ((slotBits & (1L << slot)) != 0) {
+        MetricCursor cursor = slots[slot];
+        if (cursor != null) {
+          cursor.enqueue(metric);
+        }
+      }
+    }
+  }
+
+  /**
+   * @param counters all counters of the plugin
+   * @param timers all timers of the plugin
+   * @return a new cursor, reporting changes after this call
+   * @throws IllegalStateException if all slots are in use
+   */
+  synchronized MetricCursor register(Collection<Counter> counters, Collection<Timer> timers) {
+    int slot = 0;
+    while ((slot < MAX_CURSORS) && (slots[slot] != null)) {
+      slot++;
+    }
+    if (slot == MAX_CURSORS) {
+      throw new IllegalStateException("no more than " + MAX_CURSORS + " metric cursors supported");
+    }
+
+    MetricCursor cursor = new MetricCursor(this, names, slot);
+    long slotBit = 1L << slot;
+
+    // a former cursor of the slot may have left its bit set
+    for (Counter counter : counters) {
+      counter.clearChanged(slotBit);
+    }
+    for (Timer timer : timers) {
+      timer.clearChanged(slotBit);
+      timer.resetExtremes(slot);
+    }
+    slots[slot] = cursor;
+    activeMask |= slotBit;
+
+    cursor.startFrom(counters, timers);
+    return cursor;
+  }
+
+  synchronized void remove(MetricCursor cursor) {
+    int slot = cursor.getSlot();
+    if (slots[slot] == cursor) {
+      activeMask &= ~(1L << slot);
+      slots[slot] = null;
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package de.is24.util.monitoring;
+
+/**
+ * The changes of the counters and timers read by a {@link MetricCursor}, one entry per changed metric.
+ *
+ * A counter only has a count. A timer has count, sum and sum of squares of the measurements in the interval, as
+ * well as their minimum and maximum, which are 0 if the timer was only initialized. A minimum or maximum may
+ * belong to a measurement counted in the adjacent interval, if it was added while the cursor was read.
+ */
+public final class MetricDeltas {
+  private final long timestamp;
+  private final long intervalMillis;
+  private final int[] ids;
+  private final String[] names;
+  private final MetricNameTable.Kind[] kinds;
+  private final long[] counts;
+  private final long[] sums;
+  private final long[] sumsOfSquares;
+  private final long[] mins;
+  private final long[] maxs;
+
+  MetricDeltas(long timestamp, long intervalMillis, int[] ids, String[] names, MetricNameTable.Kind[] kinds,
+               long[] counts, long[] sums, long[] sumsOfSquares, long[] mins, long[] maxs) {
+    this.timestamp = timestamp;
+    this.intervalMillis = intervalMillis;
+    this.ids = ids;
+    this.names = names;
+    this.kinds = kinds;
+    this.counts = counts;
+    this.sums = sums;
+    this.sumsOfSquares = sumsOfSquares;
+    this.mins = mins;
+    this.maxs = maxs;
+  }
+
+  /**
+   * @return time in milliseconds the cursor was read at
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * @return milliseconds since the previous read of the cursor
+   */
+  public long getIntervalMillis() {
+    return intervalMillis;
+  }
+
+  /**
+   * @return number of changed metrics
+   */
+  public int size() {
+    return ids.length;
+  }
+
+  /**
+   * @return the metric id of the entry in the plugin's {@link MetricNameTable}, reused once the metric is evicted
+   */
+  public int getId(int index) {
+    return ids[index];
+  }
+
+  public String getName(int index) {
+    return names[index];
+  }
+
+  public MetricNameTable.Kind getKind(int index) {
+    return kinds[index];
+  }
+
+  public long getCount(int index) {
+    return counts[index];
+  }
+
+  public long getSum(int index) {
+    return sums[index];
+  }
+
+  public long getSumOfSquares(int index) {
+    return sumsOfSquares[index];
+  }
+
+  public long getMin(int index) {
+    return (mins[index] == Long.MAX_VALUE) ? 0 : mins[index];
+  }
+
+  public long getMax(int index) {
+    return (maxs[index] == Long.MIN_VALUE) ? 0 : maxs[index];
+  }
+}
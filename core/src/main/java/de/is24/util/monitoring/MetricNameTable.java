@@ -0,0 +1,168 @@
+package de.is24.util.monitoring;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Assigns ids to the metrics of a {@link CorePlugin}. An id is assigned the first time a metric is part of a
+ * {@link MetricSnapshot} or read by a {@link MetricCursor} and does not change while the metric exists, so snapshots
+ * and cursors can store their values in arrays indexed by id. The table is shared by all snapshots of a plugin.
+ *
+ * The ids of evicted metrics are released and reused for later metrics, so the ids stay dense and the table grows
+ * with the peak number of metrics rather than with all names ever seen. Each release increments the generation of
+ * the id, snapshots and cursors treat an id of another generation as a new metric.
+ */
+public final class MetricNameTable {
+  /**
+   * The kind of a metric, a counter and a timer of the same name get different ids.
+   */
+  public enum Kind {
+    COUNTER,
+    TIMER
+  }
+
+  private final Map<String, Integer> counterIds = new HashMap<String, Integer>();
+  private final Map<String, Integer> timerIds = new HashMap<String, Integer>();
+  private String[] names = new String[64];
+  private Kind[] kinds = new Kind[64];
+  private int[] generations = new int[64];
+  private int[] freeIds = new int[16];
+  private int freeCount;
+  private volatile int size;
+
+  MetricNameTable() {
+  }
+
+  /**
+   * @return the id of the metric of the given name, assigning a new one if the name has none yet
+   */
+  synchronized int register(Kind kind, String name) {
+    Integer id = ids(kind).get(name);
+    if (id != null) {
+      return id;
+    }
+    return assign(kind, name);
+  }
+
+  /**
+   * @return the id of the metric, assigning a new one if the metric has none yet, or -1 if it was evicted
+   */
+  synchronized int register(Kind kind, TrackedMetric metric) {
+    int id = metric.getId();
+    if (id >= 0) {
+      return id;
+    }
+    if (metric.isEvicted()) {
+      return -1;
+    }
+
+    id = assign(kind, metric.getName());
+    metric.assignId(id, generations[id]);
+    return id;
+  }
+
+  /**
+   * Releases the id of an evicted metric for reuse.
+   */
+  synchronized void release(Kind kind, TrackedMetric metric) {
+    int id = metric.getId();
+    if (id < 0) {
+      return;
+    }
+    metric.assignId(-1, metric.getIdGeneration());
+
+    // a metric of the same name created after the eviction may already have another id
+    Map<String, Integer> ids = ids(kind);
+    Integer mapped = ids.get(names[id]);
+    if ((mapped != null) && (mapped == id)) {
+      ids.remove(names[id]);
+    }
+    names[id] = null;
+    kinds[id] = null;
+    generations[id]++;
+
+    if (freeCount == freeIds.length) {
+      int[] newFreeIds = new int[freeCount * 2];
+      System.arraycopy(freeIds, 0, newFreeIds, 0, freeCount);
+      freeIds = newFreeIds;
+    }
+    freeIds[freeCount++] = id;
+  }
+
+  private int assign(Kind kind, String name) {
+    int id;
+    if (freeCount > 0) {
+      id = freeIds[--freeCount];
+    } else {
+      id = size;
+      if (id == names.length) {
+        String[] newNames = new String[id * 2];
+        Kind[] newKinds = new Kind[id * 2];
+        int[] newGenerations = new int[id * 2];
+        System.arraycopy(names, 0, newNames, 0, id);
+        System.arraycopy(kinds, 0, newKinds, 0, id);
+        System.arraycopy(generations, 0, newGenerations, 0, id);
+        names = newNames;
+        kinds = newKinds;
+        generations = newGenerations;
+      }
+    }
+    names[id] = name;
+    kinds[id] = kind;
+    ids(kind).put(name, id);
+    size = java.lang.Math.max(size, id + 1);
+    return id;
+  }
+
+  /**
+   * Copies names, kinds and generations of the ids below the length of the given arrays.
+   */
+  synchronized void copyInto(String[] nameCopy, Kind[] kindCopy, int[] generationCopy) {
+    int length = java.lang.Math.min(nameCopy.length, size);
+    System.arraycopy(names, 0, nameCopy, 0, length);
+    System.arraycopy(kinds, 0, kindCopy, 0, length);
+    System.arraycopy(generations, 0, generationCopy, 0, length);
+  }
+
+  /**
+   * @return the id of the metric, or -1 if it has none
+   */
+  public synchronized int getId(Kind kind, String name) {
+    Integer id = ids(kind).get(name);
+    return (id == null) ? -1 : id;
+  }
+
+  /**
+   * @return the name of the metric the id is currently assigned to, null if the id was released
+   */
+  public synchronized String getName(int id) {
+    checkId(id);
+    return names[id];
+  }
+
+  /**
+   * @return the kind of the metric the id is currently assigned to, null if the id was released
+   */
+  public synchronized Kind getKind(int id) {
+    checkId(id);
+    return kinds[id];
+  }
+
+  /**
+   * @return one more than the highest id assigned so far, including released ids
+   */
+  public int size() {
+    return size;
+  }
+
+  private void checkId(int id) {
+    if ((id < 0) || (id >= size)) {
+      throw new IndexOutOfBoundsException("unknown metric id " + id);
+    }
+  }
+
+  private Map<String, Integer> ids(Kind kind) {
+    return (kind == Kind.COUNTER) ? counterIds : timerIds;
+  }
+}
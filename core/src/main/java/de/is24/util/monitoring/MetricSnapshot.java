@@ -0,0 +1,150 @@
+package de.is24.util.monitoring;
+
+/**
+ * Immutable point in time copy of the counters and timers of a {@link CorePlugin}, see {@link CorePlugin#snapshot()}.
+ *
+ * The values are stored in parallel arrays indexed by the metric id of the plugin's {@link MetricNameTable}, which
+ * is shared by all snapshots of the plugin. A counter only has a count, a timer has count, sum and sum of squares.
+ * Ids assigned after a snapshot was taken are out of its range, see {@link #size()}. The ids of evicted metrics are
+ * reused, so the snapshot keeps the names and kinds of its ids, see {@link #getName(int)} and {@link #getKind(int)}.
+ *
+ * Each value is read once, so all consumers of a snapshot see the same values. Like the counters and timers
+ * themselves, the values of a timer are not read atomically against concurrent measurements.
+ *
+ * {@link #deltaSince(MetricSnapshot)} computes the changes between two snapshots, for rates and for exporters
+ * sending deltas. An id reused in between counts as a new metric.
+ */
+public final class MetricSnapshot {
+  private final MetricNameTable names;
+  private final long timestamp;
+  private final long intervalMillis;
+  private final long[] counts;
+  private final long[] sums;
+  private final long[] sumsOfSquares;
+  private final String[] metricNames;
+  private final MetricNameTable.Kind[] kinds;
+  private final int[] generations;
+
+  /**
+   * Takes names, kinds and generations of the ids from the table.
+   */
+  MetricSnapshot(MetricNameTable names, long timestamp, long intervalMillis, long[] counts, long[] sums,
+                 long[] sumsOfSquares) {
+    this(names, timestamp, intervalMillis, counts, sums, sumsOfSquares, new String[counts.length],
+      new MetricNameTable.Kind[counts.length], new int[counts.length]);
+    names.copyInto(metricNames, kinds, generations);
+  }
+
+  private MetricSnapshot(MetricNameTable names, long timestamp, long intervalMillis, long[] counts, long[] sums,
+                         long[] sumsOfSquares, String[] metricNames, MetricNameTable.Kind[] kinds,
+                         int[] generations) {
+    this.names = names;
+    this.timestamp = timestamp;
+    this.intervalMillis = intervalMillis;
+    this.counts = counts;
+    this.sums = sums;
+    this.sumsOfSquares = sumsOfSquares;
+    this.metricNames = metricNames;
+    this.kinds = kinds;
+    this.generations = generations;
+  }
+
+  /**
+   * @return the table of names and kinds of the ids, shared by all snapshots of the plugin
+   */
+  public MetricNameTable getNames() {
+    return names;
+  }
+
+  /**
+   * @return the name of the metric of the id when the snapshot was taken, null if the id was not in use
+   */
+  public String getName(int id) {
+    return metricNames[id];
+  }
+
+  /**
+   * @return the kind of the metric of the id when the snapshot was taken, null if the id was not in use
+   */
+  public MetricNameTable.Kind getKind(int id) {
+    return kinds[id];
+  }
+
+  /**
+   * @return time in milliseconds the snapshot was taken at
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * @return milliseconds between the two snapshots of a delta, 0 for a snapshot
+   */
+  public long getIntervalMillis() {
+    return intervalMillis;
+  }
+
+  /**
+   * @return number of metric ids covered by this snapshot, ids are 0 to size - 1
+   */
+  public int size() {
+    return counts.length;
+  }
+
+  public long getCount(int id) {
+    return counts[id];
+  }
+
+  /**
+   * @return the sum of all measurements of a timer, 0 for counters
+   */
+  public long getSum(int id) {
+    return sums[id];
+  }
+
+  /**
+   * @return the sum of the squares of all measurements of a timer, 0 for counters
+   */
+  public long getSumOfSquares(int id) {
+    return sumsOfSquares[id];
+  }
+
+  /**
+   * @return the count of a delta per second, 0 for a snapshot
+   */
+  public double getCountPerSecond(int id) {
+    return (intervalMillis > 0) ? ((counts[id] * 1000.0) / intervalMillis) : 0;
+  }
+
+  /**
+   * Computes the changes since an earlier snapshot of the same plugin. Metrics not covered by the earlier snapshot,
+   * metrics that were initialized (reset) in between and metrics of reused ids contribute their complete value.
+   *
+   * @param earlier a snapshot of the same plugin taken before this one
+   * @return a snapshot of the differences, with the timestamp of this snapshot and the interval between the two
+   */
+  public MetricSnapshot deltaSince(MetricSnapshot earlier) {
+    if (earlier.names != names) {
+      throw new IllegalArgumentException("snapshots of different plugins can not be compared");
+    }
+
+    int size = size();
+    long[] deltaCounts = new long[size];
+    long[] deltaSums = new long[size];
+    long[] deltaSumsOfSquares = new long[size];
+    int common = (earlier.size() < size) ? earlier.size() : size;
+    for (int id = 0; id < size; id++) {
+      if ((id < common) && (generations[id] == earlier.generations[id]) && (counts[id] >= earlier.counts[id])) {
+        deltaCounts[id] = counts[id] - earlier.counts[id];
+        deltaSums[id] = sums[id] - earlier.sums[id];
+        deltaSumsOfSquares[id] = sumsOfSquares[id] - earlier.sumsOfSquares[id];
+      } else {
+        deltaCounts[id] = counts[id];
+        deltaSums[id] = sums[id];
+        deltaSumsOfSquares[id] = sumsOfSquares[id];
+      }
+    }
+    return new MetricSnapshot(names, timestamp, timestamp - earlier.timestamp, deltaCounts, deltaSums,
+      deltaSumsOfSquares, metricNames, kinds, generations);
+  }
+}
@@ -1,34 +1,37 @@
 package de.is24.util.monitoring;
 
 import java.util.Collection;
-import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
 
 
 /**
  * Wrapper class for monitors. Simplifies boilerplate administration.
  *
+ * Monitors are created without locking: concurrent creators of the same key may each create a monitor, only the
+ * first one put into the map is used and published to the observers.
+ *
  * @param <T> the type of monitor beans
  */
 class Monitors<T extends Reportable> {
   private final ConcurrentHashMap<String, T> monitors = new ConcurrentHashMap<String, T>();
 
-  private final List<ReportableObserver> reportableObservers;
+  private final ReportableNotifier notifier;
 
-  public Monitors(List<ReportableObserver> reportableObservers) {
-    this.reportableObservers = reportableObservers;
+  public Monitors(ReportableNotifier notifier) {
+    this.notifier = notifier;
   }
 
   public T get(String key, Factory<T> factory) {
     T result = get(key);
     if (result == null) {
-      synchronized (monitors) {
-        result = get(key);
-        if (result == null) {
-          result = factory.createMonitor();
-          put(key, result);
-          notifyReportableObservers(result);
-        }
+      T created = factory.createMonitor();
+      result = putIfAbsent(key, created);
+      if (result == null) {
+        factory.registered(created);
+        result = created;
       }
     }
     return result;
@@ -39,20 +42,57 @@ class Monitors<T extends Reportable> {
   }
 
   public T put(String key, T reportable) {
-    return monitors.put(key, reportable);
+    Lock publication = notifier.publication();
+    publication.lock();
+    try {
+      T previous = monitors.put(key, reportable);
+      notifier.published(reportable);
+      return previous;
+    } finally {
+      publication.unlock();
+    }
   }
 
-  public void putIfAbsent(String key, T reportable) {
-    monitors.putIfAbsent(key, reportable);
-    notifyReportableObservers(reportable);
+  /**
+   * @return the monitor registered for the key before, null if the given one was registered
+   */
+  public T putIfAbsent(String key, T reportable) {
+    Lock publication = notifier.publication();
+    publication.lock();
+    try {
+      T previous = monitors.putIfAbsent(key, reportable);
+      if (previous == null) {
+        notifier.published(reportable);
+      }
+      return previous;
+    } finally {
+      publication.unlock();
+    }
   }
 
-  private void notifyReportableObservers(Reportable reportable) {
-    for (ReportableObserver reportableObserver : reportableObservers) {
-      reportableObserver.addNewReportable(reportable);
+  /**
+   * Removes the monitor if it is still registered for the key.
+   *
+   * @return true if the monitor was removed
+   */
+  public boolean remove(String key, T reportable) {
+    Lock publication = notifier.publication();
+    publication.lock();
+    try {
+      if (monitors.remove(key, reportable)) {
+        notifier.removed(reportable);
+        return true;
+      }
+      return false;
+    } finally {
+      publication.unlock();
     }
   }
 
+  public Set<Map.Entry<String, T>> entries() {
+    return monitors.entrySet();
+  }
+
   public void accept(ReportVisitor reportVisitor) {
     for (Reportable reportable : getMonitors()) {
       reportable.accept(reportVisitor);
@@ -63,7 +103,14 @@ class Monitors<T extends Reportable> {
     return monitors.values();
   }
 
-  public interface Factory<T> {
-    T createMonitor();
+  public abstract static class Factory<T> {
+    public abstract T createMonitor();
+
+    /**
+     * Called for the monitor that was registered, not for monitors discarded because another thread registered
+     * one for the same key first.
+     */
+    public void registered(T monitor) {
+    }
   }
 }
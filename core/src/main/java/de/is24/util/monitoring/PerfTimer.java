@@ -2,6 +2,7 @@ package de.is24.util.monitoring;
 
 import de.is24.util.monitoring.measurement.MeasurementHandler;
 import org.slf4j.LoggerFactory;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -16,6 +17,14 @@ import org.slf4j.LoggerFactory;
  * </pre>
  *
  * PerfTimer provides an {@link InApplicationMonitor} (createMonitor()) connection as well as debug-only measurement facilities.
+ * <p>
+ * For sub millisecond measurements on hot paths, {@link #start()} and {@link #stop(String, long)} measure
+ * nanoseconds with the monotonic {@link System#nanoTime()} without creating a timer object:
+ * <pre>
+ * final long start = PerfTimer.start();
+ * cache.get(key);
+ * PerfTimer.stop("cache.get", start);
+ * </pre>
  *
  * @author <a href="mailto:sschubert@immobilienscout24.de">Stefan Schubert</a>, IT-E, IS24
  */
@@ -27,6 +36,27 @@ public abstract class PerfTimer {
     return create(true);
   }
 
+  /**
+   * @return the start of a nanosecond measurement, to be passed to {@link #stop(String, long)}
+   */
+  public static long start() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Adds the nanoseconds elapsed since the start to the timer of the given name. They are converted to the unit of
+   * the timer, declare nanoseconds by {@link CorePlugin#setTimerUnit(String, TimeUnit)} to keep them.
+   *
+   * @param monitorName name of the timer
+   * @param start the value returned by {@link #start()}
+   * @return the elapsed nanoseconds
+   */
+  public static long stop(String monitorName, long start) {
+    long elapsed = System.nanoTime() - start;
+    InApplicationMonitor.getInstance().addTimerMeasurement(monitorName, elapsed, TimeUnit.NANOSECONDS);
+    return elapsed;
+  }
+
   /**
    * @return a {@link PerfMonitor}. Use PerfMonitor.monitor({@link String})
    * to perform a measurement and submit it to the {@link InApplicationMonitor}.
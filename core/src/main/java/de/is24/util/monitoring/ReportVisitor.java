@@ -23,6 +23,12 @@ public interface ReportVisitor {
    */
   void reportTimer(Timer timer);
 
+  /**
+   * method called for each {@link Histogram}
+   * @param histogram
+   */
+  void reportHistogram(Histogram histogram);
+
   /**
    * method called for each {@link StateValueProvider}
    * @param stateValueProvider
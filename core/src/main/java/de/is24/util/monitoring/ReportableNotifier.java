@@ -0,0 +1,257 @@
+package de.is24.util.monitoring;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+/**
+ * Notifies the {@link ReportableObserver}s of a {@link CorePlugin} about new reportables on a single notification
+ * thread, so slow observers, e.g. registering MBeans, never delay the threads creating metrics.
+ *
+ * New reportables are queued in the order they were published and each observer gets each reportable exactly
+ * once: a new observer first gets a snapshot of the reportables published before its registration, then all
+ * reportables published later. Removals are queued the same way and passed to {@link ReportableRemovalObserver}s.
+ * Publishing holds the shared {@link #publication()} lock, which only blocks while an observer takes its snapshot.
+ * The notification thread ends when idle and is started again on demand.
+ */
+final class ReportableNotifier {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ReportableNotifier.class);
+  private static final long IDLE_SECONDS = 10;
+
+  private final CopyOnWriteArrayList<ReportableObserver> observers = new CopyOnWriteArrayList<ReportableObserver>();
+  private final ReentrantReadWriteLock publication = new ReentrantReadWriteLock();
+  private final ConcurrentLinkedQueue<Object> pending = new ConcurrentLinkedQueue<Object>();
+  private final AtomicBoolean draining = new AtomicBoolean();
+  private final ThreadPoolExecutor executor;
+  private final Runnable drain = new Runnable() {
+    @Override
+    public void run() {
+      drain();
+    }
+  };
+  private volatile Thread notificationThread;
+
+  ReportableNotifier() {
+    executor = new ThreadPoolExecutor(1, 1, IDLE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "appmon4j-reportable-notifier");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * @return the lock to hold while a new reportable is made visible and passed to {@link #published(Reportable)}
+   */
+  Lock publication() {
+    return publication.readLock();
+  }
+
+  /**
+   * Queues the notification about a reportable, the caller must hold the {@link #publication()} lock.
+   */
+  void published(Reportable reportable) {
+    pending.add(reportable);
+    scheduleDrain();
+  }
+
+  /**
+   * Queues the notification about a removed reportable, the caller must hold the {@link #publication()} lock.
+   */
+  void removed(Reportable reportable) {
+    pending.add(new Removal(reportable));
+    scheduleDrain();
+  }
+
+  /**
+   * Registers an observer, which first gets all reportables the plugin reports at the time of the call. Waits until
+   * the observer got them, unless called by the notification thread itself.
+   */
+  void addObserver(ReportableObserver observer, CorePlugin corePlugin) {
+    Registration registration;
+    Lock lock = publication.writeLock();
+    lock.lock();
+    try {
+      final List<Reportable> snapshot = new ArrayList<Reportable>();
+      corePlugin.reportInto(new ReportVisitor() {
+          @Override
+          public void reportCounter(Counter counter) {
+            snapshot.add(counter);
+          }
+
+          @Override
+          public void reportTimer(Timer timer) {
+            snapshot.add(timer);
+          }
+
+          @Override
+          public void reportHistogram(Histogram histogram) {
+            snapshot.add(histogram);
+          }
+
+          @Override
+          public void reportStateValue(StateValueProvider stateValueProvider) {
+            snapshot.add(stateValueProvider);
+          }
+
+          @Override
+          public void reportMultiValue(MultiValueProvider multiValueProvider) {
+            snapshot.add(multiValueProvider);
+          }
+
+          @Override
+          public void reportHistorizableList(HistorizableList historizableList) {
+            snapshot.add(historizableList);
+          }
+
+          @Override
+          public void reportVersion(Version version) {
+            snapshot.add(version);
+          }
+        });
+      registration = new Registration(observer, snapshot);
+      pending.add(registration);
+    } finally {
+      lock.unlock();
+    }
+    scheduleDrain();
+    await(registration);
+  }
+
+  void removeObserver(ReportableObserver observer) {
+    observers.remove(observer);
+  }
+
+  List<ReportableObserver> getObservers() {
+    return observers;
+  }
+
+  /**
+   * Waits until the observers got all reportables published before the call, unless called by the notification
+   * thread itself.
+   */
+  void awaitNotifications() {
+    Registration marker = new Registration(null, new ArrayList<Reportable>(0));
+    pending.add(marker);
+    scheduleDrain();
+    await(marker);
+  }
+
+  private void await(Registration registration) {
+    if (Thread.currentThread() == notificationThread) {
+      return;
+    }
+    try {
+      registration.done.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void scheduleDrain() {
+    if (draining.compareAndSet(false, true)) {
+      executor.execute(drain);
+    }
+  }
+
+  private void drain() {
+    notificationThread = Thread.currentThread();
+    try {
+      while (true) {
+        Object notification;
+        while ((notification = pending.poll()) != null) {
+          if (notification instanceof Registration) {
+            register((Registration) notification);
+          } else if (notification instanceof Removal) {
+            notifyRemoval(((Removal) notification).reportable);
+          } else {
+            notifyObservers((Reportable) notification);
+          }
+        }
+
+        draining.set(false);
+
+        // a notification queued after the last poll may have seen the flag still set
+        if (pending.isEmpty() || !draining.compareAndSet(false, true)) {
+          return;
+        }
+      }
+    } finally {
+      notificationThread = null;
+    }
+  }
+
+  private void register(Registration registration) {
+    try {
+      if (registration.observer != null) {
+        for (Reportable reportable : registration.snapshot) {
+          notifyObserver(registration.observer, reportable);
+        }
+        observers.add(registration.observer);
+      }
+    } finally {
+      registration.done.countDown();
+    }
+  }
+
+  private void notifyObservers(Reportable reportable) {
+    for (ReportableObserver observer : observers) {
+      notifyObserver(observer, reportable);
+    }
+  }
+
+  private void notifyRemoval(Reportable reportable) {
+    for (ReportableObserver observer : observers) {
+      if (observer instanceof ReportableRemovalObserver) {
+        try {
+          ((ReportableRemovalObserver) observer).removeReportable(reportable);
+        } catch (RuntimeException e) {
+          LOGGER.warn("observer " + observer + " failed to process removed reportable " + reportable.getName(), e);
+        }
+      }
+    }
+  }
+
+  private void notifyObserver(ReportableObserver observer, Reportable reportable) {
+    try {
+      observer.addNewReportable(reportable);
+    } catch (RuntimeException e) {
+      LOGGER.warn("observer " + observer + " failed to process new reportable " + reportable.getName(), e);
+    }
+  }
+
+  private static final class Removal {
+    private final Reportable reportable;
+
+    private Removal(Reportable reportable) {
+      this.reportable = reportable;
+    }
+  }
+
+  private static final class Registration {
+    private final ReportableObserver observer;
+    private final List<Reportable> snapshot;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private Registration(ReportableObserver observer, List<Reportable> snapshot) {
+      this.observer = observer;
+      this.snapshot = snapshot;
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package de.is24.util.monitoring;
+
+/**
+ * A {@link ReportableObserver} that is also notified when a reportable is removed from the InApplicationMonitor,
+ * e.g. an idle counter or timer evicted by the CorePlugin.
+ *
+ * Removals are passed by the same notification thread and in the same order as new reportables, so a reportable
+ * is always added before it is removed. A reportable created again after its removal is a new instance.
+ */
+public interface ReportableRemovalObserver extends ReportableObserver {
+  /**
+   * @param reportable the reportable removed, updates of it are not reported anymore
+   */
+  void removeReportable(Reportable reportable);
+}
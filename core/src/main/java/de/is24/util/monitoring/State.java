@@ -5,7 +5,19 @@ public class State {
   public long value;
 
   public State(String parentName, String valueName, long value) {
-    this.name = (parentName + "." + valueName).replaceAll("[:* =]", "_").replaceAll(",", ".");
+    this(name(parentName, valueName), value);
+  }
+
+  /**
+   * @param name the complete name as built by {@link #name(String, String)}
+   * @param value the value
+   */
+  public State(String name, long value) {
+    this.name = name;
     this.value = value;
   }
+
+  public static String name(String parentName, String valueName) {
+    return (parentName + "." + valueName).replaceAll("[:* =]", "_").replaceAll(",", ".");
+  }
 }
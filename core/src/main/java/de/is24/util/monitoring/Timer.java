@@ -1,8 +1,10 @@
 package de.is24.util.monitoring;
 
+import de.is24.util.monitoring.tools.StripedAccumulator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 
 /**
@@ -17,22 +19,58 @@ import java.util.concurrent.atomic.AtomicLong;
  * Note that operations might not appear consistent especially with only a few measurements
  * as none of the timer operations are atomic. With many measurements these inconsistencies
  * should not be notable anymore though.
+ * <br>
+ * Each timer has the unit its measurements are kept in, milliseconds unless declared otherwise by
+ * {@link CorePlugin#setTimerUnit(String, TimeUnit)}. The sum of squares is
+ * accumulated as a double, so it does not overflow for nanosecond measurements.
  *
  * @author OSchmitz
  */
-public class Timer implements Reportable {
+public class Timer extends TrackedMetric implements Reportable {
   private static final Logger LOGGER = LoggerFactory.getLogger(Timer.class);
   private final String name;
-  private final AtomicLong count = new AtomicLong();
-  private final AtomicLong timerSum = new AtomicLong();
-  private final AtomicLong timerSumOfSquares = new AtomicLong();
+  private final TimeUnit unit;
+  private static final int COUNT = 0;
+  private static final int TIMER_SUM = 1;
+  private static final int TIMER_SUM_OF_SQUARES = 2;
+
+  // count, sum and sum of squares share one striped cell per thread
+  private final StripedAccumulator values;
+
+  // minimum and maximum per cursor slot, only allocated once a measurement is added while cursors exist
+  private volatile AtomicLongArray extremes;
 
   /**
    * This class is only constructed by {@link InApplicationMonitor}
    * @param name name of this Timer
    */
   Timer(String name) {
+    this(name, null);
+  }
+
+  Timer(String name, MetricCursors cursors) {
+    this(name, cursors, null);
+  }
+
+  Timer(String name, MetricCursors cursors, CoarseClock clock) {
+    this(name, cursors, clock, TimeUnit.MILLISECONDS);
+  }
+
+  Timer(String name, MetricCursors cursors, CoarseClock clock, TimeUnit unit) {
+    super(cursors, clock);
     this.name = name;
+    this.unit = unit;
+    this.values = new StripedAccumulator(3);
+  }
+
+  /**
+   * Constructor of views on values stored elsewhere, which override all methods of this class.
+   */
+  Timer() {
+    super(null);
+    this.name = null;
+    this.unit = TimeUnit.MILLISECONDS;
+    this.values = null;
   }
 
 
@@ -49,22 +87,99 @@ public class Timer implements Reportable {
    * Add a timer measurement for this timer.<br>
    * The application decides which unit to use for timing.
    * Milliseconds are suggested and some {@link ReportVisitor} implementations
-   * may imply this.
-   * @param durationInMillis
+   * may imply this, unless the timer has another {@link #getUnit() unit}.
+   * @param duration in the unit of this timer
    */
-  public void addMeasurement(long durationInMillis) {
-    count.addAndGet(1);
-    timerSum.addAndGet(durationInMillis);
-    timerSumOfSquares.addAndGet(durationInMillis * durationInMillis);
+  public void addMeasurement(long duration) {
+    values.add(COUNT, 1);
+    values.add(TIMER_SUM, duration);
+    values.addDouble(TIMER_SUM_OF_SQUARES, (double) duration * duration);
+    recordExtremes(duration);
+    markChanged();
   }
 
   /**
    * initialize with 0
    */
   public void initializeMeasurement() {
-    count.set(0);
-    this.timerSum.set(0);
-    this.timerSumOfSquares.set(0);
+    values.reset();
+    markChanged();
+  }
+
+  /**
+   * Adds count, sum and sum of squares of a timer of another plugin, used when syncing from it.
+   */
+  void takeOver(Timer other) {
+    values.add(COUNT, other.getCount());
+    values.add(TIMER_SUM, other.getTimerSum());
+    values.addDouble(TIMER_SUM_OF_SQUARES, other.getTimerSumOfSquaresAsDouble());
+  }
+
+  private void recordExtremes(long duration) {
+    long active = activeCursors();
+    if (active == 0) {
+      return;
+    }
+
+    AtomicLongArray slots = getExtremes();
+    for (int slot = 0; active != 0; slot++, active >>>= 1) {
+      if ((active & 1) != 0) {
+        long min = slots.get(2 * slot);
+        while ((duration < min) && !slots.compareAndSet(2 * slot, min, duration)) {
+          min = slots.get(2 * slot);
+        }
+
+        long max = slots.get((2 * slot) + 1);
+        while ((duration > max) && !slots.compareAndSet((2 * slot) + 1, max, duration)) {
+          max = slots.get((2 * slot) + 1);
+        }
+      }
+    }
+  }
+
+  private AtomicLongArray getExtremes() {
+    AtomicLongArray slots = extremes;
+    if (slots == null) {
+      synchronized (this) {
+        slots = extremes;
+        if (slots == null) {
+          slots = new AtomicLongArray(2 * MetricCursors.MAX_CURSORS);
+          for (int slot = 0; slot < MetricCursors.MAX_CURSORS; slot++) {
+            resetExtremes(slots, slot);
+          }
+          extremes = slots;
+        }
+      }
+    }
+    return slots;
+  }
+
+  /**
+   * @return the minimum measurement since the last call for the cursor slot, Long.MAX_VALUE if there was none
+   */
+  long takeMin(int slot) {
+    AtomicLongArray slots = extremes;
+    return (slots == null) ? Long.MAX_VALUE : slots.getAndSet(2 * slot, Long.MAX_VALUE);
+  }
+
+  /**
+   * @return the maximum measurement since the last call for the cursor slot, Long.MIN_VALUE if there was none
+   */
+  long takeMax(int slot) {
+    AtomicLongArray slots = extremes;
+    return (slots == null) ? Long.MIN_VALUE : slots.getAndSet((2 * slot) + 1, Long.MIN_VALUE);
+  }
+
+  void resetExtremes(int slot) {
+    AtomicLongArray slots = extremes;
+    if (slots != null) {
+      resetExtremes(slots, slot);
+    }
+  }
+
+  private static void resetExtremes(AtomicLongArray slots, int slot) {
+    slots.set(2 * slot, Long.MAX_VALUE);
+    slots.set((2 * slot) + 1, Long.MIN_VALUE);
   }
 
   @Override
@@ -72,15 +187,45 @@ public class Timer implements Reportable {
     return name;
   }
 
+  /**
+   * @return the unit of the measurements of this timer
+   */
+  public TimeUnit getUnit() {
+    return unit;
+  }
+
   public long getCount() {
-    return count.get();
+    return values.sum(COUNT);
+  }
+
+  /**
+   * @return the sum of the squares of all timer measurements, Long.MAX_VALUE if it exceeds the range of a long.
+   */
+  public long getTimerSumOfSquares() {
+    return (long) getTimerSumOfSquaresAsDouble();
+  }
+
+  /**
+   * @return the sum of the squares of all timer measurements.
+   */
+  public double getTimerSumOfSquaresAsDouble() {
+    return values.sumDouble(TIMER_SUM_OF_SQUARES);
+  }
+
+  /**
+   * Reads count, sum and sum of squares into the columns of a {@link MetricSnapshot}.
+   */
+  void readInto(int id, long[] counts, long[] sums, long[] sumsOfSquares) {
+    counts[id] = values.sum(COUNT);
+    sums[id] = values.sum(TIMER_SUM);
+    sumsOfSquares[id] = getTimerSumOfSquares();
   }
 
   /**
   * @return the sum of all timer measurements.
   */
   public long getTimerSum() {
-    return timerSum.get();
+    return values.sum(TIMER_SUM);
   }
 
   /**
@@ -90,7 +235,7 @@ public class Timer implements Reportable {
    * @return the average of all timer measurements.
    */
   public double getTimerAvg() {
-    return Math.average(count.get(), timerSum.get());
+    return Math.average(values.sum(COUNT), values.sum(TIMER_SUM));
   }
 
   /**
@@ -100,7 +245,7 @@ public class Timer implements Reportable {
    * @return the standard deviation of all timer measurements.
    */
   public double getTimerStdDev() {
-    return Math.stdDeviation(count.get(), timerSum.get(), timerSumOfSquares.get());
+    return Math.stdDeviation(values.sum(COUNT), values.sum(TIMER_SUM), getTimerSumOfSquaresAsDouble());
 
   }
 }
@@ -0,0 +1,79 @@
+package de.is24.util.monitoring;
+
+/**
+ * A pre-resolved handle to a {@link Timer}, created by {@link InApplicationMonitor#timer(String)}.
+ * <pre>
+ * private static final TimerHandle QUERY = InApplicationMonitor.getInstance().timer("my.query");
+ * ...
+ * QUERY.addMeasurement(duration);
+ * </pre>
+ * Calls are equivalent to the corresponding timer methods of {@link InApplicationMonitor},
+ * but do not escape the key and look up the timer for every event.
+ */
+public final class TimerHandle extends AbstractMetricHandle<Timer> {
+  TimerHandle(InApplicationMonitor monitor, String name) {
+    super(monitor, name);
+  }
+
+  @Override
+  Timer resolve(CorePlugin corePlugin, String key) {
+    return corePlugin.getTimer(key);
+  }
+
+  /**
+   * @param timing number of elapsed time units for a single measurement
+   * @see InApplicationMonitor#addTimerMeasurement(String, long)
+   */
+  public void addMeasurement(long timing) {
+    if (isMonitorActive()) {
+      Binding<Timer> binding = binding();
+      if (binding.monitor != null) {
+        binding.monitor.addMeasurement(timing);
+      }
+      for (MonitorPlugin plugin : binding.otherPlugins) {
+        plugin.addTimerMeasurement(binding.key, timing);
+      }
+    }
+  }
+
+  /**
+   * @param begin number of elapsed time units at the beginning of the single measurement
+   * @param end number of elapsed time units at the end of the single measurement
+   * @see InApplicationMonitor#addTimerMeasurement(String, long, long)
+   */
+  public void addMeasurement(long begin, long end) {
+    addMeasurement(end - begin);
+  }
+
+  /**
+   * @param timing number of elapsed time units for a single measurement
+   * @see InApplicationMonitor#addHighRateTimerMeasurement(String, long)
+   */
+  public void addHighRateMeasurement(long timing) {
+    if (isMonitorActive()) {
+      Binding<Timer> binding = binding();
+      if (binding.monitor != null) {
+        binding.monitor.addMeasurement(timing);
+      }
+      for (MonitorPlugin plugin : binding.otherPlugins) {
+        plugin.addHighRateTimerMeasurement(binding.key, timing);
+      }
+    }
+  }
+
+  /**
+   * @param timing number of elapsed time units for a single measurement
+   * @see InApplicationMonitor#addSingleEventTimerMeasurement(String, long)
+   */
+  public void addSingleEventMeasurement(long timing) {
+    if (isMonitorActive()) {
+      Binding<Timer> binding = binding();
+      if (binding.monitor != null) {
+        binding.monitor.addMeasurement(timing);
+      }
+      for (MonitorPlugin plugin : binding.otherPlugins) {
+        plugin.addSingleEventTimerMeasurement(binding.key, timing);
+      }
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package de.is24.util.monitoring;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+
+/**
+ * Base of the metrics {@link MetricCursor}s report deltas for. A metric remembers, as a bit per cursor slot,
+ * which cursors already know it changed since their last read, so on an update only the first change per cursor
+ * and interval enqueues the metric at the cursors. Further updates only read two volatile fields.
+ *
+ * If the plugin evicts idle metrics, updates also stamp the metric with the seconds of the plugin's
+ * {@link CoarseClock}, written only when the second changed.
+ *
+ * The id of the metric in the plugin's {@link MetricNameTable} is assigned by the table, together with the
+ * generation of the id.
+ */
+abstract class TrackedMetric {
+  private static final AtomicLongFieldUpdater<TrackedMetric> CHANGED_FOR = AtomicLongFieldUpdater.newUpdater(
+    TrackedMetric.class, "changedFor");
+
+  private final MetricCursors cursors;
+  private final CoarseClock clock;
+  private volatile long changedFor;
+  private volatile int lastUpdate;
+  private volatile boolean evicted;
+  private int idGeneration;
+  private volatile int id = -1;
+
+  /**
+   * @param cursors the cursors of the plugin owning the metric, null if changes are not tracked
+   */
+  TrackedMetric(MetricCursors cursors) {
+    this(cursors, null);
+  }
+
+  /**
+   * @param cursors the cursors of the plugin owning the metric, null if changes are not tracked
+   * @param clock the clock updates are stamped with, null if updates are not stamped
+   */
+  TrackedMetric(MetricCursors cursors, CoarseClock clock) {
+    this.cursors = cursors;
+    this.clock = clock;
+    if (clock != null) {
+      lastUpdate = clock.seconds();
+    }
+  }
+
+  abstract String getName();
+
+  /**
+   * @return bits of the cursor slots currently in use, 0 if changes are not tracked
+   */
+  final long activeCursors() {
+    return (cursors == null) ? 0 : cursors.getActiveMask();
+  }
+
+  final void markChanged() {
+    if (clock != null) {
+      int now = clock.seconds();
+      if (lastUpdate != now) {
+        lastUpdate = now;
+      }
+    }
+    if (cursors == null) {
+      return;
+    }
+
+    long active = cursors.getActiveMask();
+    long changed = changedFor;
+    while ((changed & active) != active) {
+      if (CHANGED_FOR.compareAndSet(this, changed, changed | active)) {
+        cursors.enqueue(this, active & ~changed);
+        return;
+      }
+      changed = changedFor;
+    }
+  }
+
+  /**
+   * Called by the cursor of the slot before it reads the values, so later changes enqueue the metric again.
+   */
+  final void clearChanged(long slotBit) {
+    long changed = changedFor;
+    while (((changed & slotBit) != 0) && !CHANGED_FOR.compareAndSet(this, changed, changed & ~slotBit)) {
+      changed = changedFor;
+    }
+  }
+
+  /**
+   * @return second of the plugin's clock the metric was last updated or stamped at
+   */
+  final int getLastUpdate() {
+    return lastUpdate;
+  }
+
+  /**
+   * @return the id of the metric in the plugin's {@link MetricNameTable}, -1 if it has none
+   */
+  final int getId() {
+    return id;
+  }
+
+  /**
+   * @return the generation of the id, distinguishing the metric from former metrics of the same id
+   */
+  final int getIdGeneration() {
+    return idGeneration;
+  }
+
+  /**
+   * Called by the {@link MetricNameTable} only.
+   */
+  final void assignId(int newId, int generation) {
+    idGeneration = generation;
+
+    // publishes the generation to readers, which read the id first
+    id = newId;
+  }
+
+  final void stamp(int seconds) {
+    lastUpdate = seconds;
+  }
+
+  /**
+   * @return true if the metric was removed from its plugin, updates are not reported anymore
+   */
+  final boolean isEvicted() {
+    return evicted;
+  }
+
+  final void markEvicted() {
+    evicted = true;
+  }
+}
@@ -0,0 +1,13 @@
+package de.is24.util.monitoring;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A {@link MonitorPlugin} accepting timer measurements in any unit, e.g. nanoseconds of
+ * {@link PerfTimer#start()} and {@link PerfTimer#stop(String, long)}. Plugins not implementing this interface get
+ * these measurements converted to milliseconds.
+ */
+public interface UnitAwareMonitorPlugin extends MonitorPlugin {
+  void addTimerMeasurement(String name, long timing, TimeUnit unit);
+}
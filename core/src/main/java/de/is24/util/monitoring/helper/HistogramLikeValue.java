@@ -1,8 +1,11 @@
 package de.is24.util.monitoring.helper;
 
 import de.is24.util.monitoring.CorePlugin;
+import de.is24.util.monitoring.CounterHandle;
 import de.is24.util.monitoring.InApplicationMonitor;
 import de.is24.util.monitoring.StateValueProvider;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -37,7 +40,10 @@ import de.is24.util.monitoring.StateValueProvider;
  *   &lt;basename&gt;.total                   Timer recording all values
  *   &lt;basename&gt;.biggerThan&lt;value&gt;       Counter for each bin that is created
  *   &lt;basename&gt;.currentMax              StateValue holding the current maximum value
+ *   &lt;basename&gt;                         Histogram recording all values
  * </pre>
+ * <p>Consider using {@link InApplicationMonitor#addHistogramValue(String, long)} directly, the
+ * {@link de.is24.util.monitoring.Histogram} it records into has a fixed size and a bounded relative error.</p>
  * @author ptraeder
  *
  */
@@ -50,7 +56,8 @@ public class HistogramLikeValue {
   private String factorName;
   private long factor;
   private long maxLimit = Long.MAX_VALUE;
-  private long currentMaxValue = 0L;
+  private final AtomicLong currentMaxValue = new AtomicLong();
+  private final ConcurrentHashMap<Long, CounterHandle> binCounters = new ConcurrentHashMap<Long, CounterHandle>();
   private String maxValueName;
   private String maxLimitName;
 
@@ -79,7 +86,7 @@ public class HistogramLikeValue {
 
         @Override
         public long getValue() {
-          return currentMaxValue;
+          return currentMaxValue.get();
         }
       });
 
@@ -130,18 +137,34 @@ public class HistogramLikeValue {
     return binName.toString();
   }
 
+  private CounterHandle getBinCounter(long binIndex) {
+    Long key = binIndex;
+    CounterHandle binCounter = binCounters.get(key);
+    if (binCounter == null) {
+      binCounter = InApplicationMonitor.getInstance().counter(getBinName(binIndex));
+
+      CounterHandle existing = binCounters.putIfAbsent(key, binCounter);
+      if (existing != null) {
+        binCounter = existing;
+      }
+    }
+    return binCounter;
+  }
+
   /**
    * adds a new value to the InApplicationMonitor, grouping it into the appropriate bin.
    *
    * @param newValue the value that should be added
    */
   public void addValue(long newValue) {
-    // keep a "total" timer for all values
+    // keep a "total" timer and a histogram for all values
     InApplicationMonitor.getInstance().addTimerMeasurement(timerName, newValue);
+    InApplicationMonitor.getInstance().addHistogramValue(baseName, newValue);
 
     // keep track of the current maximum value
-    if (newValue > currentMaxValue) {
-      currentMaxValue = newValue;
+    long currentMax = currentMaxValue.get();
+    while ((newValue > currentMax) && !currentMaxValue.compareAndSet(currentMax, newValue)) {
+      currentMax = currentMaxValue.get();
     }
 
     // select the bin to put this value in
@@ -153,8 +176,7 @@ public class HistogramLikeValue {
     }
 
     // add the new value to the appropriate bin
-    String binName = getBinName(binIndex);
-    InApplicationMonitor.getInstance().incrementCounter(binName);
+    getBinCounter(binIndex).increment();
   }
 
 }
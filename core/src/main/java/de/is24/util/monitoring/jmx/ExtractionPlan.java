@@ -0,0 +1,176 @@
+package de.is24.util.monitoring.jmx;
+
+import de.is24.util.monitoring.State;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Extracts the numeric values of one attribute of one MBean.
+ *
+ * A plan is compiled on first sight of an attribute value and holds the metric names, the key paths into
+ * composite values and a converter for each exported value, so executing it neither inspects the value types
+ * nor builds names. A plan is only valid for values of the class, or for composite values of the
+ * {@link CompositeType}, it was compiled for, see {@link #matches(Object)}.
+ */
+final class ExtractionPlan {
+  private static final String[] NO_PATH = new String[0];
+
+  private final Class<?> valueClass;
+  private final CompositeType compositeType;
+  private final String[] metricNames;
+  private final String[][] keyPaths;
+  private final ValueConverter[] converters;
+
+  private ExtractionPlan(Class<?> valueClass, CompositeType compositeType, List<String> metricNames,
+                         List<String[]> keyPaths, List<ValueConverter> converters) {
+    this.valueClass = valueClass;
+    this.compositeType = compositeType;
+    this.metricNames = metricNames.toArray(new String[metricNames.size()]);
+    this.keyPaths = keyPaths.toArray(new String[keyPaths.size()][]);
+    this.converters = converters.toArray(new ValueConverter[converters.size()]);
+  }
+
+  /**
+   * @param baseName base name of the MBean
+   * @param attributeName name of the attribute
+   * @param value a value of the attribute, must not be null
+   * @return a plan for values of the same class or composite type
+   */
+  static ExtractionPlan compile(String baseName, String attributeName, Object value) {
+    List<String> metricNames = new ArrayList<String>();
+    List<String[]> keyPaths = new ArrayList<String[]>();
+    List<ValueConverter> converters = new ArrayList<ValueConverter>();
+    if (value instanceof CompositeData) {
+      CompositeType compositeType = ((CompositeData) value).getCompositeType();
+      compileComposite(baseName, attributeName, NO_PATH, compositeType, metricNames, keyPaths, converters);
+      return new ExtractionPlan(null, compositeType, metricNames, keyPaths, converters);
+    }
+
+    ValueConverter converter = ValueConverter.forClassName(value.getClass().getName());
+    if (converter != null) {
+      metricNames.add(State.name(baseName, attributeName));
+      keyPaths.add(NO_PATH);
+      converters.add(converter);
+    }
+    return new ExtractionPlan(value.getClass(), null, metricNames, keyPaths, converters);
+  }
+
+  private static void compileComposite(String baseName, String path, String[] keyPath, CompositeType type,
+                                       List<String> metricNames, List<String[]> keyPaths,
+                                       List<ValueConverter> converters) {
+    for (String key : type.keySet()) {
+      String itemPath = path + "." + key;
+      String[] itemKeyPath = new String[keyPath.length + 1];
+      System.arraycopy(keyPath, 0, itemKeyPath, 0, keyPath.length);
+      itemKeyPath[keyPath.length] = key;
+
+      OpenType<?> itemType = type.getType(key);
+      if (itemType instanceof CompositeType) {
+        compileComposite(baseName, itemPath, itemKeyPath, (CompositeType) itemType, metricNames, keyPaths,
+          converters);
+      } else {
+        ValueConverter converter = ValueConverter.forClassName(itemType.getClassName());
+        if (converter != null) {
+          metricNames.add(State.name(baseName, itemPath));
+          keyPaths.add(itemKeyPath);
+          converters.add(converter);
+        }
+      }
+    }
+  }
+
+  boolean matches(Object value) {
+    if (compositeType == null) {
+      return value.getClass() == valueClass;
+    }
+    if (!(value instanceof CompositeData)) {
+      return false;
+    }
+
+    CompositeType type = ((CompositeData) value).getCompositeType();
+    return (type == compositeType) || compositeType.equals(type);
+  }
+
+  /**
+   * Adds a state for each numeric part of the value to the result.
+   *
+   * @param value a value matching this plan
+   * @param result the list to add the states to
+   */
+  void execute(Object value, List<State> result) {
+    for (int i = 0; i < metricNames.length; i++) {
+      Object item = (compositeType == null) ? value : get((CompositeData) value, keyPaths[i]);
+      if ((item != null) && converters[i].accepts(item)) {
+        result.add(new State(metricNames[i], converters[i].toLong(item)));
+      }
+    }
+  }
+
+  int size() {
+    return metricNames.length;
+  }
+
+  private static Object get(CompositeData data, String[] keyPath) {
+    Object item = data;
+    for (String key : keyPath) {
+      if (!(item instanceof CompositeData)) {
+        return null;
+      }
+      item = ((CompositeData) item).get(key);
+    }
+    return item;
+  }
+
+  enum ValueConverter {
+    NUMBER {
+      @Override
+      boolean accepts(Object value) {
+        return value instanceof Number;
+      }
+
+      @Override
+      long toLong(Object value) {
+        return ((Number) value).longValue();
+      }
+    },
+    BOOLEAN {
+      @Override
+      boolean accepts(Object value) {
+        return value instanceof Boolean;
+      }
+
+      @Override
+      long toLong(Object value) {
+        return ((Boolean) value) ? 1L : 0L;
+      }
+    };
+
+    private static final Map<String, ValueConverter> CONVERTERS = new HashMap<String, ValueConverter>();
+
+    static {
+      CONVERTERS.put(Long.class.getName(), NUMBER);
+      CONVERTERS.put(Integer.class.getName(), NUMBER);
+      CONVERTERS.put(Short.class.getName(), NUMBER);
+      CONVERTERS.put(Double.class.getName(), NUMBER);
+      CONVERTERS.put(Float.class.getName(), NUMBER);
+      CONVERTERS.put(Boolean.class.getName(), BOOLEAN);
+    }
+
+    /**
+     * @return the converter for values of the given class, null for values not exported
+     */
+    static ValueConverter forClassName(String className) {
+      return CONVERTERS.get(className);
+    }
+
+    abstract boolean accepts(Object value);
+
+    abstract long toLong(Object value);
+  }
+}
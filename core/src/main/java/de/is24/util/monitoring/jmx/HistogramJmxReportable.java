@@ -0,0 +1,64 @@
+package de.is24.util.monitoring.jmx;
+
+import javax.management.MBeanAttributeInfo;
+import de.is24.util.monitoring.Histogram;
+
+
+/**
+ * A wrapper for monitoring {@link Histogram} reportables.
+ */
+class HistogramJmxReportable implements JmxReportable {
+  private final Histogram reportable;
+
+  /**
+   * @param reportable the {@link Histogram}. May not be null.
+   */
+  public HistogramJmxReportable(Histogram reportable) {
+    super();
+    assert reportable != null;
+    this.reportable = reportable;
+  }
+
+  /* (non-Javadoc)
+   * @see de.is24.util.monitoring.jmx.JmxReportable#getAttributes()
+   */
+  public MBeanAttributeInfo[] getAttributes() {
+    return new MBeanAttributeInfo[] {
+        new MBeanAttributeInfo("count", "long", "count", true, false, false),
+        new MBeanAttributeInfo("sum", "long", "sum of all values recorded in this histogram", true, false, false),
+        new MBeanAttributeInfo("mean", "double", "mean of all values recorded in this histogram", true, false, false),
+        new MBeanAttributeInfo("min", "long", "smallest value recorded in this histogram", true, false, false),
+        new MBeanAttributeInfo("max", "long", "biggest value recorded in this histogram", true, false, false),
+        new MBeanAttributeInfo("median", "long", "estimated median", true, false, false),
+        new MBeanAttributeInfo("percentile95", "long", "estimated 95th percentile", true, false, false),
+        new MBeanAttributeInfo("percentile99", "long", "estimated 99th percentile", true, false, false),
+        new MBeanAttributeInfo("percentile999", "long", "estimated 99.9th percentile", true, false, false)
+      };
+  }
+
+  /* (non-Javadoc)
+   * @see de.is24.util.monitoring.jmx.JmxReportable#getAttribute(java.lang.String)
+   */
+  public Object getAttribute(String attributeName) {
+    if (attributeName.equals("count")) {
+      return reportable.getCount();
+    } else if (attributeName.equals("sum")) {
+      return reportable.getSum();
+    } else if (attributeName.equals("mean")) {
+      return reportable.getMean();
+    } else if (attributeName.equals("min")) {
+      return reportable.getMin();
+    } else if (attributeName.equals("max")) {
+      return reportable.getMax();
+    } else if (attributeName.equals("median")) {
+      return reportable.getValueAtPercentile(50);
+    } else if (attributeName.equals("percentile95")) {
+      return reportable.getValueAtPercentile(95);
+    } else if (attributeName.equals("percentile99")) {
+      return reportable.getValueAtPercentile(99);
+    } else if (attributeName.equals("percentile999")) {
+      return reportable.getValueAtPercentile(99.9);
+    }
+    return null;
+  }
+}
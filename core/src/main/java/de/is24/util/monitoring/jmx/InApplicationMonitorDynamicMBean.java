@@ -1,6 +1,7 @@
 package de.is24.util.monitoring.jmx;
 
 import de.is24.util.monitoring.Counter;
+import de.is24.util.monitoring.Histogram;
 import de.is24.util.monitoring.HistorizableList;
 import de.is24.util.monitoring.Reportable;
 import de.is24.util.monitoring.StateValueProvider;
@@ -20,7 +21,7 @@ import java.text.SimpleDateFormat;
 
 
 /**
- * Dynamic MBean that represents one non-primitive Reportable (Timer, HistorizableList)
+ * Dynamic MBean that represents one non-primitive Reportable (Timer, Histogram, HistorizableList)
  * that contains multiple values.
  *
  * @author ptraeder
@@ -39,6 +40,8 @@ public class InApplicationMonitorDynamicMBean implements DynamicMBean {
     assert reportable != null;
     if (reportable instanceof Timer) {
       type = new TimerJmxReportable((Timer) reportable);
+    } else if (reportable instanceof Histogram) {
+      type = new HistogramJmxReportable((Histogram) reportable);
     } else if (reportable instanceof Counter) {
       type = new CounterJmxReportable((Counter) reportable);
     } else if (reportable instanceof Version) {
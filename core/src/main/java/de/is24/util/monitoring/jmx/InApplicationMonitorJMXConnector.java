@@ -2,11 +2,12 @@ package de.is24.util.monitoring.jmx;
 
 import de.is24.util.monitoring.CorePlugin;
 import de.is24.util.monitoring.Counter;
+import de.is24.util.monitoring.Histogram;
 import de.is24.util.monitoring.HistorizableList;
 import de.is24.util.monitoring.InApplicationMonitor;
 import de.is24.util.monitoring.MultiValueProvider;
 import de.is24.util.monitoring.Reportable;
-import de.is24.util.monitoring.ReportableObserver;
+import de.is24.util.monitoring.ReportableRemovalObserver;
 import de.is24.util.monitoring.StateValueProvider;
 import de.is24.util.monitoring.Timer;
 import de.is24.util.monitoring.Version;
@@ -28,11 +29,15 @@ import javax.management.MBeanOperationInfo;
 import javax.management.MBeanParameterInfo;
 import javax.management.ReflectionException;
 import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeType;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -42,7 +47,7 @@ import java.util.concurrent.ConcurrentHashMap;
  * as dynamic MBean, complex types are published using an own MBean for each Reportable.
  *
  */
-public final class InApplicationMonitorJMXConnector implements DynamicMBean, ReportableObserver {
+public final class InApplicationMonitorJMXConnector implements DynamicMBean, ReportableRemovalObserver {
   private static final String DUMP_STRING_WRITER = "dumpStringWriter";
 
   private static final String DUMP_HISTOGRAM_LIKE_VALUE_ANALYSIS = "dumpHistogramLikeValueAnalysis";
@@ -67,7 +72,12 @@ public final class InApplicationMonitorJMXConnector implements DynamicMBean, Rep
   private static volatile InApplicationMonitorJMXConnector instance;
   private static final Object semaphore = new Object();
 
-  private final Map<String, Reportable> reportables = new ConcurrentHashMap<String, Reportable>();
+  private final ConcurrentMap<String, Reportable> reportables = new ConcurrentHashMap<String, Reportable>();
+
+  /* changed with the reportables, the snapshot is taken again when it was taken for an older version */
+  private final AtomicLong reportablesVersion = new AtomicLong();
+  private volatile ReportablesSnapshot snapshot = new ReportablesSnapshot(-1, null, null);
+  private final Map<String, CompositeType> compositeTypes = new ConcurrentHashMap<String, CompositeType>();
 
   private final JMXBeanRegistrationHelper jmxBeanRegistrationHelper;
   private final CorePlugin corePlugin;
@@ -99,6 +109,7 @@ public final class InApplicationMonitorJMXConnector implements DynamicMBean, Rep
       removeAllReportables();
       try {
         jmxBeanRegistrationHelper.unregisterMBeanOnJMX("InApplicationMonitor", null);
+        jmxBeanRegistrationHelper.unregisterMBeanOnJMX("CardinalityLimiter", null);
       } catch (Exception e) {
         LOG.warn("problem when unregistering InApplicationMonitorJMXConnector during shutdown", e);
       }
@@ -115,6 +126,7 @@ public final class InApplicationMonitorJMXConnector implements DynamicMBean, Rep
 
     try {
       jmxBeanRegistrationHelper.registerMBeanOnJMX(this, "InApplicationMonitor", null);
+      jmxBeanRegistrationHelper.registerMBeanOnJMX(corePlugin.getCardinalityLimiter(), "CardinalityLimiter", null);
     } catch (Exception e) {
       LOG.error("could not register MBean server : ", e);
     }
@@ -135,9 +147,11 @@ public final class InApplicationMonitorJMXConnector implements DynamicMBean, Rep
     synchronized (reportableKey) {
       boolean beanAlreadyRegistred = reportables.containsKey(reportableKey);
       reportables.put(reportableKey, reportable);
+      reportablesVersion.incrementAndGet();
 
       // MBean for each reportable
-      if ((reportable instanceof Timer) || (reportable instanceof HistorizableList)) {
+      if ((reportable instanceof Timer) || (reportable instanceof Histogram) ||
+          (reportable instanceof HistorizableList)) {
         InApplicationMonitorDynamicMBean bean = new InApplicationMonitorDynamicMBean(reportable);
         try {
           if (beanAlreadyRegistred) {
@@ -155,6 +169,32 @@ public final class InApplicationMonitorJMXConnector implements DynamicMBean, Rep
     }
   }
 
+  /**
+  * Called for each reportable removed from the InApplicationMonitor, unregisters its MBean.
+  */
+  public void removeReportable(Reportable reportable) {
+    final String reportableKey = reportable.getName().intern();
+
+    //noinspection SynchronizationOnLocalVariableOrMethodParameter
+    synchronized (reportableKey) {
+      // a reportable registered again under the key replaced the removed one
+      if (!reportables.remove(reportableKey, reportable)) {
+        return;
+      }
+      compositeTypes.remove(reportableKey);
+      reportablesVersion.incrementAndGet();
+
+      if ((reportable instanceof Timer) || (reportable instanceof Histogram) ||
+          (reportable instanceof HistorizableList)) {
+        try {
+          jmxBeanRegistrationHelper.unregisterMBeanOnJMX(reportableKey, "InApplicationMonitor");
+        } catch (Exception e) {
+          LOG.error("could not unregister MBean for " + reportableKey, e);
+        }
+      }
+    }
+  }
+
   public void removeAllReportables() {
     for (Reportable reportable : reportables.values()) {
       // use intern string representation - so we can synchronize on it
@@ -163,7 +203,8 @@ public final class InApplicationMonitorJMXConnector implements DynamicMBean, Rep
       //noinspection SynchronizationOnLocalVariableOrMethodParameter
       synchronized (reportableKey) {
         // MBean for each reportable
-        if ((reportable instanceof Timer) || (reportable instanceof HistorizableList)) {
+        if ((reportable instanceof Timer) || (reportable instanceof Histogram) ||
+            (reportable instanceof HistorizableList)) {
           try {
             jmxBeanRegistrationHelper.unregisterMBeanOnJMX(reportableKey, "InApplicationMonitor");
           } catch (Exception e) {
@@ -174,23 +215,40 @@ public final class InApplicationMonitorJMXConnector implements DynamicMBean, Rep
 
     }
     reportables.clear();
+    compositeTypes.clear();
+    reportablesVersion.incrementAndGet();
   }
 
 
   /* MBean methods */
 
   public MBeanInfo getMBeanInfo() {
+    return currentSnapshot().mBeanInfo;
+  }
+
+  private ReportablesSnapshot currentSnapshot() {
+    ReportablesSnapshot current = snapshot;
+    long version = reportablesVersion.get();
+    if (current.version != version) {
+      // reportables added while copying are covered by the next version
+      Map<String, Reportable> copy = new HashMap<String, Reportable>(reportables);
+      current = new ReportablesSnapshot(version, copy, buildMBeanInfo(copy));
+      snapshot = current;
+    }
+    return current;
+  }
+
+  private MBeanInfo buildMBeanInfo(Map<String, Reportable> reportablesCopy) {
     List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
 
-    for (Entry<String, Reportable> entry : reportables.entrySet()) {
-      /* we do not handle the not-so-primitive data types like "Timer" and "HistorizableList"
+    for (Entry<String, Reportable> entry : reportablesCopy.entrySet()) {
+      /* we do not handle the not-so-primitive data types like "Timer", "Histogram" and "HistorizableList"
        * because those get separate MBeans
       */
       if ((entry.getValue() instanceof Counter) ||
           (entry.getValue() instanceof StateValueProvider)) {
         attributes.add(new MBeanAttributeInfo(entry.getKey(), "long", entry.getKey(), true, false, false));
       } else if (entry.getValue() instanceof MultiValueProvider) {
-        LOG.info("### add multi value " + entry.getKey());
         attributes.add(new MBeanAttributeInfo(entry.getKey(), "javax.management.openmbean.CompositeData",
             entry.getKey(),
             true, false,
@@ -268,22 +326,12 @@ public final class InApplicationMonitorJMXConnector implements DynamicMBean, Rep
   }
 
   private Object getValueForReportable(String attribute) {
-    LOG.debug("getting value for attribute " + attribute);
+    LOG.debug("getting value for attribute {}", attribute);
 
     Reportable reportable = reportables.get(attribute);
 
     if (reportable != null) {
-      if (reportable instanceof Counter) {
-        return ((Counter) reportable).getCount();
-      } else if (reportable instanceof StateValueProvider) {
-        return ((StateValueProvider) reportable).getValue();
-      } else if (reportable instanceof MultiValueProvider) {
-        CompositeData compositeData = new MultiValueProviderHelper(((MultiValueProvider) reportable)).toComposite();
-        LOG.info("type : " + compositeData.getCompositeType().toString());
-        return compositeData;
-      } else if (reportable instanceof Version) {
-        return ((Version) reportable).getValue();
-      }
+      return getValue(attribute, reportable);
     } else {
       LOG.warn("attribute " + attribute + " not found");
     }
@@ -291,15 +339,51 @@ public final class InApplicationMonitorJMXConnector implements DynamicMBean, Rep
     return null;
   }
 
+  private Object getValue(String attribute, Reportable reportable) {
+    if (reportable instanceof Counter) {
+      return ((Counter) reportable).getCount();
+    } else if (reportable instanceof StateValueProvider) {
+      return ((StateValueProvider) reportable).getValue();
+    } else if (reportable instanceof MultiValueProvider) {
+      CompositeType cachedType = compositeTypes.get(attribute);
+      CompositeData compositeData = new MultiValueProviderHelper(((MultiValueProvider) reportable)).toComposite(
+        cachedType);
+      if (compositeData.getCompositeType() != cachedType) {
+        compositeTypes.put(attribute, compositeData.getCompositeType());
+      }
+      return compositeData;
+    } else if (reportable instanceof Version) {
+      return ((Version) reportable).getValue();
+    }
+    return null;
+  }
+
   public Object getAttribute(String attribute) throws AttributeNotFoundException, MBeanException, ReflectionException {
     return getValueForReportable(attribute);
   }
 
+  /**
+   * Reads all requested attributes from the snapshot of the reportables the MBeanInfo is built from, each value
+   * once even if requested repeatedly. Unknown attributes are left out of the result.
+   */
   public AttributeList getAttributes(String[] attributes) {
+    Map<String, Reportable> snapshotReportables = currentSnapshot().reportables;
+    Map<String, Object> values = new HashMap<String, Object>();
     AttributeList attributeList = new AttributeList();
 
-    for (Attribute attribute : attributeList.asList()) {
-      attributeList.add(new Attribute(attribute.getName(), getValueForReportable(attribute.getName())));
+    for (String attribute : attributes) {
+      Reportable reportable = snapshotReportables.get(attribute);
+      if (reportable == null) {
+        LOG.debug("attribute {} not found", attribute);
+        continue;
+      }
+
+      Object value = values.get(attribute);
+      if (value == null) {
+        value = getValue(attribute, reportable);
+        values.put(attribute, value);
+      }
+      attributeList.add(new Attribute(attribute, value));
     }
 
     return attributeList;
@@ -417,4 +501,16 @@ public final class InApplicationMonitorJMXConnector implements DynamicMBean, Rep
   public List<String> getRegisteredObservers() {
     return InApplicationMonitor.getInstance().getCorePlugin().getRegisteredReportableObservers();
   }
+
+  private static final class ReportablesSnapshot {
+    private final long version;
+    private final Map<String, Reportable> reportables;
+    private final MBeanInfo mBeanInfo;
+
+    private ReportablesSnapshot(long version, Map<String, Reportable> reportables, MBeanInfo mBeanInfo) {
+      this.version = version;
+      this.reportables = reportables;
+      this.mBeanInfo = mBeanInfo;
+    }
+  }
 }
@@ -7,23 +7,30 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.LineIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.InstanceNotFoundException;
 import javax.management.MBeanAttributeInfo;
 import javax.management.MBeanInfo;
 import javax.management.MBeanServer;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
 import javax.management.MalformedObjectNameException;
+import javax.management.Notification;
+import javax.management.NotificationListener;
 import javax.management.ObjectName;
-import javax.management.openmbean.CompositeData;
 import java.io.File;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 /**
@@ -31,13 +38,32 @@ import java.util.Set;
  * You can use it to send metrics from other JMX beans to graphite.
  * You do not need it, and should not use it, to send appmon4j metrics, this should be done by
  * Statsd or Graphite plugins instead.
+ *
+ * The MBeans matching the patterns and their readable attributes are cached. The exporter listens to the
+ * registration and unregistration notifications of the {@link MBeanServerDelegate} to keep the cache current,
+ * so a poll only reads the attribute values, with one bulk getAttributes call per MBean. The attribute names
+ * are only kept for MBeans declaring their MBeanInfo immutable, like standard MBeans and MXBeans. Dynamic
+ * MBeans may add attributes at any time, their MBeanInfo is read again on every poll.
  */
 public class JMXExporter implements MultiValueProvider {
   private static final Logger LOGGER = LoggerFactory.getLogger(JMXExporter.class);
   private static final String JMXEXPORTER = "JMXExporter";
+  private static final String IMMUTABLE_INFO = "immutableInfo";
+  private static final String[] NO_ATTRIBUTES = new String[0];
+  private static final Set<String> NON_NUMERIC_TYPES = new HashSet<String>(Arrays.asList(
+    String.class.getName(),
+    ObjectName.class.getName(),
+    "javax.management.openmbean.TabularData"));
   private final MBeanServer platformMBeanServer = ManagementFactory.getPlatformMBeanServer();
 
   private final Set<ObjectName> objectPatterns;
+  private final ConcurrentMap<ObjectName, ExportedBean> exportedBeans =
+    new ConcurrentHashMap<ObjectName, ExportedBean>();
+  private final NotificationListener registrationListener = new RegistrationListener();
+  private final Object cacheLock = new Object();
+  private volatile boolean cacheValid;
+  private boolean listening;
+  private volatile int lastValueCount = 10;
 
 
   /**
@@ -61,6 +87,7 @@ public class JMXExporter implements MultiValueProvider {
 
   public void addPattern(String pattern) throws MalformedObjectNameException {
     objectPatterns.add(new ObjectName(pattern));
+    cacheValid = false;
   }
 
   public List<ObjectName> listPatterns() {
@@ -68,13 +95,35 @@ public class JMXExporter implements MultiValueProvider {
   }
 
   public boolean removePattern(String pattern) throws MalformedObjectNameException {
-    return objectPatterns.remove(new ObjectName(pattern));
+    boolean removed = objectPatterns.remove(new ObjectName(pattern));
+    cacheValid = false;
+    return removed;
+  }
+
+  /**
+   * Stops listening to MBean registrations and clears the cached MBeans. A later call to {@link #getValues()}
+   * fills the cache again.
+   */
+  public void shutdown() {
+    synchronized (cacheLock) {
+      if (listening) {
+        try {
+          platformMBeanServer.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, registrationListener);
+        } catch (Exception e) {
+          LOGGER.info("could not remove MBean registration listener {}", e.getMessage());
+        }
+        listening = false;
+      }
+      exportedBeans.clear();
+      cacheValid = false;
+    }
   }
 
   @Override
   public Collection<State> getValues() {
-    List<State> result = new ArrayList<State>();
+    List<State> result = new ArrayList<State>(lastValueCount);
     searchAndLogNumericAttributes(result);
+    lastValueCount = result.size();
     return result;
   }
 
@@ -90,24 +139,54 @@ public class JMXExporter implements MultiValueProvider {
 
 
   protected void searchAndLogNumericAttributes(List<State> result) {
-    Map<ObjectName, MBeanInfo> mBeanInfoMap = getMBeanInfos();
-    for (Map.Entry<ObjectName, MBeanInfo> entry : mBeanInfoMap.entrySet()) {
-      ObjectName name = entry.getKey();
-      MBeanInfo mBeanInfo = entry.getValue();
-      MBeanAttributeInfo[] attributes = mBeanInfo.getAttributes();
-      for (MBeanAttributeInfo info : attributes) {
-        try {
-          Object valueObject = platformMBeanServer.getAttribute(name, info.getName());
-          String attributeName = getBaseName(name);
-          handleObject(attributeName, info.getName(), valueObject, result);
-        } catch (Exception e) {
-          // Some special treatment if running in jsvc for https://issues.apache.org/jira/browse/DAEMON-120
-          // or for some attributes not supported by all JVM implementations, but still in the mbean
-          if (isUnsupportedOperation(e) || isJsvcSpecificProcSelfFdProblem(e)) {
-            LOGGER.debug("ignoring unsupported numeric MBean Attribute {} {} {}", name, info);
-          } else {
-            LOGGER.info("Error accessing numeric MBean Attribute {} {} {}", name, info, e.getMessage());
-          }
+    ensureCacheIsValid();
+    for (ExportedBean bean : exportedBeans.values()) {
+      String[] attributeNames = bean.getAttributeNames();
+      if (attributeNames.length > 0) {
+        readAttributes(bean, attributeNames, result);
+      }
+    }
+  }
+
+  private void readAttributes(ExportedBean bean, String[] attributeNames, List<State> result) {
+    AttributeList attributes;
+    try {
+      attributes = platformMBeanServer.getAttributes(bean.name, attributeNames);
+    } catch (InstanceNotFoundException e) {
+      // unregistered before we got the notification
+      exportedBeans.remove(bean.name, bean);
+      return;
+    } catch (Exception e) {
+      LOGGER.debug("bulk read of MBean {} failed, reading attributes one by one {}", bean.name, e.getMessage());
+      attributes = null;
+    }
+
+    if (attributes == null) {
+      // dynamic MBeans do not necessarily implement getAttributes
+      readAttributesOneByOne(bean, attributeNames, result);
+      return;
+    }
+    for (Attribute attribute : attributes.asList()) {
+      extract(bean, attribute.getName(), attribute.getValue(), result);
+    }
+  }
+
+  private void readAttributesOneByOne(ExportedBean bean, String[] attributeNames, List<State> result) {
+    for (String attributeName : attributeNames) {
+      try {
+        Object valueObject = platformMBeanServer.getAttribute(bean.name, attributeName);
+        extract(bean, attributeName, valueObject, result);
+      } catch (InstanceNotFoundException e) {
+        exportedBeans.remove(bean.name, bean);
+        return;
+      } catch (Exception e) {
+        // Some special treatment if running in jsvc for https://issues.apache.org/jira/browse/DAEMON-120
+        // or for some attributes not supported by all JVM implementations, but still in the mbean
+        if (isUnsupportedOperation(e) || isJsvcSpecificProcSelfFdProblem(e)) {
+          LOGGER.debug("ignoring unsupported numeric MBean Attribute {} {}", bean.name, attributeName);
+        } else {
+          LOGGER.info("Error accessing numeric MBean Attribute {} {} {}",
+            new Object[] { bean.name, attributeName, e.getMessage() });
         }
       }
     }
@@ -122,45 +201,19 @@ public class JMXExporter implements MultiValueProvider {
     return (e.getCause() != null) && e.getCause().getClass().equals(UnsupportedOperationException.class);
   }
 
-  private void handleObject(String baseName, String path, Object valueObject, List<State> result) {
-    LOGGER.debug("handling {}", baseName);
-
-    Long value = null;
-    if (valueObject instanceof Long) {
-      value = ((Long) valueObject).longValue();
-    } else if (valueObject instanceof Boolean) {
-      value = ((Boolean) valueObject) ? 1L : 0L;
-    } else if (valueObject instanceof Integer) {
-      value = ((Integer) valueObject).longValue();
-    } else if (valueObject instanceof Short) {
-      value = ((Short) valueObject).longValue();
-    } else if (valueObject instanceof Double) {
-      value = ((Double) valueObject).longValue();
-    } else if (valueObject instanceof Float) {
-      value = ((Float) valueObject).longValue();
-    } else if (valueObject instanceof CompositeData) {
-      logComposite(baseName, path, (CompositeData) valueObject, result);
+  private void extract(ExportedBean bean, String attributeName, Object valueObject, List<State> result) {
+    if (valueObject == null) {
+      return;
     }
-    if (value != null) {
-      result.add(createState(baseName, path, value));
-    }
-  }
-
 
-  private void logComposite(String attributeName, String path, CompositeData obj, List<State> result) {
-    for (String key : obj.getCompositeType().keySet()) {
-      String additionalPath = (path == null) ? key : (path + "." + key);
-      Object valueObject = obj.get(key);
-      if (valueObject instanceof CompositeData) {
-        logComposite(attributeName, additionalPath, (CompositeData) valueObject, result);
-      } else if (valueObject != null) {
-        handleObject(attributeName, additionalPath, valueObject, result);
-      }
+    ExtractionPlan plan = bean.plans.get(attributeName);
+    if ((plan == null) || !plan.matches(valueObject)) {
+      plan = ExtractionPlan.compile(bean.baseName, attributeName, valueObject);
+      bean.plans.put(attributeName, plan);
+      LOGGER.debug("compiled extraction plan for {} {} with {} values",
+        new Object[] { bean.name, attributeName, plan.size() });
     }
-  }
-
-  private State createState(String baseName, String path, Long value) {
-    return new State(baseName, path, value);
+    plan.execute(valueObject, result);
   }
 
   private String getBaseName(ObjectName name) {
@@ -170,25 +223,96 @@ public class JMXExporter implements MultiValueProvider {
   }
 
 
-  protected Map<ObjectName, MBeanInfo> getMBeanInfos() {
+  private void ensureCacheIsValid() {
+    if (cacheValid) {
+      return;
+    }
+    synchronized (cacheLock) {
+      if (cacheValid) {
+        return;
+      }
+      startListening();
+
+      // mark valid before querying, so a pattern added meanwhile invalidates the cache again
+      cacheValid = listening;
+
+      Set<ObjectName> previousNames = new HashSet<ObjectName>(exportedBeans.keySet());
+      Set<ObjectName> names = new HashSet<ObjectName>();
+      for (ObjectName objectPattern : listPatterns()) {
+        names.addAll(platformMBeanServer.queryNames(objectPattern, null));
+      }
+
+      // beans registered while querying were added by the listener and are kept
+      previousNames.removeAll(names);
+      exportedBeans.keySet().removeAll(previousNames);
+      for (ObjectName name : names) {
+        addBean(name);
+      }
+      LOGGER.debug("searching for MBeans using {} patterns found {} matching MBeans", objectPatterns.size(),
+        names.size());
+    }
+  }
+
+  private void startListening() {
+    if (listening) {
+      return;
+    }
     try {
-      Map<ObjectName, MBeanInfo> result = new HashMap<ObjectName, MBeanInfo>();
-      for (ObjectName objectPattern : objectPatterns) {
-        Set<ObjectName> objectNames = platformMBeanServer.queryNames(objectPattern, null);
-        for (ObjectName name : objectNames) {
-          result.put(name, platformMBeanServer.getMBeanInfo(name));
-        }
+      platformMBeanServer.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, registrationListener, null,
+        null);
+      listening = true;
+    } catch (InstanceNotFoundException e) {
+      // without notifications the MBeans are queried on every poll
+      LOGGER.warn("could not listen to MBean registrations {}", e.getMessage());
+    }
+  }
+
+  private void addBean(ObjectName name) {
+    if (!exportedBeans.containsKey(name)) {
+      exportedBeans.putIfAbsent(name, new ExportedBean(name));
+    }
+  }
+
+  private boolean matchesPattern(ObjectName name) {
+    for (ObjectName objectPattern : listPatterns()) {
+      if (objectPattern.apply(name)) {
+        return true;
       }
+    }
+    return false;
+  }
 
-      LOGGER.debug("searching for MBeans using {} patterns found {} matching Bean Infos",
-        objectPatterns.size(),
-        result.size());
-      return result;
+  /**
+   * @return the MBeanInfo of the MBean, null if it could not be read
+   */
+  private MBeanInfo readMBeanInfo(ObjectName name) {
+    try {
+      return platformMBeanServer.getMBeanInfo(name);
+    } catch (InstanceNotFoundException e) {
+      exportedBeans.remove(name);
     } catch (Exception e) {
-      LOGGER.warn("oops", e);
-      throw new RuntimeException(e);
+      LOGGER.info("Error reading MBeanInfo of {} {}", name, e.getMessage());
     }
+    return null;
+  }
+
+  private String[] readAttributeNames(MBeanInfo info) {
+    List<String> attributeNames = new ArrayList<String>();
+    for (MBeanAttributeInfo attributeInfo : info.getAttributes()) {
+      if (attributeInfo.isReadable() && isPossiblyNumeric(attributeInfo.getType())) {
+        attributeNames.add(attributeInfo.getName());
+      }
+    }
+    return attributeNames.toArray(new String[attributeNames.size()]);
+  }
 
+  private static boolean isImmutable(MBeanInfo info) {
+    return (info.getDescriptor() != null) && "true".equals(String.valueOf(info.getDescriptor().getFieldValue(
+        IMMUTABLE_INFO)));
+  }
+
+  private boolean isPossiblyNumeric(String type) {
+    return (type == null) || !(NON_NUMERIC_TYPES.contains(type) || type.startsWith("["));
   }
 
   public void readFromDirectory(String path) {
@@ -244,4 +368,57 @@ public class JMXExporter implements MultiValueProvider {
     }
 
   }
+
+  /**
+   * A cached MBean, its attribute names are read lazily on the first poll after its registration and kept if
+   * its MBeanInfo is immutable. A failed read is not kept, it is tried again on the next poll.
+   * The extraction plans are compiled per attribute on first sight of a value and replaced when the
+   * class or composite type of the value changes.
+   */
+  private final class ExportedBean {
+    private final ObjectName name;
+    private final String baseName;
+    private final ConcurrentMap<String, ExtractionPlan> plans = new ConcurrentHashMap<String, ExtractionPlan>();
+    private volatile String[] attributeNames;
+
+    private ExportedBean(ObjectName name) {
+      this.name = name;
+      this.baseName = getBaseName(name);
+    }
+
+    private String[] getAttributeNames() {
+      String[] names = attributeNames;
+      if (names != null) {
+        return names;
+      }
+
+      MBeanInfo info = readMBeanInfo(name);
+      if (info == null) {
+        return NO_ATTRIBUTES;
+      }
+      names = readAttributeNames(info);
+      if (isImmutable(info)) {
+        attributeNames = names;
+      }
+      return names;
+    }
+  }
+
+  private final class RegistrationListener implements NotificationListener {
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+      if (!(notification instanceof MBeanServerNotification)) {
+        return;
+      }
+
+      ObjectName name = ((MBeanServerNotification) notification).getMBeanName();
+      if (MBeanServerNotification.REGISTRATION_NOTIFICATION.equals(notification.getType())) {
+        if (matchesPattern(name)) {
+          addBean(name);
+        }
+      } else if (MBeanServerNotification.UNREGISTRATION_NOTIFICATION.equals(notification.getType())) {
+        exportedBeans.remove(name);
+      }
+    }
+  }
 }
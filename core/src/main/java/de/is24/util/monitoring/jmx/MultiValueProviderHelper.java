@@ -42,14 +42,36 @@ public class MultiValueProviderHelper {
   }
 
   public CompositeData toComposite() {
+    return toComposite(null);
+  }
+
+  /**
+   * @param cachedType type of a former composite of the provider, reused if the provider still has the same states
+   */
+  public CompositeData toComposite(CompositeType cachedType) {
     try {
-      CompositeType compositeType = new CompositeType("testCompositeType", "a text composite", itemNames,
-        itemNames,
-        itemTypes);
+      CompositeType compositeType = cachedType;
+      if (!matches(compositeType)) {
+        compositeType = new CompositeType("testCompositeType", "a text composite", itemNames,
+          itemNames,
+          itemTypes);
+      }
 
       return new CompositeDataSupport(compositeType, itemNames, itemValues);
     } catch (OpenDataException e) {
       throw new RuntimeException(e);
     }
   }
+
+  private boolean matches(CompositeType compositeType) {
+    if ((compositeType == null) || (compositeType.keySet().size() != itemNames.length)) {
+      return false;
+    }
+    for (String itemName : itemNames) {
+      if (!compositeType.containsKey(itemName)) {
+        return false;
+      }
+    }
+    return true;
+  }
 }
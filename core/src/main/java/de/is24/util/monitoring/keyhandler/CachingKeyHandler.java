@@ -0,0 +1,79 @@
+package de.is24.util.monitoring.keyhandler;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Remembers the results of a delegate KeyHandler, so the delegate handles each distinct key only once
+ * (as long as the key stays in the cache).
+ *
+ * The cache is bounded by keeping two generations of entries. New entries go to the current generation,
+ * hits in the previous generation are promoted to the current one. When the current generation is full,
+ * it becomes the previous generation and the old previous generation is dropped. So at most maxSize
+ * entries are kept, and keys that are not used for a while are evicted.
+ *
+ * Exceptions thrown by the delegate (e.g. by a {@link ValidatingKeyHandler}) are not cached.
+ */
+public class CachingKeyHandler implements KeyHandler {
+  public static final int DEFAULT_MAX_SIZE = 10000;
+
+  private final KeyHandler delegate;
+  private final int generationSize;
+  private final AtomicInteger currentSize = new AtomicInteger();
+  private volatile ConcurrentHashMap<String, String> current;
+  private volatile ConcurrentHashMap<String, String> previous;
+
+  public CachingKeyHandler(KeyHandler delegate) {
+    this(delegate, DEFAULT_MAX_SIZE);
+  }
+
+  public CachingKeyHandler(KeyHandler delegate, int maxSize) {
+    if (maxSize < 2) {
+      throw new IllegalArgumentException("maxSize must be at least 2");
+    }
+    this.delegate = delegate;
+    this.generationSize = maxSize / 2;
+    this.current = new ConcurrentHashMap<String, String>();
+    this.previous = new ConcurrentHashMap<String, String>();
+  }
+
+  @Override
+  public String handle(String name) {
+    ConcurrentHashMap<String, String> currentGeneration = current;
+    String result = currentGeneration.get(name);
+    if (result == null) {
+      result = previous.get(name);
+      if (result == null) {
+        result = delegate.handle(name);
+      }
+      store(currentGeneration, name, result);
+    }
+    return result;
+  }
+
+  private void store(ConcurrentHashMap<String, String> generation, String name, String result) {
+    if ((generation.putIfAbsent(name, result) == null) && (currentSize.incrementAndGet() >= generationSize)) {
+      rotate(generation);
+    }
+  }
+
+  private synchronized void rotate(ConcurrentHashMap<String, String> fullGeneration) {
+    if (current == fullGeneration) {
+      previous = fullGeneration;
+      current = new ConcurrentHashMap<String, String>();
+      currentSize.set(0);
+    }
+  }
+
+  /**
+   * @return number of cached keys
+   */
+  public int size() {
+    return current.size() + previous.size();
+  }
+
+  public KeyHandler getDelegate() {
+    return delegate;
+  }
+}
@@ -0,0 +1,28 @@
+package de.is24.util.monitoring.keyhandler;
+
+/**
+ * Passes a key through several KeyHandlers, each handler gets the result of the previous one.
+ *
+ * Wrap the chain into a {@link CachingKeyHandler} to validate, escape and report each distinct key
+ * once instead of once per event:
+ * <pre>
+ * new CachingKeyHandler(new ChainedKeyHandler(new DelegatingReportingKeyHandler(new DefaultKeyEscaper()),
+ *   new ValidatingKeyHandler()));
+ * </pre>
+ */
+public class ChainedKeyHandler implements KeyHandler {
+  private final KeyHandler[] handlers;
+
+  public ChainedKeyHandler(KeyHandler... handlers) {
+    this.handlers = handlers.clone();
+  }
+
+  @Override
+  public String handle(String name) {
+    String result = name;
+    for (KeyHandler handler : handlers) {
+      result = handler.handle(result);
+    }
+    return result;
+  }
+}
@@ -1,8 +1,37 @@
 package de.is24.util.monitoring.keyhandler;
 
+/**
+ * Replaces ':' and '=' by '_'. Equivalent to a RegexKeyEscaper for "[:=]", but scans the
+ * characters directly and returns the given instance if nothing needs to be escaped.
+ */
 public class DefaultKeyEscaper extends RegexKeyEscaper {
   public DefaultKeyEscaper() {
     super("[:=]");
   }
 
+  @Override
+  public String handle(String name) {
+    int length = name.length();
+    for (int i = 0; i < length; i++) {
+      if (mustEscape(name.charAt(i))) {
+        return escape(name, i);
+      }
+    }
+    return name;
+  }
+
+  private static String escape(String name, int firstIndex) {
+    char[] chars = name.toCharArray();
+    for (int i = firstIndex; i < chars.length; i++) {
+      if (mustEscape(chars[i])) {
+        chars[i] = '_';
+      }
+    }
+    return new String(chars);
+  }
+
+  private static boolean mustEscape(char c) {
+    return (c == ':') || (c == '=');
+  }
+
 }
@@ -1,16 +1,22 @@
 package de.is24.util.monitoring.keyhandler;
 
-import java.util.regex.Pattern;
-
-
+/**
+ * Rejects keys containing other characters than a-z, A-Z, 0-9, '_', '-' and '.'.
+ */
 public class ValidatingKeyHandler implements KeyHandler {
-  private static Pattern validationPattern = Pattern.compile("[a-zA-Z0-9_\\-.]*");
-
   @Override
   public String handle(String name) {
-    if (!validationPattern.matcher(name).matches()) {
-      throw new IllegalArgumentException("invalid key value: " + name);
+    int length = name.length();
+    for (int i = 0; i < length; i++) {
+      if (!isValid(name.charAt(i))) {
+        throw new IllegalArgumentException("invalid key value: " + name);
+      }
     }
     return name;
   }
+
+  private static boolean isValid(char c) {
+    return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')) || ((c >= '0') && (c <= '9')) || (c == '_') ||
+      (c == '-') || (c == '.');
+  }
 }
@@ -0,0 +1,279 @@
+package de.is24.util.monitoring.mapped;
+
+import de.is24.util.monitoring.CorePlugin;
+import de.is24.util.monitoring.Counter;
+import de.is24.util.monitoring.Histogram;
+import de.is24.util.monitoring.HistorizableList;
+import de.is24.util.monitoring.InApplicationMonitor;
+import de.is24.util.monitoring.MultiValueProvider;
+import de.is24.util.monitoring.ReportVisitor;
+import de.is24.util.monitoring.State;
+import de.is24.util.monitoring.StateValueProvider;
+import de.is24.util.monitoring.Timer;
+import de.is24.util.monitoring.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Mirrors counters, timers, state values and the states of multi values into a memory mapped file, so collectors
+ * on the same host can read them with {@link MappedMetricsReader} without any request to the application.
+ *
+ * A daemon thread copies the values into the file once per interval. Each metric gets a slot in the file on its
+ * first copy, its slot is only written to if its values changed. The file has a fixed size, metrics not fitting
+ * anymore are counted as dropped in the header. See {@link MappedMetricsLayout} for the format. The file is deleted
+ * on {@link #stop()}.
+ */
+public class MappedMetricsExporter {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MappedMetricsExporter.class);
+  public static final int DEFAULT_CAPACITY = 16384;
+  public static final long DEFAULT_INTERVAL_MILLIS = 1000;
+  private static final int AVERAGE_NAME_LENGTH = 60;
+  private static final int NO_SLOT = -1;
+
+  private final CorePlugin corePlugin;
+  private final File file;
+  private final int capacity;
+  private final int directorySize;
+  private final int slotsOffset;
+  private final long intervalMillis;
+  private final Map<String, Integer> counterSlots = new HashMap<String, Integer>();
+  private final Map<String, Integer> timerSlots = new HashMap<String, Integer>();
+  private final Map<String, Integer> stateSlots = new HashMap<String, Integer>();
+  private final ReportVisitor mirror = new Mirror();
+  private RandomAccessFile randomAccessFile;
+  private MappedByteBuffer buffer;
+  private ScheduledExecutorService executor;
+  private int entryCount;
+  private int directoryUsed;
+  private int dropped;
+
+  public MappedMetricsExporter(File file) {
+    this(InApplicationMonitor.getInstance().getCorePlugin(), file, DEFAULT_CAPACITY, DEFAULT_INTERVAL_MILLIS);
+  }
+
+  /**
+   * @param corePlugin the plugin to export the metrics of
+   * @param file the file to create, an existing file is replaced
+   * @param capacity maximum number of metrics in the file
+   * @param intervalMillis time between two copies of the values into the file
+   */
+  public MappedMetricsExporter(CorePlugin corePlugin, File file, int capacity, long intervalMillis) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    if (intervalMillis < 1) {
+      throw new IllegalArgumentException("intervalMillis must be positive");
+    }
+    this.corePlugin = corePlugin;
+    this.file = file;
+    this.capacity = capacity;
+    this.directorySize = capacity * (MappedMetricsLayout.RECORD_HEADER_SIZE + AVERAGE_NAME_LENGTH);
+    this.slotsOffset = MappedMetricsLayout.slotsOffset(directorySize);
+    this.intervalMillis = intervalMillis;
+  }
+
+  public synchronized void start() throws IOException {
+    if (executor != null) {
+      return;
+    }
+
+    open();
+    executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "appmon4j-mapped-metrics");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    executor.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            update();
+          } catch (RuntimeException e) {
+            LOGGER.warn("could not update metrics file " + file, e);
+          }
+        }
+      }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    LOGGER.info("mirroring metrics into {}", file);
+  }
+
+  public synchronized void stop() {
+    if (executor == null) {
+      return;
+    }
+
+    executor.shutdown();
+    try {
+      executor.awaitTermination(intervalMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    executor = null;
+    close();
+    if (!file.delete()) {
+      LOGGER.warn("could not delete metrics file {}", file);
+    }
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  synchronized void open() throws IOException {
+    File directory = file.getAbsoluteFile().getParentFile();
+    if ((directory != null) && !directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("could not create directory " + directory);
+    }
+
+    int size = MappedMetricsLayout.fileSize(capacity, directorySize);
+    randomAccessFile = new RandomAccessFile(file, "rw");
+    randomAccessFile.setLength(0);
+    randomAccessFile.setLength(size);
+    buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    buffer.order(MappedMetricsLayout.BYTE_ORDER);
+    counterSlots.clear();
+    timerSlots.clear();
+    stateSlots.clear();
+    entryCount = 0;
+    directoryUsed = 0;
+    dropped = 0;
+
+    buffer.putInt(MappedMetricsLayout.VERSION_OFFSET, MappedMetricsLayout.VERSION);
+    buffer.putInt(MappedMetricsLayout.CAPACITY_OFFSET, capacity);
+    buffer.putInt(MappedMetricsLayout.DIRECTORY_SIZE_OFFSET, directorySize);
+    buffer.putLong(MappedMetricsLayout.START_TIME_OFFSET, System.currentTimeMillis());
+
+    // readers only look at a file with the magic number
+    buffer.putInt(MappedMetricsLayout.MAGIC_OFFSET, MappedMetricsLayout.MAGIC);
+  }
+
+  synchronized void close() {
+    buffer = null;
+    try {
+      randomAccessFile.close();
+    } catch (IOException e) {
+      LOGGER.warn("could not close metrics file " + file, e);
+    }
+  }
+
+  /**
+   * Copies the current values of all metrics into the file.
+   */
+  synchronized void update() {
+    if (buffer == null) {
+      return;
+    }
+    corePlugin.reportInto(mirror);
+    buffer.putLong(MappedMetricsLayout.LAST_UPDATE_OFFSET, System.currentTimeMillis());
+  }
+
+  private int slotFor(Map<String, Integer> slots, byte kind, String name) {
+    Integer slot = slots.get(name);
+    if (slot == null) {
+      slot = append(kind, name);
+      slots.put(name, slot);
+    }
+    return slot;
+  }
+
+  private int append(byte kind, String name) {
+    byte[] bytes = name.getBytes(MappedMetricsLayout.UTF_8);
+    int recordSize = MappedMetricsLayout.RECORD_HEADER_SIZE + bytes.length;
+    if ((entryCount == capacity) || (bytes.length > MappedMetricsLayout.MAX_NAME_LENGTH) ||
+          ((directoryUsed + recordSize) > directorySize)) {
+      if (dropped == 0) {
+        LOGGER.warn("metrics file {} is full, further metrics are dropped, starting with {}", file, name);
+      }
+      dropped++;
+      buffer.putInt(MappedMetricsLayout.DROPPED_OFFSET, dropped);
+      return NO_SLOT;
+    }
+
+    int position = MappedMetricsLayout.HEADER_SIZE + directoryUsed;
+    buffer.put(position, kind);
+    buffer.putShort(position + 2, (short) bytes.length);
+    for (int i = 0; i < bytes.length; i++) {
+      buffer.put(position + MappedMetricsLayout.RECORD_HEADER_SIZE + i, bytes[i]);
+    }
+    directoryUsed += recordSize;
+
+    // the slot of a new entry is still zeroed, the entry becomes visible once the record is complete
+    MemoryFences.storeFence();
+    buffer.putInt(MappedMetricsLayout.DIRECTORY_USED_OFFSET, directoryUsed);
+    buffer.putInt(MappedMetricsLayout.ENTRY_COUNT_OFFSET, entryCount + 1);
+    return entryCount++;
+  }
+
+  private void write(int slot, long value0, long value1, long value2) {
+    if (slot == NO_SLOT) {
+      return;
+    }
+
+    int position = slotsOffset + (slot * MappedMetricsLayout.SLOT_SIZE);
+    if ((buffer.getLong(position + 8) == value0) && (buffer.getLong(position + 16) == value1) &&
+          (buffer.getLong(position + 24) == value2)) {
+      return;
+    }
+
+    long sequence = buffer.getLong(position);
+    buffer.putLong(position, sequence + 1);
+    MemoryFences.storeFence();
+    buffer.putLong(position + 8, value0);
+    buffer.putLong(position + 16, value1);
+    buffer.putLong(position + 24, value2);
+    MemoryFences.storeFence();
+    buffer.putLong(position, sequence + 2);
+  }
+
+  private class Mirror implements ReportVisitor {
+    @Override
+    public void reportCounter(Counter counter) {
+      write(slotFor(counterSlots, MappedMetricsLayout.KIND_COUNTER, counter.getName()), counter.getCount(), 0, 0);
+    }
+
+    @Override
+    public void reportTimer(Timer timer) {
+      int slot = slotFor(timerSlots, MappedMetricsLayout.KIND_TIMER, timer.getName());
+      write(slot, timer.getCount(), timer.getTimerSum(), timer.getTimerSumOfSquares());
+    }
+
+    @Override
+    public void reportStateValue(StateValueProvider stateValueProvider) {
+      int slot = slotFor(stateSlots, MappedMetricsLayout.KIND_STATE, stateValueProvider.getName());
+      write(slot, stateValueProvider.getValue(), 0, 0);
+    }
+
+    @Override
+    public void reportMultiValue(MultiValueProvider multiValueProvider) {
+      for (State state : multiValueProvider.getValues()) {
+        write(slotFor(stateSlots, MappedMetricsLayout.KIND_STATE, state.name), state.value, 0, 0);
+      }
+    }
+
+    @Override
+    public void reportHistogram(Histogram histogram) {
+    }
+
+    @Override
+    public void reportHistorizableList(HistorizableList historizableList) {
+    }
+
+    @Override
+    public void reportVersion(Version version) {
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package de.is24.util.monitoring.mapped;
+
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+
+/**
+ * Layout of the metrics file written by {@link MappedMetricsExporter} and read by {@link MappedMetricsReader}.
+ * All numbers are little endian.
+ *
+ * <pre>
+ * header      64 bytes, see the offsets below
+ * directory   DIRECTORY_SIZE bytes, one record per entry in slot order:
+ *             kind (1 byte), reserved (1 byte), name length (2 bytes), UTF-8 name
+ * slots       CAPACITY slots of 32 bytes, 8 byte aligned:
+ *             sequence, value 0, value 1, value 2 (8 bytes each)
+ * </pre>
+ *
+ * Entries are only appended. A directory record and its slot are complete before the entry count covering them is
+ * written. The writer makes the sequence of a slot odd before changing its values and even again afterwards, so a
+ * reader knows the values are consistent if it read the same even sequence before and after them.
+ *
+ * Plain accesses to a mapped buffer are not ordered by the Java memory model, so neither the compiler nor the CPU
+ * would have to keep the order above. The writer puts a store fence after making the sequence odd and before making
+ * it even, the reader a load fence after reading the sequence and before reading it again, see
+ * {@link MemoryFences}.
+ */
+final class MappedMetricsLayout {
+  static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+  static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /** "APM4" */
+  static final int MAGIC = 0x344d5041;
+  static final int VERSION = 1;
+
+  static final int MAGIC_OFFSET = 0;
+  static final int VERSION_OFFSET = 4;
+  static final int CAPACITY_OFFSET = 8;
+  static final int DIRECTORY_SIZE_OFFSET = 12;
+  static final int ENTRY_COUNT_OFFSET = 16;
+  static final int DIRECTORY_USED_OFFSET = 20;
+  static final int DROPPED_OFFSET = 24;
+  static final int START_TIME_OFFSET = 32;
+  static final int LAST_UPDATE_OFFSET = 40;
+  static final int HEADER_SIZE = 64;
+
+  static final int RECORD_HEADER_SIZE = 4;
+  static final int MAX_NAME_LENGTH = Short.MAX_VALUE;
+
+  static final int SLOT_SIZE = 32;
+  static final int VALUES = 3;
+
+  static final byte KIND_COUNTER = 1;
+  static final byte KIND_TIMER = 2;
+  static final byte KIND_STATE = 3;
+
+  private MappedMetricsLayout() {
+  }
+
+  static int slotsOffset(int directorySize) {
+    return (HEADER_SIZE + directorySize + 7) & ~7;
+  }
+
+  static int fileSize(int capacity, int directorySize) {
+    return slotsOffset(directorySize) + (capacity * SLOT_SIZE);
+  }
+}
@@ -0,0 +1,206 @@
+package de.is24.util.monitoring.mapped;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Reads a metrics file written by {@link MappedMetricsExporter}, usually from another process. Reading needs no
+ * cooperation of the application, the values are read from shared memory only.
+ *
+ * Call {@link #refresh()} to pick up metrics added since the last call. Instances are not thread safe.
+ *
+ * Run as command line tool with the file and an optional interval in seconds to print all metrics once or
+ * repeatedly.
+ */
+public final class MappedMetricsReader {
+  public enum Kind {
+    COUNTER,
+    TIMER,
+    STATE
+  }
+
+  private static final int MAX_ATTEMPTS = 1000;
+
+  private final RandomAccessFile randomAccessFile;
+  private final MappedByteBuffer buffer;
+  private final int capacity;
+  private final int slotsOffset;
+  private final List<String> names = new ArrayList<String>();
+  private final List<Kind> kinds = new ArrayList<Kind>();
+  private int directoryPosition = MappedMetricsLayout.HEADER_SIZE;
+
+  public MappedMetricsReader(File file) throws IOException {
+    randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      long length = randomAccessFile.length();
+      if (length < MappedMetricsLayout.HEADER_SIZE) {
+        throw new IOException(file + " is not an appmon4j metrics file");
+      }
+      buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+      buffer.order(MappedMetricsLayout.BYTE_ORDER);
+      if (buffer.getInt(MappedMetricsLayout.MAGIC_OFFSET) != MappedMetricsLayout.MAGIC) {
+        throw new IOException(file + " is not an appmon4j metrics file");
+      }
+
+      int version = buffer.getInt(MappedMetricsLayout.VERSION_OFFSET);
+      if (version != MappedMetricsLayout.VERSION) {
+        throw new IOException(file + " has unsupported version " + version);
+      }
+      capacity = buffer.getInt(MappedMetricsLayout.CAPACITY_OFFSET);
+      int directorySize = buffer.getInt(MappedMetricsLayout.DIRECTORY_SIZE_OFFSET);
+      slotsOffset = MappedMetricsLayout.slotsOffset(directorySize);
+      if (MappedMetricsLayout.fileSize(capacity, directorySize) > length) {
+        throw new IOException(file + " is truncated");
+      }
+    } catch (IOException e) {
+      randomAccessFile.close();
+      throw e;
+    }
+    refresh();
+  }
+
+  /**
+   * Reads the names of metrics added since the last call.
+   *
+   * @return the number of metrics
+   */
+  public int refresh() {
+    int entryCount = buffer.getInt(MappedMetricsLayout.ENTRY_COUNT_OFFSET);
+    MemoryFences.loadFence();
+    while (names.size() < entryCount) {
+      int length = buffer.getShort(directoryPosition + 2) & 0xffff;
+      byte[] bytes = new byte[length];
+      for (int i = 0; i < length; i++) {
+        bytes[i] = buffer.get(directoryPosition + MappedMetricsLayout.RECORD_HEADER_SIZE + i);
+      }
+      kinds.add(Kind.values()[buffer.get(directoryPosition) - 1]);
+      names.add(new String(bytes, MappedMetricsLayout.UTF_8));
+      directoryPosition += MappedMetricsLayout.RECORD_HEADER_SIZE + length;
+    }
+    return names.size();
+  }
+
+  public int size() {
+    return names.size();
+  }
+
+  public String getName(int index) {
+    return names.get(index);
+  }
+
+  public Kind getKind(int index) {
+    return kinds.get(index);
+  }
+
+  /**
+   * Reads consistent values of a metric: the count of a counter, count, sum and sum of squares of a timer, the
+   * value of a state. Unused values are 0. See {@link MappedMetricsLayout} for the ordering this relies on.
+   *
+   * @param values array of at least 3 elements receiving the values
+   * @return false if the values kept changing while reading them
+   */
+  public boolean read(int index, long[] values) {
+    if ((index < 0) || (index >= names.size())) {
+      throw new IndexOutOfBoundsException("no metric " + index);
+    }
+
+    int position = slotsOffset + (index * MappedMetricsLayout.SLOT_SIZE);
+    for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+      long sequence = buffer.getLong(position);
+      MemoryFences.loadFence();
+      if ((sequence & 1) == 0) {
+        for (int i = 0; i < MappedMetricsLayout.VALUES; i++) {
+          values[i] = buffer.getLong(position + 8 + (8 * i));
+        }
+        MemoryFences.loadFence();
+        if (buffer.getLong(position) == sequence) {
+          return true;
+        }
+      }
+      Thread.yield();
+    }
+    return false;
+  }
+
+  /**
+   * @return time in milliseconds the values were last copied into the file
+   */
+  public long getLastUpdate() {
+    return buffer.getLong(MappedMetricsLayout.LAST_UPDATE_OFFSET);
+  }
+
+  public long getStartTime() {
+    return buffer.getLong(MappedMetricsLayout.START_TIME_OFFSET);
+  }
+
+  /**
+   * @return number of metrics not written because the file was full
+   */
+  public int getDropped() {
+    return buffer.getInt(MappedMetricsLayout.DROPPED_OFFSET);
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public void close() throws IOException {
+    randomAccessFile.close();
+  }
+
+  /**
+   * Prints one line per metric: kind, name and values.
+   */
+  public void print(PrintStream out) {
+    refresh();
+
+    long[] values = new long[MappedMetricsLayout.VALUES];
+    for (int i = 0; i < names.size(); i++) {
+      if (!read(i, values)) {
+        continue;
+      }
+
+      Kind kind = kinds.get(i);
+      out.print(kind.name().toLowerCase());
+      out.print(' ');
+      out.print(names.get(i));
+      out.print(' ');
+      out.print(values[0]);
+      if (kind == Kind.TIMER) {
+        out.print(' ');
+        out.print(values[1]);
+        out.print(' ');
+        out.print(values[2]);
+      }
+      out.println();
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    if ((args.length < 1) || (args.length > 2)) {
+      System.err.println("usage: " + MappedMetricsReader.class.getName() + " <metrics file> [interval seconds]");
+      System.exit(2);
+    }
+
+    MappedMetricsReader reader = new MappedMetricsReader(new File(args[0]));
+    try {
+      long intervalMillis = (args.length == 2) ? (Long.parseLong(args[1]) * 1000) : 0;
+      do {
+        reader.print(System.out);
+        if (intervalMillis > 0) {
+          System.out.println();
+          Thread.sleep(intervalMillis);
+        }
+      } while (intervalMillis > 0);
+    } finally {
+      reader.close();
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package de.is24.util.monitoring.mapped;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+
+/**
+ * Orders the plain accesses to the metrics file around the sequence of a slot, see {@link MappedMetricsLayout}.
+ *
+ * Uses the fences of sun.misc.Unsafe where available (Java 8 and later). Otherwise falls back to a write or read of
+ * a volatile field, which HotSpot does not reorder other memory accesses across.
+ */
+final class MemoryFences {
+  private static final Object UNSAFE;
+  private static final Method STORE_FENCE;
+  private static final Method LOAD_FENCE;
+
+  private static volatile int fallback;
+
+  static {
+    Object unsafe = null;
+    Method storeFence = null;
+    Method loadFence = null;
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      unsafe = field.get(null);
+      storeFence = unsafeClass.getMethod("storeFence");
+      loadFence = unsafeClass.getMethod("loadFence");
+    } catch (Exception e) {
+      unsafe = null;
+      storeFence = null;
+      loadFence = null;
+    }
+    UNSAFE = unsafe;
+    STORE_FENCE = storeFence;
+    LOAD_FENCE = loadFence;
+  }
+
+  private MemoryFences() {
+  }
+
+  /**
+   * Stores and loads before the fence are not reordered with stores after it.
+   */
+  static void storeFence() {
+    if (!invoke(STORE_FENCE)) {
+      fallback = 0;
+    }
+  }
+
+  /**
+   * Loads before the fence are not reordered with loads and stores after it.
+   */
+  static void loadFence() {
+    if (!invoke(LOAD_FENCE)) {
+      int ignored = fallback;
+    }
+  }
+
+  private static boolean invoke(Method fence) {
+    if (fence == null) {
+      return false;
+    }
+    try {
+      fence.invoke(UNSAFE);
+      return true;
+    } catch (Exception e) {
+      return false;
+    }
+  }
+}
@@ -1,12 +1,51 @@
 package de.is24.util.monitoring.measurement;
 
 import de.is24.util.monitoring.InApplicationMonitor;
-import de.is24.util.monitoring.SimpleHistorizable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 
+/**
+ * Captures measurements above a threshold as {@link SlowEvent}s, which format their message only when read.
+ *
+ * Events are added to the Historizable list named like the threshold, rate limited by a token bucket per monitor
+ * name, so an incident does not flood the list with events that are dropped right away. The number of monitor
+ * names with a bucket of their own is bounded, names beyond the bound share a single bucket. Independent of the
+ * rate limit, the slowest events of each time window are kept as exemplars, optionally with the stack of the
+ * measuring thread. When a window has passed, its exemplars are added slowest first to the Historizable list named
+ * like the threshold with the suffix {@value #EXEMPLARS_SUFFIX}, either by the next event above the threshold or
+ * when that list is read.
+ */
 public class AboveThresholdHistorizableHandler implements MeasurementHandler {
+  public static final String EXEMPLARS_SUFFIX = ".slowest";
+
+  private static final long NANOS_PER_SECOND = 1000000000L;
+  private static final int DEFAULT_MAX_BUCKETS = 1000;
+
   private String thresholdName;
   private long threshold;
+  private volatile long intervalNanos = NANOS_PER_SECOND;
+  private volatile int burst = 5;
+  private volatile int exemplars = 5;
+  private volatile long windowMillis = 60000;
+  private volatile boolean captureStackTraces;
+  private volatile int maxBuckets = DEFAULT_MAX_BUCKETS;
+  private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<String, TokenBucket>();
+  private final TokenBucket overflowBucket = new TokenBucket(System.nanoTime());
+  private final AtomicLong nextPurge = new AtomicLong(System.nanoTime());
+  private final AtomicReference<SlowEventExemplars> window = new AtomicReference<SlowEventExemplars>();
+  private final Runnable flushExpiredWindow = new Runnable() {
+    @Override
+    public void run() {
+      flushExpiredWindow(System.currentTimeMillis());
+    }
+  };
 
   public AboveThresholdHistorizableHandler(String thresholdName, long threshold) {
     if ((thresholdName == null) || (thresholdName.trim().length() == 0)) {
@@ -19,12 +58,200 @@ public class AboveThresholdHistorizableHandler implements MeasurementHandler {
     this.threshold = threshold;
   }
 
+  /**
+   * @param eventsPerSecond number of events per monitor name added to the Historizable list per second in the
+   *                        long run, default is 1
+   */
+  public void setEventsPerSecond(double eventsPerSecond) {
+    if (!(eventsPerSecond > 0)) {
+      throw new IllegalArgumentException("events per second must be positive");
+    }
+    intervalNanos = java.lang.Math.max(1, (long) (NANOS_PER_SECOND / eventsPerSecond));
+  }
+
+  /**
+   * @param burst number of events per monitor name added to the Historizable list at once, default is 5
+   */
+  public void setBurst(int burst) {
+    if (burst < 1) {
+      throw new IllegalArgumentException("burst must be positive");
+    }
+    this.burst = burst;
+  }
+
+  /**
+   * @param maxBuckets number of monitor names rate limited independently, further names share one rate limit,
+   *                   default is 1000
+   */
+  public void setMaxBuckets(int maxBuckets) {
+    if (maxBuckets < 0) {
+      throw new IllegalArgumentException("max buckets must not be negative");
+    }
+    this.maxBuckets = maxBuckets;
+  }
+
+  /**
+   * @param exemplars number of slowest events kept per window, 0 disables exemplars, default is 5.
+   *                  Applies from the next window on, the first window starts with the first slow event.
+   */
+  public void setExemplars(int exemplars) {
+    if (exemplars < 0) {
+      throw new IllegalArgumentException("exemplars must not be negative");
+    }
+    this.exemplars = exemplars;
+  }
+
+  /**
+   * @param windowMillis length of the windows exemplars are collected for, default is one minute
+   */
+  public void setWindowMillis(long windowMillis) {
+    if (windowMillis <= 0) {
+      throw new IllegalArgumentException("window must be positive");
+    }
+    this.windowMillis = windowMillis;
+  }
+
+  /**
+   * @param captureStackTraces true to keep the stack of the measuring thread with each exemplar, default is false
+   */
+  public void setCaptureStackTraces(boolean captureStackTraces) {
+    this.captureStackTraces = captureStackTraces;
+  }
+
+  /**
+   * @return the slowest events of the current window, slowest first
+   */
+  public List<SlowEvent> getExemplars() {
+    flushExpiredWindow(System.currentTimeMillis());
+
+    SlowEventExemplars current = window.get();
+    if (current == null) {
+      return Collections.emptyList();
+    }
+    return Collections.unmodifiableList(current.slowestFirst());
+  }
+
   @Override
   public void handle(String monitorName, long measurement) {
     if (measurement > threshold) {
-      InApplicationMonitor.getInstance().addHistorizable(new SimpleHistorizable(thresholdName,
-          "measurement of " + monitorName + " with " + measurement + " above threshold " + threshold));
+      handle(monitorName, measurement, System.currentTimeMillis(), System.nanoTime());
+    }
+  }
+
+  void handle(String monitorName, long measurement, long nowMillis, long nowNanos) {
+    if (measurement <= threshold) {
+      return;
+    }
+
+    SlowEventExemplars current = currentWindow(nowMillis);
+    boolean exemplar = current.qualifies(measurement);
+    boolean historized = bucket(monitorName, nowNanos).tryAcquire(nowNanos, intervalNanos, burst);
+    if (!exemplar && !historized) {
+      return;
+    }
+
+    Thread thread = Thread.currentThread();
+    StackTraceElement[] stackTrace = null;
+    if (exemplar && captureStackTraces) {
+      stackTrace = stackOfCaller(thread.getStackTrace());
+    }
+
+    SlowEvent event = new SlowEvent(thresholdName, monitorName, measurement, threshold, nowMillis,
+      thread.getName(), stackTrace);
+    if (exemplar) {
+      // the window may have been closed since it was looked up, its successor gets the event then
+      while (!current.offer(event)) {
+        current = currentWindow(nowMillis);
+      }
+    }
+    if (historized) {
+      InApplicationMonitor.getInstance().addHistorizable(event);
+    }
+  }
+
+  private SlowEventExemplars currentWindow(long nowMillis) {
+    SlowEventExemplars current = window.get();
+    if ((current != null) && ((nowMillis - current.getStart()) < windowMillis)) {
+      return current;
+    }
+
+    SlowEventExemplars next = new SlowEventExemplars(nowMillis, exemplars);
+    if (window.compareAndSet(current, next)) {
+      if (current != null) {
+        publish(current.close());
+      } else {
+        InApplicationMonitor.getInstance()
+        .setHistorizableListRefresher(thresholdName + EXEMPLARS_SUFFIX, flushExpiredWindow);
+      }
+      return next;
+    }
+    return currentWindow(nowMillis);
+  }
+
+  /**
+   * Publishes the exemplars of the current window if it has passed, so they do not wait for the next slow event.
+   */
+  void flushExpiredWindow(long nowMillis) {
+    SlowEventExemplars current = window.get();
+    if ((current != null) && ((nowMillis - current.getStart()) >= windowMillis) &&
+        window.compareAndSet(current, null)) {
+      publish(current.close());
     }
   }
 
+  private void publish(List<SlowEvent> slowestFirst) {
+    // the list reports the newest entry first
+    String name = thresholdName + EXEMPLARS_SUFFIX;
+    for (int i = slowestFirst.size() - 1; i >= 0; i--) {
+      InApplicationMonitor.getInstance().addHistorizable(slowestFirst.get(i).withName(name));
+    }
+  }
+
+  private TokenBucket bucket(String monitorName, long nowNanos) {
+    TokenBucket bucket = buckets.get(monitorName);
+    if (bucket == null) {
+      if ((buckets.size() >= maxBuckets) && !purgeIdleBuckets(nowNanos)) {
+        return overflowBucket;
+      }
+
+      TokenBucket created = new TokenBucket(nowNanos);
+      bucket = buckets.putIfAbsent(monitorName, created);
+      if (bucket == null) {
+        bucket = created;
+      }
+    }
+    return bucket;
+  }
+
+  /**
+   * Removes the buckets that are full again, a new bucket starts full anyway. Purges at most once per second.
+   *
+   * @return true if there is room for another bucket
+   */
+  private boolean purgeIdleBuckets(long nowNanos) {
+    long next = nextPurge.get();
+    if (((nowNanos - next) >= 0) && nextPurge.compareAndSet(next, nowNanos + NANOS_PER_SECOND)) {
+      for (Map.Entry<String, TokenBucket> entry : buckets.entrySet()) {
+        if (entry.getValue().isFull(nowNanos)) {
+          buckets.remove(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+    return buckets.size() < maxBuckets;
+  }
+
+  int getBucketCount() {
+    return buckets.size();
+  }
+
+  private static StackTraceElement[] stackOfCaller(StackTraceElement[] stackTrace) {
+    // skip Thread.getStackTrace and the handle methods
+    int skip = 0;
+    while ((skip < stackTrace.length) &&
+        (Thread.class.getName().equals(stackTrace[skip].getClassName()) ||
+          AboveThresholdHistorizableHandler.class.getName().equals(stackTrace[skip].getClassName()))) {
+      skip++;
+    }
+    return Arrays.copyOfRange(stackTrace, skip, stackTrace.length);
+  }
 }
@@ -0,0 +1,81 @@
+package de.is24.util.monitoring.measurement;
+
+import de.is24.util.monitoring.Historizable;
+import java.util.Date;
+
+
+/**
+ * A measurement above a threshold, captured by {@link AboveThresholdHistorizableHandler}. Only the raw values are
+ * kept, the message is formatted when the value is read.
+ */
+public final class SlowEvent implements Historizable {
+  private final String name;
+  private final String monitorName;
+  private final long measurement;
+  private final long threshold;
+  private final long timestamp;
+  private final String threadName;
+  private final StackTraceElement[] stackTrace;
+
+  SlowEvent(String name, String monitorName, long measurement, long threshold, long timestamp, String threadName,
+            StackTraceElement[] stackTrace) {
+    this.name = name;
+    this.monitorName = monitorName;
+    this.measurement = measurement;
+    this.threshold = threshold;
+    this.timestamp = timestamp;
+    this.threadName = threadName;
+    this.stackTrace = stackTrace;
+  }
+
+  /**
+   * @return this event reported under another name
+   */
+  SlowEvent withName(String otherName) {
+    return new SlowEvent(otherName, monitorName, measurement, threshold, timestamp, threadName, stackTrace);
+  }
+
+  public String getValue() {
+    StringBuilder value = new StringBuilder();
+    value.append("measurement of ").append(monitorName).append(" with ").append(measurement)
+    .append(" above threshold ").append(threshold).append(" in thread ").append(threadName);
+    if (stackTrace != null) {
+      for (StackTraceElement element : stackTrace) {
+        value.append("\n\tat ").append(element);
+      }
+    }
+    return value.toString();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Date getTimestamp() {
+    return new Date(timestamp);
+  }
+
+  public String getMonitorName() {
+    return monitorName;
+  }
+
+  public long getMeasurement() {
+    return measurement;
+  }
+
+  public String getThreadName() {
+    return threadName;
+  }
+
+  /**
+   * @return the stack of the measuring thread, null if not sampled
+   */
+  public StackTraceElement[] getStackTrace() {
+    return (stackTrace == null) ? null : stackTrace.clone();
+  }
+
+  @Override
+  public String toString() {
+    return "[" + getName() + "] " + getTimestamp() + " : " + getValue();
+  }
+}
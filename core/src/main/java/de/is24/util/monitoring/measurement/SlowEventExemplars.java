@@ -0,0 +1,100 @@
+package de.is24.util.monitoring.measurement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+
+/**
+ * The slowest events of a time window. Measurements not faster than the slowest ones kept so far are rejected by
+ * reading a single volatile field, so only events entering the top list pay for synchronization. Once closed, the
+ * window rejects further events, so none get lost while its exemplars are published.
+ */
+final class SlowEventExemplars {
+  private static final Comparator<SlowEvent> SLOWEST_FIRST = new Comparator<SlowEvent>() {
+    @Override
+    public int compare(SlowEvent first, SlowEvent second) {
+      long difference = second.getMeasurement() - first.getMeasurement();
+      return (difference < 0) ? -1 : ((difference == 0) ? 0 : 1);
+    }
+  };
+
+  private final long start;
+  private final SlowEvent[] slowest;
+  private int size;
+  private boolean closed;
+  private volatile long cutoff;
+
+  /**
+   * @param start time in milliseconds the window starts at
+   * @param capacity number of events to keep
+   */
+  SlowEventExemplars(long start, int capacity) {
+    this.start = start;
+    slowest = new SlowEvent[capacity];
+    cutoff = (capacity == 0) ? Long.MAX_VALUE : Long.MIN_VALUE;
+  }
+
+  long getStart() {
+    return start;
+  }
+
+  /**
+   * @return true if an event with the measurement would currently be kept
+   */
+  boolean qualifies(long measurement) {
+    return measurement > cutoff;
+  }
+
+  /**
+   * @return false if the window is closed and did not consider the event
+   */
+  synchronized boolean offer(SlowEvent event) {
+    if (closed) {
+      return false;
+    }
+    if (!qualifies(event.getMeasurement())) {
+      return true;
+    }
+    if (size < slowest.length) {
+      slowest[size++] = event;
+    } else {
+      slowest[indexOfFastest()] = event;
+    }
+    if (size == slowest.length) {
+      cutoff = slowest[indexOfFastest()].getMeasurement();
+    }
+    return true;
+  }
+
+  /**
+   * Rejects all further events.
+   *
+   * @return the events kept, slowest first
+   */
+  synchronized List<SlowEvent> close() {
+    closed = true;
+    return slowestFirst();
+  }
+
+  /**
+   * @return the events kept, slowest first
+   */
+  synchronized List<SlowEvent> slowestFirst() {
+    List<SlowEvent> events = new ArrayList<SlowEvent>(Arrays.asList(slowest).subList(0, size));
+    Collections.sort(events, SLOWEST_FIRST);
+    return events;
+  }
+
+  private int indexOfFastest() {
+    int fastest = 0;
+    for (int i = 1; i < size; i++) {
+      if (slowest[i].getMeasurement() < slowest[fastest].getMeasurement()) {
+        fastest = i;
+      }
+    }
+    return fastest;
+  }
+}
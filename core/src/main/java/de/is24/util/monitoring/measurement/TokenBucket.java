@@ -0,0 +1,47 @@
+package de.is24.util.monitoring.measurement;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A lock-free token bucket, kept as the time the next token becomes available. A permit is granted if that time
+ * is at most burst - 1 intervals in the future, granting moves it one interval further.
+ */
+final class TokenBucket {
+  private final AtomicLong nextFree;
+
+  /**
+   * @param now current {@link System#nanoTime()}, the bucket starts full
+   */
+  TokenBucket(long now) {
+    nextFree = new AtomicLong(now);
+  }
+
+  /**
+   * @param now current {@link System#nanoTime()}
+   * @param intervalNanos nanoseconds it takes to refill one token
+   * @param burst number of tokens the bucket holds
+   * @return true if a token was taken
+   */
+  boolean tryAcquire(long now, long intervalNanos, int burst) {
+    long tolerance = intervalNanos * (burst - 1);
+    while (true) {
+      long next = nextFree.get();
+      long base = ((next - now) < 0) ? now : next;
+      if ((base - now) > tolerance) {
+        return false;
+      }
+      if (nextFree.compareAndSet(next, base + intervalNanos)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * @param now current {@link System#nanoTime()}
+   * @return true if all tokens are refilled, so the bucket equals a new one
+   */
+  boolean isFull(long now) {
+    return (nextFree.get() - now) <= 0;
+  }
+}
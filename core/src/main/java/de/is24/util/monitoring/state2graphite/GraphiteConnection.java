@@ -1,66 +1,259 @@
 package de.is24.util.monitoring.state2graphite;
 
+import de.is24.util.monitoring.AbstractStateValueProvider;
+import de.is24.util.monitoring.CorePlugin;
 import de.is24.util.monitoring.tools.ConnectionState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
 
 
+/**
+ * Long lived connection to a graphite (carbon) server using the plaintext protocol.
+ *
+ * Each message passed to {@link #send(String)} is encoded once and appended to a bounded backlog, which is then
+ * written oldest first. If graphite is not reachable, the messages stay in the backlog and are replayed as soon
+ * as the connection recovers; if the backlog is full, the oldest message is dropped. Connect and write are bounded
+ * by timeouts, and reconnects are delayed by an exponential backoff, so a slow or unavailable graphite server
+ * does not block the calling thread for long.
+ */
 public class GraphiteConnection {
   private static final Logger LOGGER = LoggerFactory.getLogger(GraphiteConnection.class);
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  public static final String METRICS_PREFIX = "appmon4j.graphite.";
+  static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 2000;
+  static final int DEFAULT_WRITE_TIMEOUT_MILLIS = 5000;
+  static final int DEFAULT_MAX_BACKLOG_BATCHES = 60; // 10 minutes of state values
+  static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 1000;
+  private static final long MAX_BACKOFF_MILLIS = 5 * 60 * 1000;
+  private static final int SEND_BUFFER_SIZE = 64 * 1024;
+  private static long connectionFailureLogDelay = 10 * 60 * 1000; // 10 minutes in milliseconds
+
   private final String graphiteHost;
   private final int graphitePort;
+  private final int connectTimeoutMillis;
+  private final int writeTimeoutMillis;
+  private final int maxBacklogBatches;
+  private final long initialBackoffMillis;
+  private final ArrayDeque<ByteBuffer> backlog = new ArrayDeque<ByteBuffer>();
+  private final ByteBuffer readBuffer = ByteBuffer.allocate(256);
+  private SocketChannel channel;
+  private Selector selector;
+  private long backoffMillis;
+  private long nextConnectAttempt;
   private ConnectionState connectionState = ConnectionState.UNKNOWN;
   private long lastReportTimestamp = 0;
-  private static long connectionFailureLogDelay = 10 * 60 * 1000; // 10 minutes in milliseconds
+
+  private final AtomicLong bytesSent = new AtomicLong();
+  private final AtomicLong reconnects = new AtomicLong();
+  private final AtomicLong droppedBatches = new AtomicLong();
+  private volatile int backlogSize;
 
 
   public GraphiteConnection(String graphiteHost, int graphitePort) {
+    this(graphiteHost, graphitePort, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_WRITE_TIMEOUT_MILLIS,
+      DEFAULT_MAX_BACKLOG_BATCHES, DEFAULT_INITIAL_BACKOFF_MILLIS);
+  }
+
+  /**
+   * @param graphiteHost graphite host name
+   * @param graphitePort port of the plaintext protocol, usually 2003
+   * @param connectTimeoutMillis maximum time to wait for a connection
+   * @param writeTimeoutMillis maximum time to wait for graphite to accept the data of one call to {@link #send(String)}
+   * @param maxBacklogBatches maximum number of messages kept while graphite is not reachable
+   * @param initialBackoffMillis time to wait before the first reconnect, doubled with each failed attempt
+   */
+  GraphiteConnection(String graphiteHost, int graphitePort, int connectTimeoutMillis, int writeTimeoutMillis,
+                     int maxBacklogBatches, long initialBackoffMillis) {
+    if (maxBacklogBatches < 1) {
+      throw new IllegalArgumentException("maxBacklogBatches must be positive");
+    }
     this.graphiteHost = graphiteHost;
     this.graphitePort = graphitePort;
+    this.connectTimeoutMillis = connectTimeoutMillis;
+    this.writeTimeoutMillis = writeTimeoutMillis;
+    this.maxBacklogBatches = maxBacklogBatches;
+    this.initialBackoffMillis = initialBackoffMillis;
+    this.backoffMillis = initialBackoffMillis;
   }
 
   /**
-   * Part of this code taken from http://neopatel.blogspot.de/2011/04/logging-to-graphite-monitoring-tool.html
+   * Registers state values for the number of bytes sent, reconnects, dropped messages and the current backlog.
+   *
+   * @param corePlugin the plugin to register the state values at
    */
-  public void send(String msg) {
+  public void registerStateValues(CorePlugin corePlugin) {
+    corePlugin.registerStateValue(new AbstractStateValueProvider(METRICS_PREFIX + "bytesSent") {
+        @Override
+        public long getValue() {
+          return getBytesSent();
+        }
+      });
+    corePlugin.registerStateValue(new AbstractStateValueProvider(METRICS_PREFIX + "reconnects") {
+        @Override
+        public long getValue() {
+          return getReconnects();
+        }
+      });
+    corePlugin.registerStateValue(new AbstractStateValueProvider(METRICS_PREFIX + "droppedBatches") {
+        @Override
+        public long getValue() {
+          return getDroppedBatches();
+        }
+      });
+    corePlugin.registerStateValue(new AbstractStateValueProvider(METRICS_PREFIX + "backlogBatches") {
+        @Override
+        public long getValue() {
+          return getBacklogBatches();
+        }
+      });
+  }
+
+  /**
+   * Queues the message and sends it, together with all messages still in the backlog, if graphite is reachable.
+   *
+   * @param msg lines in the graphite plaintext format
+   */
+  public synchronized void send(String msg) {
+    if (backlog.size() >= maxBacklogBatches) {
+      backlog.pollFirst();
+      droppedBatches.incrementAndGet();
+    }
+    backlog.addLast(UTF_8.encode(msg));
     try {
-      Socket socket = new Socket(graphiteHost, graphitePort);
+      drainBacklog();
+    } finally {
+      backlogSize = backlog.size();
+    }
+  }
 
-      try {
-        Writer writer = new OutputStreamWriter(socket.getOutputStream());
-        try {
-          writer.write(msg);
-          writer.flush();
-        } finally {
-          try {
-            writer.close();
-          } catch (IOException ioe) {
-            //ignore, we want to see the outer exception if any
-            LOGGER.info("could not close writer");
-          }
-        }
-        if (connectionState != ConnectionState.SUCCESS) {
-          LOGGER.info("Connection to graphite Host {}",
-            ((connectionState == ConnectionState.UNKNOWN) ? "established" : "recovered"));
-          connectionState = ConnectionState.SUCCESS;
+  private void drainBacklog() {
+    if (!ensureConnected()) {
+      return;
+    }
+
+    try {
+      while (!backlog.isEmpty()) {
+        ByteBuffer payload = backlog.peekFirst();
+        int length = payload.remaining();
+        write(payload);
+        backlog.pollFirst();
+        bytesSent.addAndGet(length);
+      }
+      if (connectionState != ConnectionState.SUCCESS) {
+        LOGGER.info("Connection to graphite Host {}",
+          ((connectionState == ConnectionState.UNKNOWN) ? "established" : "recovered"));
+        connectionState = ConnectionState.SUCCESS;
+      }
+    } catch (IOException e) {
+      // a partially written payload is written again as a whole, graphite keeps the last value per timestamp
+      ByteBuffer payload = backlog.peekFirst();
+      if (payload != null) {
+        payload.rewind();
+      }
+      handleException(e, "write");
+      disconnect();
+      scheduleReconnect();
+    }
+  }
+
+  private boolean ensureConnected() {
+    if ((channel != null) && !peerClosed()) {
+      return true;
+    }
+    disconnect();
+    if (System.currentTimeMillis() < nextConnectAttempt) {
+      return false;
+    }
+
+    try {
+      if (connectionState != ConnectionState.UNKNOWN) {
+        reconnects.incrementAndGet();
+      }
+      channel = SocketChannel.open();
+      channel.socket().setTcpNoDelay(true);
+      channel.socket().setKeepAlive(true);
+      channel.socket().setSendBufferSize(SEND_BUFFER_SIZE);
+      channel.socket().connect(new InetSocketAddress(graphiteHost, graphitePort), connectTimeoutMillis);
+      channel.configureBlocking(false);
+      selector = Selector.open();
+      channel.register(selector, SelectionKey.OP_WRITE);
+      backoffMillis = initialBackoffMillis;
+      return true;
+    } catch (IOException e) {
+      handleException(e, "connect");
+      disconnect();
+      scheduleReconnect();
+      return false;
+    }
+  }
+
+  /**
+   * graphite never sends data, so a readable connection was closed by the server.
+   */
+  private boolean peerClosed() {
+    try {
+      readBuffer.clear();
+      return channel.read(readBuffer) < 0;
+    } catch (IOException e) {
+      return true;
+    }
+  }
+
+  private void write(ByteBuffer payload) throws IOException {
+    long deadline = System.currentTimeMillis() + writeTimeoutMillis;
+    while (payload.hasRemaining()) {
+      if (channel.write(payload) == 0) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          throw new SocketTimeoutException("write timed out after " + writeTimeoutMillis + " ms");
         }
+        selector.select(remaining);
+        selector.selectedKeys().clear();
+      }
+    }
+  }
+
+  private void scheduleReconnect() {
+    nextConnectAttempt = System.currentTimeMillis() + backoffMillis;
+    backoffMillis = Math.min(Math.max(backoffMillis * 2, 1), MAX_BACKOFF_MILLIS);
+  }
 
+  private void disconnect() {
+    if (selector != null) {
+      try {
+        selector.close();
       } catch (IOException e) {
-        String action = "write";
-        handleException(e, action);
-      } finally {
-        socket.close();
+        LOGGER.info("could not close selector");
       }
-    } catch (IOException e) {
-      String action = "connect";
-      handleException(e, action);
+      selector = null;
+    }
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        LOGGER.info("could not close connection");
+      }
+      channel = null;
     }
   }
 
+  /**
+   * Closes the connection, messages still in the backlog are discarded.
+   */
+  public synchronized void close() {
+    disconnect();
+  }
+
   private void handleException(IOException e, String action) {
     // we log on state transition and every 10 minutes
     if (connectionState != ConnectionState.FAILED) {
@@ -74,6 +267,22 @@ public class GraphiteConnection {
     }
   }
 
+  public long getBytesSent() {
+    return bytesSent.get();
+  }
+
+  public long getReconnects() {
+    return reconnects.get();
+  }
+
+  public long getDroppedBatches() {
+    return droppedBatches.get();
+  }
+
+  public int getBacklogBatches() {
+    return backlogSize;
+  }
+
   @Override
   public String toString() {
     return "GraphiteConection:" + graphiteHost + "," + graphitePort;
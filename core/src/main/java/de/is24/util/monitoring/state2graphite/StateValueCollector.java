@@ -0,0 +1,294 @@
+package de.is24.util.monitoring.state2graphite;
+
+import de.is24.util.monitoring.AbstractStateValueProvider;
+import de.is24.util.monitoring.CorePlugin;
+import de.is24.util.monitoring.InApplicationMonitor;
+import de.is24.util.monitoring.MultiValueProvider;
+import de.is24.util.monitoring.Reportable;
+import de.is24.util.monitoring.State;
+import de.is24.util.monitoring.StateValueProvider;
+import de.is24.util.monitoring.TimerHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Reads the values of {@link StateValueProvider}s and {@link MultiValueProvider}s for {@link StateValuesToGraphite}
+ * concurrently on a small pool of daemon threads.
+ *
+ * A collection waits at most for the configured timeout; the lines of providers not done by then are left out and
+ * the provider is counted as timed out. A provider timing out {@value #MAX_CONSECUTIVE_TIMEOUTS} times in a row is
+ * skipped for the next {@value #SKIPPED_COLLECTIONS} collections, as is a provider whose last invocation is still
+ * running. The time needed to read each provider is recorded as timer
+ * {@value #METRICS_PREFIX}latency.&lt;provider name&gt;.
+ */
+class StateValueCollector {
+  private static final Logger LOGGER = LoggerFactory.getLogger(StateValueCollector.class);
+  static final String METRICS_PREFIX = "appmon4j.stateValueCollection.";
+  static final int DEFAULT_POOL_SIZE = 4;
+  static final long DEFAULT_TIMEOUT_MILLIS = 2000;
+  static final int MAX_CONSECUTIVE_TIMEOUTS = 3;
+  static final int SKIPPED_COLLECTIONS = 6;
+
+  private final ExecutorService executor;
+  private final long timeoutNanos;
+  private final ConcurrentMap<String, ProviderStatus> statuses = new ConcurrentHashMap<String, ProviderStatus>();
+  private final AtomicLong timeouts = new AtomicLong();
+  private final AtomicLong skipped = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+
+  /**
+   * @param poolSize number of threads reading providers concurrently
+   * @param timeoutMillis maximum time a collection waits for the providers
+   */
+  StateValueCollector(int poolSize, long timeoutMillis) {
+    if (timeoutMillis <= 0) {
+      throw new IllegalArgumentException("timeout must be positive");
+    }
+    this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    this.executor = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+          private final AtomicInteger threadNumber = new AtomicInteger();
+
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "appmon4j-state-collector-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+  }
+
+  void registerStateValues(CorePlugin corePlugin) {
+    corePlugin.registerStateValue(new AbstractStateValueProvider(METRICS_PREFIX + "timeouts") {
+        @Override
+        public long getValue() {
+          return getTimeouts();
+        }
+      });
+    corePlugin.registerStateValue(new AbstractStateValueProvider(METRICS_PREFIX + "skipped") {
+        @Override
+        public long getValue() {
+          return getSkipped();
+        }
+      });
+    corePlugin.registerStateValue(new AbstractStateValueProvider(METRICS_PREFIX + "failures") {
+        @Override
+        public long getValue() {
+          return getFailures();
+        }
+      });
+  }
+
+  /**
+   * @param keyPrefix prefix of all graphite keys
+   * @param timestampInSec timestamp used for all lines
+   * @param stateValues the state values to read
+   * @param multiValueProviders the multi value providers to read
+   * @return graphite lines of all providers that were read in time, in the order of the given providers
+   */
+  String collect(String keyPrefix, long timestampInSec, Collection<StateValueProvider> stateValues,
+                 Collection<MultiValueProvider> multiValueProviders) {
+    long deadline = System.nanoTime() + timeoutNanos;
+    List<PendingCollection> pending = new ArrayList<PendingCollection>();
+    for (StateValueProvider stateValueProvider : stateValues) {
+      submit(new StateValueTask(stateValueProvider, keyPrefix, timestampInSec), pending);
+    }
+    for (MultiValueProvider multiValueProvider : multiValueProviders) {
+      submit(new MultiValueTask(multiValueProvider, keyPrefix, timestampInSec), pending);
+    }
+
+    StringBuilder lines = new StringBuilder();
+    for (PendingCollection collection : pending) {
+      try {
+        lines.append(collection.future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+        collection.status.consecutiveTimeouts = 0;
+      } catch (TimeoutException e) {
+        collection.future.cancel(true);
+        handleTimeout(collection);
+      } catch (ExecutionException e) {
+        collection.status.consecutiveTimeouts = 0;
+        failures.incrementAndGet();
+        LOGGER.warn("getting StateValue failed for {}", collection.status.name);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        collection.future.cancel(true);
+      }
+    }
+    return lines.toString();
+  }
+
+  private void submit(CollectionTask task, List<PendingCollection> pending) {
+    ProviderStatus status = getStatus(task.provider.getName());
+    if (status.collectionsToSkip > 0) {
+      status.collectionsToSkip--;
+      skipped.incrementAndGet();
+      return;
+    }
+    if (status.running.get()) {
+      LOGGER.debug("skipping {}, last collection is still running", status.name);
+      skipped.incrementAndGet();
+      return;
+    }
+    task.status = status;
+    pending.add(new PendingCollection(status, executor.submit(task)));
+  }
+
+  private void handleTimeout(PendingCollection collection) {
+    ProviderStatus status = collection.status;
+    timeouts.incrementAndGet();
+    status.consecutiveTimeouts++;
+    if (status.consecutiveTimeouts >= MAX_CONSECUTIVE_TIMEOUTS) {
+      LOGGER.warn("getting StateValue timed out {} times in a row for {}, skipping it for the next {} collections",
+        new Object[] { status.consecutiveTimeouts, status.name, SKIPPED_COLLECTIONS });
+      status.consecutiveTimeouts = 0;
+      status.collectionsToSkip = SKIPPED_COLLECTIONS;
+    }
+  }
+
+  private ProviderStatus getStatus(String name) {
+    ProviderStatus status = statuses.get(name);
+    if (status == null) {
+      ProviderStatus newStatus = new ProviderStatus(name);
+      status = statuses.putIfAbsent(name, newStatus);
+      if (status == null) {
+        status = newStatus;
+      }
+    }
+    return status;
+  }
+
+  long getTimeouts() {
+    return timeouts.get();
+  }
+
+  long getSkipped() {
+    return skipped.get();
+  }
+
+  long getFailures() {
+    return failures.get();
+  }
+
+  void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Collection state of a provider, only modified by the thread calling {@link #collect}, except the running flag.
+   */
+  private static final class ProviderStatus {
+    private final String name;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final TimerHandle latency;
+    private int consecutiveTimeouts;
+    private int collectionsToSkip;
+
+    private ProviderStatus(String name) {
+      this.name = name;
+      this.latency = InApplicationMonitor.getInstance().timer(METRICS_PREFIX + "latency." + name);
+    }
+  }
+
+  private static final class PendingCollection {
+    private final ProviderStatus status;
+    private final Future<String> future;
+
+    private PendingCollection(ProviderStatus status, Future<String> future) {
+      this.status = status;
+      this.future = future;
+    }
+  }
+
+  private abstract static class CollectionTask implements Callable<String> {
+    private final Reportable provider;
+    final String keyPrefix;
+    final long timestampInSec;
+    private ProviderStatus status;
+
+    CollectionTask(Reportable provider, String keyPrefix, long timestampInSec) {
+      this.provider = provider;
+      this.keyPrefix = keyPrefix;
+      this.timestampInSec = timestampInSec;
+    }
+
+    @Override
+    public String call() throws Exception {
+      // a task cancelled before it started is never called, so the flag is only set while a provider is read
+      status.running.set(true);
+      long start = System.currentTimeMillis();
+      try {
+        StringBuilder lines = new StringBuilder();
+        appendLines(lines);
+        return lines.toString();
+      } finally {
+        status.latency.addMeasurement(System.currentTimeMillis() - start);
+        status.running.set(false);
+      }
+    }
+
+    abstract void appendLines(StringBuilder lines);
+  }
+
+  private static final class StateValueTask extends CollectionTask {
+    private final StateValueProvider stateValueProvider;
+
+    private StateValueTask(StateValueProvider stateValueProvider, String keyPrefix, long timestampInSec) {
+      super(stateValueProvider, keyPrefix, timestampInSec);
+      this.stateValueProvider = stateValueProvider;
+    }
+
+    @Override
+    void appendLines(StringBuilder lines) {
+      lines.append(keyPrefix)
+      .append(".")
+      .append(stateValueProvider.getName())
+      .append(" ")
+      .append(stateValueProvider.getValue())
+      .append(" ")
+      .append(timestampInSec)
+      .append("\n");
+    }
+  }
+
+  private static final class MultiValueTask extends CollectionTask {
+    private final MultiValueProvider multiValueProvider;
+
+    private MultiValueTask(MultiValueProvider multiValueProvider, String keyPrefix, long timestampInSec) {
+      super(multiValueProvider, keyPrefix, timestampInSec);
+      this.multiValueProvider = multiValueProvider;
+    }
+
+    @Override
+    void appendLines(StringBuilder lines) {
+      Collection<State> values = multiValueProvider.getValues();
+      for (State state : values) {
+        lines.append(keyPrefix)
+        .append(".")
+        .append(multiValueProvider.getName())
+        .append(".")
+        .append(state.name)
+        .append(" ")
+        .append(state.value)
+        .append(" ")
+        .append(timestampInSec)
+        .append("\n");
+      }
+    }
+  }
+}
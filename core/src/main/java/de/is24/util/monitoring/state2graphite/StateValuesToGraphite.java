@@ -4,13 +4,11 @@ import de.is24.util.monitoring.InApplicationMonitor;
 import de.is24.util.monitoring.MultiValueProvider;
 import de.is24.util.monitoring.Reportable;
 import de.is24.util.monitoring.ReportableObserver;
-import de.is24.util.monitoring.State;
 import de.is24.util.monitoring.StateValueProvider;
 import de.is24.util.monitoring.keyhandler.KeyDefinitionExpander;
 import de.is24.util.monitoring.tools.LocalHostNameResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
@@ -24,6 +22,7 @@ public class StateValuesToGraphite implements ReportableObserver {
   private Map<String, StateValueProvider> stateValues;
   private Map<String, MultiValueProvider> multiValueProviders;
   private GraphiteConnection graphiteClient;
+  private StateValueCollector collector;
 
   public StateValuesToGraphite(String graphiteHost, int graphitePort, String appName) {
     this(appName, new LocalHostNameResolver(), new GraphiteConnection(graphiteHost, graphitePort));
@@ -32,11 +31,20 @@ public class StateValuesToGraphite implements ReportableObserver {
 
   StateValuesToGraphite(String appName, LocalHostNameResolver localHostNameResolver,
                         GraphiteConnection graphiteClient) {
+    this(appName, localHostNameResolver, graphiteClient,
+      new StateValueCollector(StateValueCollector.DEFAULT_POOL_SIZE, StateValueCollector.DEFAULT_TIMEOUT_MILLIS));
+  }
+
+  StateValuesToGraphite(String appName, LocalHostNameResolver localHostNameResolver,
+                        GraphiteConnection graphiteClient, StateValueCollector collector) {
     this.graphiteClient = graphiteClient;
+    this.collector = collector;
 
     String keyPrefix = KeyDefinitionExpander.preparePrefix(appName, localHostNameResolver);
     stateValues = new ConcurrentHashMap<String, StateValueProvider>();
     multiValueProviders = new ConcurrentHashMap<String, MultiValueProvider>();
+    graphiteClient.registerStateValues(InApplicationMonitor.getInstance().getCorePlugin());
+    collector.registerStateValues(InApplicationMonitor.getInstance().getCorePlugin());
     InApplicationMonitor.getInstance().getCorePlugin().addReportableObserver(this);
     ex = Executors.newSingleThreadScheduledExecutor();
     ex.scheduleAtFixedRate(new ReportStateValuesJob(graphiteClient, keyPrefix), 1, 10, TimeUnit.SECONDS);
@@ -59,6 +67,8 @@ public class StateValuesToGraphite implements ReportableObserver {
   public void shutdown() {
     InApplicationMonitor.getInstance().getCorePlugin().removeReportableObserver(this);
     ex.shutdown();
+    collector.shutdown();
+    graphiteClient.close();
   }
 
   private class ReportStateValuesJob implements Runnable {
@@ -74,56 +84,11 @@ public class StateValuesToGraphite implements ReportableObserver {
     public void run() {
       LOGGER.debug("writing {} state values to graphite", stateValues.size());
 
-      Long curTimeInSec = System.currentTimeMillis() / 1000;
-      StringBuilder lines = new StringBuilder();
-
-      addStateValues(curTimeInSec, lines);
-      addMultiStates(curTimeInSec, lines);
-      graphiteClient.send(lines.toString());
+      // all values of one run get the same timestamp, taken before any provider is read
+      long curTimeInSec = System.currentTimeMillis() / 1000;
+      graphiteClient.send(collector.collect(keyPrefix, curTimeInSec, stateValues.values(),
+          multiValueProviders.values()));
     }
-
-    private void addStateValues(Long curTimeInSec, StringBuilder lines) {
-      for (StateValueProvider stateValueProvider : stateValues.values()) {
-        try {
-          StringBuilder line = new StringBuilder();
-          line.append(keyPrefix)
-          .append(".")
-          .append(stateValueProvider.getName())
-          .append(" ")
-          .append(stateValueProvider.getValue())
-          .append(" ")
-          .append(curTimeInSec)
-          .append("\n");
-
-          // only add complete lines if getValue throws Exception
-          lines.append(line.toString());
-        } catch (Exception e) {
-          LOGGER.warn("getting StateValue failed for {}", stateValueProvider.getName());
-        }
-      }
-    }
-
-    private void addMultiStates(Long curTimeInSec, StringBuilder lines) {
-      for (MultiValueProvider multiValueProvider : multiValueProviders.values()) {
-        Collection<State> values = multiValueProvider.getValues();
-        for (State state : values) {
-          StringBuilder line = new StringBuilder();
-          line.append(keyPrefix)
-          .append(".")
-          .append(multiValueProvider.getName())
-          .append(".")
-          .append(state.name)
-          .append(" ")
-          .append(state.value)
-          .append(" ")
-          .append(curTimeInSec)
-          .append("\n");
-
-          lines.append(line.toString());
-        }
-      }
-    }
-
   }
 
   @Override
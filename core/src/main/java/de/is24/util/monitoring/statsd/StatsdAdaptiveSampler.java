@@ -0,0 +1,151 @@
+package de.is24.util.monitoring.statsd;
+
+import de.is24.util.monitoring.tools.StripedAccumulator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Chooses the sample rate of high rate statsd metrics per key, so that no key sends more than a
+ * configured number of messages per second.
+ *
+ * Events are counted per key in a {@link StripedAccumulator} for windows of one second. The number of
+ * events in the last second is estimated as a sliding window: the events of the current window plus
+ * those of the previous window, weighted by the part of it still within the last second. Every eighth of
+ * a window the first thread noticing it computes the sample rate from this estimate: keys with less
+ * events than the budget are sent with the configured sample rate, hotter keys with budget / events.
+ * A key getting hot is thus sampled down after an eighth of a second, not only after a full window.
+ *
+ * Keys that saw no events for a window are evicted, checked at most once per window when a new key
+ * is tracked. New keys beyond the limit of tracked keys are sent with the configured sample rate.
+ */
+class StatsdAdaptiveSampler {
+  static final int DEFAULT_MAX_MESSAGES_PER_SECOND = 100;
+  static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+  static final long UPDATE_NANOS = WINDOW_NANOS / 8;
+  private static final int MAX_TRACKED_KEYS = 10000;
+
+  private final double maxSampleRate;
+  private final int maxMessagesPerSecond;
+  private final ConcurrentMap<String, KeyRate> keyRates = new ConcurrentHashMap<String, KeyRate>();
+  private final AtomicLong nextEviction;
+
+  /**
+   * @param maxSampleRate sample rate used for keys within the budget
+   * @param maxMessagesPerSecond budget of messages per second and key
+   */
+  StatsdAdaptiveSampler(double maxSampleRate, int maxMessagesPerSecond) {
+    if (maxMessagesPerSecond < 1) {
+      throw new IllegalArgumentException("maxMessagesPerSecond must be positive");
+    }
+    this.maxSampleRate = maxSampleRate;
+    this.maxMessagesPerSecond = maxMessagesPerSecond;
+    this.nextEviction = new AtomicLong(System.nanoTime() + WINDOW_NANOS);
+  }
+
+  /**
+   * Records an event of the given key.
+   *
+   * @param key the key of the metric
+   * @return the sample rate to use for this event
+   */
+  double sampleRate(String key) {
+    return sampleRate(key, System.nanoTime());
+  }
+
+  double sampleRate(String key, long nowNanos) {
+    KeyRate keyRate = keyRates.get(key);
+    if (keyRate == null) {
+      long next = nextEviction.get();
+      if (((nowNanos - next) >= 0) && nextEviction.compareAndSet(next, nowNanos + WINDOW_NANOS)) {
+        evictIdleKeys(nowNanos);
+      }
+      if (keyRates.size() >= MAX_TRACKED_KEYS) {
+        // do not track an unbounded number of keys, keys beyond the limit are treated as rare keys
+        return maxSampleRate;
+      }
+
+      KeyRate newKeyRate = new KeyRate(nowNanos, maxSampleRate);
+      keyRate = keyRates.putIfAbsent(key, newKeyRate);
+      if (keyRate == null) {
+        keyRate = newKeyRate;
+      }
+    }
+    return keyRate.record(nowNanos);
+  }
+
+  private void evictIdleKeys(long nowNanos) {
+    for (Map.Entry<String, KeyRate> entry : keyRates.entrySet()) {
+      if (entry.getValue().isIdle(nowNanos)) {
+        // an event racing with the removal is only missing in the estimate of the key
+        keyRates.remove(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  int getMaxMessagesPerSecond() {
+    return maxMessagesPerSecond;
+  }
+
+  int getTrackedKeyCount() {
+    return keyRates.size();
+  }
+
+  private final class KeyRate {
+    private final StripedAccumulator events = new StripedAccumulator(1);
+    private final AtomicLong nextUpdate;
+    private long windowStart;
+    private long previousCount;
+    private volatile long lastUpdate;
+    private volatile double sampleRate;
+
+    private KeyRate(long nowNanos, double initialSampleRate) {
+      this.nextUpdate = new AtomicLong(nowNanos + UPDATE_NANOS);
+      this.windowStart = nowNanos;
+      this.lastUpdate = nowNanos;
+      this.sampleRate = initialSampleRate;
+    }
+
+    private double record(long nowNanos) {
+      long next = nextUpdate.get();
+      if (((nowNanos - next) >= 0) && nextUpdate.compareAndSet(next, nowNanos + UPDATE_NANOS)) {
+        update(nowNanos);
+      }
+      events.add(1);
+      return sampleRate;
+    }
+
+    private synchronized void update(long nowNanos) {
+      long elapsed = nowNanos - windowStart;
+      if (elapsed >= WINDOW_NANOS) {
+        long count = events.sum();
+        events.add(-count);
+        if (elapsed < (2 * WINDOW_NANOS)) {
+          previousCount = count;
+          windowStart += WINDOW_NANOS;
+        } else {
+          // the events counted so far lie before the previous window
+          previousCount = 0;
+          windowStart = nowNanos;
+        }
+        elapsed = nowNanos - windowStart;
+      }
+
+      double estimate = events.sum() + ((previousCount * (double) (WINDOW_NANOS - elapsed)) / WINDOW_NANOS);
+      sampleRate = (estimate <= maxMessagesPerSecond) ? maxSampleRate
+                                                      : Math.min(maxSampleRate, maxMessagesPerSecond / estimate);
+      lastUpdate = nowNanos;
+    }
+
+    /**
+     * Events after the last update trigger another update within UPDATE_NANOS, so a key not updated for
+     * a window plus that delay saw no events in the last window.
+     */
+    private boolean isIdle(long nowNanos) {
+      return (nowNanos - lastUpdate) >= (WINDOW_NANOS + UPDATE_NANOS);
+    }
+  }
+}
@@ -0,0 +1,278 @@
+package de.is24.util.monitoring.statsd;
+
+import de.is24.util.monitoring.tools.StripedAccumulator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Accumulates counter deltas and timer samples of a {@link StatsdPlugin} in memory and sends them to statsd
+ * once per flush interval, see {@link StatsdPlugin#enableAggregation(long)}.
+ *
+ * Counters are summed up per key in a {@link StripedAccumulator} and sent as a single unsampled "|c" value.
+ * A flush subtracts exactly the amount it sends, so increments running concurrently to a flush are sent
+ * with the next flush and no increment is lost or counted twice.
+ *
+ * Timer samples are collected per key in a few stripes selected by thread id, each holding a bounded
+ * reservoir of samples. If more samples arrive within one interval than the reservoir holds, a uniform
+ * random subset is kept and sent with the sample rate kept / measured, so statsd still computes the
+ * exact number of measurements. Samples are kept in nanoseconds and sent as decimal milliseconds, so timings
+ * measured in a finer unit than milliseconds keep their fraction of a millisecond.
+ *
+ * Keys that had nothing to send are removed by the flush, so keys used only once in a while, e.g. per URL or per
+ * tenant, do not accumulate. An increment or sample racing with the removal of its key is moved to the key's new
+ * entry and sent with the next flush.
+ */
+class StatsdAggregator {
+  private static final Logger LOG = LoggerFactory.getLogger(StatsdAggregator.class);
+  static final int DEFAULT_MAX_TIMER_SAMPLES = 128;
+  private static final int TIMER_STRIPES = 4;
+
+  private final StatsdClient client;
+  private final int samplesPerStripe;
+  private final ConcurrentMap<String, StripedAccumulator> counters =
+    new ConcurrentHashMap<String, StripedAccumulator>();
+  private final ConcurrentMap<String, TimerSamples[]> timers = new ConcurrentHashMap<String, TimerSamples[]>();
+  private final ScheduledExecutorService executor;
+
+  /**
+   * @param client the client used to send the aggregated values
+   * @param flushIntervalMillis interval between two flushes, no flush is scheduled if 0
+   * @param maxTimerSamples maximum number of samples sent per timer key and flush
+   */
+  StatsdAggregator(StatsdClient client, long flushIntervalMillis, int maxTimerSamples) {
+    if (flushIntervalMillis < 0) {
+      throw new IllegalArgumentException("negative flush interval not permitted");
+    }
+    if (maxTimerSamples < TIMER_STRIPES) {
+      throw new IllegalArgumentException("at least " + TIMER_STRIPES + " timer samples required");
+    }
+    this.client = client;
+    this.samplesPerStripe = maxTimerSamples / TIMER_STRIPES;
+    if (flushIntervalMillis > 0) {
+      executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+              Thread thread = new Thread(runnable, "appmon4j-statsd-aggregator");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+      executor.scheduleWithFixedDelay(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              flush();
+            } catch (RuntimeException e) {
+              LOG.warn("flushing aggregated statsd values failed", e);
+            }
+          }
+        }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    } else {
+      executor = null;
+    }
+  }
+
+  void increment(String key, int increment) {
+    add(key, increment);
+  }
+
+  private void add(String key, long increment) {
+    StripedAccumulator accumulator = counters.get(key);
+    if (accumulator == null) {
+      StripedAccumulator newAccumulator = new StripedAccumulator(1);
+      accumulator = counters.putIfAbsent(key, newAccumulator);
+      if (accumulator == null) {
+        accumulator = newAccumulator;
+      }
+    }
+    accumulator.add(increment);
+    if (counters.get(key) != accumulator) {
+      // removed by a flush meanwhile
+      moveRemovedCount(key, accumulator);
+    }
+  }
+
+  /**
+   * Moves what was added to the accumulator of a removed key to the key's current accumulator. Draining under the
+   * accumulator's monitor keeps two threads from moving the same amount.
+   */
+  private void moveRemovedCount(String key, StripedAccumulator removed) {
+    long remaining;
+    synchronized (removed) {
+      remaining = removed.sum();
+      removed.add(-remaining);
+    }
+    if (remaining != 0) {
+      add(key, remaining);
+    }
+  }
+
+  void timing(String key, long timing) {
+    timing(key, timing, TimeUnit.MILLISECONDS);
+  }
+
+  void timing(String key, long timing, TimeUnit unit) {
+    long nanos = unit.toNanos(timing);
+    int stripe = stripeIndex();
+    while (!stripesOf(key)[stripe].add(nanos)) {
+      // the key was removed by a flush meanwhile, retry with its new entry
+    }
+  }
+
+  private TimerSamples[] stripesOf(String key) {
+    TimerSamples[] stripes = timers.get(key);
+    if (stripes == null) {
+      TimerSamples[] newStripes = new TimerSamples[TIMER_STRIPES];
+      for (int i = 0; i < TIMER_STRIPES; i++) {
+        newStripes[i] = new TimerSamples(samplesPerStripe);
+      }
+      stripes = timers.putIfAbsent(key, newStripes);
+      if (stripes == null) {
+        stripes = newStripes;
+      }
+    }
+    return stripes;
+  }
+
+  private static int stripeIndex() {
+    long id = Thread.currentThread().getId();
+    return (int) (id ^ (id >>> 32)) & (TIMER_STRIPES - 1);
+  }
+
+  /**
+   * @return the number of counter and timer keys currently aggregated
+   */
+  int getKeyCount() {
+    return counters.size() + timers.size();
+  }
+
+  /**
+   * Sends all values accumulated since the last flush and removes the keys that had nothing to send.
+   */
+  void flush() {
+    for (Map.Entry<String, StripedAccumulator> entry : counters.entrySet()) {
+      String key = entry.getKey();
+      StripedAccumulator accumulator = entry.getValue();
+      long delta;
+      synchronized (accumulator) {
+        delta = accumulator.sum();
+        accumulator.add(-delta);
+      }
+      if (delta != 0) {
+        client.count(key, delta);
+      } else if (counters.remove(key, accumulator)) {
+        // an increment may have happened after reading the sum, before the removal
+        moveRemovedCount(key, accumulator);
+      }
+    }
+
+    long[] samples = new long[samplesPerStripe];
+    for (Map.Entry<String, TimerSamples[]> entry : timers.entrySet()) {
+      String key = entry.getKey();
+      TimerSamples[] stripes = entry.getValue();
+      boolean sent = false;
+      for (TimerSamples stripe : stripes) {
+        sent |= send(key, stripe, samples);
+      }
+      if (!sent && timers.remove(key, stripes)) {
+        for (TimerSamples stripe : stripes) {
+          // samples added after the stripe was sent are sent with the next flush
+          send(key, stripe.retire(), samples);
+        }
+      }
+    }
+    client.flush();
+  }
+
+  /**
+   * @return true if the stripe had samples to send
+   */
+  private boolean send(String key, TimerSamples stripe, long[] samples) {
+    long measured;
+    int kept;
+    synchronized (stripe) {
+      measured = stripe.count;
+      kept = stripe.kept;
+      System.arraycopy(stripe.samples, 0, samples, 0, kept);
+      stripe.count = 0;
+      stripe.kept = 0;
+    }
+    if (kept == 0) {
+      return false;
+    }
+
+    double sampleRate = (kept == measured) ? 1.0 : ((double) kept / measured);
+    for (int i = 0; i < kept; i++) {
+      client.preSampledTiming(key, samples[i], TimeUnit.NANOSECONDS, sampleRate);
+    }
+    return true;
+  }
+
+  /**
+   * Stops the scheduled flushes and sends all remaining values.
+   */
+  void shutdown() {
+    if (executor != null) {
+      executor.shutdown();
+      try {
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    flush();
+  }
+
+  /**
+   * Reservoir of the timer samples of one stripe of a key, guarded by its own monitor.
+   */
+  private static final class TimerSamples {
+    private final long[] samples;
+    private final Random random = new Random();
+    private long count;
+    private int kept;
+    private boolean retired;
+
+    private TimerSamples(int capacity) {
+      this.samples = new long[capacity];
+    }
+
+    /**
+     * @return false if the stripe belongs to a removed key and did not take the sample
+     */
+    private synchronized boolean add(long timing) {
+      if (retired) {
+        return false;
+      }
+      count++;
+      if (kept < samples.length) {
+        samples[kept++] = timing;
+      } else {
+        long index = (long) (random.nextDouble() * count);
+        if (index < samples.length) {
+          samples[(int) index] = timing;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Makes later samples go to the new entry of the key.
+     *
+     * @return this stripe, holding the samples added before
+     */
+    private synchronized TimerSamples retire() {
+      retired = true;
+      return this;
+    }
+  }
+}
@@ -3,19 +3,38 @@ package de.is24.util.monitoring.statsd;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.net.InetAddress;
 import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 
 class StatsdClient {
   private static final Logger LOG = LoggerFactory.getLogger(StatsdClient.class.getName());
+  private static final int MAX_CACHED_KEYS = 10000;
+  private static final String VALUE_MARKER = "\u0000";
+  private static final String COUNTER = "|c";
+  private static final String TIMER = "|ms";
 
-  static Random rng = new Random();
+  /** decimal places of nanoseconds written as milliseconds */
+  private static final int NANOS_SCALE = 6;
+
+  // one random source per thread, a shared java.util.Random serializes all sampling threads on its seed
+  static final ThreadLocal<Random> RANDOM = new ThreadLocal<Random>() {
+    @Override
+    protected Random initialValue() {
+      return new Random();
+    }
+  };
 
   private final StatsdDatagrammSocket socket;
   private final StatsdMessageFormatter messageFormatter;
+  private final ConcurrentMap<String, EncodedStat> counters = new ConcurrentHashMap<String, EncodedStat>();
+  private final ConcurrentMap<String, EncodedStat> timers = new ConcurrentHashMap<String, EncodedStat>();
 
   public StatsdClient(String host, int port, String appName) throws UnknownHostException, SocketException {
     this(host, port, new StatsdHostGroupedMessageFormatter(appName));
@@ -23,7 +42,13 @@ class StatsdClient {
 
   public StatsdClient(String host, int port, StatsdMessageFormatter messageFormatter) throws UnknownHostException,
                                                                                              SocketException {
-    this(new StatsdDatagrammSocket(InetAddress.getByName(host), port), messageFormatter);
+    this(host, port, messageFormatter, StatsdDatagrammSocket.DEFAULT_MAX_PACKET_SIZE);
+  }
+
+  public StatsdClient(String host, int port, StatsdMessageFormatter messageFormatter, int maxPacketSize)
+               throws UnknownHostException, SocketException {
+    this(new StatsdDatagrammSocket(InetAddress.getByName(host), port, maxPacketSize,
+        StatsdDatagrammSocket.DEFAULT_FLUSH_INTERVAL_MILLIS), messageFormatter);
   }
 
   StatsdClient(StatsdDatagrammSocket socket, StatsdMessageFormatter formatter) {
@@ -34,8 +59,17 @@ class StatsdClient {
 
   public void close() {
     LOG.info("closing StatsdClient connected to {}", socket.toString());
-    synchronized (socket) {
-      socket.close();
+    socket.close();
+  }
+
+  /**
+   * Sends all messages queued for the next datagram.
+   */
+  public void flush() {
+    try {
+      socket.flush();
+    } catch (IOException e) {
+      LOG.error("Could not send stats to host " + socket, e);
     }
   }
 
@@ -44,11 +78,55 @@ class StatsdClient {
   }
 
   public boolean timing(String key, int value, double sampleRate) {
-    return send(sampleRate, formatTimer(key, value));
+    return send(timers, key, TIMER, value, 0, sampleRate);
   }
 
-  private String formatTimer(String key, int value) {
-    return new StringBuilder().append(key).append(":").append(value).append("|ms").toString();
+  /**
+   * Sends a timing in milliseconds, with the fraction of a millisecond if the unit is finer, as statsd accepts
+   * decimal timings.
+   *
+   * @param key the key of the timer
+   * @param value the measured value
+   * @param unit the unit of the value
+   * @param sampleRate the rate at which values of this timer are sent
+   * @return true if the value was sent
+   */
+  public boolean timing(String key, long value, TimeUnit unit, double sampleRate) {
+    return send(timers, key, TIMER, unscaledMillis(value, unit), scale(unit), sampleRate);
+  }
+
+  /**
+   * Sends a timing that was already sampled by the caller, with the given sample rate.
+   *
+   * @param key the key of the timer
+   * @param value the measured value
+   * @param sampleRate the rate at which the caller sampled the values of this timer
+   * @return true if the value was sent
+   */
+  public boolean preSampledTiming(String key, long value, double sampleRate) {
+    return doSend(timers, key, TIMER, value, 0, sampleRate);
+  }
+
+  /**
+   * Sends a timing that was already sampled by the caller, with the given sample rate, in milliseconds with the
+   * fraction of a millisecond if the unit is finer.
+   *
+   * @param key the key of the timer
+   * @param value the measured value
+   * @param unit the unit of the value
+   * @param sampleRate the rate at which the caller sampled the values of this timer
+   * @return true if the value was sent
+   */
+  public boolean preSampledTiming(String key, long value, TimeUnit unit, double sampleRate) {
+    return doSend(timers, key, TIMER, unscaledMillis(value, unit), scale(unit), sampleRate);
+  }
+
+  private static long unscaledMillis(long value, TimeUnit unit) {
+    return (scale(unit) == 0) ? unit.toMillis(value) : unit.toNanos(value);
+  }
+
+  private static int scale(TimeUnit unit) {
+    return (unit.toNanos(1) < TimeUnit.MILLISECONDS.toNanos(1)) ? NANOS_SCALE : 0;
   }
 
   public boolean decrement(String key) {
@@ -87,58 +165,126 @@ class StatsdClient {
   }
 
   public boolean increment(String key, int magnitude, double sampleRate) {
-    String stat = formatCounter(key, magnitude);
-    return send(stat, sampleRate);
+    return send(counters, key, COUNTER, magnitude, 0, sampleRate);
   }
 
-  private String formatCounter(String key, int magnitude) {
-    return new StringBuilder().append(key).append(":").append(magnitude).append("|c").toString();
+  /**
+   * Sends an aggregated counter value, unsampled.
+   *
+   * @param key the key of the counter
+   * @param delta the sum of all increments to send
+   * @return true if the value was sent
+   */
+  public boolean count(String key, long delta) {
+    return doSend(counters, key, COUNTER, delta, 0, 1.0);
   }
 
   public boolean increment(int magnitude, double sampleRate, String... keys) {
-    String[] stats = new String[keys.length];
-    for (int i = 0; i < keys.length; i++) {
-      stats[i] = formatCounter(keys[i], magnitude);
+    boolean retval = false; // didn't send anything
+    for (String key : keys) {
+      if (send(counters, key, COUNTER, magnitude, 0, sampleRate)) {
+        retval = true;
+      }
     }
-    return send(sampleRate, stats);
+    return retval;
   }
 
-  private boolean send(String stat, double sampleRate) {
-    return send(sampleRate, stat);
+  private boolean send(ConcurrentMap<String, EncodedStat> cache, String key, String type, long value, int scale,
+                       double sampleRate) {
+    if ((sampleRate < 1.0) && !(RANDOM.get().nextDouble() <= sampleRate)) {
+      return false;
+    }
+    return doSend(cache, key, type, value, scale, sampleRate);
   }
 
-  private boolean send(double sampleRate, String... stats) {
-    boolean retval = false; // didn't send anything
-    if (sampleRate < 1.0) {
-      for (String stat : stats) {
-        if (rng.nextDouble() <= sampleRate) {
-          String key = messageFormatter.formatSampledValue(stat, sampleRate);
-          if (doSend(key)) {
-            retval = true;
-          }
+  /**
+   * @param value the value times 10 to the power of scale
+   * @param scale number of decimal places of the value
+   */
+  private boolean doSend(ConcurrentMap<String, EncodedStat> cache, String key, String type, long value, int scale,
+                         double sampleRate) {
+    EncodedStat encodedStat = getEncodedStat(cache, key, type);
+    Encoding encoding = (sampleRate < 1.0) ? encodedStat.sampled(sampleRate) : encodedStat.unsampled;
+    try {
+      if (encoding != null) {
+        if (scale == 0) {
+          socket.send(encoding.prefix, value, encoding.suffix);
+        } else {
+          socket.send(encoding.prefix, value, scale, encoding.suffix);
         }
+      } else {
+        String formattedValue = (scale == 0) ? String.valueOf(value)
+                                             : BigDecimal.valueOf(value, scale).stripTrailingZeros().toPlainString();
+        String stat = key + ":" + formattedValue + type;
+        socket.send((sampleRate < 1.0) ? messageFormatter.formatSampledValue(stat, sampleRate)
+                                       : messageFormatter.formatUnsampledValue(stat));
       }
-    } else {
-      for (String stat : stats) {
-        String key = messageFormatter.formatUnsampledValue(stat);
-        if (doSend(key)) {
-          retval = true;
+      return true;
+    } catch (IOException e) {
+      LOG.error("Could not send stat " + key + " to host " + socket, e);
+    }
+    return false;
+  }
+
+  private EncodedStat getEncodedStat(ConcurrentMap<String, EncodedStat> cache, String key, String type) {
+    EncodedStat result = cache.get(key);
+    if (result == null) {
+      result = new EncodedStat(key, type);
+      if (cache.size() < MAX_CACHED_KEYS) {
+        EncodedStat previous = cache.putIfAbsent(key, result);
+        if (previous != null) {
+          result = previous;
         }
       }
     }
+    return result;
+  }
 
-    return retval;
+  /**
+   * The UTF-8 encoded parts of the formatted message of one key around its value,
+   * derived by formatting a marker in place of the value.
+   */
+  private final class EncodedStat {
+    private final String stat;
+    private final Encoding unsampled;
+    private volatile Encoding lastSampled;
+
+    private EncodedStat(String key, String type) {
+      this.stat = key + ":" + VALUE_MARKER + type;
+      this.unsampled = Encoding.split(messageFormatter.formatUnsampledValue(stat), 1.0);
+    }
+
+    private Encoding sampled(double sampleRate) {
+      Encoding result = lastSampled;
+      if ((result == null) || (result.sampleRate != sampleRate)) {
+        result = Encoding.split(messageFormatter.formatSampledValue(stat, sampleRate), sampleRate);
+        lastSampled = result;
+      }
+      return result;
+    }
   }
 
-  private boolean doSend(String stat) {
-    try {
-      synchronized (socket) {
-        socket.send(stat);
+  private static final class Encoding {
+    private final double sampleRate;
+    private final byte[] prefix;
+    private final byte[] suffix;
+
+    private Encoding(double sampleRate, byte[] prefix, byte[] suffix) {
+      this.sampleRate = sampleRate;
+      this.prefix = prefix;
+      this.suffix = suffix;
+    }
+
+    /**
+     * @return the parts before and after the value marker, null if the formatter did not keep exactly one marker
+     */
+    private static Encoding split(String formatted, double sampleRate) {
+      int index = formatted.indexOf(VALUE_MARKER);
+      if ((index < 0) || (formatted.indexOf(VALUE_MARKER, index + 1) >= 0)) {
+        return null;
       }
-      return true;
-    } catch (IOException e) {
-      LOG.error("Could not send stat " + stat + " to host " + socket, e);
+      return new Encoding(sampleRate, formatted.substring(0, index).getBytes(StatsdDatagrammSocket.UTF_8),
+        formatted.substring(index + 1).getBytes(StatsdDatagrammSocket.UTF_8));
     }
-    return false;
   }
 }
@@ -1,26 +1,351 @@
 package de.is24.util.monitoring.statsd;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 
+/**
+ * Sends statsd messages over a {@link DatagramChannel}.
+ *
+ * Messages are not sent one by one, but collected newline separated in direct buffers of the size of one
+ * datagram, which are sent as soon as the next message does not fit any more, or at the latest after
+ * the flush interval. Senders are spread over a few independently locked buffers by thread id, so
+ * there is no global lock on the socket.
+ *
+ * The channel is deliberately not connected: a connected channel reports the ICMP port unreachable replies
+ * of a host without a running statsd daemon as exceptions on the following writes, so every flush would fail
+ * and drop its datagram. Like the plain UDP client statsd is meant to be used with, datagrams are sent
+ * fire and forget instead.
+ */
 class StatsdDatagrammSocket {
+  private static final Logger LOG = LoggerFactory.getLogger(StatsdDatagrammSocket.class);
+  static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /** largest payload fitting an ethernet frame of 1500 bytes without fragmentation */
+  static final int DEFAULT_MAX_PACKET_SIZE = 1432;
+
+  /** largest payload fitting a jumbo frame of 9000 bytes without fragmentation */
+  static final int JUMBO_MAX_PACKET_SIZE = 8932;
+  static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 100;
+  private static final int MAX_STRIPES = 16;
+  private static final byte NEWLINE = '\n';
+  private static final byte[] LONG_MIN_VALUE = String.valueOf(Long.MIN_VALUE).getBytes(UTF_8);
+
   private final InetAddress host;
   private final int port;
-  private final DatagramSocket socket;
+  private final InetSocketAddress address;
+  private final DatagramChannel channel;
+  private final int maxPacketSize;
+  private final PacketBuffer[] stripes;
+  private final ScheduledExecutorService flusher;
+  private final AtomicLong sentPackets = new AtomicLong();
 
   public StatsdDatagrammSocket(InetAddress host, int port) throws SocketException {
+    this(host, port, DEFAULT_MAX_PACKET_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS);
+  }
+
+  /**
+   * @param host statsd host
+   * @param port udp port statsd is listening on
+   * @param maxPacketSize maximum payload of one datagram, e.g. {@link #DEFAULT_MAX_PACKET_SIZE}
+   * @param flushIntervalMillis maximum time a message waits for further messages to share its datagram with
+   * @throws SocketException if the channel could not be opened
+   */
+  public StatsdDatagrammSocket(InetAddress host, int port, int maxPacketSize, long flushIntervalMillis)
+                        throws SocketException {
+    if (maxPacketSize < 1) {
+      throw new IllegalArgumentException("maxPacketSize must be positive");
+    }
+    if (flushIntervalMillis < 1) {
+      throw new IllegalArgumentException("flushIntervalMillis must be positive");
+    }
     this.host = host;
     this.port = port;
-    this.socket = new DatagramSocket();
+    this.maxPacketSize = maxPacketSize;
+    this.address = new InetSocketAddress(host, port);
+    this.channel = openChannel(host, port);
+    this.stripes = new PacketBuffer[stripeCount(Runtime.getRuntime().availableProcessors())];
+    for (int i = 0; i < stripes.length; i++) {
+      stripes[i] = new PacketBuffer(maxPacketSize);
+    }
+    this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "appmon4j-statsd-flusher");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    flusher.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            flush();
+          } catch (IOException e) {
+            LOG.warn("Could not send stats to host " + StatsdDatagrammSocket.this, e);
+          }
+        }
+      }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private static DatagramChannel openChannel(InetAddress host, int port) throws SocketException {
+    try {
+      return DatagramChannel.open();
+    } catch (IOException e) {
+      SocketException socketException = new SocketException("could not open channel to " + host + ":" + port);
+      socketException.initCause(e);
+      throw socketException;
+    }
+  }
+
+  static int stripeCount(int processors) {
+    int count = 1;
+    while ((count < processors) && (count < MAX_STRIPES)) {
+      count <<= 1;
+    }
+    return count;
   }
 
+  /**
+   * Queues a complete message.
+   *
+   * @param stat the message
+   * @throws IOException if a datagram could not be sent
+   */
   public void send(String stat) throws IOException {
-    byte[] data = stat.getBytes();
-    socket.send(new DatagramPacket(data, data.length, host, port));
+    byte[] data = stat.getBytes(UTF_8);
+    send(data, false, 0, 0, null);
+  }
+
+  /**
+   * Queues the message prefix + value + suffix, without creating an intermediate string.
+   *
+   * @param prefix encoded part of the message in front of the value
+   * @param value the value
+   * @param suffix encoded part of the message after the value
+   * @throws IOException if a datagram could not be sent
+   */
+  public void send(byte[] prefix, long value, byte[] suffix) throws IOException {
+    send(prefix, true, value, 0, suffix);
+  }
+
+  /**
+   * Queues the message prefix + decimal value + suffix, without creating an intermediate string.
+   *
+   * @param prefix encoded part of the message in front of the value
+   * @param unscaledValue the value times 10 to the power of scale, e.g. 1500 and scale 6 for 0.0015
+   * @param scale number of decimal places of the unscaled value
+   * @param suffix encoded part of the message after the value
+   * @throws IOException if a datagram could not be sent
+   */
+  public void send(byte[] prefix, long unscaledValue, int scale, byte[] suffix) throws IOException {
+    if (scale < 0) {
+      throw new IllegalArgumentException("scale must not be negative");
+    }
+
+    // trailing zeros of the fraction are not written
+    long value = unscaledValue;
+    int remainingScale = scale;
+    while ((remainingScale > 0) && ((value % 10) == 0)) {
+      value /= 10;
+      remainingScale--;
+    }
+    send(prefix, true, value, remainingScale, suffix);
+  }
+
+  private void send(byte[] prefix, boolean withValue, long value, int scale, byte[] suffix) throws IOException {
+    int messageLength = prefix.length + (withValue ? (digits(value, scale) + suffix.length) : 0);
+    PacketBuffer stripe = lockStripe();
+    try {
+      ByteBuffer buffer = stripe.buffer;
+      int needed = (buffer.position() == 0) ? messageLength : (messageLength + 1);
+      if ((buffer.position() > 0) && (needed > buffer.remaining())) {
+        sendBuffer(buffer);
+      }
+      if (messageLength > buffer.remaining()) {
+        // too large for one datagram even on its own, let the network fragment it
+        ByteBuffer oversized = ByteBuffer.allocate(messageLength);
+        write(oversized, prefix, withValue, value, scale, suffix);
+        sendBuffer(oversized);
+        return;
+      }
+      if (buffer.position() > 0) {
+        buffer.put(NEWLINE);
+      }
+      write(buffer, prefix, withValue, value, scale, suffix);
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  private static void write(ByteBuffer buffer, byte[] prefix, boolean withValue, long value, int scale,
+                            byte[] suffix) {
+    buffer.put(prefix);
+    if (withValue) {
+      putDecimal(buffer, value, scale);
+      buffer.put(suffix);
+    }
+  }
+
+  private PacketBuffer lockStripe() {
+    long id = Thread.currentThread().getId();
+    int index = (int) (id ^ (id >>> 32)) & (stripes.length - 1);
+    for (int i = 0; i < stripes.length; i++) {
+      PacketBuffer stripe = stripes[(index + i) & (stripes.length - 1)];
+      if (stripe.lock.tryLock()) {
+        return stripe;
+      }
+    }
+
+    PacketBuffer stripe = stripes[index];
+    stripe.lock.lock();
+    return stripe;
+  }
+
+  /**
+   * Sends all queued messages.
+   *
+   * @throws IOException if a datagram could not be sent
+   */
+  public void flush() throws IOException {
+    IOException failure = null;
+    for (PacketBuffer stripe : stripes) {
+      stripe.lock.lock();
+      try {
+        if (stripe.buffer.position() > 0) {
+          sendBuffer(stripe.buffer);
+        }
+      } catch (IOException e) {
+        failure = e;
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void sendBuffer(ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    try {
+      channel.send(buffer, address);
+      sentPackets.incrementAndGet();
+    } finally {
+      buffer.clear();
+    }
+  }
+
+  static int digits(long value) {
+    if (value == Long.MIN_VALUE) {
+      return LONG_MIN_VALUE.length;
+    }
+
+    int result = 1;
+    long remaining = value;
+    if (remaining < 0) {
+      result++;
+      remaining = -remaining;
+    }
+    while (remaining >= 10) {
+      remaining /= 10;
+      result++;
+    }
+    return result;
+  }
+
+  /**
+   * @return the number of characters of the unscaled value written with scale decimal places
+   */
+  static int digits(long unscaledValue, int scale) {
+    if (scale == 0) {
+      return digits(unscaledValue);
+    }
+    if (unscaledValue == Long.MIN_VALUE) {
+      return digits(unscaledValue + 1, scale);
+    }
+
+    long magnitude = Math.abs(unscaledValue);
+    int sign = (unscaledValue < 0) ? 1 : 0;
+    return sign + Math.max(digits(magnitude), scale + 1) + 1;
+  }
+
+  /**
+   * Writes the unscaled value with scale decimal places, e.g. 1500 with scale 6 as 0.001500.
+   */
+  static void putDecimal(ByteBuffer buffer, long unscaledValue, int scale) {
+    if (scale == 0) {
+      putLong(buffer, unscaledValue);
+      return;
+    }
+    if (unscaledValue == Long.MIN_VALUE) {
+      // one unit of the last decimal place off, which does not matter for a timing
+      putDecimal(buffer, unscaledValue + 1, scale);
+      return;
+    }
+
+    if (unscaledValue < 0) {
+      buffer.put((byte) '-');
+    }
+
+    long remaining = Math.abs(unscaledValue);
+    int end = buffer.position() + Math.max(digits(remaining), scale + 1) + 1;
+    int position = end;
+    for (int i = 0; i < scale; i++) {
+      buffer.put(--position, (byte) ('0' + (remaining % 10)));
+      remaining /= 10;
+    }
+    buffer.put(--position, (byte) '.');
+    do {
+      buffer.put(--position, (byte) ('0' + (remaining % 10)));
+      remaining /= 10;
+    } while (remaining > 0);
+    buffer.position(end);
+  }
+
+  static void putLong(ByteBuffer buffer, long value) {
+    if (value == Long.MIN_VALUE) {
+      buffer.put(LONG_MIN_VALUE);
+      return;
+    }
+
+    long remaining = value;
+    if (remaining < 0) {
+      buffer.put((byte) '-');
+      remaining = -remaining;
+    }
+
+    int end = buffer.position() + digits(remaining);
+    int position = end;
+    do {
+      buffer.put(--position, (byte) ('0' + (remaining % 10)));
+      remaining /= 10;
+    } while (remaining > 0);
+    buffer.position(end);
+  }
+
+  /**
+   * @return number of datagrams sent so far
+   */
+  long getSentPackets() {
+    return sentPackets.get();
+  }
+
+  int getMaxPacketSize() {
+    return maxPacketSize;
   }
 
   @Override
@@ -29,6 +354,25 @@ class StatsdDatagrammSocket {
   }
 
   public void close() {
-    socket.close();
+    flusher.shutdown();
+    try {
+      flush();
+    } catch (IOException e) {
+      LOG.warn("Could not send remaining stats to host " + this, e);
+    }
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOG.warn("Could not close channel to host " + this, e);
+    }
+  }
+
+  private static final class PacketBuffer {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ByteBuffer buffer;
+
+    private PacketBuffer(int size) {
+      this.buffer = ByteBuffer.allocateDirect(size);
+    }
   }
 }
@@ -1,24 +1,38 @@
 package de.is24.util.monitoring.statsd;
 
 import de.is24.util.monitoring.AbstractMonitorPlugin;
+import de.is24.util.monitoring.UnitAwareMonitorPlugin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
 
 
 /**
  * InApplicationMonitor plugin. Forwards monitoring to a Statsd server.
  *
  * Enable via InApplicationMonitor.getInstance().registerPlugin(new StatsdPlugin("myStatsdHost", 1234));
+ *
+ * By default every event is sent to statsd. High rate events are sampled per key, so that each key sends at most
+ * {@link #setMaxHighRateMessagesPerSecond(int) a budget of messages per second}. With
+ * {@link #enableAggregation(long)} counters and timers are aggregated in memory and flushed periodically instead.
+ * Statsd expects timings in milliseconds, timings in other units are converted.
  */
-public class StatsdPlugin extends AbstractMonitorPlugin {
+public class StatsdPlugin extends AbstractMonitorPlugin implements UnitAwareMonitorPlugin {
   private static final Logger LOG = LoggerFactory.getLogger(StatsdPlugin.class);
 
+  /** largest datagram payload fitting an ethernet frame of 1500 bytes, used by default */
+  public static final int DEFAULT_MAX_PACKET_SIZE = StatsdDatagrammSocket.DEFAULT_MAX_PACKET_SIZE;
+
+  /** largest datagram payload fitting a jumbo frame of 9000 bytes */
+  public static final int JUMBO_MAX_PACKET_SIZE = StatsdDatagrammSocket.JUMBO_MAX_PACKET_SIZE;
+
   private final StatsdClient delegate;
   private final String uniqueName;
   private double sampleRate;
-  private double highVolumeSampleRate;
+  private volatile StatsdAdaptiveSampler highRateSampler;
+  private volatile StatsdAggregator aggregator;
 
   /**
   * Create a Statsd plugin with a specified host and port.
@@ -60,6 +74,25 @@ public class StatsdPlugin extends AbstractMonitorPlugin {
     this(new StatsdClient(host, port, statsdMessageFormatter), getUniqeName(host, port, sampleRate), sampleRate);
   }
 
+  /**
+   * Create a Statsd plugin with a specified host and port, packing as many messages into one datagram as fit
+   * into maxPacketSize bytes.
+   *
+   * @param host statsd host name
+   * @param port udp port statsd is listening on
+   * @param sampleRate a default sample rate to use for all metrics handled
+   * @param statsdMessageFormatter formatter adding application and host name to the messages
+   * @param maxPacketSize maximum payload of one datagram, e.g. {@link #DEFAULT_MAX_PACKET_SIZE} or
+   *                      {@link #JUMBO_MAX_PACKET_SIZE} if all hosts on the way to statsd support jumbo frames
+   * @throws SocketException
+   * @throws UnknownHostException
+   */
+  public StatsdPlugin(String host, int port, double sampleRate, StatsdMessageFormatter statsdMessageFormatter,
+                      int maxPacketSize) throws SocketException, UnknownHostException {
+    this(new StatsdClient(host, port, statsdMessageFormatter, maxPacketSize), getUniqeName(host, port, sampleRate),
+      sampleRate);
+  }
+
   StatsdPlugin(StatsdClient client, String uniqeName, double sampleRate) {
     this.delegate = client;
     this.uniqueName = uniqeName;
@@ -67,7 +100,7 @@ public class StatsdPlugin extends AbstractMonitorPlugin {
       throw new IllegalArgumentException("negative sample rate not permitted");
     }
     this.sampleRate = sampleRate;
-    initHighVolumeSampleRate();
+    this.highRateSampler = new StatsdAdaptiveSampler(sampleRate, StatsdAdaptiveSampler.DEFAULT_MAX_MESSAGES_PER_SECOND);
     LOG.info("StatsdPlugin {} initialized", uniqueName);
   }
 
@@ -78,11 +111,76 @@ public class StatsdPlugin extends AbstractMonitorPlugin {
   @Override
   public void afterRemovalNotification() {
     LOG.info("StatsdPlugin {} notified of removal", uniqueName);
+    disableAggregation();
     delegate.close();
   }
 
-  private void initHighVolumeSampleRate() {
-    this.highVolumeSampleRate = sampleRate * 0.1;
+  /**
+   * Switches this plugin to client side aggregation, using at most
+   * {@link StatsdAggregator#DEFAULT_MAX_TIMER_SAMPLES} timer samples per key and flush.
+   *
+   * @param flushIntervalMillis interval in which aggregated values are sent to statsd
+   * @see #enableAggregation(long, int)
+   */
+  public void enableAggregation(long flushIntervalMillis) {
+    enableAggregation(flushIntervalMillis, StatsdAggregator.DEFAULT_MAX_TIMER_SAMPLES);
+  }
+
+  /**
+   * Switches this plugin to client side aggregation. Counter increments are summed up per key and sent as one
+   * exact, unsampled value per flush interval, so high rate counters are not sampled any more.
+   * Timer measurements are sent in batches once per flush interval. If a timer gets more measurements within
+   * one interval than maxTimerSamples, a random subset is sent with a matching sample rate.
+   * The sample rates given at construction time are ignored while aggregation is enabled.
+   *
+   * @param flushIntervalMillis interval in which aggregated values are sent to statsd
+   * @param maxTimerSamples maximum number of samples sent per timer key and flush
+   */
+  public synchronized void enableAggregation(long flushIntervalMillis, int maxTimerSamples) {
+    if (flushIntervalMillis <= 0) {
+      throw new IllegalArgumentException("flush interval must be positive");
+    }
+    disableAggregation();
+    aggregator = new StatsdAggregator(delegate, flushIntervalMillis, maxTimerSamples);
+    LOG.info("StatsdPlugin {} aggregates values, flush interval {} ms", uniqueName, flushIntervalMillis);
+  }
+
+  /**
+   * Sends all aggregated values and switches back to sending each event on its own.
+   */
+  public synchronized void disableAggregation() {
+    StatsdAggregator current = aggregator;
+    if (current != null) {
+      aggregator = null;
+      current.shutdown();
+      LOG.info("StatsdPlugin {} stopped aggregating values", uniqueName);
+    }
+  }
+
+  /**
+   * @return true if values are aggregated before they are sent to statsd
+   */
+  public boolean isAggregating() {
+    return aggregator != null;
+  }
+
+  void useAggregator(StatsdAggregator statsdAggregator) {
+    this.aggregator = statsdAggregator;
+  }
+
+  /**
+   * Sets the budget of messages per second and key for high rate counters and timers, default is
+   * 100. Keys staying within the budget are sent
+   * with the sample rate of this plugin, hotter keys are sampled down to the budget, with a matching sample rate.
+   *
+   * @param maxMessagesPerSecond maximum number of messages per second and key
+   */
+  public void setMaxHighRateMessagesPerSecond(int maxMessagesPerSecond) {
+    this.highRateSampler = new StatsdAdaptiveSampler(sampleRate, maxMessagesPerSecond);
+  }
+
+  public int getMaxHighRateMessagesPerSecond() {
+    return highRateSampler.getMaxMessagesPerSecond();
   }
 
 
@@ -101,12 +199,23 @@ public class StatsdPlugin extends AbstractMonitorPlugin {
 
   @Override
   public void incrementCounter(String key, int increment) {
-    delegate.increment(sanitizeKey(key), increment, sampleRate);
+    StatsdAggregator currentAggregator = aggregator;
+    if (currentAggregator != null) {
+      currentAggregator.increment(sanitizeKey(key), increment);
+    } else {
+      delegate.increment(sanitizeKey(key), increment, sampleRate);
+    }
   }
 
   @Override
   public void incrementHighRateCounter(String key, int increment) {
-    delegate.increment(sanitizeKey(key), increment, highVolumeSampleRate);
+    StatsdAggregator currentAggregator = aggregator;
+    if (currentAggregator != null) {
+      currentAggregator.increment(sanitizeKey(key), increment);
+    } else {
+      String sanitizedKey = sanitizeKey(key);
+      delegate.increment(sanitizedKey, increment, highRateSampler.sampleRate(sanitizedKey));
+    }
   }
 
   @Override
@@ -116,7 +225,22 @@ public class StatsdPlugin extends AbstractMonitorPlugin {
 
   @Override
   public void addTimerMeasurement(String key, long timing) {
-    delegate.timing(sanitizeKey(key), (int) timing, sampleRate);
+    StatsdAggregator currentAggregator = aggregator;
+    if (currentAggregator != null) {
+      currentAggregator.timing(sanitizeKey(key), timing);
+    } else {
+      delegate.timing(sanitizeKey(key), toIntMillis(timing), sampleRate);
+    }
+  }
+
+  @Override
+  public void addTimerMeasurement(String key, long timing, TimeUnit unit) {
+    StatsdAggregator currentAggregator = aggregator;
+    if (currentAggregator != null) {
+      currentAggregator.timing(sanitizeKey(key), timing, unit);
+    } else {
+      delegate.timing(sanitizeKey(key), timing, unit, sampleRate);
+    }
   }
 
   @Override
@@ -132,6 +256,19 @@ public class StatsdPlugin extends AbstractMonitorPlugin {
 
   @Override
   public void addHighRateTimerMeasurement(String key, long timing) {
-    delegate.timing(sanitizeKey(key), (int) timing, highVolumeSampleRate);
+    StatsdAggregator currentAggregator = aggregator;
+    if (currentAggregator != null) {
+      currentAggregator.timing(sanitizeKey(key), timing);
+    } else {
+      String sanitizedKey = sanitizeKey(key);
+      delegate.timing(sanitizedKey, toIntMillis(timing), highRateSampler.sampleRate(sanitizedKey));
+    }
+  }
+
+  /**
+   * @return the timing in milliseconds, capped to the int range of the statsd client instead of wrapping around
+   */
+  private static int toIntMillis(long timingMillis) {
+    return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, timingMillis));
   }
 }
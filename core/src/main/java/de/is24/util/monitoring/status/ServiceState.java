@@ -4,6 +4,7 @@ import de.is24.util.monitoring.Counter;
 import de.is24.util.monitoring.Reportable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.util.Map;
 
 
 /**
@@ -12,6 +13,8 @@ import org.slf4j.LoggerFactory;
  *
  * Current windows are  1min, 5min, 15min.
  * Therefor it samples the counters every 10 seconds.
+ *
+ * No samples are added before the success counter was seen, i.e. before it changed for the first time.
  */
 public class ServiceState {
   private static final Logger LOGGER = LoggerFactory.getLogger(ServiceState.class);
@@ -23,6 +26,7 @@ public class ServiceState {
 
   private Counter successCounter;
   private Counter errorCounter;
+  private volatile boolean successCounterSeen;
   private SampledData sampledData;
 
   public ServiceState(String name, String successCounterKey, String errorCounterKey) {
@@ -32,6 +36,40 @@ public class ServiceState {
     this.sampledData = new SampledData(name);
   }
 
+  /**
+   * adds a sample from the counter changes since the previous check
+   *
+   * @param counterDeltas changes of all counters changed since the previous check, by counter name
+   */
+  public void check(Map<String, Long> counterDeltas) {
+    if (!successCounterSeen) {
+      if ((successCounter == null) && !counterDeltas.containsKey(successCounterKey)) {
+        LOGGER.debug("{} not seen yet", successCounterKey);
+        return;
+      }
+      LOGGER.info("found {}", successCounterKey);
+      successCounterSeen = true;
+    }
+
+    long successDelta = deltaOf(counterDeltas, successCounterKey);
+    long errorDelta = deltaOf(counterDeltas, errorCounterKey);
+    LOGGER.debug("successDelta : {} errorDelta : {}", successDelta, errorDelta);
+    sampledData.addSample(successDelta, errorDelta);
+  }
+
+  private long deltaOf(Map<String, Long> counterDeltas, String counterKey) {
+    Long delta = counterDeltas.get(counterKey);
+    return (delta == null) ? 0 : delta;
+  }
+
+  /**
+   * adds a sample from the changes of the counters found by {@link #checkForReportable(Reportable)} since the
+   * previous call
+   *
+   * @deprecated the {@link ServiceStateManager} passes the counter changes read from a cursor to
+   *             {@link #check(Map)}, this method is kept for states checked by other means
+   */
+  @Deprecated
   public void check() {
     long successCounterCount = (successCounter == null) ? Long.MAX_VALUE : successCounter.getCount();
     long successDelta;
@@ -49,7 +87,12 @@ public class ServiceState {
     previousSuccessCounterValue = successCounterCount;
   }
 
-
+  /**
+   * keeps the reportable if it is the success or error counter of this state, for {@link #check()}
+   *
+   * @deprecated see {@link #check()}
+   */
+  @Deprecated
   public void checkForReportable(Reportable reportable) {
     LOGGER.debug("checking reportable with name {}", reportable.getName());
     if ((successCounter == null) && (reportable instanceof Counter) && reportable.getName().equals(successCounterKey)) {
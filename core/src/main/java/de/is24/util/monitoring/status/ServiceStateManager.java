@@ -1,10 +1,15 @@
 package de.is24.util.monitoring.status;
 
+import de.is24.util.monitoring.CorePlugin;
 import de.is24.util.monitoring.InApplicationMonitor;
+import de.is24.util.monitoring.MetricCursor;
+import de.is24.util.monitoring.MetricDeltas;
+import de.is24.util.monitoring.MetricNameTable;
 import de.is24.util.monitoring.Reportable;
 import de.is24.util.monitoring.ReportableObserver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
@@ -12,10 +17,16 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 
+/**
+ * Samples the counters of the added {@link ServiceState}s once a minute, by reading their changes from a
+ * {@link MetricCursor} of the core plugin. Cursors are not supported by {@link CorePlugin.MetricStorage#COMPACT}
+ * storage, so service states require a core plugin keeping its metrics as objects.
+ */
 public class ServiceStateManager implements ReportableObserver {
   private static final Logger LOGGER = LoggerFactory.getLogger(ServiceStateManager.class);
   private ScheduledExecutorService ex;
   private Map<String, ServiceState> serviceStates;
+  private volatile MetricCursor cursor;
 
   public ServiceStateManager() {
     ex = Executors.newSingleThreadScheduledExecutor();
@@ -28,12 +39,22 @@ public class ServiceStateManager implements ReportableObserver {
   }
 
   /**
-   * after adding all serviceState objects once call this method to connect ServiceStates with Monitors
+   * after adding all serviceState objects once call this method to start sampling the counters,
+   * counter changes before this call are not taken into account
+   *
+   * @throws UnsupportedOperationException if the core plugin uses {@link CorePlugin.MetricStorage#COMPACT}
+   *                                       storage, which does not support cursors
    */
   public void initialize() {
-    InApplicationMonitor.getInstance().getCorePlugin().addReportableObserver(this);
+    cursor = InApplicationMonitor.getInstance().getCorePlugin().createCursor();
   }
 
+  /**
+   * passes the reportable to {@link ServiceState#checkForReportable(Reportable)} of all states
+   *
+   * @deprecated the manager is not registered as observer anymore, counter changes are read from a cursor
+   */
+  @Deprecated
   @Override
   public void addNewReportable(Reportable reportable) {
     for (ServiceState state : serviceStates.values()) {
@@ -42,17 +63,36 @@ public class ServiceStateManager implements ReportableObserver {
   }
 
   public void shutdown() {
-    InApplicationMonitor.getInstance().getCorePlugin().removeReportableObserver(this);
     ex.shutdown();
+
+    MetricCursor current = cursor;
+    if (current != null) {
+      cursor = null;
+      current.close();
+    }
   }
 
   private class ServiceStateJob implements Runnable {
     @Override
     public void run() {
+      MetricCursor current = cursor;
+      if (current == null) {
+        return;
+      }
+
       LOGGER.debug("updating service state");
+
+      MetricDeltas deltas = current.read();
+      Map<String, Long> counterDeltas = new HashMap<String, Long>();
+      for (int i = 0; i < deltas.size(); i++) {
+        if (deltas.getKind(i) == MetricNameTable.Kind.COUNTER) {
+          counterDeltas.put(deltas.getName(i), deltas.getCount(i));
+        }
+      }
+
       for (ServiceState state : serviceStates.values()) {
         LOGGER.debug("checking {}", state.getName());
-        state.check();
+        state.check(counterDeltas);
       }
       LOGGER.debug("done with service state");
     }
@@ -1,6 +1,7 @@
 package de.is24.util.monitoring.tools;
 
 import de.is24.util.monitoring.Counter;
+import de.is24.util.monitoring.Histogram;
 import de.is24.util.monitoring.HistorizableList;
 import de.is24.util.monitoring.MultiValueProvider;
 import de.is24.util.monitoring.ReportVisitor;
@@ -21,6 +22,10 @@ public class DoNothingReportVisitor implements ReportVisitor {
   public void reportTimer(Timer timer) {
   }
 
+  @Override
+  public void reportHistogram(Histogram histogram) {
+  }
+
   @Override
   public void reportStateValue(StateValueProvider stateValueProvider) {
   }
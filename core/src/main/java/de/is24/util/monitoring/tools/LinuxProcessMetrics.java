@@ -0,0 +1,249 @@
+package de.is24.util.monitoring.tools;
+
+import de.is24.util.monitoring.MultiValueProvider;
+import de.is24.util.monitoring.ReportVisitor;
+import de.is24.util.monitoring.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+
+/**
+ * Process and container metrics read directly from the proc and cgroup v2 file systems of Linux:
+ * cpu time, page faults, memory, threads, context switches, io, open file descriptors and, if the
+ * process runs in a cgroup v2, cpu usage and throttling as well as memory usage and limit of the cgroup.
+ *
+ * The files are opened once and read into reusable buffers on each call to {@link #getValues()}.
+ * Files not available, for example /proc/self/io in some containers or the cgroup files on cgroup v1
+ * hosts, are left out. Values not present in a file are reported as -1, as is an unlimited memory.max.
+ *
+ * Since Linux 6.2 the size of /proc/self/fd is the number of open file descriptors, which is read without
+ * allocating. Older kernels report a size of 0, the directory is listed then, allocating a String per descriptor.
+ */
+public final class LinuxProcessMetrics implements MultiValueProvider {
+  private static final Logger LOGGER = LoggerFactory.getLogger(LinuxProcessMetrics.class);
+  private static final Charset US_ASCII = Charset.forName("US-ASCII");
+  private static final String NAME = "LinuxProcessMetrics";
+  private static final String CGROUP_ROOT = "/sys/fs/cgroup";
+
+  // clock ticks of /proc/self/stat, USER_HZ is 100 on all common Linux platforms
+  private static final long MILLIS_PER_TICK = 10;
+
+  // fields of /proc/self/stat counted from the state, the first field after the command name
+  private static final int[] STAT_FIELDS = { 7, 9, 11, 12 };
+  private static final String[] STAT_NAMES = {
+    "process.faults.minor", "process.faults.major", "process.cpu.userMillis", "process.cpu.systemMillis"
+  };
+  private static final long[] STAT_FACTORS = { 1, 1, MILLIS_PER_TICK, MILLIS_PER_TICK };
+
+  private static final byte[][] STATUS_KEYS = keys("VmSize", "VmRSS", "VmHWM", "Threads", "voluntary_ctxt_switches",
+    "nonvoluntary_ctxt_switches");
+  private static final long[] STATUS_FACTORS = { 1024, 1024, 1024, 1, 1, 1 };
+  private static final String[] STATUS_NAMES = {
+    "process.memory.virtual", "process.memory.rss", "process.memory.rssPeak", "process.threads",
+    "process.contextSwitches.voluntary", "process.contextSwitches.involuntary"
+  };
+
+  private static final byte[][] IO_KEYS = keys("rchar", "wchar", "syscr", "syscw", "read_bytes", "write_bytes");
+  private static final long[] IO_FACTORS = { 1, 1, 1, 1, 1, 1 };
+  private static final String[] IO_NAMES = {
+    "process.io.chars.read", "process.io.chars.written", "process.io.syscalls.read", "process.io.syscalls.write",
+    "process.io.bytes.read", "process.io.bytes.written"
+  };
+
+  private static final byte[][] CPU_STAT_KEYS = keys("usage_usec", "nr_periods", "nr_throttled", "throttled_usec");
+  private static final long[] CPU_STAT_FACTORS = { 1, 1, 1, 1 };
+  private static final String[] CPU_STAT_NAMES = {
+    "cgroup.cpu.usageMicros", "cgroup.cpu.periods", "cgroup.cpu.throttledPeriods", "cgroup.cpu.throttledMicros"
+  };
+
+  private static volatile LinuxProcessMetrics instance;
+
+  private final ProcFile stat;
+  private final ProcFile status;
+  private final ProcFile io;
+  private final File fdDirectory;
+  private final boolean fdCountIsSize;
+  private final ProcFile cpuStat;
+  private final ProcFile memoryCurrent;
+  private final ProcFile memoryMax;
+  private final long[] values = new long[STAT_NAMES.length + STATUS_NAMES.length + IO_NAMES.length + 1 +
+      CPU_STAT_NAMES.length + 2];
+  private int valueCount;
+
+  LinuxProcessMetrics(String procSelf, String cgroupDirectory) {
+    stat = ProcFile.open(procSelf + "/stat", 1024);
+    status = ProcFile.open(procSelf + "/status", 4096);
+    io = ProcFile.open(procSelf + "/io", 512);
+    fdDirectory = new File(procSelf + "/fd");
+    fdCountIsSize = procSelf.startsWith("/proc/") && (fdDirectory.length() > 0);
+    cpuStat = (cgroupDirectory == null) ? null : ProcFile.open(cgroupDirectory + "/cpu.stat", 512);
+    memoryCurrent = (cgroupDirectory == null) ? null : ProcFile.open(cgroupDirectory + "/memory.current", 64);
+    memoryMax = (cgroupDirectory == null) ? null : ProcFile.open(cgroupDirectory + "/memory.max", 64);
+  }
+
+  /**
+   * @return the metrics of this process, or null if it does not run on Linux
+   */
+  public static LinuxProcessMetrics getInstance() {
+    if ((instance == null) && new File("/proc/self/stat").canRead()) {
+      synchronized (LinuxProcessMetrics.class) {
+        if (instance == null) {
+          instance = new LinuxProcessMetrics("/proc/self", findCgroupDirectory());
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * The cgroup v2 directory of this process is the path of the "0::" line of /proc/self/cgroup below the
+   * cgroup v2 mount, which is /sys/fs/cgroup or, on hybrid hosts, /sys/fs/cgroup/unified. Inside a container
+   * the path is often not visible, the container's own cgroup is then mounted at the root.
+   */
+  static String findCgroupDirectory() {
+    String path = readCgroupV2Path();
+    if (path == null) {
+      return null;
+    }
+    for (String root : new String[] { CGROUP_ROOT, CGROUP_ROOT + "/unified" }) {
+      if (!new File(root, "cgroup.controllers").exists()) {
+        continue;
+      }
+
+      File directory = new File(root + path);
+      if (new File(directory, "cpu.stat").exists()) {
+        return directory.getPath();
+      }
+      if (new File(root, "cpu.stat").exists()) {
+        return root;
+      }
+    }
+    return null;
+  }
+
+  private static String readCgroupV2Path() {
+    BufferedReader reader = null;
+    try {
+      reader = new BufferedReader(new InputStreamReader(new FileInputStream("/proc/self/cgroup"), US_ASCII));
+
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith("0::")) {
+          return line.substring(3);
+        }
+      }
+    } catch (IOException e) {
+      LOGGER.debug("could not read /proc/self/cgroup {}", e.getMessage());
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (IOException e) {
+          LOGGER.debug("could not close /proc/self/cgroup");
+        }
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public synchronized Collection<State> getValues() {
+    List<State> states = new ArrayList<State>(values.length);
+    valueCount = 0;
+    if ((stat != null) && stat.read()) {
+      // the command name in parentheses may contain blanks, fields are counted after it
+      stat.parseFields(stat.lastIndexOf((byte) ')') + 2, STAT_FIELDS, values, valueCount);
+      for (int i = 0; i < STAT_NAMES.length; i++) {
+        long value = values[valueCount + i];
+        values[valueCount + i] = (value < 0) ? value : (value * STAT_FACTORS[i]);
+      }
+      addStates(STAT_NAMES, states);
+    }
+    if ((status != null) && status.read()) {
+      status.parseKeyValues(STATUS_KEYS, STATUS_FACTORS, values, valueCount);
+      addStates(STATUS_NAMES, states);
+    }
+    if ((io != null) && io.read()) {
+      io.parseKeyValues(IO_KEYS, IO_FACTORS, values, valueCount);
+      addStates(IO_NAMES, states);
+    }
+
+    long fds = countFileDescriptors();
+    if (fds >= 0) {
+      values[valueCount] = fds;
+      addState("process.fd.open", states);
+    }
+
+    if ((cpuStat != null) && cpuStat.read()) {
+      cpuStat.parseKeyValues(CPU_STAT_KEYS, CPU_STAT_FACTORS, values, valueCount);
+      addStates(CPU_STAT_NAMES, states);
+    }
+    if ((memoryCurrent != null) && memoryCurrent.read()) {
+      values[valueCount] = memoryCurrent.parseFirstLong();
+      addState("cgroup.memory.current", states);
+    }
+    if ((memoryMax != null) && memoryMax.read()) {
+      values[valueCount] = memoryMax.parseFirstLong();
+      addState("cgroup.memory.max", states);
+    }
+    return states;
+  }
+
+  private long countFileDescriptors() {
+    if (fdCountIsSize) {
+      return fdDirectory.length();
+    }
+
+    String[] fds = fdDirectory.list();
+    return (fds == null) ? -1 : fds.length;
+  }
+
+  private void addStates(String[] names, List<State> states) {
+    for (String name : names) {
+      addState(name, states);
+    }
+  }
+
+  private void addState(String name, List<State> states) {
+    states.add(new State(name, values[valueCount]));
+    valueCount++;
+  }
+
+  /**
+   * Closes all files kept open, the values read from them are not reported afterwards.
+   */
+  synchronized void close() {
+    for (ProcFile file : new ProcFile[] { stat, status, io, cpuStat, memoryCurrent, memoryMax }) {
+      if (file != null) {
+        file.close();
+      }
+    }
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public void accept(ReportVisitor visitor) {
+    visitor.reportMultiValue(this);
+  }
+
+  private static byte[][] keys(String... keys) {
+    byte[][] result = new byte[keys.length][];
+    for (int i = 0; i < keys.length; i++) {
+      result[i] = keys[i].getBytes(US_ASCII);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,55 @@
+package de.is24.util.monitoring.tools;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A growable array of atomically updated longs, allocated in chunks of {@value #CHUNK_SIZE} values. Growing only
+ * adds chunks, so values are never copied and concurrent updates are never lost.
+ *
+ * Indexes must be below the capacity ensured before, which must be published to the updating threads, e.g. by the
+ * volatile write that publishes the id the index is computed from.
+ */
+public final class LongSlab {
+  private static final int CHUNK_BITS = 12;
+  static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  private volatile AtomicLongArray[] chunks = new AtomicLongArray[0];
+
+  public synchronized void ensureCapacity(int capacity) {
+    AtomicLongArray[] current = chunks;
+    int required = (capacity + CHUNK_MASK) >>> CHUNK_BITS;
+    if (required > current.length) {
+      AtomicLongArray[] grown = Arrays.copyOf(current, java.lang.Math.max(required, 2 * current.length));
+      for (int i = current.length; i < grown.length; i++) {
+        grown[i] = new AtomicLongArray(CHUNK_SIZE);
+      }
+      chunks = grown;
+    }
+  }
+
+  public int capacity() {
+    return chunks.length * CHUNK_SIZE;
+  }
+
+  public long get(int index) {
+    return chunks[index >>> CHUNK_BITS].get(index & CHUNK_MASK);
+  }
+
+  public void set(int index, long value) {
+    chunks[index >>> CHUNK_BITS].set(index & CHUNK_MASK, value);
+  }
+
+  public void add(int index, long x) {
+    chunks[index >>> CHUNK_BITS].addAndGet(index & CHUNK_MASK, x);
+  }
+
+  /**
+   * @return approximate number of bytes of heap used by the chunks
+   */
+  public long getFootprint() {
+    return chunks.length * ((8L * CHUNK_SIZE) + 32);
+  }
+}
@@ -0,0 +1,159 @@
+package de.is24.util.monitoring.tools;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+
+/**
+ * Interns names into consecutive int ids, keeping the names UTF-8 encoded in a single byte array instead of one
+ * String object per name.
+ *
+ * Lookups do not lock and do not allocate for ASCII names. Interning new names is synchronized. Ids are never
+ * removed. Names are only decoded to Strings on {@link #getName(int)}.
+ */
+public final class NameDictionary {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final int INITIAL_CAPACITY = 64;
+
+  private volatile Table table = new Table(INITIAL_CAPACITY, 16 * INITIAL_CAPACITY);
+  private volatile int size;
+
+  /**
+   * @return the id of the name, -1 if it was not interned yet
+   */
+  public int lookup(String name) {
+    Table current = table;
+    int hash = hash(name);
+    int mask = current.slots.length() - 1;
+    int slot = hash & mask;
+    int entry;
+    while ((entry = current.slots.get(slot)) != 0) {
+      int id = entry - 1;
+      if ((current.hashes[id] == hash) && current.matches(id, name)) {
+        return id;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * @return the id of the name, the next unused id if the name was not interned yet
+   */
+  public synchronized int intern(String name) {
+    int id = lookup(name);
+    if (id >= 0) {
+      return id;
+    }
+
+    byte[] bytes = name.getBytes(UTF_8);
+    Table current = table;
+    id = size;
+    if (((id + 1) > current.capacity) || ((current.offsets[id] + bytes.length) > current.bytes.length)) {
+      current = current.grow(id, bytes.length);
+      table = current;
+    }
+
+    int offset = current.offsets[id];
+    System.arraycopy(bytes, 0, current.bytes, offset, bytes.length);
+    current.offsets[id + 1] = offset + bytes.length;
+    current.hashes[id] = hash(name);
+
+    // the volatile write of the slot publishes the entry to lookups
+    current.insert(id);
+    size = id + 1;
+    return id;
+  }
+
+  public String getName(int id) {
+    if ((id < 0) || (id >= size)) {
+      throw new IndexOutOfBoundsException("no name with id " + id);
+    }
+
+    Table current = table;
+    int offset = current.offsets[id];
+    return new String(current.bytes, offset, current.offsets[id + 1] - offset, UTF_8);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return approximate number of bytes of heap used by the arrays of this dictionary
+   */
+  public long getFootprint() {
+    Table current = table;
+    return current.bytes.length + (4L * current.offsets.length) + (4L * current.hashes.length) +
+      (4L * current.slots.length());
+  }
+
+  private static int hash(String name) {
+    int h = name.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  private static final class Table {
+    private final int capacity;
+    private final byte[] bytes;
+    private final int[] offsets;
+    private final int[] hashes;
+
+    // id + 1 per used slot, open addressing with linear probing, at most half full
+    private final AtomicIntegerArray slots;
+
+    Table(int capacity, int byteCapacity) {
+      this.capacity = capacity;
+      this.bytes = new byte[byteCapacity];
+      this.offsets = new int[capacity + 1];
+      this.hashes = new int[capacity];
+      this.slots = new AtomicIntegerArray(2 * capacity);
+    }
+
+    Table grow(int size, int additionalBytes) {
+      int newCapacity = (size < capacity) ? capacity : (2 * capacity);
+      int newByteCapacity = bytes.length;
+      while ((offsets[size] + additionalBytes) > newByteCapacity) {
+        newByteCapacity *= 2;
+      }
+
+      Table result = new Table(newCapacity, newByteCapacity);
+      System.arraycopy(bytes, 0, result.bytes, 0, offsets[size]);
+      System.arraycopy(offsets, 0, result.offsets, 0, size + 1);
+      System.arraycopy(hashes, 0, result.hashes, 0, size);
+      for (int id = 0; id < size; id++) {
+        result.insert(id);
+      }
+      return result;
+    }
+
+    void insert(int id) {
+      int mask = slots.length() - 1;
+      int slot = hashes[id] & mask;
+      while (slots.get(slot) != 0) {
+        slot = (slot + 1) & mask;
+      }
+      slots.set(slot, id + 1);
+    }
+
+    boolean matches(int id, String name) {
+      int offset = offsets[id];
+      int length = offsets[id + 1] - offset;
+      int nameLength = name.length();
+      if (nameLength > length) {
+        return false;
+      }
+      for (int i = 0; i < nameLength; i++) {
+        char c = name.charAt(i);
+        if (c >= 0x80) {
+          return Arrays.equals(Arrays.copyOfRange(bytes, offset, offset + length), name.getBytes(UTF_8));
+        }
+        if (bytes[offset + i] != c) {
+          return false;
+        }
+      }
+      return nameLength == length;
+    }
+  }
+}
@@ -0,0 +1,201 @@
+package de.is24.util.monitoring.tools;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * A file of the proc or cgroup file system. The file is kept open and read from its start into a reusable
+ * buffer on each call of {@link #read()}. The parse methods work on the bytes read, without creating Strings.
+ */
+final class ProcFile {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProcFile.class);
+  private static final int MAX_CAPACITY = 64 * 1024;
+
+  private final String path;
+  private final FileChannel channel;
+  private ByteBuffer buffer;
+  private byte[] bytes;
+  private int length;
+
+  private ProcFile(String path, FileChannel channel, int capacity) {
+    this.path = path;
+    this.channel = channel;
+    allocate(capacity);
+  }
+
+  /**
+   * @param path absolute path of the file
+   * @param capacity initial size of the buffer, grows if the file does not fit
+   * @return the opened file, or null if the file does not exist or can not be read
+   */
+  static ProcFile open(String path, int capacity) {
+    File file = new File(path);
+    if (!file.canRead()) {
+      return null;
+    }
+    try {
+      return new ProcFile(path, new FileInputStream(file).getChannel(), capacity);
+    } catch (IOException e) {
+      LOGGER.debug("could not open {} {}", path, e.getMessage());
+      return null;
+    }
+  }
+
+  private void allocate(int capacity) {
+    buffer = ByteBuffer.allocate(capacity);
+    bytes = buffer.array();
+  }
+
+  /**
+   * Reads the current content of the file.
+   *
+   * @return true if the file was read
+   */
+  boolean read() {
+    try {
+      while (true) {
+        buffer.clear();
+
+        long position = 0;
+        int read;
+        while (buffer.hasRemaining() && ((read = channel.read(buffer, position)) > 0)) {
+          position += read;
+        }
+        if (buffer.hasRemaining() || (buffer.capacity() >= MAX_CAPACITY)) {
+          length = buffer.position();
+          return true;
+        }
+        allocate(buffer.capacity() * 2);
+      }
+    } catch (IOException e) {
+      LOGGER.debug("could not read {} {}", path, e.getMessage());
+      length = 0;
+      return false;
+    }
+  }
+
+  /**
+   * Parses files of lines starting with a key followed by a colon or blank and a number, like
+   * /proc/self/status or cpu.stat. Keys not found are set to -1.
+   *
+   * @param keys the keys to look for
+   * @param factors factors the values of the keys are multiplied with, for example 1024 for values in kB
+   * @param values the array to store the values at
+   * @param offset index of the value of the first key
+   */
+  void parseKeyValues(byte[][] keys, long[] factors, long[] values, int offset) {
+    for (int i = 0; i < keys.length; i++) {
+      values[offset + i] = -1;
+    }
+
+    int lineStart = 0;
+    while (lineStart < length) {
+      for (int i = 0; i < keys.length; i++) {
+        int keyEnd = lineStart + keys[i].length;
+        if (startsWith(lineStart, keys[i]) && (keyEnd < length) && isSeparator(bytes[keyEnd])) {
+          long value = parseLong(keyEnd);
+          values[offset + i] = (value < 0) ? value : (value * factors[i]);
+          break;
+        }
+      }
+      lineStart = indexOf((byte) '\n', lineStart) + 1;
+      if (lineStart == 0) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Parses blank separated fields, like /proc/self/stat.
+   *
+   * @param from index of the first byte of field 0
+   * @param fields ascending indexes of the fields to parse
+   * @param values the array to store the values at, fields not found are set to -1
+   * @param offset index of the value of the first field
+   */
+  void parseFields(int from, int[] fields, long[] values, int offset) {
+    int field = 0;
+    int position = from;
+    for (int i = 0; i < fields.length; i++) {
+      while ((field < fields[i]) && (position >= 0)) {
+        position = indexOf((byte) ' ', position);
+        if (position >= 0) {
+          position++;
+          field++;
+        }
+      }
+      values[offset + i] = (position >= 0) ? parseLong(position) : -1;
+    }
+  }
+
+  /**
+   * @return the first number of the file, or -1 if it does not start with one, like "max" in memory.max
+   */
+  long parseFirstLong() {
+    return parseLong(0);
+  }
+
+  int lastIndexOf(byte b) {
+    for (int i = length - 1; i >= 0; i--) {
+      if (bytes[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOGGER.debug("could not close {} {}", path, e.getMessage());
+    }
+  }
+
+  private long parseLong(int from) {
+    int position = from;
+    while ((position < length) && isSeparator(bytes[position])) {
+      position++;
+    }
+
+    long value = 0;
+    int digits = 0;
+    while ((position < length) && (bytes[position] >= '0') && (bytes[position] <= '9')) {
+      value = (value * 10) + (bytes[position] - '0');
+      position++;
+      digits++;
+    }
+    return (digits > 0) ? value : -1;
+  }
+
+  private int indexOf(byte b, int from) {
+    for (int i = from; i < length; i++) {
+      if (bytes[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private boolean startsWith(int from, byte[] key) {
+    if ((from + key.length) > length) {
+      return false;
+    }
+    for (int i = 0; i < key.length; i++) {
+      if (bytes[from + i] != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isSeparator(byte b) {
+    return (b == ':') || (b == ' ') || (b == '\t');
+  }
+}
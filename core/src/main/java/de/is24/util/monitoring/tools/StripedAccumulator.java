@@ -0,0 +1,255 @@
+package de.is24.util.monitoring.tools;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A striped accumulator for one or more long sums, similar to java.util.concurrent.atomic.LongAdder
+ * which is not available at the Java 6 source level of appmon4j.
+ *
+ * As long as there is no contention, all updates go to a single base cell. On the first failed
+ * compare and set the accumulator switches to two cache line padded cells, and each thread updates the
+ * cell selected by its probe, a per thread hash. A thread failing to update its cell moves on to another
+ * cell by rehashing its probe, if it fails again the number of cells is doubled, up to twice the number of
+ * processors (at most 64). Like LongAdder, an accumulator thus only grows as far as its actual contention
+ * requires. Reads sum up the base cell and all cells.
+ *
+ * One accumulator may hold several fields (e.g. count, sum and sum of squares of a Timer),
+ * which are kept in the same cell, so a thread updating all fields touches a single cache line.
+ *
+ * A field may also hold a double sum, see {@link #addDouble(int, double)}, which must not be mixed with long
+ * updates of the same field.
+ *
+ * Like the AtomicLong based implementation it replaces, reads are not atomic across fields or
+ * against concurrent updates.
+ */
+public final class StripedAccumulator {
+  // 8 longs = 64 bytes on both sides of the fields of a cell, keeps the fields of neighbouring cells at least
+  // 128 bytes apart, i.e. out of adjacent cache lines (spatial prefetch)
+  private static final int CELL_PADDING = 8;
+  private static final int MAX_CELLS = 64;
+  private static final int MAX_WIDTH = 16;
+  private static final int CELLS = cellCount(Runtime.getRuntime().availableProcessors());
+  private static final ThreadLocal<int[]> PROBE = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      long id = Thread.currentThread().getId();
+      int hash = (int) (id ^ (id >>> 32)) * 0x9e3779b9;
+      return new int[] { (hash == 0) ? 1 : hash };
+    }
+  };
+
+  private final int width;
+  private final AtomicLongArray base;
+  private volatile AtomicLongArray[] cells;
+
+  /**
+   * @param width number of fields, between 1 and 16
+   */
+  public StripedAccumulator(int width) {
+    if ((width < 1) || (width > MAX_WIDTH)) {
+      throw new IllegalArgumentException("width must be between 1 and " + MAX_WIDTH);
+    }
+    this.width = width;
+    this.base = new AtomicLongArray(width);
+  }
+
+  /**
+   * @return the maximum number of cells for the given number of processors
+   */
+  static int cellCount(int processors) {
+    int count = 1;
+    while ((count < (2 * processors)) && (count < MAX_CELLS)) {
+      count <<= 1;
+    }
+    return count;
+  }
+
+  /**
+   * @return number of fields of this accumulator
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * @return number of cells in use, 0 as long as all updates go to the base cell
+   */
+  int getCellCount() {
+    AtomicLongArray[] currentCells = cells;
+    return (currentCells == null) ? 0 : currentCells.length;
+  }
+
+  /**
+   * Adds the given value to the first field.
+   *
+   * @param x the value to add
+   */
+  public void add(long x) {
+    add(0, x);
+  }
+
+  /**
+   * Adds the given value to the given field.
+   *
+   * @param field index of the field
+   * @param x the value to add
+   */
+  public void add(int field, long x) {
+    update(field, x, false);
+  }
+
+  /**
+   * Adds the given value to the given field holding a double sum, e.g. of values whose long sum could overflow.
+   *
+   * @param field index of the field
+   * @param x the value to add
+   */
+  public void addDouble(int field, double x) {
+    update(field, Double.doubleToRawLongBits(x), true);
+  }
+
+  private void update(int field, long x, boolean asDouble) {
+    AtomicLongArray[] currentCells = cells;
+    if (currentCells == null) {
+      long current = base.get(field);
+      if (base.compareAndSet(field, current, apply(current, x, asDouble))) {
+        return;
+      }
+      currentCells = inflate();
+    }
+
+    int[] probe = PROBE.get();
+    int index = CELL_PADDING + field;
+    boolean collided = false;
+    while (true) {
+      AtomicLongArray cell = currentCells[probe[0] & (currentCells.length - 1)];
+      long current = cell.get(index);
+      if (cell.compareAndSet(index, current, apply(current, x, asDouble))) {
+        return;
+      }
+
+      if (collided && (currentCells.length < CELLS)) {
+        currentCells = grow(currentCells);
+        collided = false;
+      } else {
+        collided = true;
+        currentCells = cells;
+      }
+      probe[0] = rehash(probe[0]);
+    }
+  }
+
+  /**
+   * @param field index of a field updated by {@link #addDouble(int, double)}
+   * @return the sum of the given field over all cells
+   */
+  public double sumDouble(int field) {
+    double result = Double.longBitsToDouble(base.get(field));
+    AtomicLongArray[] currentCells = cells;
+    if (currentCells != null) {
+      for (AtomicLongArray cell : currentCells) {
+        result += Double.longBitsToDouble(cell.get(CELL_PADDING + field));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the sum of the first field
+   */
+  public long sum() {
+    return sum(0);
+  }
+
+  /**
+   * @param field index of the field
+   * @return the sum of the given field over all cells
+   */
+  public long sum(int field) {
+    long result = base.get(field);
+    AtomicLongArray[] currentCells = cells;
+    if (currentCells != null) {
+      for (AtomicLongArray cell : currentCells) {
+        result += cell.get(CELL_PADDING + field);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Sets all fields to 0. Updates running concurrently may or may not be lost.
+   */
+  public void reset() {
+    for (int field = 0; field < width; field++) {
+      base.set(field, 0);
+    }
+
+    AtomicLongArray[] currentCells = cells;
+    if (currentCells != null) {
+      for (AtomicLongArray cell : currentCells) {
+        for (int field = 0; field < width; field++) {
+          cell.set(CELL_PADDING + field, 0);
+        }
+      }
+    }
+  }
+
+  private synchronized AtomicLongArray[] inflate() {
+    if (cells == null) {
+      cells = newCells(null, 2);
+    }
+    return cells;
+  }
+
+  /**
+   * Doubles the number of cells, unless another thread already did. Cells are kept, so no update gets lost.
+   */
+  private synchronized AtomicLongArray[] grow(AtomicLongArray[] currentCells) {
+    if ((cells == currentCells) && (currentCells.length < CELLS)) {
+      cells = newCells(currentCells, currentCells.length * 2);
+    }
+    return cells;
+  }
+
+  private AtomicLongArray[] newCells(AtomicLongArray[] currentCells, int count) {
+    AtomicLongArray[] newCells = new AtomicLongArray[count];
+    int kept = 0;
+    if (currentCells != null) {
+      System.arraycopy(currentCells, 0, newCells, 0, currentCells.length);
+      kept = currentCells.length;
+    }
+    for (int i = kept; i < count; i++) {
+      newCells[i] = new AtomicLongArray(CELL_PADDING + width + CELL_PADDING);
+    }
+    return newCells;
+  }
+
+  private static long apply(long current, long x, boolean asDouble) {
+    return asDouble ? plus(current, Double.longBitsToDouble(x)) : (current + x);
+  }
+
+  private static long plus(long doubleBits, double x) {
+    return Double.doubleToRawLongBits(Double.longBitsToDouble(doubleBits) + x);
+  }
+
+  private static int rehash(int probe) {
+    // xorshift, as in LongAdder
+    probe ^= probe << 13;
+    probe ^= probe >>> 17;
+    probe ^= probe << 5;
+    return probe;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("StripedAccumulator[");
+    for (int field = 0; field < width; field++) {
+      if (field > 0) {
+        builder.append(", ");
+      }
+      builder.append(sum(field));
+    }
+    return builder.append("]").toString();
+  }
+}
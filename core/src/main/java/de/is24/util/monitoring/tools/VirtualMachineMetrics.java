@@ -1,5 +1,6 @@
 package de.is24.util.monitoring.tools;
 
+import de.is24.util.monitoring.AbstractStateValueProvider;
 import de.is24.util.monitoring.CorePlugin;
 import de.is24.util.monitoring.MultiValueProvider;
 import de.is24.util.monitoring.ReportVisitor;
@@ -37,6 +38,7 @@ import java.util.concurrent.TimeUnit;
 public class VirtualMachineMetrics {
   private static final Logger LOGGER = LoggerFactory.getLogger(VirtualMachineMetrics.class);
   private static final int MAX_STACK_TRACE_DEPTH = 100;
+  private static final String UNIX_OPERATING_SYSTEM_MXBEAN = "com.sun.management.UnixOperatingSystemMXBean";
 
 
   /**
@@ -238,53 +240,10 @@ public class VirtualMachineMetrics {
       });
 
     final OperatingSystemMXBean operatingSystemMXBean = VirtualMachineMBeans.getInstance().getOs();
-    corePlugin.registerStateValue(new StateValueProvider() {
-        @Override
-        public long getValue() {
-          try {
-            final Method getOpenFileDescriptorCount = operatingSystemMXBean.getClass()
-              .getDeclaredMethod("getOpenFileDescriptorCount");
-            getOpenFileDescriptorCount.setAccessible(true);
-
-            return ((Long) getOpenFileDescriptorCount.invoke(operatingSystemMXBean)).longValue();
-          } catch (NoSuchMethodException e) {
-            return -1;
-          } catch (IllegalAccessException e) {
-            return -1;
-          } catch (InvocationTargetException e) {
-            return -1;
-          }
-        }
-
-        @Override
-        public String getName() {
-          return "jvm.filedescriptors.open";
-        }
-      });
-    corePlugin.registerStateValue(new StateValueProvider() {
-        @Override
-        public long getValue() {
-          try {
-            final Method getMaxFileDescriptorCount = operatingSystemMXBean.getClass()
-              .getDeclaredMethod("getMaxFileDescriptorCount");
-            getMaxFileDescriptorCount.setAccessible(true);
-
-            return ((Long) getMaxFileDescriptorCount.invoke(operatingSystemMXBean)).longValue();
-
-          } catch (NoSuchMethodException e) {
-            return -1;
-          } catch (IllegalAccessException e) {
-            return -1;
-          } catch (InvocationTargetException e) {
-            return -1;
-          }
-        }
-
-        @Override
-        public String getName() {
-          return "jvm.filedescriptors.max";
-        }
-      });
+    corePlugin.registerStateValue(new ReflectiveStateValueProvider("jvm.filedescriptors.open", operatingSystemMXBean,
+        UNIX_OPERATING_SYSTEM_MXBEAN, "getOpenFileDescriptorCount"));
+    corePlugin.registerStateValue(new ReflectiveStateValueProvider("jvm.filedescriptors.max", operatingSystemMXBean,
+        UNIX_OPERATING_SYSTEM_MXBEAN, "getMaxFileDescriptorCount"));
 
     List<GarbageCollectorMXBean> garbageCollectors = VirtualMachineMBeans.getInstance().getGarbageCollectors();
     LOGGER.info("found {} garbage collectors", garbageCollectors.size());
@@ -317,6 +276,64 @@ public class VirtualMachineMetrics {
     }
 
     corePlugin.registerMultiValueProvider(new ThreadStateProvider());
+
+    LinuxProcessMetrics linuxProcessMetrics = LinuxProcessMetrics.getInstance();
+    if (linuxProcessMetrics != null) {
+      corePlugin.registerMultiValueProvider(linuxProcessMetrics);
+    }
+  }
+
+  /**
+   * Reads a long value by calling a method of a public, but not always available interface, like the file
+   * descriptor counts of the UnixOperatingSystemMXBean. The method is looked up once on the interface, never on
+   * the implementing class, as that is not accessible on newer JDKs. The value is -1 if the target does not
+   * implement the interface or the method cannot be called.
+   */
+  static class ReflectiveStateValueProvider extends AbstractStateValueProvider {
+    private final Object target;
+    private final Method method;
+
+    ReflectiveStateValueProvider(String name, Object target, String interfaceName, String methodName) {
+      super(name);
+      this.target = target;
+      this.method = findMethod(target, interfaceName, methodName);
+    }
+
+    private static Method findMethod(Object target, String interfaceName, String methodName) {
+      try {
+        Class<?> type = Class.forName(interfaceName, false, VirtualMachineMetrics.class.getClassLoader());
+        if (!type.isInstance(target)) {
+          LOGGER.info("{} is not a {}, {} is not available", target, interfaceName, methodName);
+          return null;
+        }
+        return type.getMethod(methodName);
+      } catch (ClassNotFoundException e) {
+        LOGGER.info("{} is not available, {} is not available", interfaceName, methodName);
+        return null;
+      } catch (NoSuchMethodException e) {
+        LOGGER.info("{} has no method {}", interfaceName, methodName);
+        return null;
+      } catch (RuntimeException e) {
+        LOGGER.warn("could not look up " + interfaceName + "." + methodName, e);
+        return null;
+      }
+    }
+
+    @Override
+    public long getValue() {
+      if (method == null) {
+        return -1;
+      }
+      try {
+        return ((Number) method.invoke(target)).longValue();
+      } catch (IllegalAccessException e) {
+        return -1;
+      } catch (InvocationTargetException e) {
+        return -1;
+      } catch (RuntimeException e) {
+        return -1;
+      }
+    }
   }
 
 
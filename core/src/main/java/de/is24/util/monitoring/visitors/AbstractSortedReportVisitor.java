@@ -6,6 +6,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import de.is24.util.monitoring.Counter;
+import de.is24.util.monitoring.Histogram;
 import de.is24.util.monitoring.Historizable;
 import de.is24.util.monitoring.HistorizableList;
 import de.is24.util.monitoring.MultiValueProvider;
@@ -38,6 +39,13 @@ public abstract class AbstractSortedReportVisitor implements ReportVisitor {
     addEntry(new TimerEntry(timer));
   }
 
+  /* (non-Javadoc)
+   * @see de.is24.util.monitoring.ReportVisitor#reportHistogram(de.is24.util.monitoring.Histogram)
+   */
+  public void reportHistogram(Histogram histogram) {
+    addEntry(new HistogramEntry(histogram));
+  }
+
   /* (non-Javadoc)
    * @see de.is24.util.monitoring.ReportVisitor#reportStateValue(de.is24.util.monitoring.StateValueProvider)
    */
@@ -153,6 +161,49 @@ public abstract class AbstractSortedReportVisitor implements ReportVisitor {
     }
   }
 
+  public final class HistogramEntry extends Entry {
+    private long count;
+    private long min;
+    private long max;
+    private long median;
+    private long percentile99;
+
+    private HistogramEntry(Histogram histogram) {
+      super(histogram.getName(), "histogram");
+      count = histogram.getCount();
+      min = histogram.getMin();
+      max = histogram.getMax();
+      median = histogram.getValueAtPercentile(50);
+      percentile99 = histogram.getValueAtPercentile(99);
+    }
+
+    @Override
+    public String getValue() {
+      return getPath() + " Histogram " + getName() + " : " + getCount() + " min. " + getMin() + " median " +
+        getMedian() + " 99% " + getPercentile99() + " max. " + getMax();
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getMin() {
+      return min;
+    }
+
+    public long getMax() {
+      return max;
+    }
+
+    public long getMedian() {
+      return median;
+    }
+
+    public long getPercentile99() {
+      return percentile99;
+    }
+  }
+
   public final class CounterEntry extends Entry {
     private long count;
 
@@ -1,23 +1,24 @@
 package de.is24.util.monitoring.visitors;
 
-import java.util.TreeMap;
 import de.is24.util.monitoring.Counter;
+import de.is24.util.monitoring.Histogram;
 import de.is24.util.monitoring.HistorizableList;
 import de.is24.util.monitoring.MultiValueProvider;
 import de.is24.util.monitoring.ReportVisitor;
 import de.is24.util.monitoring.StateValueProvider;
 import de.is24.util.monitoring.Timer;
 import de.is24.util.monitoring.Version;
-import de.is24.util.monitoring.helper.HistogramLikeValue;
 
 
+/**
+ * Reports which values the 80%, 90%, 95%, 99% and 100% of all values recorded in the {@link Histogram}
+ * with the given name are smaller than, e.g. the Histogram recorded by a
+ * {@link de.is24.util.monitoring.helper.HistogramLikeValue}.
+ */
 public class HistogramLikeValueAnalysisVisitor implements ReportVisitor {
   private String base;
   private float[] percentages = { 0.8f, 0.90f, 0.95f, 0.99f, 1f };
-  private long totalCount = 0;
-  private long factor = 0;
-  private TreeMap<Long, Long> timeToCount = new TreeMap<Long, Long>();
-  private long currentMax;
+  private Histogram histogram;
 
   public HistogramLikeValueAnalysisVisitor(String base) {
     this.base = base;
@@ -25,14 +26,12 @@ public class HistogramLikeValueAnalysisVisitor implements ReportVisitor {
 
   @Override
   public void reportCounter(Counter counter) {
-    String name = counter.getName();
-    String baseName = base + HistogramLikeValue.NAME_BIGGER_THAN;
-    if (name.startsWith(baseName)) {
-      String timeString = name.substring(baseName.length());
-      long time = Long.parseLong(timeString);
-      long count = counter.getCount();
-      timeToCount.put(time, count);
-      totalCount += count;
+  }
+
+  @Override
+  public void reportHistogram(Histogram histogram) {
+    if (histogram.getName().equals(base)) {
+      this.histogram = histogram;
     }
   }
 
@@ -42,13 +41,6 @@ public class HistogramLikeValueAnalysisVisitor implements ReportVisitor {
 
   @Override
   public void reportStateValue(StateValueProvider stateValueProvider) {
-    String baseNameFactor = base + HistogramLikeValue.NAME_FACTOR;
-    String baseNameCurrentMax = base + HistogramLikeValue.NAME_CURRENT_MAX;
-    if (stateValueProvider.getName().equals(baseNameFactor)) {
-      factor = stateValueProvider.getValue();
-    } else if (stateValueProvider.getName().equals(baseNameCurrentMax)) {
-      currentMax = stateValueProvider.getValue();
-    }
   }
 
   @Override
@@ -66,11 +58,25 @@ public class HistogramLikeValueAnalysisVisitor implements ReportVisitor {
   @Override
   public String toString() {
     StringBuilder sb = new StringBuilder();
+    sb.append(base).append("\n");
+    if (histogram == null) {
+      return sb.toString();
+    }
+
+    long[] bucketCounts = histogram.getBucketCounts();
+    long totalCount = 0;
+    for (long count : bucketCounts) {
+      totalCount += count;
+    }
+
+    long currentMax = histogram.getMax();
     int currentPercentageIdx = 0;
     long currentCount = 0;
-    sb.append(base).append("\n");
-    for (Long time : timeToCount.keySet()) {
-      Long count = timeToCount.get(time);
+    for (int bucket = 0; (bucket < bucketCounts.length) && (currentPercentageIdx < percentages.length); bucket++) {
+      long count = bucketCounts[bucket];
+      if (count == 0) {
+        continue;
+      }
       currentCount += count;
 
       float border = percentages[currentPercentageIdx] * totalCount;
@@ -83,10 +89,14 @@ public class HistogramLikeValueAnalysisVisitor implements ReportVisitor {
           "%, are smaller than ")
         .append(((currentPercentage >= 100) ? "or equal to " : ""))
         .append(
-          (currentPercentage >= 100) ? currentMax : (time + factor))
+          (currentPercentage >= 100) ? currentMax : histogram.getBucketUpperBound(bucket))
         .append(" flurbs")
         .append("\n");
-        currentPercentageIdx++;
+        // a single bucket may cross several borders
+        while ((currentPercentageIdx < percentages.length) &&
+            (currentCount >= (percentages[currentPercentageIdx] * totalCount))) {
+          currentPercentageIdx++;
+        }
       }
     }
     return sb.toString();
@@ -1,6 +1,7 @@
 package de.is24.util.monitoring.visitors;
 
 import de.is24.util.monitoring.Counter;
+import de.is24.util.monitoring.Histogram;
 import de.is24.util.monitoring.Historizable;
 import de.is24.util.monitoring.HistorizableList;
 import de.is24.util.monitoring.MultiValueProvider;
@@ -61,6 +62,18 @@ public abstract class UnsortedWriterReportVisitor implements ReportVisitor {
     writeStringToWriter(result);
   }
 
+  /* (non-Javadoc)
+   * @see de.is24.util.monitoring.ReportVisitor#reportHistogram(de.is24.util.monitoring.Histogram)
+   */
+  public void reportHistogram(Histogram histogram) {
+    LOGGER.debug("+++ entering UnsortedWriterReportVisitor.reportHistogram +++");
+
+    String result = histogram.getName() + " histogram : count = " + histogram.getCount() + ", min = " +
+      histogram.getMin() + ", median = " + histogram.getValueAtPercentile(50) + ", 99% = " +
+      histogram.getValueAtPercentile(99) + ", max = " + histogram.getMax();
+    writeStringToWriter(result);
+  }
+
   /* (non-Javadoc)
    * @see de.is24.util.monitoring.ReportVisitor#reportStateValue(de.is24.util.monitoring.StateValueProvider)
    */
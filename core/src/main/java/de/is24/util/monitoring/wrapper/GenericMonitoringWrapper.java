@@ -5,6 +5,7 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -35,6 +36,11 @@ import java.lang.reflect.Proxy;
  * use in case none is given.
  * <p>
  *
+ * <p>Invocations are measured in milliseconds, unless the reporter is a {@link UnitAwareTimingReporter} with
+ * another unit. {@link #wrapObjectWithNanoTiming(Class, Object)} measures nanoseconds with the monotonic
+ * {@link System#nanoTime()}, for calls taking less than a millisecond.
+ * </p>
+ *
  * @see de.is24.util.monitoring.InApplicationMonitor
  * @see java.lang.reflect.Proxy
  *
@@ -53,6 +59,9 @@ public class GenericMonitoringWrapper<E> implements InvocationHandler {
   /** The reported used to report method invocation timings. */
   private final TimingReporter reporter;
 
+  /** The unit of the start and end times passed to the reporter. */
+  private final TimeUnit unit;
+
   /**
    * Wraps the given object and returns the reporting proxy. Uses the
    * {@link InApplicationMonitorTimingReporter} to report the timings.
@@ -69,6 +78,24 @@ public class GenericMonitoringWrapper<E> implements InvocationHandler {
     return wrapObject(clazz, target, new InApplicationMonitorTimingReporter());
   }
 
+  /**
+   * Wraps the given object and returns the reporting proxy. Uses the
+   * {@link InApplicationMonitorTimingReporter} to report the timings in nanoseconds. The timers keep nanoseconds
+   * if declared by {@link de.is24.util.monitoring.CorePlugin#setTimerUnit(String, TimeUnit)}, e.g. for the name of
+   * the wrapped class followed by {@code *}.
+   *
+   * @param <E>
+   *          the type of the public interface of the wrapped object
+   * @param clazz
+   *          the class object to the interface
+   * @param target
+   *          the object to wrap
+   * @return the monitoring wrapper
+   */
+  public static <E> E wrapObjectWithNanoTiming(final Class<E> clazz, final Object target) {
+    return wrapObject(clazz, target, new InApplicationMonitorTimingReporter(TimeUnit.NANOSECONDS));
+  }
+
   /**
    * Wraps the given object and returns the reporting proxy. Uses the given
    * timing reporter to report timings.
@@ -106,6 +133,8 @@ public class GenericMonitoringWrapper<E> implements InvocationHandler {
     this.targetClass = targetClass;
     this.target = target;
     this.reporter = timingReporter;
+    this.unit = (timingReporter instanceof UnitAwareTimingReporter)
+      ? ((UnitAwareTimingReporter) timingReporter).getTimeUnit() : TimeUnit.MILLISECONDS;
   }
 
   /**
@@ -117,7 +146,7 @@ public class GenericMonitoringWrapper<E> implements InvocationHandler {
   @Override
   public Object invoke(Object proxy, Method method, Object[] args) /* CSOFF: IllegalThrows */
                 throws Throwable /* CSON: IllegalThrows */ {
-    final long startTime = System.currentTimeMillis();
+    final long startTime = currentTime();
     Object result = null;
     try {
       result = method.invoke(target, args);
@@ -129,12 +158,19 @@ public class GenericMonitoringWrapper<E> implements InvocationHandler {
         throw t.getCause();
       }
     } finally {
-      final long endTime = System.currentTimeMillis();
+      final long endTime = currentTime();
       reporter.reportTimedOperation(targetClass, method, startTime, endTime);
     }
     return result;
   }
 
+  private long currentTime() {
+    if (unit == TimeUnit.MILLISECONDS) {
+      return System.currentTimeMillis();
+    }
+    return unit.convert(System.nanoTime(), TimeUnit.NANOSECONDS);
+  }
+
   /**
    * Interface for objects that receive and handle timinig information for a
    * given method invocation.
@@ -146,6 +182,14 @@ public class GenericMonitoringWrapper<E> implements InvocationHandler {
     void reportTimedOperation(Class<?> targetClass, Method targetMethod, long startTime, long endTime);
   }
 
+  /**
+   * A {@link TimingReporter} getting start and end times in a unit other than milliseconds. Times in finer units
+   * are taken from {@link System#nanoTime()}, so only their difference is meaningful.
+   */
+  public static interface UnitAwareTimingReporter extends TimingReporter {
+    TimeUnit getTimeUnit();
+  }
+
   /**
    * Default implementation of the {@link TimingReporter} interface that uses
    * the {@link de.is24.util.monitoring.InApplicationMonitor} as it's backend.
@@ -153,12 +197,33 @@ public class GenericMonitoringWrapper<E> implements InvocationHandler {
    * @author Alexander Metzner
    *
    */
-  public static class InApplicationMonitorTimingReporter implements TimingReporter {
+  public static class InApplicationMonitorTimingReporter implements UnitAwareTimingReporter {
+    private final TimeUnit unit;
+
+    public InApplicationMonitorTimingReporter() {
+      this(TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param unit the unit to measure in, timers created by this reporter keep this unit
+     */
+    public InApplicationMonitorTimingReporter(TimeUnit unit) {
+      this.unit = unit;
+    }
+
+    @Override
+    public TimeUnit getTimeUnit() {
+      return unit;
+    }
+
     @Override
     public void reportTimedOperation(Class<?> targetClass, Method targetMethod, long startTime, long endTime) {
-      InApplicationMonitor.getInstance()
-      .addTimerMeasurement(targetClass.getName() + "." + targetMethod.getName(),
-        startTime, endTime);
+      String name = targetClass.getName() + "." + targetMethod.getName();
+      if (unit == TimeUnit.MILLISECONDS) {
+        InApplicationMonitor.getInstance().addTimerMeasurement(name, startTime, endTime);
+      } else {
+        InApplicationMonitor.getInstance().addTimerMeasurement(name, endTime - startTime, unit);
+      }
     }
   }
 }
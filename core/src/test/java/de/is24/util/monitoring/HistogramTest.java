@@ -0,0 +1,128 @@
+package de.is24.util.monitoring;
+
+import org.junit.Test;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class HistogramTest {
+  @Test
+  public void emptyHistogramShouldReportZeros() {
+    Histogram histogram = new Histogram("empty", Histogram.DEFAULT_PRECISION);
+
+    assertThat(histogram.getCount()).isEqualTo(0L);
+    assertThat(histogram.getMin()).isEqualTo(0L);
+    assertThat(histogram.getMax()).isEqualTo(0L);
+    assertThat(histogram.getValueAtPercentile(99)).isEqualTo(0L);
+  }
+
+  @Test
+  public void shouldTrackExactCountSumMinAndMax() {
+    Histogram histogram = new Histogram("exact", Histogram.DEFAULT_PRECISION);
+
+    histogram.addValue(17);
+    histogram.addValue(1000003);
+    histogram.addValue(5);
+
+    assertThat(histogram.getCount()).isEqualTo(3L);
+    assertThat(histogram.getSum()).isEqualTo(1000025L);
+    assertThat(histogram.getMin()).isEqualTo(5L);
+    assertThat(histogram.getMax()).isEqualTo(1000003L);
+    assertThat(histogram.getValueAtPercentile(100)).isEqualTo(1000003L);
+    assertThat(histogram.getValueAtPercentile(0)).isEqualTo(5L);
+  }
+
+  @Test
+  public void smallValuesShouldHaveOwnBuckets() {
+    Histogram histogram = new Histogram("small", 3);
+    for (long value = 0; value < 8; value++) {
+      assertThat(histogram.getBucketIndex(value)).isEqualTo((int) value);
+      assertThat(histogram.getBucketLowerBound((int) value)).isEqualTo(value);
+    }
+  }
+
+  @Test
+  public void bucketBoundsShouldContainValue() {
+    Histogram histogram = new Histogram("bounds", Histogram.DEFAULT_PRECISION);
+    Random random = new Random(42);
+    long[] values = { 31, 32, 33, 63, 64, 1000, 123456789L, Long.MAX_VALUE };
+    for (long value : values) {
+      assertBucketContains(histogram, value);
+    }
+    for (int i = 0; i < 10000; i++) {
+      assertBucketContains(histogram, random.nextLong() & Long.MAX_VALUE);
+    }
+    assertThat(histogram.getBucketIndex(Long.MAX_VALUE)).isEqualTo(histogram.getNumberOfBuckets() - 1);
+  }
+
+  private void assertBucketContains(Histogram histogram, long value) {
+    int index = histogram.getBucketIndex(value);
+    assertThat(histogram.getBucketLowerBound(index)).isLessThanOrEqualTo(value);
+    if (value < Long.MAX_VALUE) {
+      assertThat(histogram.getBucketUpperBound(index)).isGreaterThan(value);
+    }
+  }
+
+  @Test
+  public void percentilesShouldBeWithinRelativeError() {
+    Histogram histogram = new Histogram("percentiles", Histogram.DEFAULT_PRECISION);
+    for (long value = 1; value <= 100000; value++) {
+      histogram.addValue(value);
+    }
+
+    assertWithinRelativeError(histogram.getValueAtPercentile(50), 50000);
+    assertWithinRelativeError(histogram.getValueAtPercentile(90), 90000);
+    assertWithinRelativeError(histogram.getValueAtPercentile(99), 99000);
+    assertWithinRelativeError(histogram.getValueAtPercentile(99.9), 99900);
+  }
+
+  private void assertWithinRelativeError(long actual, long expected) {
+    double error = java.lang.Math.abs(actual - expected) / (double) expected;
+    assertThat(error).isLessThanOrEqualTo(1.0 / (1 << Histogram.DEFAULT_PRECISION));
+  }
+
+  @Test
+  public void negativeValuesShouldGoToLowestBucket() {
+    Histogram histogram = new Histogram("negative", Histogram.DEFAULT_PRECISION);
+
+    histogram.addValue(-5);
+
+    assertThat(histogram.getBucketCounts()[0]).isEqualTo(1L);
+    assertThat(histogram.getMin()).isEqualTo(-5L);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectInvalidPrecision() {
+    new Histogram("invalid", 0);
+  }
+
+  @Test
+  public void shouldNotLoseValuesUnderContention() throws InterruptedException {
+    final Histogram histogram = new Histogram("concurrent", Histogram.DEFAULT_PRECISION);
+    final int threads = 8;
+    final int iterations = 100000;
+    final CountDownLatch done = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      final long offset = t;
+      new Thread(new Runnable() {
+          public void run() {
+            for (int i = 0; i < iterations; i++) {
+              histogram.addValue(offset + i);
+            }
+            done.countDown();
+          }
+        }).start();
+    }
+    done.await();
+
+    long bucketSum = 0;
+    for (long count : histogram.getBucketCounts()) {
+      bucketSum += count;
+    }
+    assertThat(histogram.getCount()).isEqualTo((long) threads * iterations);
+    assertThat(bucketSum).isEqualTo((long) threads * iterations);
+    assertThat(histogram.getMin()).isEqualTo(0L);
+    assertThat(histogram.getMax()).isEqualTo((threads - 1) + (iterations - 1L));
+  }
+}
@@ -0,0 +1,139 @@
+package de.is24.util.monitoring;
+
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class HistorizableListTest {
+  @Test
+  public void shouldKeepNewestEntriesFirst() {
+    HistorizableList list = new HistorizableList("list", 3);
+    for (int i = 1; i <= 5; i++) {
+      list.add(new SimpleHistorizable("list", "value" + i));
+    }
+
+    assertThat(values(list)).isEqualTo(Arrays.asList("value5", "value4", "value3"));
+    assertThat(list.size()).isEqualTo(3);
+    assertThat(list.get(0).getValue()).isEqualTo("value5");
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void shouldRejectIndexBeyondSize() {
+    HistorizableList list = new HistorizableList("list", 3);
+    list.add(new SimpleHistorizable("list", "value"));
+
+    list.get(1);
+  }
+
+  @Test
+  public void shouldKeepNewestEntriesWhenResized() {
+    HistorizableList list = new HistorizableList("list", 4);
+    for (int i = 1; i <= 4; i++) {
+      list.add(new SimpleHistorizable("list", "value" + i));
+    }
+
+    list.setMaxEntriesToKeep(2);
+    assertThat(values(list)).isEqualTo(Arrays.asList("value4", "value3"));
+
+    list.setMaxEntriesToKeep(3);
+    list.add(new SimpleHistorizable("list", "value5"));
+    list.add(new SimpleHistorizable("list", "value6"));
+    assertThat(list.getMaxEntriesToKeep()).isEqualTo(3);
+    assertThat(values(list)).isEqualTo(Arrays.asList("value6", "value5", "value4"));
+  }
+
+  @Test
+  public void shouldResizeExistingListsOfThePlugin() {
+    CorePlugin corePlugin = new CorePlugin(null, null);
+    corePlugin.addHistorizable("list", new SimpleHistorizable("list", "value"));
+
+    corePlugin.setMaxHistoryEntriesToKeep(10);
+
+    assertThat(corePlugin.getHistorizableList("list").getMaxEntriesToKeep()).isEqualTo(10);
+    corePlugin.destroy();
+  }
+
+  @Test
+  public void shouldProvideConsistentSnapshotsWhileWriting() throws Exception {
+    final int threads = 8;
+    final int adds = 20000;
+    final HistorizableList list = new HistorizableList("list", 16);
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicReference<String> failure = new AtomicReference<String>();
+    List<Thread> writers = new ArrayList<Thread>();
+    for (int t = 0; t < threads; t++) {
+      final int writer = t;
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int i = 0; i < adds; i++) {
+            list.add(new SimpleHistorizable("list", writer + ":" + i));
+          }
+        }
+      };
+      thread.start();
+      writers.add(thread);
+    }
+
+    start.countDown();
+    while (isAlive(writers)) {
+      List<String> values = values(list);
+      if (values.size() > 16) {
+        failure.set("snapshot of " + values.size() + " entries");
+      }
+      if (new HashSet<String>(values).size() != values.size()) {
+        failure.set("duplicate entries in " + values);
+      }
+      if (!isNewestFirstPerWriter(values)) {
+        failure.set("entries out of order in " + values);
+      }
+    }
+
+    assertThat(failure.get()).isNull();
+    assertThat(list.size()).isEqualTo(16);
+  }
+
+  private static boolean isAlive(List<Thread> threads) {
+    for (Thread thread : threads) {
+      if (thread.isAlive()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isNewestFirstPerWriter(List<String> values) {
+    Set<String> seenWriters = new HashSet<String>();
+    int[] last = new int[64];
+    for (String value : values) {
+      String[] parts = value.split(":");
+      int writer = Integer.parseInt(parts[0]);
+      int index = Integer.parseInt(parts[1]);
+      if (!seenWriters.add(parts[0]) && (index >= last[writer])) {
+        return false;
+      }
+      last[writer] = index;
+    }
+    return true;
+  }
+
+  private static List<String> values(HistorizableList list) {
+    List<String> values = new ArrayList<String>();
+    for (Historizable historizable : list) {
+      values.add(historizable.getValue());
+    }
+    return values;
+  }
+}
@@ -0,0 +1,104 @@
+package de.is24.util.monitoring.jmx;
+
+import de.is24.util.monitoring.State;
+import org.junit.Test;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class ExtractionPlanTest {
+  private static final String BASE_NAME = "domain.name=bean";
+
+  @Test
+  public void shouldExtractSimpleValue() {
+    ExtractionPlan plan = ExtractionPlan.compile(BASE_NAME, "count", 42);
+
+    List<State> states = execute(plan, 42);
+    assertThat(states).hasSize(1);
+    assertThat(states.get(0).name).isEqualTo("domain.name_bean.count");
+    assertThat(states.get(0).value).isEqualTo(42L);
+  }
+
+  @Test
+  public void shouldNotExportNonNumericValues() {
+    ExtractionPlan plan = ExtractionPlan.compile(BASE_NAME, "description", "text");
+
+    assertThat(plan.size()).isEqualTo(0);
+    assertThat(execute(plan, "text")).isEmpty();
+  }
+
+  @Test
+  public void shouldExtractNestedCompositeValuesInKeyOrder() throws OpenDataException {
+    CompositeType innerType = new CompositeType("inner", "inner", new String[] { "used", "committed" },
+      new String[] { "used", "committed" }, new OpenType<?>[] { SimpleType.LONG, SimpleType.DOUBLE });
+    CompositeType outerType = new CompositeType("outer", "outer", new String[] { "usage", "name", "valid" },
+      new String[] { "usage", "name", "valid" },
+      new OpenType<?>[] { innerType, SimpleType.STRING, SimpleType.BOOLEAN });
+    CompositeData inner = new CompositeDataSupport(innerType, new String[] { "used", "committed" },
+      new Object[] { 10L, 20.7 });
+    CompositeData outer = new CompositeDataSupport(outerType, new String[] { "usage", "name", "valid" },
+      new Object[] { inner, "name", true });
+
+    ExtractionPlan plan = ExtractionPlan.compile(BASE_NAME, "memory", outer);
+
+    List<State> states = execute(plan, outer);
+    assertThat(names(states)).isEqualTo(Arrays.asList("domain.name_bean.memory.usage.committed",
+        "domain.name_bean.memory.usage.used", "domain.name_bean.memory.valid"));
+    assertThat(states.get(0).value).isEqualTo(20L);
+    assertThat(states.get(1).value).isEqualTo(10L);
+    assertThat(states.get(2).value).isEqualTo(1L);
+  }
+
+  @Test
+  public void shouldSkipNullCompositeItems() throws OpenDataException {
+    CompositeType type = new CompositeType("type", "type", new String[] { "a", "b" }, new String[] { "a", "b" },
+      new OpenType<?>[] { SimpleType.LONG, SimpleType.LONG });
+    CompositeData data = new CompositeDataSupport(type, new String[] { "a", "b" }, new Object[] { 1L, null });
+
+    List<State> states = execute(ExtractionPlan.compile(BASE_NAME, "composite", data), data);
+
+    assertThat(names(states)).isEqualTo(Arrays.asList("domain.name_bean.composite.a"));
+  }
+
+  @Test
+  public void shouldOnlyMatchValuesOfSameClassOrCompositeType() throws OpenDataException {
+    CompositeType type = new CompositeType("type", "type", new String[] { "a" }, new String[] { "a" },
+      new OpenType<?>[] { SimpleType.LONG });
+    CompositeType otherType = new CompositeType("other", "other", new String[] { "b" }, new String[] { "b" },
+      new OpenType<?>[] { SimpleType.LONG });
+    CompositeData data = new CompositeDataSupport(type, new String[] { "a" }, new Object[] { 1L });
+
+    ExtractionPlan simplePlan = ExtractionPlan.compile(BASE_NAME, "value", 1L);
+    ExtractionPlan compositePlan = ExtractionPlan.compile(BASE_NAME, "value", data);
+
+    assertThat(simplePlan.matches(2L)).isTrue();
+    assertThat(simplePlan.matches(2)).isFalse();
+    assertThat(compositePlan.matches(new CompositeDataSupport(type, new String[] { "a" }, new Object[] { 2L })))
+    .isTrue();
+    assertThat(compositePlan.matches(new CompositeDataSupport(otherType, new String[] { "b" }, new Object[] { 2L })))
+    .isFalse();
+    assertThat(compositePlan.matches(1L)).isFalse();
+  }
+
+  private List<State> execute(ExtractionPlan plan, Object value) {
+    List<State> states = new ArrayList<State>();
+    plan.execute(value, states);
+    return states;
+  }
+
+  private List<String> names(List<State> states) {
+    List<String> names = new ArrayList<String>();
+    for (State state : states) {
+      names.add(state.name);
+    }
+    return names;
+  }
+}
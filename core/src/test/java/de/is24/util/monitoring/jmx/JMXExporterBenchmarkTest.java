@@ -0,0 +1,143 @@
+package de.is24.util.monitoring.jmx;
+
+import de.is24.util.monitoring.State;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+/**
+ * Compares the cost of polling a few thousand MBeans with the cached, bulk reading {@link JMXExporter} against
+ * querying the MBeans and reading each attribute on every poll, as the exporter did before. Prints timings, runs
+ * only with -Dappmon4j.benchmarks=true.
+ */
+public class JMXExporterBenchmarkTest {
+  private static final String DOMAIN = "JMXExporterBenchmark";
+  private static final String PATTERN = DOMAIN + ":*";
+  private static final int BEANS = 3000;
+  private static final int NUMERIC_ATTRIBUTES = 5;
+  private static final int POLLS = 20;
+
+  private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+  private final List<ObjectName> names = new ArrayList<ObjectName>();
+
+  @Before
+  public void setUp() throws Exception {
+    Assume.assumeTrue(Boolean.getBoolean("appmon4j.benchmarks"));
+    for (int i = 0; i < BEANS; i++) {
+      ObjectName name = new ObjectName(DOMAIN, "name", "synthetic" + i);
+      mBeanServer.registerMBean(new Synthetic(i), name);
+      names.add(name);
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    for (ObjectName name : names) {
+      mBeanServer.unregisterMBean(name);
+    }
+  }
+
+  @Test
+  public void comparePollCostWithQueryingOnEveryPoll() throws Exception {
+    JMXExporter jmxExporter = new JMXExporter(PATTERN);
+    try {
+      // warm up both variants
+      assertThat(pollQueryingEveryTime()).isEqualTo(BEANS * NUMERIC_ATTRIBUTES);
+      assertThat(jmxExporter.getValues().size()).isEqualTo(BEANS * NUMERIC_ATTRIBUTES);
+
+      long begin = System.nanoTime();
+      for (int i = 0; i < POLLS; i++) {
+        pollQueryingEveryTime();
+      }
+
+      long queryingNanos = System.nanoTime() - begin;
+
+      begin = System.nanoTime();
+      for (int i = 0; i < POLLS; i++) {
+        jmxExporter.getValues();
+      }
+
+      long cachedNanos = System.nanoTime() - begin;
+
+      System.out.println("Poll " + BEANS + " MBeans " + POLLS + " times: querying on every poll " +
+        (queryingNanos / 1000000) + " ms, cached bulk read " + (cachedNanos / 1000000) + " ms.");
+    } finally {
+      jmxExporter.shutdown();
+    }
+  }
+
+  private int pollQueryingEveryTime() throws Exception {
+    List<State> values = new ArrayList<State>();
+    for (ObjectName name : mBeanServer.queryNames(new ObjectName(PATTERN), null)) {
+      String baseName = name.getDomain() + "." + name.getCanonicalKeyPropertyListString();
+      for (MBeanAttributeInfo info : mBeanServer.getMBeanInfo(name).getAttributes()) {
+        Object value = mBeanServer.getAttribute(name, info.getName());
+        if (value instanceof Number) {
+          values.add(new State(baseName, info.getName(), ((Number) value).longValue()));
+        }
+      }
+    }
+    return values.size();
+  }
+
+  public interface SyntheticMBean {
+    long getRequests();
+
+    long getErrors();
+
+    int getActiveThreads();
+
+    double getLoad();
+
+    short getPriority();
+
+    String getDescription();
+  }
+
+  public static class Synthetic implements SyntheticMBean {
+    private final int id;
+
+    public Synthetic(int id) {
+      this.id = id;
+    }
+
+    @Override
+    public long getRequests() {
+      return id * 10L;
+    }
+
+    @Override
+    public long getErrors() {
+      return id;
+    }
+
+    @Override
+    public int getActiveThreads() {
+      return id % 20;
+    }
+
+    @Override
+    public double getLoad() {
+      return id / 100.0;
+    }
+
+    @Override
+    public short getPriority() {
+      return (short) (id % 5);
+    }
+
+    @Override
+    public String getDescription() {
+      return "synthetic bean " + id;
+    }
+  }
+}
@@ -28,7 +28,10 @@ import javax.management.openmbean.OpenType;
 import javax.management.openmbean.SimpleType;
 import java.lang.management.ManagementFactory;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import static org.fest.assertions.Assertions.assertThat;
 
 
@@ -113,6 +116,98 @@ public class JMXExporterTest {
     }
   }
 
+  @Test
+  public void exportMBeansRegisteredAfterFirstPoll() throws Exception {
+    JMXExporter jmxExporter = new JMXExporter(TEST_BEAN_DOMAIN + ":*");
+    assertThat(jmxExporter.getValues().size()).isEqualTo(7);
+
+    ObjectName secondName = new ObjectName(TEST_BEAN_DOMAIN, "name", "secondBean");
+    ManagementFactory.getPlatformMBeanServer().registerMBean(new TestMBean(), secondName);
+    try {
+      assertThat(jmxExporter.getValues().size()).isEqualTo(14);
+    } finally {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(secondName);
+    }
+    assertThat(jmxExporter.getValues().size()).isEqualTo(7);
+    jmxExporter.shutdown();
+  }
+
+  @Test
+  public void stopExportingUnregisteredMBeans() throws Exception {
+    JMXExporter jmxExporter = new JMXExporter(TEST_BEAN_DOMAIN + ":*");
+    assertThat(jmxExporter.getValues().size()).isEqualTo(7);
+
+    ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    assertThat(jmxExporter.getValues()).isEmpty();
+    jmxExporter.shutdown();
+  }
+
+  @Test
+  public void stopExportingMBeansOfRemovedPattern() throws Exception {
+    JMXExporter jmxExporter = new JMXExporter(TEST_BEAN_DOMAIN + ":*");
+    assertThat(jmxExporter.getValues().size()).isEqualTo(7);
+
+    jmxExporter.removePattern(TEST_BEAN_DOMAIN + ":*");
+    assertThat(jmxExporter.getValues()).isEmpty();
+    jmxExporter.shutdown();
+  }
+
+  @Test
+  public void readStandardMBeanInBulk() throws Exception {
+    ObjectName standardName = new ObjectName(TEST_BEAN_DOMAIN, "name", "standardBean");
+    ManagementFactory.getPlatformMBeanServer().registerMBean(new Counting(), standardName);
+    try {
+      JMXExporter jmxExporter = new JMXExporter(TEST_BEAN_DOMAIN + ":name=standardBean");
+      Collection<State> values = jmxExporter.getValues();
+
+      assertThat(values.size()).isEqualTo(2);
+      assertValue(values, "Count", 42);
+      assertValue(values, "Active", 1);
+      jmxExporter.shutdown();
+    } finally {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(standardName);
+    }
+  }
+
+  @Test
+  public void exportAttributesAddedToDynamicMBeans() throws Exception {
+    ObjectName growingName = new ObjectName(TEST_BEAN_DOMAIN, "name", "growingBean");
+    Growing growing = new Growing();
+    ManagementFactory.getPlatformMBeanServer().registerMBean(growing, growingName);
+    try {
+      JMXExporter jmxExporter = new JMXExporter(TEST_BEAN_DOMAIN + ":name=growingBean");
+      growing.add("first");
+      assertThat(jmxExporter.getValues().size()).isEqualTo(1);
+
+      growing.add("second");
+      Collection<State> values = jmxExporter.getValues();
+      assertThat(values.size()).isEqualTo(2);
+      assertValue(values, "second", 1);
+      jmxExporter.shutdown();
+    } finally {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(growingName);
+    }
+  }
+
+  @Test
+  public void readMBeanInfoAgainAfterFailure() throws Exception {
+    ObjectName growingName = new ObjectName(TEST_BEAN_DOMAIN, "name", "growingBean");
+    Growing growing = new Growing();
+    growing.add("first");
+    ManagementFactory.getPlatformMBeanServer().registerMBean(growing, growingName);
+    try {
+      JMXExporter jmxExporter = new JMXExporter(TEST_BEAN_DOMAIN + ":name=growingBean");
+      growing.failing = true;
+      assertThat(jmxExporter.getValues()).isEmpty();
+
+      growing.failing = false;
+      assertThat(jmxExporter.getValues().size()).isEqualTo(1);
+      jmxExporter.shutdown();
+    } finally {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(growingName);
+    }
+  }
+
   @Test
   public void readPatternFromFile() throws Exception {
     URL url = getClass().getResource("/jmxExporter/patternTestFile.txt");
@@ -201,6 +296,82 @@ public class JMXExporterTest {
   }
 
 
+  public interface CountingMBean {
+    long getCount();
+
+    boolean isActive();
+
+    String getDescription();
+  }
+
+  public static class Counting implements CountingMBean {
+    @Override
+    public long getCount() {
+      return 42;
+    }
+
+    @Override
+    public boolean isActive() {
+      return true;
+    }
+
+    @Override
+    public String getDescription() {
+      return "not numeric";
+    }
+  }
+
+  public static class Growing implements DynamicMBean {
+    private final List<String> names = new CopyOnWriteArrayList<String>();
+    private volatile boolean failing;
+
+    void add(String name) {
+      names.add(name);
+    }
+
+    @Override
+    public Object getAttribute(String attribute) {
+      return 1L;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) {
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+      AttributeList result = new AttributeList();
+      for (String attribute : attributes) {
+        result.add(new Attribute(attribute, getAttribute(attribute)));
+      }
+      return result;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+      return null;
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+      return null;
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+      if (failing) {
+        throw new IllegalStateException("failing on purpose");
+      }
+
+      List<MBeanAttributeInfo> infos = new ArrayList<MBeanAttributeInfo>();
+      for (String name : names) {
+        infos.add(new MBeanAttributeInfo(name, "long", name, true, false, false));
+      }
+      return new MBeanInfo(Growing.class.getName(), "", infos.toArray(new MBeanAttributeInfo[infos.size()]), null,
+        null, null);
+    }
+  }
+
   private class TestMBean implements DynamicMBean {
     private String[] itemNames = new String[] { "long_composite", "string_composite" };
     private String[] itemDescriptions = new String[] { "a long", "a string" };
@@ -0,0 +1,67 @@
+package de.is24.util.monitoring.keyhandler;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+
+public class CachingKeyHandlerTest {
+  private KeyHandler delegate;
+
+  @Before
+  public void setUp() {
+    delegate = spy(new DefaultKeyEscaper());
+  }
+
+  @Test
+  public void shouldCallDelegateOncePerKey() {
+    CachingKeyHandler handler = new CachingKeyHandler(delegate);
+
+    assertThat(handler.handle("a:key")).isEqualTo("a_key");
+    assertThat(handler.handle("a:key")).isEqualTo("a_key");
+
+    verify(delegate, times(1)).handle("a:key");
+  }
+
+  @Test
+  public void shouldBoundNumberOfCachedKeys() {
+    CachingKeyHandler handler = new CachingKeyHandler(new TransparentKeyHandler(), 10);
+
+    for (int i = 0; i < 100; i++) {
+      handler.handle("key" + i);
+    }
+
+    assertThat(handler.size()).isLessThanOrEqualTo(10);
+  }
+
+  @Test
+  public void shouldKeepRecentlyUsedKeys() {
+    CachingKeyHandler handler = new CachingKeyHandler(delegate, 4);
+    handler.handle("a:key");
+
+    for (int i = 0; i < 20; i++) {
+      handler.handle("other" + i);
+      handler.handle("a:key");
+    }
+
+    verify(delegate, times(1)).handle("a:key");
+  }
+
+  @Test
+  public void shouldNotCacheExceptions() {
+    CachingKeyHandler handler = new CachingKeyHandler(new ValidatingKeyHandler());
+
+    for (int i = 0; i < 2; i++) {
+      try {
+        handler.handle("invalid:key");
+      } catch (IllegalArgumentException e) {
+        continue;
+      }
+      throw new AssertionError("expected IllegalArgumentException");
+    }
+    assertThat(handler.size()).isEqualTo(0);
+  }
+}
@@ -0,0 +1,26 @@
+package de.is24.util.monitoring.keyhandler;
+
+import org.junit.Test;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class ChainedKeyHandlerTest {
+  @Test
+  public void shouldPassResultToNextHandler() {
+    ChainedKeyHandler handler = new ChainedKeyHandler(new DefaultKeyEscaper(), new ValidatingKeyHandler());
+
+    assertThat(handler.handle("escaped:key")).isEqualTo("escaped_key");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldFailIfAnyHandlerFails() {
+    ChainedKeyHandler handler = new ChainedKeyHandler(new DefaultKeyEscaper(), new ValidatingKeyHandler());
+
+    handler.handle("invalid[key");
+  }
+
+  @Test
+  public void emptyChainShouldReturnKeyUnchanged() {
+    assertThat(new ChainedKeyHandler().handle("some.key")).isEqualTo("some.key");
+  }
+}
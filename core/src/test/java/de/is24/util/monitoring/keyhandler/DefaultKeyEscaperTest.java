@@ -14,6 +14,13 @@ public class DefaultKeyEscaperTest {
       TEXT_WITH_CHARACTERS_AND_NUMBERS_123);
   }
 
+  @Test
+  public void shouldReturnSameInstanceForFineKeys() {
+    DefaultKeyEscaper defaultKeyEscaper = new DefaultKeyEscaper();
+    assertThat(defaultKeyEscaper.handle(TEXT_WITH_CHARACTERS_AND_NUMBERS_123)).isSameAs(
+      TEXT_WITH_CHARACTERS_AND_NUMBERS_123);
+  }
+
   @Test
   public void shouldReplaceColon() {
     DefaultKeyEscaper defaultKeyEscaper = new DefaultKeyEscaper();
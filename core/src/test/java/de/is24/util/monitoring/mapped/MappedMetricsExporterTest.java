@@ -0,0 +1,164 @@
+package de.is24.util.monitoring.mapped;
+
+import de.is24.util.monitoring.CorePlugin;
+import de.is24.util.monitoring.SimpleStateValueProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class MappedMetricsExporterTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private CorePlugin corePlugin;
+  private File file;
+  private MappedMetricsExporter exporter;
+  private MappedMetricsReader reader;
+
+  @Before
+  public void setUp() throws IOException {
+    corePlugin = new CorePlugin(null, null);
+    file = new File(folder.getRoot(), "appmon4j/metrics");
+    exporter = new MappedMetricsExporter(corePlugin, file, 1000, 1000);
+    exporter.open();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (reader != null) {
+      reader.close();
+    }
+    exporter.close();
+  }
+
+  @Test
+  public void shouldMirrorCountersTimersAndStateValues() throws IOException {
+    corePlugin.incrementCounter("lala.ok", 3);
+    corePlugin.addTimerMeasurement("lala.time", 2);
+    corePlugin.addTimerMeasurement("lala.time", 4);
+    corePlugin.registerStateValue(new SimpleStateValueProvider("lala.queue", -5));
+    exporter.update();
+
+    reader = new MappedMetricsReader(file);
+
+    assertThat(valuesOf(MappedMetricsReader.Kind.COUNTER, "lala.ok")).isEqualTo(new long[] { 3, 0, 0 });
+    assertThat(valuesOf(MappedMetricsReader.Kind.TIMER, "lala.time")).isEqualTo(new long[] { 2, 6, 20 });
+    assertThat(valuesOf(MappedMetricsReader.Kind.STATE, "lala.queue")).isEqualTo(new long[] { -5, 0, 0 });
+    assertThat(reader.getLastUpdate()).isGreaterThanOrEqualTo(reader.getStartTime());
+  }
+
+  @Test
+  public void shouldUpdateValuesInPlaceAndAppendNewMetrics() throws IOException {
+    corePlugin.incrementCounter("first", 1);
+    exporter.update();
+    reader = new MappedMetricsReader(file);
+    int size = reader.size();
+
+    corePlugin.incrementCounter("first", 1);
+    corePlugin.incrementCounter("second", 7);
+    exporter.update();
+
+    assertThat(reader.size()).isEqualTo(size);
+    assertThat(reader.refresh()).isEqualTo(size + 1);
+    assertThat(reader.getName(size)).isEqualTo("second");
+    assertThat(valuesOf(MappedMetricsReader.Kind.COUNTER, "first")[0]).isEqualTo(2L);
+    assertThat(valuesOf(MappedMetricsReader.Kind.COUNTER, "second")[0]).isEqualTo(7L);
+  }
+
+  @Test
+  public void shouldCountMetricsNotFittingAnymore() throws IOException {
+    for (int i = 0; i < 1100; i++) {
+      corePlugin.incrementCounter("counter." + i, 1);
+    }
+    exporter.update();
+
+    reader = new MappedMetricsReader(file);
+    assertThat(reader.size()).isEqualTo(reader.getCapacity());
+    assertThat(reader.getDropped()).isGreaterThan(100);
+  }
+
+  @Test
+  public void shouldReadConsistentValuesWhileWriting() throws Exception {
+    corePlugin.addTimerMeasurement("timer", 1);
+    exporter.update();
+    reader = new MappedMetricsReader(file);
+
+    final int index = indexOf(MappedMetricsReader.Kind.TIMER, "timer");
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final AtomicReference<String> failure = new AtomicReference<String>();
+    Thread readerThread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          long[] values = new long[3];
+          while (running.get()) {
+            // every measurement is 1, so count, sum and sum of squares are equal in any consistent state
+            if (reader.read(index, values) && ((values[0] != values[1]) || (values[1] != values[2]))) {
+              failure.set(values[0] + " " + values[1] + " " + values[2]);
+            }
+          }
+        }
+      });
+    readerThread.start();
+
+    for (int i = 0; i < 10000; i++) {
+      corePlugin.addTimerMeasurement("timer", 1);
+      exporter.update();
+    }
+    running.set(false);
+    readerThread.join();
+
+    assertThat(failure.get()).isNull();
+    assertThat(valuesOf(MappedMetricsReader.Kind.TIMER, "timer")[0]).isEqualTo(10001L);
+  }
+
+  @Test
+  public void shouldPrintMetrics() throws IOException {
+    corePlugin.incrementCounter("lala.ok", 3);
+    corePlugin.addTimerMeasurement("lala.time", 2);
+    exporter.update();
+
+    reader = new MappedMetricsReader(file);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    reader.print(new PrintStream(out, true));
+
+    assertThat(out.toString()).contains("counter lala.ok 3\n");
+    assertThat(out.toString()).contains("timer lala.time 1 2 4\n");
+  }
+
+  @Test(expected = IOException.class)
+  public void shouldRejectOtherFiles() throws IOException {
+    File other = folder.newFile("other");
+    FileOutputStream out = new FileOutputStream(other);
+    out.write(new byte[128]);
+    out.close();
+
+    new MappedMetricsReader(other);
+  }
+
+  private long[] valuesOf(MappedMetricsReader.Kind kind, String name) {
+    long[] values = new long[3];
+    assertThat(reader.read(indexOf(kind, name), values)).isTrue();
+    return values;
+  }
+
+  private int indexOf(MappedMetricsReader.Kind kind, String name) {
+    reader.refresh();
+    for (int i = 0; i < reader.size(); i++) {
+      if ((reader.getKind(i) == kind) && reader.getName(i).equals(name)) {
+        return i;
+      }
+    }
+    throw new AssertionError(kind + " " + name + " not found");
+  }
+}
@@ -0,0 +1,118 @@
+package de.is24.util.monitoring.state2graphite;
+
+import org.junit.After;
+import org.junit.Test;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class GraphiteConnectionTest {
+  private ServerSocket server;
+  private GraphiteConnection target;
+
+  @After
+  public void tearDown() throws IOException {
+    if (target != null) {
+      target.close();
+    }
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  @Test
+  public void shouldSendAllMessagesOverOneConnection() throws Exception {
+    server = new ServerSocket(0);
+    target = new GraphiteConnection("localhost", server.getLocalPort(), 1000, 1000, 10, 0);
+
+    target.send("a.b 1 1000\n");
+
+    Socket socket = server.accept();
+    socket.setSoTimeout(5000);
+    target.send("a.b 2 1010\n");
+
+    BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+    assertThat(reader.readLine()).isEqualTo("a.b 1 1000");
+    assertThat(reader.readLine()).isEqualTo("a.b 2 1010");
+    assertThat(target.getBytesSent()).isEqualTo(22L);
+    assertThat(target.getReconnects()).isEqualTo(0L);
+    socket.close();
+  }
+
+  @Test
+  public void shouldReplayBacklogOldestFirstAfterRecovery() throws Exception {
+    int port = freePort();
+    target = new GraphiteConnection("localhost", port, 1000, 1000, 10, 0);
+
+    target.send("a.b 1 1000\n");
+    target.send("a.b 2 1010\n");
+    assertThat(target.getBacklogBatches()).isEqualTo(2);
+
+    server = new ServerSocket(port);
+    Thread.sleep(50);
+    target.send("a.b 3 1020\n");
+
+    Socket socket = server.accept();
+    socket.setSoTimeout(5000);
+    BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+    assertThat(reader.readLine()).isEqualTo("a.b 1 1000");
+    assertThat(reader.readLine()).isEqualTo("a.b 2 1010");
+    assertThat(reader.readLine()).isEqualTo("a.b 3 1020");
+    assertThat(target.getBacklogBatches()).isEqualTo(0);
+    assertThat(target.getReconnects()).isGreaterThan(0L);
+    socket.close();
+  }
+
+  @Test
+  public void shouldDropOldestBatchesIfBacklogIsFull() throws Exception {
+    int port = freePort();
+    target = new GraphiteConnection("localhost", port, 1000, 1000, 2, 0);
+
+    target.send("a.b 1 1000\n");
+    target.send("a.b 2 1010\n");
+    target.send("a.b 3 1020\n");
+    assertThat(target.getDroppedBatches()).isEqualTo(1L);
+    assertThat(target.getBacklogBatches()).isEqualTo(2);
+
+    server = new ServerSocket(port);
+    Thread.sleep(50);
+    target.send("a.b 4 1030\n");
+
+    Socket socket = server.accept();
+    socket.setSoTimeout(5000);
+    BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+    assertThat(reader.readLine()).isEqualTo("a.b 3 1020");
+    assertThat(reader.readLine()).isEqualTo("a.b 4 1030");
+    assertThat(target.getDroppedBatches()).isEqualTo(2L);
+    socket.close();
+  }
+
+  @Test
+  public void shouldReconnectIfServerClosedConnection() throws Exception {
+    server = new ServerSocket(0);
+    target = new GraphiteConnection("localhost", server.getLocalPort(), 1000, 1000, 10, 0);
+
+    target.send("a.b 1 1000\n");
+    Socket first = server.accept();
+    first.close();
+    Thread.sleep(50);
+
+    target.send("a.b 2 1010\n");
+    Socket second = server.accept();
+    second.setSoTimeout(5000);
+    BufferedReader reader = new BufferedReader(new InputStreamReader(second.getInputStream(), "UTF-8"));
+    assertThat(reader.readLine()).isEqualTo("a.b 2 1010");
+    second.close();
+  }
+
+  private int freePort() throws IOException {
+    ServerSocket socket = new ServerSocket(0);
+    int port = socket.getLocalPort();
+    socket.close();
+    return port;
+  }
+}
@@ -0,0 +1,93 @@
+package de.is24.util.monitoring.statsd;
+
+import org.junit.Test;
+import static de.is24.util.monitoring.statsd.StatsdAdaptiveSampler.UPDATE_NANOS;
+import static de.is24.util.monitoring.statsd.StatsdAdaptiveSampler.WINDOW_NANOS;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class StatsdAdaptiveSamplerTest {
+  private static final long START = 1000L;
+
+  @Test
+  public void shouldUseMaxSampleRateForRareKeys() {
+    StatsdAdaptiveSampler sampler = new StatsdAdaptiveSampler(0.5, 10);
+
+    for (int window = 0; window < 3; window++) {
+      for (int i = 0; i < 10; i++) {
+        assertThat(sampler.sampleRate("rare", START + (window * WINDOW_NANOS) + i)).isEqualTo(0.5);
+      }
+    }
+  }
+
+  @Test
+  public void shouldSampleHotKeysDownToBudget() {
+    StatsdAdaptiveSampler sampler = new StatsdAdaptiveSampler(1.0, 10);
+
+    for (int i = 0; i < 1000; i++) {
+      assertThat(sampler.sampleRate("hot", START + i)).isEqualTo(1.0);
+    }
+
+    // 1000 events in the first window, 10 are within the budget
+    assertThat(sampler.sampleRate("hot", START + WINDOW_NANOS)).isEqualTo(0.01);
+    assertThat(sampler.sampleRate("hot", START + WINDOW_NANOS + 1)).isEqualTo(0.01);
+    assertThat(sampler.sampleRate("other", START + WINDOW_NANOS)).isEqualTo(1.0);
+
+    // the key cooled down
+    assertThat(sampler.sampleRate("hot", START + (2 * WINDOW_NANOS))).isEqualTo(1.0);
+  }
+
+  @Test
+  public void shouldNotExceedMaxSampleRate() {
+    StatsdAdaptiveSampler sampler = new StatsdAdaptiveSampler(0.001, 10);
+
+    for (int i = 0; i < 100; i++) {
+      sampler.sampleRate("hot", START + i);
+    }
+
+    assertThat(sampler.sampleRate("hot", START + WINDOW_NANOS)).isEqualTo(0.001);
+  }
+
+  @Test
+  public void shouldSampleDownWithinTheWindowAKeyGetsHot() {
+    StatsdAdaptiveSampler sampler = new StatsdAdaptiveSampler(1.0, 10);
+    sampler.sampleRate("hot", START);
+
+    for (int i = 0; i < 1000; i++) {
+      assertThat(sampler.sampleRate("hot", START + (WINDOW_NANOS / 2) + i)).isEqualTo(1.0);
+    }
+
+    // 1001 events so far, the rate adapts after an eighth of a window
+    assertThat(sampler.sampleRate("hot", START + (WINDOW_NANOS / 2) + UPDATE_NANOS)).isEqualTo(10.0 / 1001);
+  }
+
+  @Test
+  public void shouldWeightInThePreviousWindow() {
+    StatsdAdaptiveSampler sampler = new StatsdAdaptiveSampler(1.0, 10);
+    for (int i = 0; i < 1000; i++) {
+      sampler.sampleRate("hot", START + i);
+    }
+
+    // half of the previous window lies within the last second
+    assertThat(sampler.sampleRate("hot", START + WINDOW_NANOS + (WINDOW_NANOS / 2))).isEqualTo(10.0 / 500);
+  }
+
+  @Test
+  public void shouldEvictIdleKeys() {
+    StatsdAdaptiveSampler sampler = new StatsdAdaptiveSampler(1.0, 10);
+    long now = System.nanoTime();
+    sampler.sampleRate("idle", now);
+    sampler.sampleRate("active", now);
+    sampler.sampleRate("active", now + WINDOW_NANOS);
+    assertThat(sampler.getTrackedKeyCount()).isEqualTo(2);
+
+    // a new key triggers the eviction
+    sampler.sampleRate("new", now + WINDOW_NANOS + UPDATE_NANOS);
+    assertThat(sampler.getTrackedKeyCount()).isEqualTo(2);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectEmptyBudget() {
+    new StatsdAdaptiveSampler(1.0, 0);
+  }
+}
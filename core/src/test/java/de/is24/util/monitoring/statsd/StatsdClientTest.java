@@ -1,13 +1,25 @@
 package de.is24.util.monitoring.statsd;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import java.io.IOException;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -17,69 +29,95 @@ import static org.mockito.Mockito.when;
 public class StatsdClientTest {
   private StatsdDatagrammSocket socket;
   private StatsdClient target;
+  private final List<String> sentMessages = new ArrayList<String>();
 
   @Before
   public void setUp() throws Exception {
     socket = mock(StatsdDatagrammSocket.class);
+    doAnswer(new Answer<Void>() {
+          @Override
+          public Void answer(InvocationOnMock invocation) throws Throwable {
+            Object[] arguments = invocation.getArguments();
+            sentMessages.add(new String((byte[]) arguments[0], "UTF-8") + arguments[1] +
+              new String((byte[]) arguments[2], "UTF-8"));
+            return null;
+          }
+        }).when(socket).send(any(byte[].class), anyLong(), any(byte[].class));
     target = new StatsdClient(socket, new StatsdHostGroupedMessageFormatter("test", "testHost"));
   }
 
+  @After
+  public void tearDown() {
+    StatsdClient.RANDOM.remove();
+  }
+
   @Test
   public void shouldSendTiming() throws IOException {
     target.timing("testTiming", 42);
-    verify(socket, times(1)).send("testTiming:42|ms||test.testHost");
+    assertThat(sentMessages).isEqualTo(Arrays.asList("testTiming:42|ms||test.testHost"));
+  }
+
+  @Test
+  public void shouldSendFractionOfMillisecondsOfFinerUnits() throws IOException {
+    target.timing("testTiming", 1500, TimeUnit.MICROSECONDS, 1.0);
+    target.timing("testTiming", 2, TimeUnit.SECONDS, 1.0);
+    target.preSampledTiming("testTiming", 250, TimeUnit.NANOSECONDS, 0.5);
+
+    verify(socket, times(1)).send(any(byte[].class), eq(1500000L), eq(6), any(byte[].class));
+    verify(socket, times(1)).send(any(byte[].class), eq(250L), eq(6), any(byte[].class));
+    assertThat(sentMessages).isEqualTo(Arrays.asList("testTiming:2000|ms||test.testHost"));
   }
 
   @Test
   public void shouldDecrement() throws IOException {
     target.decrement("testDecrement");
-    verify(socket, times(1)).send("testDecrement:-1|c||test.testHost");
+    assertThat(sentMessages).isEqualTo(Arrays.asList("testDecrement:-1|c||test.testHost"));
 
   }
 
   @Test
   public void shouldDecrementByMagnitude() throws IOException {
     target.decrement("testDecrement", 23);
-    verify(socket, times(1)).send("testDecrement:-23|c||test.testHost");
+    assertThat(sentMessages).isEqualTo(Arrays.asList("testDecrement:-23|c||test.testHost"));
   }
 
   @Test
   public void shouldDecrementMultipleKeys() throws IOException {
     target.decrement("testDecrement1", "testDecrement2");
-    verify(socket, times(1)).send("testDecrement1:-1|c||test.testHost");
-    verify(socket, times(1)).send("testDecrement2:-1|c||test.testHost");
+    assertThat(sentMessages).isEqualTo(Arrays.asList("testDecrement1:-1|c||test.testHost",
+      "testDecrement2:-1|c||test.testHost"));
   }
 
   @Test
   public void shouldDecrementMultipleKeysByMagnitude() throws IOException {
     target.decrement(19, "testDecrement1", "testDecrement2");
-    verify(socket, times(1)).send("testDecrement1:-19|c||test.testHost");
-    verify(socket, times(1)).send("testDecrement2:-19|c||test.testHost");
+    assertThat(sentMessages).isEqualTo(Arrays.asList("testDecrement1:-19|c||test.testHost",
+      "testDecrement2:-19|c||test.testHost"));
   }
 
   @Test
   public void shouldDecrementMultipleKeysByMagnitudeUsingSampling() throws IOException {
     target.decrement(21, 1.0, "testDecrement1", "testDecrement2");
-    verify(socket, times(1)).send("testDecrement1:-21|c||test.testHost");
-    verify(socket, times(1)).send("testDecrement2:-21|c||test.testHost");
+    assertThat(sentMessages).isEqualTo(Arrays.asList("testDecrement1:-21|c||test.testHost",
+      "testDecrement2:-21|c||test.testHost"));
   }
 
   @Test
   public void shouldNotDecrementUsingZeroSampling() throws IOException {
     target.decrement("testDecrement1", 1, 0.0);
-    verify(socket, times(0)).send(anyString());
+    assertThat(sentMessages).isEmpty();
   }
 
   @Test
   public void shouldIncrement() throws IOException {
     target.increment("testIncrement");
-    verify(socket, times(1)).send("testIncrement:1|c||test.testHost");
+    assertThat(sentMessages).isEqualTo(Arrays.asList("testIncrement:1|c||test.testHost"));
   }
 
   @Test
   public void shouldIncrementByMagnitude() throws IOException {
     target.increment("testIncrement", 81);
-    verify(socket, times(1)).send("testIncrement:81|c||test.testHost");
+    assertThat(sentMessages).isEqualTo(Arrays.asList("testIncrement:81|c||test.testHost"));
   }
 
   @Test
@@ -99,7 +137,7 @@ public class StatsdClientTest {
     socket.send(anyString());
     mockRngAndReturn(0.4);
     assertThat(target.increment("testIncrement", 1, 0.5)).isEqualTo(true);
-    verify(socket, times(1)).send("testIncrement:1|c|@0.5|test.testHost");
+    assertThat(sentMessages).isEqualTo(Arrays.asList("testIncrement:1|c|@0.5|test.testHost"));
   }
 
   @Test
@@ -127,13 +165,41 @@ public class StatsdClientTest {
   }
 
 
+  @Test
+  public void shouldEncodeLargeValues() throws IOException {
+    target.count("testCount", 12345678901L);
+    target.preSampledTiming("testTiming", -7, 0.25);
+    assertThat(sentMessages).isEqualTo(Arrays.asList("testCount:12345678901|c||test.testHost",
+        "testTiming:-7|ms|@0.25|test.testHost"));
+  }
+
+  @Test
+  public void shouldFallBackToStringsForFormattersNotKeepingTheValue() throws IOException {
+    target = new StatsdClient(socket, new StatsdMessageFormatter("test", "testHost") {
+          @Override
+          public String formatSampledValue(String stat, double sampleRate) {
+            return formatUnsampledValue(stat);
+          }
+
+          @Override
+          public String formatUnsampledValue(String stat) {
+            return stat.replaceAll("[^a-zA-Z0-9:|]", "");
+          }
+        });
+
+    target.increment("test.Increment", 5);
+
+    verify(socket, times(1)).send("testIncrement:5|c");
+    assertThat(sentMessages).isEmpty();
+  }
+
   private void expectToFail() throws IOException {
-    socket.send(anyString());
-    when(socket).thenThrow(new IOException());
+    doThrow(new IOException()).when(socket).send(any(byte[].class), anyLong(), any(byte[].class));
   }
 
   private void mockRngAndReturn(double value) {
-    StatsdClient.rng = mock(Random.class);
-    when(StatsdClient.rng.nextDouble()).thenReturn(value);
+    Random random = mock(Random.class);
+    when(random.nextDouble()).thenReturn(value);
+    StatsdClient.RANDOM.set(random);
   }
 }
@@ -0,0 +1,131 @@
+package de.is24.util.monitoring.statsd;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class StatsdDatagrammSocketTest {
+  private static final byte[] PREFIX = "app.host.key:".getBytes(StatsdDatagrammSocket.UTF_8);
+  private static final byte[] SUFFIX = "|c|".getBytes(StatsdDatagrammSocket.UTF_8);
+
+  private DatagramChannel receiver;
+  private StatsdDatagrammSocket target;
+
+  @Before
+  public void setUp() throws Exception {
+    receiver = DatagramChannel.open();
+    receiver.socket().setReceiveBufferSize(1024 * 1024);
+    receiver.socket().bind(new InetSocketAddress(InetAddress.getByName("localhost"), 0));
+    target = new StatsdDatagrammSocket(InetAddress.getByName("localhost"), receiver.socket().getLocalPort(), 100,
+      60000);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    target.close();
+    receiver.close();
+  }
+
+  @Test
+  public void shouldEncodeNumbers() {
+    for (long value : new long[] { 0, 7, -7, 10, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE }) {
+      ByteBuffer buffer = ByteBuffer.allocate(32);
+      StatsdDatagrammSocket.putLong(buffer, value);
+      assertThat(buffer.position()).isEqualTo(StatsdDatagrammSocket.digits(value));
+      assertThat(new String(buffer.array(), 0, buffer.position(), StatsdDatagrammSocket.UTF_8)).isEqualTo(
+        String.valueOf(value));
+    }
+  }
+
+  @Test
+  public void shouldEncodeDecimals() {
+    long[][] values = { { 1500, 6 }, { 1234567, 6 }, { -25, 3 }, { 0, 2 }, { 42, 0 } };
+    String[] expected = { "0.001500", "1.234567", "-0.025", "0.00", "42" };
+    for (int i = 0; i < values.length; i++) {
+      ByteBuffer buffer = ByteBuffer.allocate(32);
+      StatsdDatagrammSocket.putDecimal(buffer, values[i][0], (int) values[i][1]);
+      assertThat(buffer.position()).isEqualTo(StatsdDatagrammSocket.digits(values[i][0], (int) values[i][1]));
+      assertThat(new String(buffer.array(), 0, buffer.position(), StatsdDatagrammSocket.UTF_8)).isEqualTo(
+        expected[i]);
+    }
+  }
+
+  @Test
+  public void shouldSendDecimalsWithoutTrailingZeros() throws IOException {
+    target.send(PREFIX, 1500, 6, SUFFIX);
+    target.send(PREFIX, 2000000, 6, SUFFIX);
+    target.flush();
+
+    assertThat(receive(1)).isEqualTo(Arrays.asList("app.host.key:0.0015|c|\napp.host.key:2|c|"));
+  }
+
+  @Test
+  public void shouldPackMessagesIntoDatagramsUpToMaxPacketSize() throws IOException {
+    // 17 or 18 bytes per message, 5 messages and separators fit into 100 bytes
+    for (int i = 0; i < 20; i++) {
+      target.send(PREFIX, i, SUFFIX);
+    }
+    target.flush();
+
+    List<String> datagrams = receive(4);
+    assertThat(datagrams.get(0)).isEqualTo(
+      "app.host.key:0|c|\napp.host.key:1|c|\napp.host.key:2|c|\napp.host.key:3|c|\napp.host.key:4|c|");
+    for (String datagram : datagrams) {
+      assertThat(datagram.length()).isLessThanOrEqualTo(100);
+    }
+    assertThat(target.getSentPackets()).isEqualTo(4L);
+  }
+
+  @Test
+  public void shouldSendMessagesLargerThanMaxPacketSizeOnTheirOwn() throws IOException {
+    char[] longKey = new char[150];
+    Arrays.fill(longKey, 'k');
+    target.send(PREFIX, 1, SUFFIX);
+    target.send(new String(longKey));
+    target.flush();
+
+    assertThat(receive(2)).isEqualTo(Arrays.asList("app.host.key:1|c|", new String(longKey)));
+  }
+
+  @Test
+  public void shouldKeepSendingWhileNobodyIsListening() throws Exception {
+    int port = receiver.socket().getLocalPort();
+    receiver.close();
+
+    StatsdDatagrammSocket unheard = new StatsdDatagrammSocket(InetAddress.getByName("localhost"), port, 100, 60000);
+    try {
+      for (int i = 0; i < 3; i++) {
+        unheard.send(PREFIX, i, SUFFIX);
+        unheard.flush();
+
+        // give the port unreachable reply time to arrive before the next datagram is sent
+        Thread.sleep(20);
+      }
+      assertThat(unheard.getSentPackets()).isEqualTo(3L);
+    } finally {
+      unheard.close();
+    }
+  }
+
+  private List<String> receive(int datagrams) throws IOException {
+    List<String> result = new ArrayList<String>();
+    ByteBuffer buffer = ByteBuffer.allocate(65536);
+    for (int i = 0; i < datagrams; i++) {
+      buffer.clear();
+      receiver.receive(buffer);
+      buffer.flip();
+      result.add(StatsdDatagrammSocket.UTF_8.decode(buffer).toString());
+    }
+    return result;
+  }
+}
@@ -2,9 +2,13 @@ package de.is24.util.monitoring.statsd;
 
 import org.junit.Before;
 import org.junit.Test;
+import java.util.concurrent.TimeUnit;
+import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Matchers.anyDouble;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -35,9 +39,9 @@ public class StatsdPluginTest {
   }
 
   @Test
-  public void useHighRateSamplerateOnHighRateCounters() throws Exception {
+  public void shouldNotSampleRareHighRateCounters() throws Exception {
     target.incrementHighRateCounter("testIncrement", 23);
-    verify(client, times(1)).increment("testIncrement", 23, 0.1);
+    verify(client, times(1)).increment("testIncrement", 23, 1.0);
   }
 
   @Test
@@ -46,6 +50,18 @@ public class StatsdPluginTest {
     verify(client, times(1)).timing("testTiming", 42, 1.0);
   }
 
+  @Test
+  public void shouldSendTimingsOfOtherUnitsWithTheirUnit() {
+    target.addTimerMeasurement("testNanoTiming", 42500L, TimeUnit.NANOSECONDS);
+    verify(client, times(1)).timing("testNanoTiming", 42500L, TimeUnit.NANOSECONDS, 1.0);
+  }
+
+  @Test
+  public void shouldCapTimingsBeyondIntRange() {
+    target.addTimerMeasurement("testLongTiming", Integer.MAX_VALUE + 1L);
+    verify(client, times(1)).timing("testLongTiming", Integer.MAX_VALUE, 1.0);
+  }
+
   @Test
   public void shouldNotDelegateSingleEventTimingMethod() throws Exception {
     target.addSingleEventTimerMeasurement("testSingleEventTiming", 1000);
@@ -54,8 +70,84 @@ public class StatsdPluginTest {
   }
 
   @Test
-  public void useHighRateSamplerateOnHighRateTimingEvent() throws Exception {
+  public void shouldNotSampleRareHighRateTimingEvents() throws Exception {
     target.addHighRateTimerMeasurement("testHighRateTiming", 42);
-    verify(client, times(1)).timing("testHighRateTiming", 42, 0.1);
+    verify(client, times(1)).timing("testHighRateTiming", 42, 1.0);
+  }
+
+  @Test
+  public void shouldAggregateCountersUnsampled() throws Exception {
+    StatsdAggregator aggregator = new StatsdAggregator(client, 0, StatsdAggregator.DEFAULT_MAX_TIMER_SAMPLES);
+    target.useAggregator(aggregator);
+
+    target.incrementCounter("test:Aggregated", 2);
+    target.incrementCounter("test:Aggregated", 3);
+    target.incrementHighRateCounter("test:Aggregated", 5);
+    verify(client, never()).increment(anyString(), anyInt(), anyDouble());
+
+    aggregator.flush();
+    verify(client, times(1)).count("test_Aggregated", 10L);
+
+    aggregator.flush();
+    verify(client, times(1)).count(anyString(), anyLong());
+  }
+
+  @Test
+  public void shouldSendAllTimerSamplesBelowLimit() throws Exception {
+    StatsdAggregator aggregator = new StatsdAggregator(client, 0, StatsdAggregator.DEFAULT_MAX_TIMER_SAMPLES);
+    target.useAggregator(aggregator);
+
+    target.addTimerMeasurement("testTiming", 42);
+    target.addHighRateTimerMeasurement("testTiming", 4200000000L);
+    target.addTimerMeasurement("testTiming", 1500, TimeUnit.MICROSECONDS);
+    aggregator.flush();
+
+    verify(client, times(1)).preSampledTiming("testTiming", 1500000L, TimeUnit.NANOSECONDS, 1.0);
+    verify(client, times(1)).preSampledTiming("testTiming", 42000000L, TimeUnit.NANOSECONDS, 1.0);
+    verify(client, times(1)).preSampledTiming("testTiming", 4200000000000000L, TimeUnit.NANOSECONDS, 1.0);
+  }
+
+  @Test
+  public void shouldSampleTimersAboveLimit() throws Exception {
+    StatsdAggregator aggregator = new StatsdAggregator(client, 0, 4);
+    target.useAggregator(aggregator);
+
+    for (int i = 0; i < 10; i++) {
+      target.addTimerMeasurement("testTiming", i);
+    }
+    aggregator.flush();
+
+    verify(client, times(1)).preSampledTiming(eq("testTiming"), anyLong(), eq(TimeUnit.NANOSECONDS), eq(0.1));
+  }
+
+  @Test
+  public void shouldRemoveIdleKeysOnFlush() throws Exception {
+    StatsdAggregator aggregator = new StatsdAggregator(client, 0, StatsdAggregator.DEFAULT_MAX_TIMER_SAMPLES);
+    target.useAggregator(aggregator);
+
+    target.incrementCounter("testIncrement", 2);
+    target.addTimerMeasurement("testTiming", 42);
+    aggregator.flush();
+    assertThat(aggregator.getKeyCount()).isEqualTo(2);
+
+    aggregator.flush();
+    assertThat(aggregator.getKeyCount()).isEqualTo(0);
+
+    target.incrementCounter("testIncrement", 3);
+    target.addTimerMeasurement("testTiming", 43);
+    aggregator.flush();
+    verify(client, times(1)).count("testIncrement", 3L);
+    verify(client, times(1)).preSampledTiming("testTiming", 43000000L, TimeUnit.NANOSECONDS, 1.0);
+  }
+
+  @Test
+  public void disablingAggregationShouldFlush() throws Exception {
+    target.enableAggregation(60000);
+    target.incrementCounter("testIncrement", 23);
+    target.disableAggregation();
+
+    verify(client, times(1)).count("testIncrement", 23L);
+    target.incrementCounter("testIncrement", 23);
+    verify(client, times(1)).increment("testIncrement", 23, 1.0);
   }
 }
@@ -0,0 +1,155 @@
+package de.is24.util.monitoring.tools;
+
+import de.is24.util.monitoring.State;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class LinuxProcessMetricsTest {
+  private static final String STAT = "4711 (java (main)) S 1 4711 4711 0 -1 4194560 1500 0 7 0 250 30 0 0 20 0 " +
+    "42 0 100 3000000000 50000\n";
+  private static final String STATUS = "Name:\tjava\nVmPeak:\t 3000000 kB\nVmSize:\t 2929688 kB\n" +
+    "VmHWM:\t  210000 kB\nVmRSS:\t  200000 kB\nThreads:\t42\nvoluntary_ctxt_switches:\t1234\n" +
+    "nonvoluntary_ctxt_switches:\t56\n";
+  private static final String IO = "rchar: 1000\nwchar: 2000\nsyscr: 30\nsyscw: 40\nread_bytes: 4096\n" +
+    "write_bytes: 8192\ncancelled_write_bytes: 0\n";
+  private static final String CPU_STAT = "usage_usec 900000\nuser_usec 800000\nsystem_usec 100000\n" +
+    "nr_periods 100\nnr_throttled 12\nthrottled_usec 345678\n";
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+  private File procSelf;
+  private File cgroup;
+  private LinuxProcessMetrics target;
+
+  @Before
+  public void setUp() throws IOException {
+    procSelf = folder.newFolder("proc");
+    FileUtils.writeStringToFile(new File(procSelf, "stat"), STAT, "US-ASCII");
+    FileUtils.writeStringToFile(new File(procSelf, "status"), STATUS, "US-ASCII");
+    FileUtils.writeStringToFile(new File(procSelf, "io"), IO, "US-ASCII");
+
+    File fd = new File(procSelf, "fd");
+    for (int i = 0; i < 3; i++) {
+      FileUtils.touch(new File(fd, Integer.toString(i)));
+    }
+
+    cgroup = folder.newFolder("cgroup");
+    FileUtils.writeStringToFile(new File(cgroup, "cpu.stat"), CPU_STAT, "US-ASCII");
+    FileUtils.writeStringToFile(new File(cgroup, "memory.current"), "123456789\n", "US-ASCII");
+    FileUtils.writeStringToFile(new File(cgroup, "memory.max"), "max\n", "US-ASCII");
+  }
+
+  @After
+  public void tearDown() {
+    if (target != null) {
+      target.close();
+    }
+  }
+
+  @Test
+  public void shouldReadProcessMetrics() {
+    target = new LinuxProcessMetrics(procSelf.getPath(), null);
+
+    Map<String, Long> values = toMap(target.getValues());
+
+    assertThat(values.get("process.faults.minor")).isEqualTo(1500L);
+    assertThat(values.get("process.faults.major")).isEqualTo(7L);
+    assertThat(values.get("process.cpu.userMillis")).isEqualTo(2500L);
+    assertThat(values.get("process.cpu.systemMillis")).isEqualTo(300L);
+    assertThat(values.get("process.memory.virtual")).isEqualTo(2929688L * 1024);
+    assertThat(values.get("process.memory.rss")).isEqualTo(200000L * 1024);
+    assertThat(values.get("process.memory.rssPeak")).isEqualTo(210000L * 1024);
+    assertThat(values.get("process.threads")).isEqualTo(42L);
+    assertThat(values.get("process.contextSwitches.voluntary")).isEqualTo(1234L);
+    assertThat(values.get("process.contextSwitches.involuntary")).isEqualTo(56L);
+    assertThat(values.get("process.io.chars.read")).isEqualTo(1000L);
+    assertThat(values.get("process.io.chars.written")).isEqualTo(2000L);
+    assertThat(values.get("process.io.syscalls.read")).isEqualTo(30L);
+    assertThat(values.get("process.io.syscalls.write")).isEqualTo(40L);
+    assertThat(values.get("process.io.bytes.read")).isEqualTo(4096L);
+    assertThat(values.get("process.io.bytes.written")).isEqualTo(8192L);
+    assertThat(values.get("process.fd.open")).isEqualTo(3L);
+    assertThat(values.containsKey("cgroup.cpu.periods")).isFalse();
+  }
+
+  @Test
+  public void shouldReadCgroupMetrics() {
+    target = new LinuxProcessMetrics(procSelf.getPath(), cgroup.getPath());
+
+    Map<String, Long> values = toMap(target.getValues());
+
+    assertThat(values.get("cgroup.cpu.usageMicros")).isEqualTo(900000L);
+    assertThat(values.get("cgroup.cpu.periods")).isEqualTo(100L);
+    assertThat(values.get("cgroup.cpu.throttledPeriods")).isEqualTo(12L);
+    assertThat(values.get("cgroup.cpu.throttledMicros")).isEqualTo(345678L);
+    assertThat(values.get("cgroup.memory.current")).isEqualTo(123456789L);
+    assertThat(values.get("cgroup.memory.max")).isEqualTo(-1L);
+  }
+
+  @Test
+  public void shouldReadChangedContentOnNextPoll() throws IOException {
+    target = new LinuxProcessMetrics(procSelf.getPath(), cgroup.getPath());
+    target.getValues();
+
+    FileUtils.writeStringToFile(new File(cgroup, "memory.current"), "987\n", "US-ASCII");
+    FileUtils.writeStringToFile(new File(cgroup, "cpu.stat"), CPU_STAT.replace("nr_throttled 12", "nr_throttled 13"),
+      "US-ASCII");
+
+    Map<String, Long> values = toMap(target.getValues());
+    assertThat(values.get("cgroup.memory.current")).isEqualTo(987L);
+    assertThat(values.get("cgroup.cpu.throttledPeriods")).isEqualTo(13L);
+  }
+
+  @Test
+  public void shouldLeaveOutMissingFiles() {
+    assertThat(new File(procSelf, "io").delete()).isTrue();
+    target = new LinuxProcessMetrics(procSelf.getPath(), null);
+
+    Map<String, Long> values = toMap(target.getValues());
+    assertThat(values.containsKey("process.io.chars.read")).isFalse();
+    assertThat(values.get("process.threads")).isEqualTo(42L);
+  }
+
+  @Test
+  public void shouldReadOwnProcessOnLinux() {
+    LinuxProcessMetrics metrics = LinuxProcessMetrics.getInstance();
+    Assume.assumeNotNull(metrics);
+
+    Map<String, Long> values = toMap(metrics.getValues());
+    assertThat(values.get("process.threads")).isGreaterThan(0L);
+    assertThat(values.get("process.memory.rss")).isGreaterThan(0L);
+    assertThat(values.get("process.fd.open")).isGreaterThan(0L);
+  }
+
+  @Test
+  public void shouldCountOwnFileDescriptorsLikeListingThem() {
+    LinuxProcessMetrics metrics = LinuxProcessMetrics.getInstance();
+    Assume.assumeNotNull(metrics);
+
+    long open = toMap(metrics.getValues()).get("process.fd.open");
+
+    // listing opens a descriptor for the directory itself, other threads may open files meanwhile
+    long listed = new File("/proc/self/fd").list().length;
+    assertThat(java.lang.Math.abs(open - listed)).isLessThanOrEqualTo(3L);
+  }
+
+  private static Map<String, Long> toMap(Collection<State> states) {
+    Map<String, Long> values = new HashMap<String, Long>();
+    for (State state : states) {
+      values.put(state.name, state.value);
+    }
+    return values;
+  }
+}
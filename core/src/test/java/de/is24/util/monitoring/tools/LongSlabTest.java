@@ -0,0 +1,22 @@
+package de.is24.util.monitoring.tools;
+
+import org.junit.Test;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class LongSlabTest {
+  @Test
+  public void shouldKeepValuesWhenGrowing() {
+    LongSlab slab = new LongSlab();
+    slab.ensureCapacity(10);
+    slab.add(3, 5);
+    slab.add(3, 2);
+
+    slab.ensureCapacity(3 * LongSlab.CHUNK_SIZE);
+    slab.set((3 * LongSlab.CHUNK_SIZE) - 1, 42);
+
+    assertThat(slab.get(3)).isEqualTo(7L);
+    assertThat(slab.get((3 * LongSlab.CHUNK_SIZE) - 1)).isEqualTo(42L);
+    assertThat(slab.capacity()).isGreaterThanOrEqualTo(3 * LongSlab.CHUNK_SIZE);
+  }
+}
@@ -0,0 +1,96 @@
+package de.is24.util.monitoring.tools;
+
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class NameDictionaryTest {
+  private final NameDictionary dictionary = new NameDictionary();
+
+  @Test
+  public void shouldAssignConsecutiveIds() {
+    assertThat(dictionary.intern("first")).isEqualTo(0);
+    assertThat(dictionary.intern("second")).isEqualTo(1);
+    assertThat(dictionary.intern("first")).isEqualTo(0);
+
+    assertThat(dictionary.size()).isEqualTo(2);
+    assertThat(dictionary.lookup("second")).isEqualTo(1);
+    assertThat(dictionary.lookup("third")).isEqualTo(-1);
+    assertThat(dictionary.getName(1)).isEqualTo("second");
+  }
+
+  @Test
+  public void shouldDistinguishPrefixesAndNonAsciiNames() {
+    dictionary.intern("name");
+    dictionary.intern("names");
+    dictionary.intern("nämé");
+    dictionary.intern("");
+
+    assertThat(dictionary.lookup("nam")).isEqualTo(-1);
+    assertThat(dictionary.lookup("names")).isEqualTo(1);
+    assertThat(dictionary.lookup("nämé")).isEqualTo(2);
+    assertThat(dictionary.lookup("näme")).isEqualTo(-1);
+    assertThat(dictionary.getName(2)).isEqualTo("nämé");
+    assertThat(dictionary.lookup("")).isEqualTo(3);
+  }
+
+  @Test
+  public void shouldKeepIdsWhenGrowing() {
+    StringBuilder longName = new StringBuilder();
+    for (int i = 0; i < 2000; i++) {
+      longName.append('x');
+    }
+    for (int i = 0; i < 10000; i++) {
+      assertThat(dictionary.intern("metric." + i)).isEqualTo(i);
+    }
+    assertThat(dictionary.intern(longName.toString())).isEqualTo(10000);
+
+    for (int i = 0; i < 10000; i++) {
+      assertThat(dictionary.lookup("metric." + i)).isEqualTo(i);
+    }
+    assertThat(dictionary.getName(10000)).isEqualTo(longName.toString());
+    assertThat(dictionary.getName(9999)).isEqualTo("metric.9999");
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void shouldRejectUnknownIds() {
+    dictionary.getName(0);
+  }
+
+  @Test
+  public void shouldInternConcurrentlyWithoutDuplicates() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<int[]>> results = new ArrayList<Future<int[]>>();
+      for (int thread = 0; thread < 4; thread++) {
+        results.add(executor.submit(new Callable<int[]>() {
+            @Override
+            public int[] call() {
+              int[] ids = new int[5000];
+              for (int i = 0; i < ids.length; i++) {
+                ids[i] = dictionary.intern("metric." + i);
+              }
+              return ids;
+            }
+          }));
+      }
+
+      int[] expected = results.get(0).get();
+      for (Future<int[]> result : results) {
+        assertThat(result.get()).isEqualTo(expected);
+      }
+      assertThat(dictionary.size()).isEqualTo(5000);
+      for (int i = 0; i < expected.length; i++) {
+        assertThat(dictionary.getName(expected[i])).isEqualTo("metric." + i);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,173 @@
+package de.is24.util.monitoring.tools;
+
+import org.junit.Assume;
+import org.junit.Test;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class StripedAccumulatorTest {
+  private static final int THREADS = 8;
+  private static final int ITERATIONS = 200000;
+
+  @Test
+  public void shouldSumSingleThreadedUpdates() {
+    StripedAccumulator accumulator = new StripedAccumulator(1);
+
+    accumulator.add(5);
+    accumulator.add(-2);
+
+    assertThat(accumulator.sum()).isEqualTo(3L);
+  }
+
+  @Test
+  public void shouldKeepFieldsSeparate() {
+    StripedAccumulator accumulator = new StripedAccumulator(3);
+
+    accumulator.add(0, 1);
+    accumulator.add(1, 10);
+    accumulator.add(2, 100);
+
+    assertThat(accumulator.sum(0)).isEqualTo(1L);
+    assertThat(accumulator.sum(1)).isEqualTo(10L);
+    assertThat(accumulator.sum(2)).isEqualTo(100L);
+    assertThat(accumulator.toString()).isEqualTo("StripedAccumulator[1, 10, 100]");
+  }
+
+  @Test
+  public void shouldNotLoseUpdatesUnderContention() throws InterruptedException {
+    final StripedAccumulator accumulator = new StripedAccumulator(2);
+
+    runConcurrently(new Runnable() {
+        public void run() {
+          for (int i = 0; i < ITERATIONS; i++) {
+            accumulator.add(0, 1);
+            accumulator.add(1, i);
+          }
+        }
+      });
+
+    long expectedSum = (long) THREADS * ((long) ITERATIONS * (ITERATIONS - 1) / 2);
+    assertThat(accumulator.sum(0)).isEqualTo((long) THREADS * ITERATIONS);
+    assertThat(accumulator.sum(1)).isEqualTo(expectedSum);
+  }
+
+  @Test
+  public void shouldResetAllCells() throws InterruptedException {
+    final StripedAccumulator accumulator = new StripedAccumulator(2);
+    runConcurrently(new Runnable() {
+        public void run() {
+          for (int i = 0; i < 1000; i++) {
+            accumulator.add(0, 1);
+            accumulator.add(1, 1);
+          }
+        }
+      });
+
+    accumulator.reset();
+
+    assertThat(accumulator.sum(0)).isEqualTo(0L);
+    assertThat(accumulator.sum(1)).isEqualTo(0L);
+  }
+
+  @Test
+  public void shouldGrowCellsWithContentionOnly() throws InterruptedException {
+    final StripedAccumulator accumulator = new StripedAccumulator(1);
+    accumulator.add(1);
+    assertThat(accumulator.getCellCount()).isEqualTo(0);
+
+    runConcurrently(new Runnable() {
+        public void run() {
+          for (int i = 0; i < ITERATIONS; i++) {
+            accumulator.add(1);
+          }
+        }
+      });
+
+    // a power of two, not more than the maximum, 0 if the threads never collided
+    int cells = accumulator.getCellCount();
+    assertThat(cells).isLessThanOrEqualTo(StripedAccumulator.cellCount(Runtime.getRuntime().availableProcessors()));
+    assertThat(Integer.bitCount(cells)).isLessThanOrEqualTo(1);
+    assertThat(cells).isNotEqualTo(1);
+    assertThat(accumulator.sum()).isEqualTo(1L + ((long) THREADS * ITERATIONS));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectZeroWidth() {
+    new StripedAccumulator(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectTooWideAccumulator() {
+    new StripedAccumulator(17);
+  }
+
+  @Test
+  public void shouldUsePowerOfTwoCellCount() {
+    assertThat(StripedAccumulator.cellCount(1)).isEqualTo(2);
+    assertThat(StripedAccumulator.cellCount(3)).isEqualTo(8);
+    assertThat(StripedAccumulator.cellCount(8)).isEqualTo(16);
+    assertThat(StripedAccumulator.cellCount(1000)).isEqualTo(64);
+  }
+
+  /**
+   * Prints timings, runs only with -Dappmon4j.benchmarks=true.
+   */
+  @Test
+  public void compareThroughputWithAtomicLong() throws InterruptedException {
+    Assume.assumeTrue(Boolean.getBoolean("appmon4j.benchmarks"));
+
+    for (int threads = 1; threads <= THREADS; threads *= 2) {
+      final AtomicLong atomicLong = new AtomicLong();
+      long atomicNanos = runConcurrently(threads, new Runnable() {
+          public void run() {
+            for (int i = 0; i < ITERATIONS; i++) {
+              atomicLong.addAndGet(1);
+            }
+          }
+        });
+
+      final StripedAccumulator accumulator = new StripedAccumulator(1);
+      long stripedNanos = runConcurrently(threads, new Runnable() {
+          public void run() {
+            for (int i = 0; i < ITERATIONS; i++) {
+              accumulator.add(1);
+            }
+          }
+        });
+
+      assertThat(accumulator.sum()).isEqualTo(atomicLong.get());
+      System.out.println("Increment " + ITERATIONS + " times using " + threads + " threads: AtomicLong " +
+        (atomicNanos / 1000000) + " ms, StripedAccumulator " + (stripedNanos / 1000000) + " ms.");
+    }
+  }
+
+  private long runConcurrently(Runnable job) throws InterruptedException {
+    return runConcurrently(THREADS, job);
+  }
+
+  private long runConcurrently(int threads, final Runnable job) throws InterruptedException {
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(threads);
+    for (int i = 0; i < threads; i++) {
+      new Thread(new Runnable() {
+          public void run() {
+            try {
+              start.await();
+              job.run();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            } finally {
+              done.countDown();
+            }
+          }
+        }).start();
+    }
+
+    long begin = System.nanoTime();
+    start.countDown();
+    done.await();
+    return System.nanoTime() - begin;
+  }
+}
@@ -0,0 +1,39 @@
+package de.is24.util.monitoring.tools;
+
+import org.junit.Test;
+import java.util.concurrent.Callable;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class VirtualMachineMetricsTest {
+  @Test
+  public void callMethodOfPublicInterface() {
+    Callable<Long> target = new Callable<Long>() {
+      @Override
+      public Long call() {
+        return 42L;
+      }
+    };
+
+    VirtualMachineMetrics.ReflectiveStateValueProvider provider = new VirtualMachineMetrics.ReflectiveStateValueProvider(
+      "answer", target, Callable.class.getName(), "call");
+
+    assertThat(provider.getValue()).isEqualTo(42L);
+  }
+
+  @Test
+  public void reportMinusOneIfTargetDoesNotImplementInterface() {
+    VirtualMachineMetrics.ReflectiveStateValueProvider provider = new VirtualMachineMetrics.ReflectiveStateValueProvider(
+      "answer", new Object(), Callable.class.getName(), "call");
+
+    assertThat(provider.getValue()).isEqualTo(-1L);
+  }
+
+  @Test
+  public void reportMinusOneIfInterfaceOrMethodDoesNotExist() {
+    assertThat(new VirtualMachineMetrics.ReflectiveStateValueProvider("missing", new Object(), "no.such.Interface",
+        "call").getValue()).isEqualTo(-1L);
+    assertThat(new VirtualMachineMetrics.ReflectiveStateValueProvider("missing", new Object(), Runnable.class.getName(),
+        "call").getValue()).isEqualTo(-1L);
+  }
+}
@@ -0,0 +1,292 @@
+package de.is24.util.monitoring;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import static de.is24.util.monitoring.AsyncPluginDispatcher.OverflowPolicy.BLOCK;
+import static de.is24.util.monitoring.AsyncPluginDispatcher.OverflowPolicy.DROP;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+public class AsyncPluginDispatcherTest {
+  @Rule
+  public final InApplicationMonitorRule inApplicationMonitorRule = new InApplicationMonitorRule();
+  private InApplicationMonitor monitor;
+
+  @Before
+  public void setUp() {
+    monitor = inApplicationMonitorRule.getInApplicationMonitor();
+  }
+
+  @After
+  public void tearDown() {
+    monitor.disableAsyncDispatch();
+  }
+
+  @Test
+  public void shouldDispatchAllEventTypesToOtherPlugins() {
+    MonitorPlugin plugin = mock(MonitorPlugin.class);
+    when(plugin.getUniqueName()).thenReturn("mockPlugin");
+    monitor.registerPlugin(plugin);
+    monitor.enableAsyncDispatch(16, BLOCK);
+
+    monitor.initializeCounter("async.counter");
+    monitor.incrementCounter("async.counter", 3);
+    monitor.incrementHighRateCounter("async.counter");
+    monitor.initializeTimerMeasurement("async.timer");
+    monitor.addTimerMeasurement("async.timer", 10);
+    monitor.addSingleEventTimerMeasurement("async.timer", 20);
+    monitor.addHighRateTimerMeasurement("async.timer", 30);
+    monitor.timer("async.handle").addMeasurement(40);
+
+    // the core plugin is called synchronously
+    assertThat(monitor.getCorePlugin().getCounter("async.counter").getCount()).isEqualTo(4L);
+    assertThat(monitor.getCorePlugin().getTimer("async.timer").getTimerSum()).isEqualTo(60L);
+
+    monitor.disableAsyncDispatch();
+
+    verify(plugin, times(1)).initializeCounter("async.counter");
+    verify(plugin, times(1)).incrementCounter("async.counter", 3);
+    verify(plugin, times(1)).incrementHighRateCounter("async.counter", 1);
+    verify(plugin, times(1)).initializeTimerMeasurement("async.timer");
+    verify(plugin, times(1)).addTimerMeasurement("async.timer", 10);
+    verify(plugin, times(1)).addSingleEventTimerMeasurement("async.timer", 20);
+    verify(plugin, times(1)).addHighRateTimerMeasurement("async.timer", 30);
+    verify(plugin, times(1)).addTimerMeasurement("async.handle", 40);
+  }
+
+  @Test
+  public void shouldDeliverExactSumsFromManyThreads() throws InterruptedException {
+    final CountingPlugin plugin = new CountingPlugin();
+    monitor.registerPlugin(plugin);
+    monitor.enableAsyncDispatch(1024, BLOCK);
+
+    final int threads = 8;
+    final int iterations = 20000;
+    final CounterHandle handle = monitor.counter("async.concurrent");
+    final CountDownLatch done = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      new Thread(new Runnable() {
+          @Override
+          public void run() {
+            for (int i = 0; i < iterations; i++) {
+              handle.increment(2);
+            }
+            done.countDown();
+          }
+        }).start();
+    }
+    done.await();
+    AsyncPluginDispatcher dispatcher = monitor.getAsyncPluginDispatcher();
+    monitor.disableAsyncDispatch();
+
+    assertThat(plugin.sum.get()).isEqualTo(2L * threads * iterations);
+    assertThat(dispatcher.getDroppedEvents()).isEqualTo(0L);
+    assertThat(dispatcher.getDispatchedEvents()).isEqualTo((long) threads * iterations);
+    assertThat(dispatcher.getQueueDepth()).isEqualTo(0L);
+  }
+
+  @Test
+  public void shouldDropEventsIfFull() throws InterruptedException {
+    BlockingPlugin plugin = new BlockingPlugin();
+    monitor.registerPlugin(plugin);
+    monitor.enableAsyncDispatch(4, DROP);
+
+    try {
+      monitor.incrementCounter("async.drop");
+      assertThat(plugin.entered.await(5, TimeUnit.SECONDS)).isTrue();
+      for (int i = 0; i < 99; i++) {
+        monitor.incrementCounter("async.drop");
+      }
+
+      CorePlugin corePlugin = monitor.getCorePlugin();
+      assertThat(monitor.getAsyncPluginDispatcher().getDroppedEvents()).isEqualTo(95L);
+      assertThat(corePlugin.getStateValue(AsyncPluginDispatcher.METRICS_PREFIX + "droppedEvents").getValue())
+      .isEqualTo(95L);
+
+      // four queued events plus the one blocked in the plugin
+      assertThat(corePlugin.getStateValue(AsyncPluginDispatcher.METRICS_PREFIX + "queueDepth").getValue())
+      .isEqualTo(5L);
+    } finally {
+      plugin.release.countDown();
+    }
+    monitor.disableAsyncDispatch();
+
+    assertThat(plugin.sum.get()).isEqualTo(5L);
+    assertThat(monitor.getCorePlugin().getCounter("async.drop").getCount()).isEqualTo(100L);
+  }
+
+  @Test
+  public void shouldBlockIfFull() throws InterruptedException {
+    final BlockingPlugin plugin = new BlockingPlugin();
+    monitor.registerPlugin(plugin);
+    monitor.enableAsyncDispatch(4, BLOCK);
+
+    monitor.incrementCounter("async.block");
+    assertThat(plugin.entered.await(5, TimeUnit.SECONDS)).isTrue();
+    new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            Thread.sleep(100);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          plugin.release.countDown();
+        }
+      }).start();
+    for (int i = 0; i < 99; i++) {
+      monitor.incrementCounter("async.block");
+    }
+
+    AsyncPluginDispatcher dispatcher = monitor.getAsyncPluginDispatcher();
+    monitor.disableAsyncDispatch();
+
+    assertThat(plugin.sum.get()).isEqualTo(100L);
+    assertThat(dispatcher.getDroppedEvents()).isEqualTo(0L);
+  }
+
+  @Test
+  public void failingPluginShouldNotStopDispatch() {
+    MonitorPlugin failingPlugin = mock(MonitorPlugin.class);
+    when(failingPlugin.getUniqueName()).thenReturn("failingPlugin");
+    org.mockito.Mockito.doThrow(new IllegalStateException("test")).when(failingPlugin)
+    .incrementCounter("async.fail", 1);
+
+    CountingPlugin plugin = new CountingPlugin();
+    monitor.registerPlugin(failingPlugin);
+    monitor.registerPlugin(plugin);
+    monitor.enableAsyncDispatch(16, BLOCK);
+
+    monitor.incrementCounter("async.fail");
+    monitor.incrementCounter("async.fail");
+
+    AsyncPluginDispatcher dispatcher = monitor.getAsyncPluginDispatcher();
+    monitor.disableAsyncDispatch();
+
+    assertThat(plugin.sum.get()).isEqualTo(2L);
+    assertThat(dispatcher.getFailedEvents()).isEqualTo(2L);
+  }
+
+  @Test
+  public void shouldDispatchOrDropEventsWrittenDuringShutdown() throws InterruptedException {
+    final CountingPlugin plugin = new CountingPlugin();
+    monitor.registerPlugin(plugin);
+    monitor.enableAsyncDispatch(1024, BLOCK);
+
+    final AsyncPluginDispatcher dispatcher = monitor.getAsyncPluginDispatcher();
+    final int threads = 4;
+    final int iterations = 50000;
+    final CountDownLatch started = new CountDownLatch(threads);
+    final CountDownLatch done = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      new Thread(new Runnable() {
+          @Override
+          public void run() {
+            started.countDown();
+            for (int i = 0; i < iterations; i++) {
+              dispatcher.incrementCounter("async.shutdown", 1);
+            }
+            done.countDown();
+          }
+        }).start();
+    }
+    started.await();
+    dispatcher.shutdown(TimeUnit.SECONDS.toMillis(5));
+    done.await();
+
+    // no event is lost in between
+    assertThat(plugin.sum.get()).isEqualTo(dispatcher.getDispatchedEvents());
+    assertThat(dispatcher.getDispatchedEvents() + dispatcher.getDroppedEvents())
+    .isEqualTo((long) threads * iterations);
+  }
+
+  @Test
+  public void registerShouldDoNothing() {
+    monitor.enableAsyncDispatch(16, DROP);
+
+    monitor.getAsyncPluginDispatcher().register();
+
+    assertThat(monitor.getPlugins()).excludes(monitor.getAsyncPluginDispatcher());
+  }
+
+  @Test
+  public void disablingShouldSwitchBackToSynchronousDispatch() {
+    CountingPlugin plugin = new CountingPlugin();
+    monitor.registerPlugin(plugin);
+    monitor.enableAsyncDispatch(16, DROP);
+    monitor.disableAsyncDispatch();
+
+    monitor.incrementCounter("async.sync");
+
+    assertThat(monitor.getAsyncPluginDispatcher()).isNull();
+    assertThat(plugin.sum.get()).isEqualTo(1L);
+  }
+
+  private static class CountingPlugin extends AbstractMonitorPlugin {
+    final AtomicLong sum = new AtomicLong();
+
+    @Override
+    public String getUniqueName() {
+      return getClass().getSimpleName();
+    }
+
+    @Override
+    public void initializeCounter(String name) {
+    }
+
+    @Override
+    public void incrementCounter(String name, int increment) {
+      sum.addAndGet(increment);
+    }
+
+    @Override
+    public void incrementHighRateCounter(String name, int increment) {
+      sum.addAndGet(increment);
+    }
+
+    @Override
+    public void addTimerMeasurement(String name, long timing) {
+    }
+
+    @Override
+    public void addSingleEventTimerMeasurement(String name, long timing) {
+    }
+
+    @Override
+    public void addHighRateTimerMeasurement(String name, long timing) {
+    }
+
+    @Override
+    public void initializeTimerMeasurement(String name) {
+    }
+
+    @Override
+    public void afterRemovalNotification() {
+    }
+  }
+
+  private static class BlockingPlugin extends CountingPlugin {
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    @Override
+    public void incrementCounter(String name, int increment) {
+      entered.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      super.incrementCounter(name, increment);
+    }
+  }
+}
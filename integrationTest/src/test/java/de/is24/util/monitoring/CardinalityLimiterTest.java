@@ -0,0 +1,150 @@
+package de.is24.util.monitoring;
+
+import org.junit.Before;
+import org.junit.Test;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class CardinalityLimiterTest {
+  private CorePlugin corePlugin;
+  private CardinalityLimiter limiter;
+
+  @Before
+  public void setUp() {
+    corePlugin = new CorePlugin(null, null);
+    limiter = corePlugin.getCardinalityLimiter();
+  }
+
+  @Test
+  public void shouldRecordKeysAboveGlobalLimitAsOverflow() {
+    limiter.setGlobalLimit(limiter.getKeyCount() + 2);
+
+    corePlugin.incrementCounter("first", 1);
+    corePlugin.addTimerMeasurement("second", 5);
+    corePlugin.incrementCounter("third", 1);
+    corePlugin.addTimerMeasurement("fourth", 7);
+    corePlugin.incrementCounter("third", 2);
+    corePlugin.incrementCounter("first", 1);
+
+    assertThat(corePlugin.getCounter("first").getCount()).isEqualTo(2L);
+    assertThat(corePlugin.getTimer("second").getTimerSum()).isEqualTo(5L);
+    assertThat(corePlugin.getCounter(CardinalityLimiter.DEFAULT_OVERFLOW_KEY).getCount()).isEqualTo(3L);
+    assertThat(corePlugin.getTimer(CardinalityLimiter.DEFAULT_OVERFLOW_KEY).getTimerSum()).isEqualTo(7L);
+  }
+
+  @Test
+  public void shouldCountRejectionsOncePerKey() {
+    limiter.setGlobalLimit(limiter.getKeyCount());
+
+    corePlugin.incrementCounter("rejected", 1);
+    corePlugin.incrementCounter("rejected", 1);
+    corePlugin.addTimerMeasurement("rejected", 1);
+
+    assertThat(limiter.getRejectedKeyCount()).isEqualTo(1L);
+    assertThat(limiter.getRecentOffenders()).isEqualTo(new String[] { "rejected" });
+  }
+
+  @Test
+  public void shouldKeepBoundedSampleOfRecentOffenders() {
+    limiter.setGlobalLimit(0);
+    for (int i = 0; i < 100; i++) {
+      corePlugin.incrementCounter("key" + i, 1);
+    }
+
+    String[] offenders = limiter.getRecentOffenders();
+    assertThat(offenders.length).isEqualTo(CardinalityLimiter.RECENT_OFFENDERS);
+    assertThat(offenders[0]).isEqualTo("key99");
+    assertThat(offenders[CardinalityLimiter.RECENT_OFFENDERS - 1]).isEqualTo("key84");
+    assertThat(limiter.getRejectedKeyCount()).isEqualTo(100L);
+  }
+
+  @Test
+  public void shouldKeepCachingRejectionsBeyondCacheSize() {
+    limiter.setGlobalLimit(0);
+    int keys = CardinalityLimiter.MAX_CACHED_REJECTIONS + 10;
+    for (int round = 0; round < 2; round++) {
+      for (int i = 0; i < keys; i++) {
+        corePlugin.incrementCounter("key" + i, 1);
+      }
+    }
+
+    assertThat(limiter.getRejectedKeyCount()).isEqualTo((long) keys);
+    assertThat(corePlugin.getCounter(CardinalityLimiter.DEFAULT_OVERFLOW_KEY).getCount()).isEqualTo(2L * keys);
+  }
+
+  @Test
+  public void shouldAdmitRejectedKeysAfterEvictionFreedCapacity() {
+    corePlugin.enableIdleMetricEviction(1, TimeUnit.HOURS);
+    try {
+      limiter.setGlobalLimit(limiter.getKeyCount() + 1);
+      corePlugin.incrementCounter("idle", 1);
+      corePlugin.incrementCounter("rejected", 1);
+
+      int now = corePlugin.getClock().seconds();
+      corePlugin.getCounter("idle").stamp(now - 3601);
+      corePlugin.evictIdleMetrics(now);
+      corePlugin.incrementCounter("rejected", 1);
+
+      assertThat(corePlugin.getCounter("rejected").getCount()).isEqualTo(1L);
+    } finally {
+      corePlugin.disableIdleMetricEviction();
+    }
+  }
+
+  @Test
+  public void shouldApplyLongestMatchingPrefixLimit() {
+    limiter.setPrefixLimit("sql.", 1);
+    limiter.setPrefixLimit("sql.select.", 2);
+
+    corePlugin.incrementCounter("sql.select.a", 1);
+    corePlugin.incrementCounter("sql.select.b", 1);
+    corePlugin.incrementCounter("sql.select.c", 1);
+    corePlugin.incrementCounter("sql.update.a", 1);
+    corePlugin.incrementCounter("sql.update.b", 1);
+    corePlugin.incrementCounter("other", 1);
+
+    assertThat(Arrays.asList(limiter.getRecentOffenders())).isEqualTo(Arrays.asList("sql.update.b",
+        "sql.select.c"));
+    assertThat(limiter.getPrefixLimits()).isEqualTo(new String[] { "sql.select.=2 (2)", "sql.=1 (1)" });
+    assertThat(corePlugin.getCounter(CardinalityLimiter.DEFAULT_OVERFLOW_KEY).getCount()).isEqualTo(2L);
+  }
+
+  @Test
+  public void shouldAdmitRejectedKeysAgainAfterLimitWasRaised() {
+    limiter.setPrefixLimit("handler.", 0);
+    corePlugin.incrementCounter("handler.a", 1);
+
+    assertThat(limiter.removePrefixLimit("handler.")).isTrue();
+    assertThat(limiter.removePrefixLimit("handler.")).isFalse();
+    corePlugin.incrementCounter("handler.a", 1);
+
+    assertThat(corePlugin.getCounter("handler.a").getCount()).isEqualTo(1L);
+  }
+
+  @Test
+  public void shouldUseConfiguredOverflowKey() {
+    limiter.setOverflowKey("overflow");
+    limiter.setGlobalLimit(limiter.getKeyCount());
+    corePlugin.addHistogramValue("histogram", 10);
+
+    assertThat(corePlugin.getHistogram("overflow").getCount()).isEqualTo(1L);
+  }
+
+  @Test
+  public void shouldLimitCompactStorage() {
+    corePlugin = new CorePlugin(null, null, CorePlugin.MetricStorage.COMPACT);
+    limiter = corePlugin.getCardinalityLimiter();
+    limiter.setGlobalLimit(limiter.getKeyCount() + 1);
+
+    corePlugin.incrementCounter("first", 1);
+    corePlugin.incrementCounter("second", 2);
+    corePlugin.addTimerMeasurement("third", 3);
+
+    assertThat(corePlugin.getCounter("first").getCount()).isEqualTo(1L);
+    assertThat(corePlugin.getCounter(CardinalityLimiter.DEFAULT_OVERFLOW_KEY).getCount()).isEqualTo(2L);
+    assertThat(corePlugin.getTimer(CardinalityLimiter.DEFAULT_OVERFLOW_KEY).getTimerSum()).isEqualTo(3L);
+    assertThat(limiter.getRejectedKeyCount()).isEqualTo(2L);
+  }
+}
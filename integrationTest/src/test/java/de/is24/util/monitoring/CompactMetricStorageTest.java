@@ -0,0 +1,118 @@
+package de.is24.util.monitoring;
+
+import de.is24.util.monitoring.tools.DoNothingReportVisitor;
+import org.junit.Before;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class CompactMetricStorageTest {
+  private CorePlugin corePlugin;
+
+  @Before
+  public void setUp() {
+    corePlugin = new CorePlugin(null, null, CorePlugin.MetricStorage.COMPACT);
+  }
+
+  @Test
+  public void shouldReportCountersAndTimers() {
+    corePlugin.incrementCounter("counter", 3);
+    corePlugin.incrementCounter("counter", 2);
+    corePlugin.addTimerMeasurement("timer", 3);
+    corePlugin.addTimerMeasurement("timer", 5);
+
+    final List<String> reported = new ArrayList<String>();
+    corePlugin.reportInto(new DoNothingReportVisitor() {
+        @Override
+        public void reportCounter(Counter counter) {
+          reported.add(counter.getName() + "=" + counter.getCount());
+        }
+
+        @Override
+        public void reportTimer(Timer timer) {
+          reported.add(timer.getName() + "=" + timer.getCount() + "/" + timer.getTimerSum() + "/" +
+            timer.getTimerSumOfSquares() + "/" + timer.getTimerAvg());
+        }
+      });
+
+    assertThat(reported).containsOnly("counter=5", "timer=2/8/34/4.0");
+  }
+
+  @Test
+  public void shouldInitializeMetrics() {
+    corePlugin.incrementCounter("counter", 3);
+    corePlugin.addTimerMeasurement("timer", 3);
+
+    corePlugin.initializeCounter("counter");
+    corePlugin.initializeTimerMeasurement("timer");
+
+    assertThat(corePlugin.getCounter("counter").getCount()).isEqualTo(0L);
+    assertThat(corePlugin.getTimer("timer").getTimerSum()).isEqualTo(0L);
+  }
+
+  @Test
+  public void shouldUpdateStoredValuesThroughViews() {
+    Counter counter = corePlugin.getCounter("counter");
+    Timer timer = corePlugin.getTimer("timer");
+
+    counter.increment();
+    counter.increment(4);
+    timer.addMeasurement(7);
+    corePlugin.incrementCounter("counter", 1);
+
+    assertThat(counter.getCount()).isEqualTo(6L);
+    assertThat(corePlugin.getTimer("timer").getCount()).isEqualTo(1L);
+    assertThat(corePlugin.getCounter("counter")).isEqualTo(counter);
+  }
+
+  @Test
+  public void shouldNotifyObserversOncePerMetric() {
+    final List<String> added = new ArrayList<String>();
+    corePlugin.addReportableObserver(new ReportableObserver() {
+        @Override
+        public void addNewReportable(Reportable reportable) {
+          if ((reportable instanceof Counter) || (reportable instanceof Timer)) {
+            added.add(reportable.getName());
+          }
+        }
+      });
+
+    corePlugin.incrementCounter("counter", 1);
+    corePlugin.incrementCounter("counter", 1);
+    corePlugin.addTimerMeasurement("timer", 1);
+    corePlugin.awaitReportableNotifications();
+
+    assertThat(added).isEqualTo(java.util.Arrays.asList("counter", "timer"));
+  }
+
+  @Test
+  public void shouldTakeSnapshots() {
+    corePlugin.incrementCounter("counter", 3);
+    corePlugin.addTimerMeasurement("timer", 4);
+
+    MetricSnapshot snapshot = corePlugin.snapshot();
+    MetricNameTable names = snapshot.getNames();
+
+    assertThat(snapshot.getCount(names.getId(MetricNameTable.Kind.COUNTER, "counter"))).isEqualTo(3L);
+    assertThat(snapshot.getSumOfSquares(names.getId(MetricNameTable.Kind.TIMER, "timer"))).isEqualTo(16L);
+  }
+
+  @Test
+  public void shouldTakeOverCountsWhenSyncing() {
+    CorePlugin previous = new CorePlugin(null, null);
+    previous.incrementCounter("counter", 3);
+    previous.addTimerMeasurement("timer", 2);
+
+    corePlugin.syncFrom(previous);
+
+    assertThat(corePlugin.getCounter("counter").getCount()).isEqualTo(3L);
+    assertThat(corePlugin.getTimer("timer").getTimerSum()).isEqualTo(2L);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void shouldNotSupportCursors() {
+    corePlugin.createCursor();
+  }
+}
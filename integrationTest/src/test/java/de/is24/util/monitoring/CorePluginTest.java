@@ -158,6 +158,20 @@ public class CorePluginTest {
   }
 
 
+  @Test
+  public void readFileDescriptorCountsWithoutAccessToJdkInternals() throws Exception {
+    CorePlugin corePlugin = givenCounterPluginWithoutJMX();
+
+    StateValueProvider open = corePlugin.getStateValue("jvm.filedescriptors.open");
+    StateValueProvider max = corePlugin.getStateValue("jvm.filedescriptors.max");
+    assertThat(open).isNotNull();
+    assertThat(max).isNotNull();
+    if (System.getProperty("os.name").toLowerCase().contains("linux")) {
+      assertThat(open.getValue()).isGreaterThan(0L);
+      assertThat(max.getValue()).isGreaterThanOrEqualTo(open.getValue());
+    }
+  }
+
   private CorePlugin givenCounterPluginWithoutJMX() {
     return new CorePlugin(null, null);
   }
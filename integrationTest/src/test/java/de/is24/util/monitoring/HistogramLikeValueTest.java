@@ -2,6 +2,7 @@ package de.is24.util.monitoring;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import java.util.Random;
 import org.junit.Rule;
 import org.junit.Test;
@@ -124,6 +125,25 @@ public class HistogramLikeValueTest {
 
     System.out.println(histogramLikeValueAnalysisVisitor.toString());
 
+    assertTrue(histogramLikeValueAnalysisVisitor.toString().contains(
+        "10 values, which are 100.0%, are smaller than or equal to 50000 flurbs"));
+  }
+
+  @Test
+  public void testValuesAreRecordedInHistogram() {
+    histogramLikeValue = new HistogramLikeValue("histogramTest", 1000);
+    histogramLikeValue.addValue(50);
+    histogramLikeValue.addValue(1500);
+    histogramLikeValue.addValue(250);
+
+    Histogram histogram = InApplicationMonitor.getInstance().getCorePlugin().getHistogram("histogramTest");
+    assertEquals(3L, histogram.getCount());
+    assertEquals(50L, histogram.getMin());
+    assertEquals(1500L, histogram.getMax());
+
+    // the median is estimated by the upper limit of its bucket
+    long median = histogram.getValueAtPercentile(50);
+    assertTrue((median >= 250) && (median < 258));
   }
 
   @Test
@@ -0,0 +1,211 @@
+package de.is24.util.monitoring;
+
+import de.is24.util.monitoring.tools.DoNothingReportVisitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class IdleMetricEvictionTest {
+  private static final int TTL = 3600;
+
+  @Rule
+  public final InApplicationMonitorRule inApplicationMonitorRule = new InApplicationMonitorRule();
+  private CorePlugin corePlugin;
+
+  @Before
+  public void setUp() {
+    corePlugin = inApplicationMonitorRule.getInApplicationMonitor().getCorePlugin();
+    corePlugin.enableIdleMetricEviction(TTL, TimeUnit.SECONDS);
+  }
+
+  @After
+  public void tearDown() {
+    corePlugin.disableIdleMetricEviction();
+  }
+
+  @Test
+  public void shouldEvictOnlyIdleCountersAndTimers() {
+    int now = corePlugin.getClock().seconds();
+    corePlugin.incrementCounter("idle.counter", 1);
+    corePlugin.addTimerMeasurement("idle.timer", 1);
+    corePlugin.incrementCounter("active.counter", 1);
+    corePlugin.getCounter("idle.counter").stamp(now - TTL - 1);
+    corePlugin.getTimer("idle.timer").stamp(now - TTL - 1);
+
+    assertThat(corePlugin.evictIdleMetrics(now)).isEqualTo(2);
+    assertThat(reportedNames()).contains("active.counter").excludes("idle.counter", "idle.timer");
+
+    // updated again, the metric starts anew
+    corePlugin.incrementCounter("idle.counter", 2);
+    assertThat(corePlugin.getCounter("idle.counter").getCount()).isEqualTo(2L);
+  }
+
+  @Test
+  public void shouldStampUpdates() {
+    int now = corePlugin.getClock().seconds();
+    corePlugin.incrementCounter("counter", 1);
+    corePlugin.getCounter("counter").stamp(now - TTL - 1);
+
+    corePlugin.incrementCounter("counter", 1);
+
+    assertThat(corePlugin.evictIdleMetrics(now)).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldNotifyRemovalObservers() {
+    final List<String> events = new ArrayList<String>();
+    corePlugin.addReportableObserver(new ReportableRemovalObserver() {
+        @Override
+        public void addNewReportable(Reportable reportable) {
+          if (reportable.getName().equals("observed")) {
+            events.add("added");
+          }
+        }
+
+        @Override
+        public void removeReportable(Reportable reportable) {
+          events.add("removed " + reportable.getName());
+        }
+      });
+
+    int now = corePlugin.getClock().seconds();
+    corePlugin.incrementCounter("observed", 1);
+    corePlugin.getCounter("observed").stamp(now - TTL - 1);
+    corePlugin.evictIdleMetrics(now);
+    corePlugin.awaitReportableNotifications();
+
+    assertThat(events).containsOnly("added", "removed observed");
+  }
+
+  @Test
+  public void shouldRebindHandlesOfEvictedMetrics() {
+    CounterHandle handle = inApplicationMonitorRule.getInApplicationMonitor().counter("handle");
+    handle.increment();
+
+    int now = corePlugin.getClock().seconds();
+    corePlugin.getCounter("handle").stamp(now - TTL - 1);
+    corePlugin.evictIdleMetrics(now);
+    handle.increment();
+
+    assertThat(corePlugin.getCounter("handle").getCount()).isEqualTo(1L);
+  }
+
+  @Test
+  public void shouldReleaseCardinalityOfEvictedKeys() {
+    CardinalityLimiter limiter = corePlugin.getCardinalityLimiter();
+    corePlugin.incrementCounter("limited", 1);
+
+    int keys = limiter.getKeyCount();
+    int now = corePlugin.getClock().seconds();
+    corePlugin.getCounter("limited").stamp(now - TTL - 1);
+    corePlugin.evictIdleMetrics(now);
+
+    assertThat(limiter.getKeyCount()).isEqualTo(keys - 1);
+  }
+
+  @Test
+  public void shouldUnregisterMBeansOfEvictedTimers() throws Exception {
+    // the rule's plugin reports to JMX
+    corePlugin.addTimerMeasurement("evicted.timer", 1);
+    corePlugin.awaitReportableNotifications();
+
+    ObjectName timerName = new ObjectName("lala:type=InApplicationMonitor,name=evicted.timer");
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    assertThat(mBeanServer.isRegistered(timerName)).isTrue();
+
+    int now = corePlugin.getClock().seconds();
+    corePlugin.getTimer("evicted.timer").stamp(now - TTL - 1);
+    corePlugin.evictIdleMetrics(now);
+    corePlugin.awaitReportableNotifications();
+
+    assertThat(mBeanServer.isRegistered(timerName)).isFalse();
+  }
+
+  @Test
+  public void shouldReuseIdsOfEvictedMetrics() {
+    corePlugin.incrementCounter("evicted", 5);
+
+    MetricSnapshot before = corePlugin.snapshot();
+    MetricCursor cursor = corePlugin.createCursor();
+    try {
+      int evictedId = before.getNames().getId(MetricNameTable.Kind.COUNTER, "evicted");
+      int now = corePlugin.getClock().seconds();
+      corePlugin.getCounter("evicted").stamp(now - TTL - 1);
+      corePlugin.evictIdleMetrics(now);
+      corePlugin.incrementCounter("created", 7);
+
+      MetricSnapshot after = corePlugin.snapshot();
+      assertThat(after.getNames().getId(MetricNameTable.Kind.COUNTER, "created")).isEqualTo(evictedId);
+      assertThat(after.size()).isEqualTo(before.size());
+      assertThat(before.getName(evictedId)).isEqualTo("evicted");
+      assertThat(after.getName(evictedId)).isEqualTo("created");
+
+      // the reused id counts as a new metric
+      assertThat(after.deltaSince(before).getCount(evictedId)).isEqualTo(7L);
+
+      MetricDeltas deltas = cursor.read();
+      assertThat(deltas.size()).isEqualTo(1);
+      assertThat(deltas.getName(0)).isEqualTo("created");
+      assertThat(deltas.getCount(0)).isEqualTo(7L);
+    } finally {
+      cursor.close();
+    }
+  }
+
+  @Test
+  public void shouldStampUpdatesOfSyncedMetricsWithOwnClock() throws Exception {
+    CorePlugin previous = new CorePlugin(null, null);
+    previous.incrementCounter("synced", 1);
+    previous.addTimerMeasurement("synced.timer", 1);
+
+    CorePlugin fresh = new CorePlugin(null, null);
+    fresh.syncFrom(previous);
+
+    // the clock of the previous plugin is never advanced, so it falls behind the clock of the fresh one
+    while (fresh.getClock().tick() < 1) {
+      Thread.sleep(100);
+    }
+    fresh.enableIdleMetricEviction(TTL, TimeUnit.SECONDS);
+    try {
+      int now = fresh.getClock().seconds();
+      fresh.incrementCounter("synced", 1);
+      fresh.addTimerMeasurement("synced.timer", 1);
+
+      assertThat(fresh.evictIdleMetrics(now + TTL)).isEqualTo(0);
+      assertThat(fresh.getCounter("synced").getCount()).isEqualTo(2L);
+      assertThat(fresh.getTimer("synced.timer").getCount()).isEqualTo(2L);
+    } finally {
+      fresh.disableIdleMetricEviction();
+    }
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void shouldRejectEvictionOfCompactStorage() {
+    new CorePlugin(null, null, CorePlugin.MetricStorage.COMPACT).enableIdleMetricEviction(1, TimeUnit.MINUTES);
+  }
+
+  private List<String> reportedNames() {
+    final List<String> names = new ArrayList<String>();
+    corePlugin.reportInto(new DoNothingReportVisitor() {
+        @Override
+        public void reportCounter(Counter counter) {
+          names.add(counter.getName());
+        }
+
+        @Override
+        public void reportTimer(Timer timer) {
+          names.add(timer.getName());
+        }
+      });
+    return names;
+  }
+}
@@ -0,0 +1,167 @@
+package de.is24.util.monitoring;
+
+import org.junit.Before;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class MetricCursorTest {
+  private CorePlugin corePlugin;
+
+  @Before
+  public void setUp() {
+    corePlugin = new CorePlugin(null, null);
+  }
+
+  @Test
+  public void shouldReportChangesSinceCreation() {
+    corePlugin.incrementCounter("counter", 5);
+    corePlugin.addTimerMeasurement("timer", 7);
+
+    MetricCursor cursor = corePlugin.createCursor();
+    corePlugin.incrementCounter("counter", 2);
+    corePlugin.addTimerMeasurement("timer", 3);
+    corePlugin.addTimerMeasurement("timer", 9);
+
+    MetricDeltas deltas = cursor.read();
+    assertThat(deltas.size()).isEqualTo(2);
+
+    int counter = indexOf(deltas, MetricNameTable.Kind.COUNTER, "counter");
+    assertThat(deltas.getCount(counter)).isEqualTo(2L);
+
+    int timer = indexOf(deltas, MetricNameTable.Kind.TIMER, "timer");
+    assertThat(deltas.getCount(timer)).isEqualTo(2L);
+    assertThat(deltas.getSum(timer)).isEqualTo(12L);
+    assertThat(deltas.getSumOfSquares(timer)).isEqualTo(90L);
+    assertThat(deltas.getMin(timer)).isEqualTo(3L);
+    assertThat(deltas.getMax(timer)).isEqualTo(9L);
+  }
+
+  @Test
+  public void shouldOnlyReportChangedMetrics() {
+    corePlugin.incrementCounter("unchanged", 1);
+    corePlugin.incrementCounter("changed", 1);
+
+    MetricCursor cursor = corePlugin.createCursor();
+    corePlugin.incrementCounter("changed", 1);
+    corePlugin.incrementCounter("created", 3);
+
+    MetricDeltas deltas = cursor.read();
+    assertThat(names(deltas)).containsOnly("changed", "created");
+    assertThat(deltas.getCount(indexOf(deltas, MetricNameTable.Kind.COUNTER, "created"))).isEqualTo(3L);
+
+    assertThat(cursor.read().size()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldKeepCursorsIndependent() {
+    MetricCursor first = corePlugin.createCursor();
+    MetricCursor second = corePlugin.createCursor();
+
+    corePlugin.addTimerMeasurement("timer", 4);
+    MetricDeltas firstDeltas = first.read();
+
+    corePlugin.addTimerMeasurement("timer", 8);
+    MetricDeltas secondDeltas = second.read();
+    MetricDeltas firstAgain = first.read();
+
+    assertThat(firstDeltas.getCount(0)).isEqualTo(1L);
+    assertThat(firstDeltas.getMax(0)).isEqualTo(4L);
+
+    assertThat(secondDeltas.getCount(0)).isEqualTo(2L);
+    assertThat(secondDeltas.getSum(0)).isEqualTo(12L);
+    assertThat(secondDeltas.getMin(0)).isEqualTo(4L);
+    assertThat(secondDeltas.getMax(0)).isEqualTo(8L);
+
+    assertThat(firstAgain.getCount(0)).isEqualTo(1L);
+    assertThat(firstAgain.getMin(0)).isEqualTo(8L);
+  }
+
+  @Test
+  public void shouldReportValuesAfterInitializationAsDelta() {
+    corePlugin.incrementCounter("counter", 5);
+    MetricCursor cursor = corePlugin.createCursor();
+
+    corePlugin.initializeCounter("counter");
+    corePlugin.incrementCounter("counter", 2);
+
+    MetricDeltas deltas = cursor.read();
+    assertThat(deltas.getCount(0)).isEqualTo(2L);
+  }
+
+  @Test
+  public void shouldReportInitializedTimerWithoutExtremes() {
+    corePlugin.addTimerMeasurement("timer", 5);
+    MetricCursor cursor = corePlugin.createCursor();
+
+    corePlugin.initializeTimerMeasurement("timer");
+
+    MetricDeltas deltas = cursor.read();
+    assertThat(deltas.getCount(0)).isEqualTo(0L);
+    assertThat(deltas.getMin(0)).isEqualTo(0L);
+    assertThat(deltas.getMax(0)).isEqualTo(0L);
+  }
+
+  @Test
+  public void shouldReuseSlotsOfClosedCursors() {
+    List<MetricCursor> cursors = new ArrayList<MetricCursor>();
+    for (int i = 0; i < MetricCursors.MAX_CURSORS; i++) {
+      cursors.add(corePlugin.createCursor());
+    }
+    try {
+      corePlugin.createCursor();
+      throw new AssertionError("expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    corePlugin.addTimerMeasurement("timer", 1);
+    cursors.get(3).close();
+
+    MetricCursor reused = corePlugin.createCursor();
+    corePlugin.addTimerMeasurement("timer", 2);
+
+    MetricDeltas deltas = reused.read();
+    assertThat(deltas.getCount(0)).isEqualTo(1L);
+    assertThat(deltas.getMin(0)).isEqualTo(2L);
+    assertThat(cursors.get(0).read().getCount(0)).isEqualTo(2L);
+  }
+
+  @Test
+  public void shouldReportChangesOfSyncedMetrics() {
+    CorePlugin previous = new CorePlugin(null, null);
+    previous.incrementCounter("synced", 1);
+    previous.addTimerMeasurement("synced.timer", 4);
+    corePlugin.syncFrom(previous);
+
+    MetricCursor cursor = corePlugin.createCursor();
+    corePlugin.incrementCounter("synced", 5);
+    corePlugin.incrementCounter("notsynced", 5);
+    corePlugin.addTimerMeasurement("synced.timer", 3);
+
+    MetricDeltas deltas = cursor.read();
+    assertThat(names(deltas)).containsOnly("synced", "notsynced", "synced.timer");
+    assertThat(deltas.getCount(indexOf(deltas, MetricNameTable.Kind.COUNTER, "synced"))).isEqualTo(5L);
+    assertThat(deltas.getSum(indexOf(deltas, MetricNameTable.Kind.TIMER, "synced.timer"))).isEqualTo(3L);
+    assertThat(corePlugin.getCounter("synced").getCount()).isEqualTo(6L);
+  }
+
+  private int indexOf(MetricDeltas deltas, MetricNameTable.Kind kind, String name) {
+    for (int i = 0; i < deltas.size(); i++) {
+      if ((deltas.getKind(i) == kind) && deltas.getName(i).equals(name)) {
+        return i;
+      }
+    }
+    throw new AssertionError(kind + " " + name + " not reported");
+  }
+
+  private List<String> names(MetricDeltas deltas) {
+    List<String> names = new ArrayList<String>();
+    for (int i = 0; i < deltas.size(); i++) {
+      names.add(deltas.getName(i));
+    }
+    return names;
+  }
+}
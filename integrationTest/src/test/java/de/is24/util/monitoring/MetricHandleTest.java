@@ -0,0 +1,108 @@
+package de.is24.util.monitoring;
+
+import de.is24.util.monitoring.keyhandler.DefaultKeyEscaper;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+public class MetricHandleTest {
+  @Rule
+  public final InApplicationMonitorRule inApplicationMonitorRule = new InApplicationMonitorRule();
+  private InApplicationMonitor monitor;
+  private MonitorPlugin plugin;
+
+  @Before
+  public void setUp() {
+    monitor = inApplicationMonitorRule.getInApplicationMonitor();
+    plugin = mock(MonitorPlugin.class);
+    when(plugin.getUniqueName()).thenReturn("mockPlugin");
+  }
+
+  @Test
+  public void counterHandleShouldIncrementEscapedCounter() {
+    CounterHandle handle = monitor.counter("handle:counter");
+
+    handle.increment();
+    handle.increment(41);
+
+    assertThat(monitor.getCorePlugin().getCounter("handle_counter").getCount()).isEqualTo(42L);
+  }
+
+  @Test
+  public void timerHandleShouldAddMeasurements() {
+    TimerHandle handle = monitor.timer("handle.timer");
+
+    handle.addMeasurement(10);
+    handle.addMeasurement(5, 25);
+    handle.addHighRateMeasurement(30);
+
+    Timer timer = monitor.getCorePlugin().getTimer("handle.timer");
+    assertThat(timer.getCount()).isEqualTo(3L);
+    assertThat(timer.getTimerSum()).isEqualTo(60L);
+  }
+
+  @Test
+  public void handleShouldNotifyPluginsRegisteredAfterCreation() {
+    CounterHandle counterHandle = monitor.counter("handle.lateCounter");
+    TimerHandle timerHandle = monitor.timer("handle.lateTimer");
+    counterHandle.increment();
+
+    monitor.registerPlugin(plugin);
+    counterHandle.increment(2);
+    counterHandle.incrementHighRate();
+    timerHandle.addSingleEventMeasurement(7);
+
+    verify(plugin, times(1)).incrementCounter("handle.lateCounter", 2);
+    verify(plugin, times(1)).incrementHighRateCounter("handle.lateCounter", 1);
+    verify(plugin, times(1)).addSingleEventTimerMeasurement("handle.lateTimer", 7);
+    assertThat(monitor.getCorePlugin().getCounter("handle.lateCounter").getCount()).isEqualTo(4L);
+  }
+
+  @Test
+  public void handleShouldStopNotifyingRemovedPlugins() {
+    monitor.registerPlugin(plugin);
+    CounterHandle handle = monitor.counter("handle.removedPlugin");
+
+    monitor.removeAllPlugins();
+    handle.increment();
+
+    verify(plugin, never()).incrementCounter("handle.removedPlugin", 1);
+    assertThat(monitor.getCorePlugin().getCounter("handle.removedPlugin").getCount()).isEqualTo(1L);
+  }
+
+  @Test
+  public void handleShouldFollowCorePluginSwap() {
+    CounterHandle handle = monitor.counter("handle.swap");
+    handle.increment();
+
+    DefaultKeyEscaper keyEscaper = new DefaultKeyEscaper();
+    CorePlugin newCorePlugin = new CorePlugin(null, keyEscaper);
+    InApplicationMonitor.initInstance(newCorePlugin, keyEscaper);
+    handle.increment();
+
+    assertThat(InApplicationMonitor.getInstance().getCorePlugin()).isSameAs(newCorePlugin);
+    assertThat(newCorePlugin.getCounter("handle.swap").getCount()).isEqualTo(2L);
+  }
+
+  @Test
+  public void handleShouldNotCountIfMonitorIsInactive() {
+    CounterHandle handle = monitor.counter("handle.inactive");
+    handle.increment();
+
+    monitor.deactivate();
+    try {
+      handle.increment();
+    } finally {
+      monitor.activate();
+    }
+
+    assertThat(monitor.getCorePlugin().getCounter("handle.inactive").getCount()).isEqualTo(1L);
+  }
+}
@@ -0,0 +1,115 @@
+package de.is24.util.monitoring;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class MetricSnapshotTest {
+  private CorePlugin corePlugin;
+
+  @Before
+  public void setUp() {
+    corePlugin = new CorePlugin(null, null);
+  }
+
+  @Test
+  public void shouldCopyCountersAndTimers() {
+    corePlugin.incrementCounter("counter", 3);
+    corePlugin.addTimerMeasurement("timer", 2);
+    corePlugin.addTimerMeasurement("timer", 4);
+
+    MetricSnapshot snapshot = corePlugin.snapshot();
+    MetricNameTable names = snapshot.getNames();
+
+    int counterId = names.getId(MetricNameTable.Kind.COUNTER, "counter");
+    assertThat(names.getName(counterId)).isEqualTo("counter");
+    assertThat(names.getKind(counterId)).isEqualTo(MetricNameTable.Kind.COUNTER);
+    assertThat(snapshot.getCount(counterId)).isEqualTo(3L);
+    assertThat(snapshot.getSum(counterId)).isEqualTo(0L);
+
+    int timerId = names.getId(MetricNameTable.Kind.TIMER, "timer");
+    assertThat(snapshot.getCount(timerId)).isEqualTo(2L);
+    assertThat(snapshot.getSum(timerId)).isEqualTo(6L);
+    assertThat(snapshot.getSumOfSquares(timerId)).isEqualTo(20L);
+  }
+
+  @Test
+  public void shouldNotChangeAfterMetricsChange() {
+    corePlugin.incrementCounter("counter", 1);
+    MetricSnapshot snapshot = corePlugin.snapshot();
+
+    corePlugin.incrementCounter("counter", 1);
+    corePlugin.incrementCounter("other", 1);
+
+    int id = snapshot.getNames().getId(MetricNameTable.Kind.COUNTER, "counter");
+    assertThat(snapshot.getCount(id)).isEqualTo(1L);
+    assertThat(snapshot.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldKeepIdsStableAcrossSnapshots() {
+    corePlugin.incrementCounter("first", 1);
+    MetricSnapshot first = corePlugin.snapshot();
+
+    corePlugin.incrementCounter("second", 1);
+    corePlugin.addTimerMeasurement("first", 1);
+    MetricSnapshot second = corePlugin.snapshot();
+
+    assertThat(second.getNames()).isSameAs(first.getNames());
+    assertThat(second.getNames().getId(MetricNameTable.Kind.COUNTER, "first")).isEqualTo(0);
+    assertThat(second.size()).isEqualTo(3);
+    assertThat(second.getNames().getId(MetricNameTable.Kind.TIMER, "first")).isNotEqualTo(0);
+  }
+
+  @Test
+  public void shouldComputeDeltas() {
+    corePlugin.incrementCounter("counter", 5);
+    corePlugin.addTimerMeasurement("timer", 3);
+    MetricSnapshot first = corePlugin.snapshot();
+
+    corePlugin.incrementCounter("counter", 2);
+    corePlugin.addTimerMeasurement("timer", 5);
+    corePlugin.incrementCounter("new", 4);
+
+    MetricSnapshot second = corePlugin.snapshot();
+    MetricSnapshot delta = second.deltaSince(first);
+    MetricNameTable names = delta.getNames();
+
+    assertThat(delta.getCount(names.getId(MetricNameTable.Kind.COUNTER, "counter"))).isEqualTo(2L);
+    int timerId = names.getId(MetricNameTable.Kind.TIMER, "timer");
+    assertThat(delta.getCount(timerId)).isEqualTo(1L);
+    assertThat(delta.getSum(timerId)).isEqualTo(5L);
+    assertThat(delta.getSumOfSquares(timerId)).isEqualTo(25L);
+    assertThat(delta.getCount(names.getId(MetricNameTable.Kind.COUNTER, "new"))).isEqualTo(4L);
+    assertThat(delta.getIntervalMillis()).isEqualTo(second.getTimestamp() - first.getTimestamp());
+  }
+
+  @Test
+  public void shouldTreatInitializedMetricsAsReset() {
+    corePlugin.incrementCounter("counter", 5);
+    MetricSnapshot first = corePlugin.snapshot();
+
+    corePlugin.initializeCounter("counter");
+    corePlugin.incrementCounter("counter", 2);
+
+    MetricSnapshot delta = corePlugin.snapshot().deltaSince(first);
+    assertThat(delta.getCount(delta.getNames().getId(MetricNameTable.Kind.COUNTER, "counter"))).isEqualTo(2L);
+  }
+
+  @Test
+  public void shouldComputeRates() {
+    MetricNameTable names = new MetricNameTable();
+    int id = names.register(MetricNameTable.Kind.COUNTER, "counter");
+    MetricSnapshot first = new MetricSnapshot(names, 1000, 0, new long[] { 10 }, new long[1], new long[1]);
+    MetricSnapshot second = new MetricSnapshot(names, 3000, 0, new long[] { 30 }, new long[1], new long[1]);
+
+    assertThat(second.getCountPerSecond(id)).isEqualTo(0.0);
+    assertThat(second.deltaSince(first).getCountPerSecond(id)).isEqualTo(10.0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectSnapshotsOfOtherPlugins() {
+    corePlugin.snapshot().deltaSince(new CorePlugin(null, null).snapshot());
+  }
+}
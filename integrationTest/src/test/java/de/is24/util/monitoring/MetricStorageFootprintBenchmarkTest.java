@@ -0,0 +1,53 @@
+package de.is24.util.monitoring;
+
+import org.junit.Assume;
+import org.junit.Test;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+/**
+ * Compares the heap used by 10k, 100k and 1M metrics, half counters and half timers, with object and compact
+ * metric storage. Prints footprints and timings, runs only with -Dappmon4j.benchmarks=true.
+ */
+public class MetricStorageFootprintBenchmarkTest {
+  private static final int[] KEYS = { 10000, 100000, 1000000 };
+
+  @Test
+  public void compareFootprintOfObjectAndCompactStorage() {
+    Assume.assumeTrue(Boolean.getBoolean("appmon4j.benchmarks"));
+
+    for (int keys : KEYS) {
+      long objects = measure(CorePlugin.MetricStorage.OBJECTS, keys);
+      long compact = measure(CorePlugin.MetricStorage.COMPACT, keys);
+      System.out.println(keys + " metrics: object storage " + (objects / 1024) + " kB (" + (objects / keys) +
+        " bytes per metric), compact storage " + (compact / 1024) + " kB (" + (compact / keys) +
+        " bytes per metric).");
+    }
+  }
+
+  private long measure(CorePlugin.MetricStorage storage, int keys) {
+    long before = usedHeap();
+    CorePlugin corePlugin = new CorePlugin(null, null, storage);
+    long begin = System.nanoTime();
+    for (int i = 0; i < (keys / 2); i++) {
+      corePlugin.incrementCounter("benchmark.service" + (i % 100) + ".counter." + i, 1);
+      corePlugin.addTimerMeasurement("benchmark.service" + (i % 100) + ".timer." + i, i);
+    }
+
+    long nanos = System.nanoTime() - begin;
+    long used = usedHeap() - before;
+    System.out.println(storage + " storage: created " + keys + " metrics in " + (nanos / 1000000) + " ms.");
+
+    // keeps the plugin reachable until the heap is measured
+    assertThat(corePlugin.getCounter("benchmark.service0.counter.0").getCount()).isEqualTo(1L);
+    return used;
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,77 @@
+package de.is24.util.monitoring;
+
+import org.junit.Assume;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+/**
+ * Creates 100k counters from 32 threads on a new plugin, with an observer taking 10 microseconds per reportable,
+ * like a cheap MBean registration. Prints timings, runs only with -Dappmon4j.benchmarks=true.
+ */
+public class MonitorCreationBenchmarkTest {
+  private static final int THREADS = 32;
+  private static final int KEYS = 100000;
+
+  @Test
+  public void createKeysConcurrently() throws Exception {
+    Assume.assumeTrue(Boolean.getBoolean("appmon4j.benchmarks"));
+
+    CorePlugin corePlugin = new CorePlugin(null, null);
+    final AtomicInteger notified = new AtomicInteger();
+    corePlugin.addReportableObserver(new ReportableObserver() {
+        @Override
+        public void addNewReportable(Reportable reportable) {
+          long until = System.nanoTime() + 10000;
+          while (System.nanoTime() < until) {
+            // simulates the observer's work
+          }
+          notified.incrementAndGet();
+        }
+      });
+
+    int before = notified.get();
+    long nanos = run(corePlugin);
+    long created = System.nanoTime();
+    corePlugin.awaitReportableNotifications();
+
+    long notifiedNanos = System.nanoTime() - created;
+    System.out.println(THREADS + " threads created " + KEYS + " counters in " + (nanos / 1000000) +
+      " ms, observer notified " + (notifiedNanos / 1000000) + " ms later.");
+    assertThat(notified.get() - before).isEqualTo(KEYS);
+  }
+
+  private long run(final CorePlugin corePlugin) throws InterruptedException {
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < THREADS; t++) {
+      final int thread = t;
+      Thread creator = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              start.await();
+            } catch (InterruptedException e) {
+              return;
+            }
+            for (int i = thread; i < KEYS; i += THREADS) {
+              corePlugin.incrementCounter("benchmark.creation." + i, 1);
+            }
+          }
+        });
+      creator.start();
+      threads.add(creator);
+    }
+
+    long begin = System.nanoTime();
+    start.countDown();
+    for (Thread creator : threads) {
+      creator.join();
+    }
+    return System.nanoTime() - begin;
+  }
+}
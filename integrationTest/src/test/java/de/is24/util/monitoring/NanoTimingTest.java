@@ -0,0 +1,122 @@
+package de.is24.util.monitoring;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import java.util.concurrent.TimeUnit;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+
+public class NanoTimingTest {
+  @Rule
+  public final InApplicationMonitorRule inApplicationMonitorRule = new InApplicationMonitorRule();
+  private InApplicationMonitor monitor;
+  private CorePlugin corePlugin;
+
+  @Before
+  public void setUp() {
+    monitor = inApplicationMonitorRule.getInApplicationMonitor();
+    corePlugin = monitor.getCorePlugin();
+    corePlugin.setTimerUnit("nano.timer", TimeUnit.NANOSECONDS);
+    corePlugin.setTimerUnit("slow.*", TimeUnit.NANOSECONDS);
+  }
+
+  @After
+  public void tearDown() {
+    monitor.removeAllPlugins();
+  }
+
+  @Test
+  public void shouldKeepNanosecondsOfStaticStartAndStop() throws Exception {
+    long start = PerfTimer.start();
+    Thread.sleep(2);
+
+    long elapsed = PerfTimer.stop("nano.timer", start);
+
+    Timer timer = corePlugin.getTimer("nano.timer");
+    assertThat(timer.getUnit()).isEqualTo(TimeUnit.NANOSECONDS);
+    assertThat(timer.getCount()).isEqualTo(1L);
+    assertThat(timer.getTimerSum()).isEqualTo(elapsed);
+    assertThat(elapsed).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(2));
+  }
+
+  @Test
+  public void shouldConvertMeasurementsToTheUnitOfTheTimer() {
+    monitor.addTimerMeasurement("nano.timer", 1500, TimeUnit.NANOSECONDS);
+    monitor.addTimerMeasurement("nano.timer", 2, TimeUnit.MICROSECONDS);
+    monitor.addTimerMeasurement("milli.timer", 3);
+    monitor.addTimerMeasurement("milli.timer", 4000000, TimeUnit.NANOSECONDS);
+
+    assertThat(corePlugin.getTimer("nano.timer").getTimerSum()).isEqualTo(3500L);
+    assertThat(corePlugin.getTimer("milli.timer").getUnit()).isEqualTo(TimeUnit.MILLISECONDS);
+    assertThat(corePlugin.getTimer("milli.timer").getTimerSum()).isEqualTo(7L);
+  }
+
+  @Test
+  public void shouldKeepTheDeclaredUnitWhateverMeasurementComesFirst() {
+    monitor.addTimerMeasurement("nano.timer", 2, TimeUnit.MILLISECONDS);
+    monitor.addTimerMeasurement("nano.timer", 1500, TimeUnit.NANOSECONDS);
+    monitor.addTimerMeasurement("undeclared.timer", 1500000, TimeUnit.NANOSECONDS);
+    monitor.addTimerMeasurement("undeclared.timer", 2, TimeUnit.MILLISECONDS);
+
+    assertThat(corePlugin.getTimer("nano.timer").getUnit()).isEqualTo(TimeUnit.NANOSECONDS);
+    assertThat(corePlugin.getTimer("nano.timer").getTimerSum()).isEqualTo(2001500L);
+    assertThat(corePlugin.getTimer("undeclared.timer").getUnit()).isEqualTo(TimeUnit.MILLISECONDS);
+    assertThat(corePlugin.getTimer("undeclared.timer").getTimerSum()).isEqualTo(3L);
+  }
+
+  @Test
+  public void shouldApplyTheLongestMatchingPrefix() {
+    corePlugin.setTimerUnit("slow.micro.*", TimeUnit.MICROSECONDS);
+
+    assertThat(corePlugin.getTimerUnit("slow.timer")).isEqualTo(TimeUnit.NANOSECONDS);
+    assertThat(corePlugin.getTimerUnit("slow.micro.timer")).isEqualTo(TimeUnit.MICROSECONDS);
+    assertThat(corePlugin.getTimerUnit("slower")).isEqualTo(TimeUnit.MILLISECONDS);
+  }
+
+  @Test
+  public void shouldRefuseToChangeTheUnitOfExistingTimers() {
+    monitor.addTimerMeasurement("milli.timer", 3);
+
+    try {
+      corePlugin.setTimerUnit("milli.*", TimeUnit.NANOSECONDS);
+      fail("unit of existing timer changed");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    assertThat(corePlugin.getTimerUnit("milli.other")).isEqualTo(TimeUnit.MILLISECONDS);
+  }
+
+  @Test
+  public void shouldNotOverflowSumOfSquaresOfNanoseconds() {
+    long tenSeconds = TimeUnit.SECONDS.toNanos(10);
+    for (int i = 0; i < 1000; i++) {
+      monitor.addTimerMeasurement("slow.timer", tenSeconds, TimeUnit.NANOSECONDS);
+    }
+    monitor.addTimerMeasurement("slow.timer", tenSeconds + 1000, TimeUnit.NANOSECONDS);
+
+    Timer timer = corePlugin.getTimer("slow.timer");
+    double expected = 1001.0 * tenSeconds * tenSeconds;
+    assertThat(java.lang.Math.abs(timer.getTimerSumOfSquaresAsDouble() - expected) / expected).isLessThan(1e-9);
+    assertThat(timer.getTimerSumOfSquares()).isEqualTo(Long.MAX_VALUE);
+    assertThat(timer.getTimerStdDev()).isGreaterThanOrEqualTo(0.0).isLessThan(1e6);
+  }
+
+  @Test
+  public void shouldPassMillisecondsToPluginsNotAwareOfUnits() {
+    MonitorPlugin plugin = mock(AbstractMonitorPlugin.class);
+    UnitAwareMonitorPlugin unitAwarePlugin = mock(UnitAwareMonitorPlugin.class);
+    monitor.registerPlugin(plugin);
+    monitor.registerPlugin(unitAwarePlugin);
+
+    monitor.addTimerMeasurement("nano.timer", 5000000, TimeUnit.NANOSECONDS);
+
+    verify(plugin, times(1)).addTimerMeasurement("nano.timer", 5);
+    verify(unitAwarePlugin, times(1)).addTimerMeasurement("nano.timer", 5000000, TimeUnit.NANOSECONDS);
+  }
+}
@@ -0,0 +1,154 @@
+package de.is24.util.monitoring;
+
+import org.junit.Before;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class ReportableNotificationTest {
+  private CorePlugin corePlugin;
+
+  @Before
+  public void setUp() {
+    corePlugin = new CorePlugin(null, null);
+  }
+
+  @Test
+  public void shouldNotifyAsynchronouslyInOrderOfCreation() {
+    final List<String> added = new ArrayList<String>();
+    final List<Thread> threads = new ArrayList<Thread>();
+    corePlugin.addReportableObserver(new ReportableObserver() {
+        @Override
+        public void addNewReportable(Reportable reportable) {
+          if (reportable.getName().startsWith("notified.")) {
+            added.add(reportable.getName());
+            threads.add(Thread.currentThread());
+          }
+        }
+      });
+
+    corePlugin.incrementCounter("notified.first", 1);
+    corePlugin.addTimerMeasurement("notified.second", 1);
+    corePlugin.incrementCounter("notified.first", 1);
+    corePlugin.addHistogramValue("notified.third", 1);
+    corePlugin.awaitReportableNotifications();
+
+    assertThat(added).isEqualTo(Arrays.asList("notified.first", "notified.second", "notified.third"));
+    assertThat(threads.get(0)).isNotSameAs(Thread.currentThread());
+  }
+
+  @Test
+  public void shouldPassReportablesCreatedBeforeRegistration() {
+    corePlugin.incrementCounter("before", 1);
+
+    final List<String> added = new ArrayList<String>();
+    corePlugin.addReportableObserver(new ReportableObserver() {
+        @Override
+        public void addNewReportable(Reportable reportable) {
+          added.add(reportable.getName());
+        }
+      });
+
+    assertThat(added).contains("before");
+  }
+
+  @Test
+  public void shouldNotBlockCreationBySlowObserver() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    corePlugin.addReportableObserver(new ReportableObserver() {
+        @Override
+        public void addNewReportable(Reportable reportable) {
+          if (reportable.getName().startsWith("blocked.")) {
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        }
+      });
+
+    long begin = System.nanoTime();
+    for (int i = 0; i < 100; i++) {
+      corePlugin.incrementCounter("blocked." + i, 1);
+    }
+
+    long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+    release.countDown();
+    assertThat(millis).isLessThan(1000L);
+    assertThat(corePlugin.getCounter("blocked.99").getCount()).isEqualTo(1L);
+  }
+
+  @Test
+  public void shouldNotifyEachObserverExactlyOnceWhileCreatingConcurrently() throws Exception {
+    final int threads = 8;
+    final int keysPerThread = 2000;
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Thread> creators = new ArrayList<Thread>();
+    for (int t = 0; t < threads; t++) {
+      final int offset = t * keysPerThread;
+      Thread creator = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              start.await();
+            } catch (InterruptedException e) {
+              return;
+            }
+            for (int i = 0; i < keysPerThread; i++) {
+              // every key is created by two threads
+              corePlugin.incrementCounter("concurrent." + ((offset + i) % (threads * keysPerThread / 2)), 1);
+            }
+          }
+        });
+      creator.start();
+      creators.add(creator);
+    }
+
+    start.countDown();
+
+    List<Map<String, AtomicInteger>> counts = new ArrayList<Map<String, AtomicInteger>>();
+    for (int i = 0; i < 4; i++) {
+      // observers are called by a single notification thread
+      final Map<String, AtomicInteger> notifications = new HashMap<String, AtomicInteger>();
+      counts.add(notifications);
+      corePlugin.addReportableObserver(new ReportableObserver() {
+          @Override
+          public void addNewReportable(Reportable reportable) {
+            if (reportable.getName().startsWith("concurrent.")) {
+              AtomicInteger count = notifications.get(reportable.getName());
+              if (count == null) {
+                count = new AtomicInteger();
+                notifications.put(reportable.getName(), count);
+              }
+              count.incrementAndGet();
+            }
+          }
+        });
+    }
+    for (Thread creator : creators) {
+      creator.join();
+    }
+    corePlugin.awaitReportableNotifications();
+
+    Map<String, Integer> expected = new HashMap<String, Integer>();
+    for (int i = 0; i < (threads * keysPerThread / 2); i++) {
+      expected.put("concurrent." + i, 1);
+    }
+    for (Map<String, AtomicInteger> notifications : counts) {
+      Map<String, Integer> actual = new HashMap<String, Integer>();
+      for (Map.Entry<String, AtomicInteger> entry : notifications.entrySet()) {
+        actual.put(entry.getKey(), entry.getValue().get());
+      }
+      assertThat(actual).isEqualTo(expected);
+    }
+  }
+}
@@ -76,6 +76,7 @@ public final class MonitoringDataSourceTest extends EasyMockSupport {
    *          the expected value
    */
   private void assertMonitor(String monitorName, long expectedValue) {
+    InApplicationMonitor.getInstance().getCorePlugin().awaitReportableNotifications();
     Reportable reportable = this.observer.reportables.get(monitorName);
     long actualCount = 0;
     if (expectedValue > 0) {
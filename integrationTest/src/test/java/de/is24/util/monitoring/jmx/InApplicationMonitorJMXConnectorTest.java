@@ -1,17 +1,30 @@
 package de.is24.util.monitoring.jmx;
 
+import de.is24.util.monitoring.CorePlugin;
 import de.is24.util.monitoring.InApplicationMonitor;
 import de.is24.util.monitoring.JMXTestHelper;
+import de.is24.util.monitoring.MultiValueProvider;
+import de.is24.util.monitoring.ReportVisitor;
+import de.is24.util.monitoring.State;
 import de.is24.util.monitoring.TestingInApplicationMonitor;
 import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import javax.management.Attribute;
+import javax.management.AttributeList;
 import javax.management.InstanceNotFoundException;
+import javax.management.MBeanAttributeInfo;
 import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 import javax.management.ReflectionException;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import static de.is24.util.monitoring.TestHelper.initializeWithJMXNaming;
 import static org.fest.assertions.Assertions.assertThat;
@@ -66,6 +79,118 @@ public class InApplicationMonitorJMXConnectorTest {
     assertThat(((List) result).size()).isEqualTo(1);
   }
 
+  @Test
+  public void exposesCardinalityLimiter() throws Exception {
+    // given a core plugin rejecting all new keys
+    InApplicationMonitor.getInstance();
+    initializeWithJMXNaming().getCardinalityLimiter().setGlobalLimit(0);
+
+    // when incrementing an unknown counter
+    InApplicationMonitor.getInstance().incrementCounter("cardinality.rejected");
+
+    // then
+    ObjectName objectName = new ObjectName("lala:name=CardinalityLimiter");
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    assertThat(mBeanServer.getAttribute(objectName, "RejectedKeyCount")).isEqualTo(1L);
+    assertThat(mBeanServer.getAttribute(objectName, "RecentOffenders")).isEqualTo(new String[] {
+        "cardinality.rejected"
+      });
+  }
+
+  @Test
+  public void cachesMBeanInfoUntilReportablesChange() throws Exception {
+    // given an InApplicationMonitor exposed via JMX
+    InApplicationMonitor.getInstance();
+
+    CorePlugin corePlugin = initializeWithJMXNaming();
+    ObjectName objectName = new ObjectName("lala:name=InApplicationMonitor");
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    MBeanInfo first = mBeanServer.getMBeanInfo(objectName);
+
+    // when reading it again, and after adding a counter
+    MBeanInfo second = mBeanServer.getMBeanInfo(objectName);
+    corePlugin.incrementCounter("cached.info.counter", 1);
+    corePlugin.awaitReportableNotifications();
+
+    MBeanInfo third = mBeanServer.getMBeanInfo(objectName);
+
+    // then
+    assertThat(second).isSameAs(first);
+    assertThat(third).isNotSameAs(first);
+    assertThat(attributeNames(third)).contains("cached.info.counter");
+    assertThat(attributeNames(first)).excludes("cached.info.counter");
+  }
+
+  @Test
+  public void readsRequestedAttributes() throws Exception {
+    // given an InApplicationMonitor with a counter exposed via JMX
+    InApplicationMonitor.getInstance();
+
+    CorePlugin corePlugin = initializeWithJMXNaming();
+    corePlugin.incrementCounter("bulk.counter", 3);
+    corePlugin.awaitReportableNotifications();
+
+    // when reading several attributes at once
+    AttributeList attributes = ManagementFactory.getPlatformMBeanServer()
+      .getAttributes(new ObjectName("lala:name=InApplicationMonitor"),
+        new String[] { "bulk.counter", "unknown", "bulk.counter" });
+
+    // then unknown attributes are left out
+    assertThat(attributes.size()).isEqualTo(2);
+    assertThat(((Attribute) attributes.get(0)).getName()).isEqualTo("bulk.counter");
+    assertThat(((Attribute) attributes.get(1)).getValue()).isEqualTo(3L);
+  }
+
+  @Test
+  public void reusesCompositeTypeOfMultiValueProvider() throws Exception {
+    // given a multi value provider exposed via JMX
+    InApplicationMonitor.getInstance();
+
+    CorePlugin corePlugin = initializeWithJMXNaming();
+    final List<State> states = new ArrayList<State>();
+    states.add(new State("first", 1));
+    corePlugin.registerMultiValueProvider(new MultiValueProvider() {
+        @Override
+        public Collection<State> getValues() {
+          return states;
+        }
+
+        @Override
+        public String getName() {
+          return "multi";
+        }
+
+        @Override
+        public void accept(ReportVisitor visitor) {
+          visitor.reportMultiValue(this);
+        }
+      });
+    corePlugin.awaitReportableNotifications();
+
+    ObjectName objectName = new ObjectName("lala:name=InApplicationMonitor");
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+    // when reading it repeatedly, and after its states changed
+    CompositeData first = (CompositeData) mBeanServer.getAttribute(objectName, "multi");
+    CompositeData second = (CompositeData) mBeanServer.getAttribute(objectName, "multi");
+    states.add(new State("second", 2));
+
+    CompositeData third = (CompositeData) mBeanServer.getAttribute(objectName, "multi");
+
+    // then
+    assertThat(second.getCompositeType()).isSameAs(first.getCompositeType());
+    assertThat(third.getCompositeType()).isNotSameAs(first.getCompositeType());
+    assertThat(third.get("second")).isEqualTo(2L);
+  }
+
+  private static List<String> attributeNames(MBeanInfo mBeanInfo) {
+    List<String> names = new ArrayList<String>();
+    for (MBeanAttributeInfo attributeInfo : mBeanInfo.getAttributes()) {
+      names.add(attributeInfo.getName());
+    }
+    return names;
+  }
+
   public static void callAddStateValuesToGraphite(String domain, String host, int port, String name) {
     try {
       Object[] params = {
@@ -1,5 +1,6 @@
 package de.is24.util.monitoring.measurement;
 
+import de.is24.util.monitoring.Historizable;
 import de.is24.util.monitoring.HistorizableList;
 import de.is24.util.monitoring.InApplicationMonitor;
 import de.is24.util.monitoring.InApplicationMonitorRule;
@@ -7,6 +8,7 @@ import de.is24.util.monitoring.tools.DoNothingReportVisitor;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import java.util.List;
 import static org.fest.assertions.Assertions.assertThat;
 
 
@@ -45,6 +47,121 @@ public class AboveThresholdHistorizableHandlerTest {
     assertThat(extractorVisitor.getExtractedList()).isNull();
   }
 
+  @Test
+  public void formatEventWhenRead() {
+    AboveThresholdHistorizableHandler handler = new AboveThresholdHistorizableHandler("formatted", 1000);
+
+    handler.handle("measurement", 1001);
+
+    Historizable event = extract("formatted").get(0);
+    assertThat(event.getValue()).isEqualTo("measurement of measurement with 1001 above threshold 1000 in thread " +
+      Thread.currentThread().getName());
+  }
+
+  @Test
+  public void rateLimitEventsPerMonitorName() {
+    AboveThresholdHistorizableHandler handler = new AboveThresholdHistorizableHandler("limited", 1000);
+    handler.setEventsPerSecond(1);
+    handler.setBurst(2);
+
+    long now = System.nanoTime();
+    for (int i = 0; i < 4; i++) {
+      handler.handle("first", 2000, 0, now);
+    }
+    handler.handle("second", 2000, 0, now);
+    assertThat(extract("limited").size()).isEqualTo(3);
+
+    // one token refilled after a second
+    handler.handle("first", 2000, 0, now + 1000000000L);
+    handler.handle("first", 2000, 0, now + 1000000000L);
+    assertThat(extract("limited").size()).isEqualTo(4);
+  }
+
+  @Test
+  public void keepSlowestEventsOfWindowAsExemplars() {
+    AboveThresholdHistorizableHandler handler = new AboveThresholdHistorizableHandler("exemplars", 1000);
+    handler.setExemplars(2);
+    handler.setWindowMillis(1000);
+    long start = System.currentTimeMillis();
+
+    handler.handle("timer", 3000, start, 0);
+    handler.handle("timer", 5000, start, 0);
+    handler.handle("timer", 4000, start, 0);
+    handler.handle("timer", 2000, start, 0);
+
+    List<SlowEvent> exemplars = handler.getExemplars();
+    assertThat(exemplars.size()).isEqualTo(2);
+    assertThat(exemplars.get(0).getMeasurement()).isEqualTo(5000L);
+    assertThat(exemplars.get(1).getMeasurement()).isEqualTo(4000L);
+    assertThat(exemplars.get(0).getStackTrace()).isNull();
+
+    // the next window publishes the exemplars, slowest first
+    handler.handle("timer", 1500, start + 1000, 0);
+
+    HistorizableList published = extract("exemplars" + AboveThresholdHistorizableHandler.EXEMPLARS_SUFFIX);
+    assertThat(published.size()).isEqualTo(2);
+    assertThat(published.get(0).getValue()).startsWith("measurement of timer with 5000 ");
+    assertThat(published.get(1).getValue()).startsWith("measurement of timer with 4000 ");
+    assertThat(handler.getExemplars().get(0).getMeasurement()).isEqualTo(1500L);
+  }
+
+  @Test
+  public void publishExemplarsOfPassedWindowWhenRead() {
+    AboveThresholdHistorizableHandler handler = new AboveThresholdHistorizableHandler("idle", 1000);
+    handler.setWindowMillis(1000);
+
+    handler.handle("timer", 3000, System.currentTimeMillis() - 2000, 0);
+
+    // no further slow event, reading the list ends the window
+    HistorizableList published = extract("idle" + AboveThresholdHistorizableHandler.EXEMPLARS_SUFFIX);
+    assertThat(published.size()).isEqualTo(1);
+    assertThat(published.get(0).getValue()).startsWith("measurement of timer with 3000 ");
+    assertThat(handler.getExemplars()).isEmpty();
+  }
+
+  @Test
+  public void closedWindowRejectsEvents() {
+    SlowEventExemplars window = new SlowEventExemplars(0, 2);
+    SlowEvent event = new SlowEvent("closed", "timer", 2000, 1000, 0, "main", null);
+    assertThat(window.offer(event)).isTrue();
+
+    assertThat(window.close()).containsExactly(event);
+    assertThat(window.offer(event)).isFalse();
+    assertThat(window.slowestFirst()).containsExactly(event);
+  }
+
+  @Test
+  public void shareRateLimitBeyondMaxBuckets() {
+    AboveThresholdHistorizableHandler handler = new AboveThresholdHistorizableHandler("bounded", 1000);
+    handler.setEventsPerSecond(1);
+    handler.setBurst(1);
+    handler.setMaxBuckets(2);
+
+    long now = System.nanoTime();
+    handler.handle("first", 2000, 0, now);
+    handler.handle("second", 2000, 0, now);
+    handler.handle("third", 2000, 0, now);
+    handler.handle("fourth", 2000, 0, now);
+    assertThat(handler.getBucketCount()).isEqualTo(2);
+    assertThat(extract("bounded").size()).isEqualTo(3);
+
+    // idle buckets are purged to make room
+    handler.handle("fourth", 2000, 0, now + 2000000000L);
+    assertThat(handler.getBucketCount()).isEqualTo(1);
+    assertThat(extract("bounded").size()).isEqualTo(4);
+  }
+
+  @Test
+  public void captureStackTracesOfExemplars() {
+    AboveThresholdHistorizableHandler handler = new AboveThresholdHistorizableHandler("traced", 1000);
+    handler.setCaptureStackTraces(true);
+
+    handler.handle("timer", 2000);
+
+    StackTraceElement[] stackTrace = handler.getExemplars().get(0).getStackTrace();
+    assertThat(stackTrace[0].getMethodName()).isEqualTo("captureStackTracesOfExemplars");
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void doNotAcceptNullAsThresholdName() throws Exception {
     new AboveThresholdHistorizableHandler(null, 1000);
@@ -61,6 +178,12 @@ public class AboveThresholdHistorizableHandlerTest {
   }
 
 
+  private HistorizableList extract(String name) {
+    HistorizableExtractorVisitor extractorVisitor = new HistorizableExtractorVisitor(name);
+    inApplicationMonitor.getCorePlugin().reportInto(extractorVisitor);
+    return extractorVisitor.getExtractedList();
+  }
+
   private class HistorizableExtractorVisitor extends DoNothingReportVisitor {
     private String nameToFetch;
 
@@ -0,0 +1,210 @@
+package de.is24.util.monitoring.state2graphite;
+
+import de.is24.util.monitoring.InApplicationMonitor;
+import de.is24.util.monitoring.InApplicationMonitorRule;
+import de.is24.util.monitoring.MultiValueProvider;
+import de.is24.util.monitoring.ReportVisitor;
+import de.is24.util.monitoring.SimpleStateValueProvider;
+import de.is24.util.monitoring.State;
+import de.is24.util.monitoring.StateValueProvider;
+import de.is24.util.monitoring.Timer;
+import de.is24.util.monitoring.tools.DoNothingReportVisitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class StateValueCollectorTest {
+  private static final List<MultiValueProvider> NO_MULTI_VALUES = Collections.emptyList();
+
+  @Rule
+  public final InApplicationMonitorRule inApplicationMonitorRule = new InApplicationMonitorRule();
+  private final CountDownLatch release = new CountDownLatch(1);
+  private StateValueCollector target;
+
+  @Before
+  public void setUp() {
+    target = new StateValueCollector(4, 200);
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    target.shutdown();
+  }
+
+  @Test
+  public void shouldCollectLinesInOrderOfProviders() {
+    List<MultiValueProvider> multiValueProviders = new ArrayList<MultiValueProvider>();
+    multiValueProviders.add(new TestMultiValueProvider("multi", new State("multi", "a", 1),
+        new State("multi", "b", 2)));
+
+    String lines = target.collect("prefix", 1000,
+      Arrays.<StateValueProvider>asList(new SimpleStateValueProvider("first", 1),
+        new SimpleStateValueProvider("second", 2)), multiValueProviders);
+
+    assertThat(lines).isEqualTo("prefix.first 1 1000\nprefix.second 2 1000\n" +
+      "prefix.multi.multi.a 1 1000\nprefix.multi.multi.b 2 1000\n");
+  }
+
+  @Test
+  public void shouldReadProvidersConcurrently() {
+    List<StateValueProvider> providers = new ArrayList<StateValueProvider>();
+    for (int i = 0; i < 4; i++) {
+      providers.add(new SleepingStateValueProvider("sleeping" + i, 150));
+    }
+
+    long start = System.currentTimeMillis();
+    String lines = target.collect("prefix", 1000, providers, NO_MULTI_VALUES);
+
+    assertThat(System.currentTimeMillis() - start).isLessThan(400L);
+    assertThat(lines.split("\n")).hasSize(4);
+    assertThat(target.getTimeouts()).isEqualTo(0L);
+  }
+
+  @Test
+  public void shouldLeaveOutProvidersMissingTheDeadline() {
+    List<StateValueProvider> providers = Arrays.<StateValueProvider>asList(new BlockingStateValueProvider("blocked"),
+      new SimpleStateValueProvider("fast", 1));
+
+    long start = System.currentTimeMillis();
+    String lines = target.collect("prefix", 1000, providers, NO_MULTI_VALUES);
+
+    assertThat(System.currentTimeMillis() - start).isLessThan(1000L);
+    assertThat(lines).isEqualTo("prefix.fast 1 1000\n");
+    assertThat(target.getTimeouts()).isEqualTo(1L);
+  }
+
+  @Test
+  public void shouldSkipProvidersThatKeepTimingOut() {
+    List<StateValueProvider> providers = Arrays.<StateValueProvider>asList(
+      new SleepingStateValueProvider("slow", 300));
+
+    for (int i = 0; i < StateValueCollector.MAX_CONSECUTIVE_TIMEOUTS; i++) {
+      target.collect("prefix", 1000, providers, NO_MULTI_VALUES);
+      sleep(200);
+    }
+    assertThat(target.getTimeouts()).isEqualTo((long) StateValueCollector.MAX_CONSECUTIVE_TIMEOUTS);
+
+    long start = System.currentTimeMillis();
+    target.collect("prefix", 1000, providers, NO_MULTI_VALUES);
+    assertThat(System.currentTimeMillis() - start).isLessThan(100L);
+    assertThat(target.getSkipped()).isEqualTo(1L);
+  }
+
+  @Test
+  public void shouldCountFailingProviders() {
+    StateValueProvider failing = new StateValueProvider() {
+      @Override
+      public long getValue() {
+        throw new IllegalStateException("fail");
+      }
+
+      @Override
+      public String getName() {
+        return "failing";
+      }
+    };
+
+    String lines = target.collect("prefix", 1000, Arrays.asList(failing, new SimpleStateValueProvider("ok", 1)),
+      NO_MULTI_VALUES);
+
+    assertThat(lines).isEqualTo("prefix.ok 1 1000\n");
+    assertThat(target.getFailures()).isEqualTo(1L);
+  }
+
+  @Test
+  public void shouldRecordLatencyPerProvider() {
+    target.collect("prefix", 1000, Arrays.<StateValueProvider>asList(new SleepingStateValueProvider("timed", 50)),
+      NO_MULTI_VALUES);
+
+    final List<Timer> timers = new ArrayList<Timer>();
+    InApplicationMonitor.getInstance().getCorePlugin().reportInto(new DoNothingReportVisitor() {
+        @Override
+        public void reportTimer(Timer timer) {
+          if (timer.getName().equals(StateValueCollector.METRICS_PREFIX + "latency.timed")) {
+            timers.add(timer);
+          }
+        }
+      });
+    assertThat(timers).hasSize(1);
+    assertThat(timers.get(0).getCount()).isEqualTo(1L);
+    assertThat(timers.get(0).getTimerSum()).isGreaterThanOrEqualTo(40L);
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static class SleepingStateValueProvider extends SimpleStateValueProvider {
+    private final long sleepMillis;
+
+    SleepingStateValueProvider(String name, long sleepMillis) {
+      super(name, 0);
+      this.sleepMillis = sleepMillis;
+    }
+
+    @Override
+    public long getValue() {
+      long end = System.currentTimeMillis() + sleepMillis;
+
+      // ignores interrupts like a provider stuck in IO would
+      while (System.currentTimeMillis() < end) {
+        sleep(end - System.currentTimeMillis());
+      }
+      return sleepMillis;
+    }
+  }
+
+  private class BlockingStateValueProvider extends SimpleStateValueProvider {
+    BlockingStateValueProvider(String name) {
+      super(name, 0);
+    }
+
+    @Override
+    public long getValue() {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return 0;
+    }
+  }
+
+  private static class TestMultiValueProvider implements MultiValueProvider {
+    private final String name;
+    private final List<State> states;
+
+    TestMultiValueProvider(String name, State... states) {
+      this.name = name;
+      this.states = Arrays.asList(states);
+    }
+
+    @Override
+    public Collection<State> getValues() {
+      return states;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public void accept(ReportVisitor visitor) {
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package de.is24.util.monitoring.statsd;
+
+import de.is24.util.monitoring.tools.StatsdMockServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class StatsdPluginAggregationTest {
+  private static final int THREADS = 8;
+  private static final int ITERATIONS = 50000;
+
+  @Rule
+  public final StatsdMockServer statsdMockServer = new StatsdMockServer();
+  private StatsdPlugin plugin;
+
+  @Before
+  public void setUp() throws Exception {
+    plugin = new StatsdPlugin("localhost", statsdMockServer.getPort(),
+      new StatsdNoneGroupingHostMessageFormatter("app", "host"));
+  }
+
+  @After
+  public void tearDown() {
+    plugin.afterRemovalNotification();
+  }
+
+  @Test
+  public void shouldSendExactCounterSumsFromManyThreads() throws Exception {
+    plugin.enableAggregation(5);
+
+    runConcurrently(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < ITERATIONS; i++) {
+            plugin.incrementCounter("aggregated:counter", 1);
+            plugin.incrementHighRateCounter("aggregated.highRate", 3);
+          }
+        }
+      });
+    plugin.disableAggregation();
+
+    assertThat(awaitSum("app.host.aggregated_counter:", "|c|")).isEqualTo((long) THREADS * ITERATIONS);
+    assertThat(awaitSum("app.host.aggregated.highRate:", "|c|")).isEqualTo(3L * THREADS * ITERATIONS);
+  }
+
+  @Test
+  public void shouldNotLoseIncrementsWhileIdleKeysAreRemoved() throws Exception {
+    // flushes remove the keys all the time, while every thread switches between a few keys
+    plugin.enableAggregation(1);
+
+    runConcurrently(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < ITERATIONS; i++) {
+            plugin.incrementCounter("removed.counter" + (i % 4), 1);
+          }
+        }
+      });
+    plugin.disableAggregation();
+
+    long sum = 0;
+    for (int key = 0; key < 4; key++) {
+      sum += awaitSum("app.host.removed.counter" + key + ":", "|c");
+    }
+    assertThat(sum).isEqualTo((long) THREADS * ITERATIONS);
+  }
+
+  @Test
+  public void shouldSendTimerSamplesWithMatchingSampleRate() throws Exception {
+    plugin.enableAggregation(60000, 64);
+
+    runConcurrently(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < ITERATIONS; i++) {
+            plugin.addHighRateTimerMeasurement("aggregated.timer", 42);
+          }
+        }
+      });
+    plugin.disableAggregation();
+
+    // statsd counts each sample as 1 / sample rate measurements
+    double measurements = 0;
+    int samples = 0;
+    for (String message : awaitMessages("app.host.aggregated.timer:42|ms")) {
+      int rateIndex = message.indexOf("|@");
+      measurements += (rateIndex < 0) ? 1 : (1 / Double.parseDouble(message.substring(rateIndex + 2)));
+      samples++;
+    }
+    assertThat(samples).isLessThanOrEqualTo(64);
+    assertThat(Math.round(measurements)).isEqualTo((long) THREADS * ITERATIONS);
+  }
+
+  private long awaitSum(String prefix, String suffix) throws InterruptedException {
+    long sum = 0;
+    for (String message : awaitMessages(prefix)) {
+      sum += Long.parseLong(message.substring(prefix.length(), message.indexOf(suffix)));
+    }
+    return sum;
+  }
+
+  private List<String> awaitMessages(String prefix) throws InterruptedException {
+    // flushing happens synchronously in disableAggregation, allow the datagrams to arrive
+    long deadline = System.currentTimeMillis() + 2000;
+    List<String> result = new ArrayList<String>();
+    int lastCount = -1;
+    while (System.currentTimeMillis() < deadline) {
+      result.clear();
+      for (String message : statsdMockServer.getReceivedMessages()) {
+        if (message.startsWith(prefix)) {
+          result.add(message);
+        }
+      }
+      if ((result.size() > 0) && (result.size() == lastCount)) {
+        break;
+      }
+      lastCount = result.size();
+      Thread.sleep(100);
+    }
+    return result;
+  }
+
+  private void runConcurrently(final Runnable job) throws InterruptedException {
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(THREADS);
+    for (int i = 0; i < THREADS; i++) {
+      new Thread(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              start.await();
+              job.run();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            } finally {
+              done.countDown();
+            }
+          }
+        }).start();
+    }
+    start.countDown();
+    assertThat(done.await(60, TimeUnit.SECONDS)).isTrue();
+  }
+}
@@ -0,0 +1,80 @@
+package de.is24.util.monitoring.status;
+
+import de.is24.util.monitoring.CorePlugin;
+import de.is24.util.monitoring.InApplicationMonitor;
+import de.is24.util.monitoring.InApplicationMonitorRule;
+import de.is24.util.monitoring.StateValueProvider;
+import de.is24.util.monitoring.tools.DoNothingReportVisitor;
+import org.junit.Rule;
+import org.junit.Test;
+import java.util.HashMap;
+import java.util.Map;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class ServiceStateTest {
+  @Rule
+  public final InApplicationMonitorRule inApplicationMonitorRule = new InApplicationMonitorRule();
+
+  @Test
+  public void doNotSampleBeforeSuccessCounterWasSeen() {
+    ServiceState serviceState = new ServiceState("svc", "svc.ok", "svc.fail");
+
+    serviceState.check(deltas("svc.fail", 5L));
+    assertThat(oneMinuteFailureRate("svc")).isEqualTo(0L);
+
+    Map<String, Long> deltas = deltas("svc.ok", 1L);
+    deltas.put("svc.fail", 1L);
+    serviceState.check(deltas);
+    assertThat(oneMinuteFailureRate("svc")).isEqualTo(50L);
+
+    serviceState.check(deltas("svc.fail", 3L));
+    assertThat(oneMinuteFailureRate("svc")).isEqualTo(100L);
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void checkCountersFoundAsReportables() {
+    ServiceStateManager serviceStateManager = new ServiceStateManager();
+    ServiceState serviceState = new ServiceState("legacy", "legacy.ok", "legacy.fail");
+    serviceStateManager.addServiceState(serviceState);
+    CorePlugin corePlugin = InApplicationMonitor.getInstance().getCorePlugin();
+    try {
+      InApplicationMonitor.getInstance().incrementCounter("legacy.ok");
+      InApplicationMonitor.getInstance().incrementCounter("legacy.fail");
+      corePlugin.addReportableObserver(serviceStateManager);
+      corePlugin.awaitReportableNotifications();
+
+      serviceState.check();
+      InApplicationMonitor.getInstance().incrementCounter("legacy.ok");
+      InApplicationMonitor.getInstance().incrementCounter("legacy.ok");
+      InApplicationMonitor.getInstance().incrementCounter("legacy.ok");
+      InApplicationMonitor.getInstance().incrementCounter("legacy.fail");
+      serviceState.check();
+
+      assertThat(oneMinuteFailureRate("legacy")).isEqualTo(25L);
+    } finally {
+      corePlugin.removeReportableObserver(serviceStateManager);
+      serviceStateManager.shutdown();
+    }
+  }
+
+  private static Map<String, Long> deltas(String name, Long delta) {
+    Map<String, Long> deltas = new HashMap<String, Long>();
+    deltas.put(name, delta);
+    return deltas;
+  }
+
+  private static long oneMinuteFailureRate(final String name) {
+    final long[] value = { -1 };
+    InApplicationMonitor.getInstance().getCorePlugin().reportInto(new DoNothingReportVisitor() {
+        @Override
+        public void reportStateValue(StateValueProvider stateValueProvider) {
+          if (stateValueProvider.getName().equals(name + ".oneMinuteFailureRate")) {
+            value[0] = stateValueProvider.getValue();
+          }
+        }
+      });
+    return value[0];
+  }
+}
@@ -0,0 +1,61 @@
+package de.is24.util.monitoring.prometheus;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+
+/**
+ * Compresses into a reused byte array in gzip format. Unlike a {@link java.util.zip.GZIPOutputStream} per response
+ * the deflater and its native memory are reused as well. Instances are not thread safe.
+ */
+final class GzipBuffer {
+  private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+  private static final int TRAILER_LENGTH = 8;
+
+  private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+  private final CRC32 crc = new CRC32();
+  private byte[] buffer = new byte[16 * 1024];
+  private int length;
+
+  /**
+   * Replaces the content of the buffer by the compressed input.
+   */
+  void compress(byte[] input, int inputLength) {
+    System.arraycopy(HEADER, 0, buffer, 0, HEADER.length);
+    length = HEADER.length;
+
+    deflater.reset();
+    deflater.setInput(input, 0, inputLength);
+    deflater.finish();
+    while (!deflater.finished()) {
+      if (length == buffer.length) {
+        buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+      }
+      length += deflater.deflate(buffer, length, buffer.length - length);
+    }
+
+    crc.reset();
+    crc.update(input, 0, inputLength);
+    if ((length + TRAILER_LENGTH) > buffer.length) {
+      buffer = Arrays.copyOf(buffer, length + TRAILER_LENGTH);
+    }
+    writeInt((int) crc.getValue());
+    writeInt(inputLength);
+  }
+
+  byte[] getBuffer() {
+    return buffer;
+  }
+
+  int getLength() {
+    return length;
+  }
+
+  private void writeInt(int value) {
+    buffer[length++] = (byte) value;
+    buffer[length++] = (byte) (value >>> 8);
+    buffer[length++] = (byte) (value >>> 16);
+    buffer[length++] = (byte) (value >>> 24);
+  }
+}
@@ -0,0 +1,267 @@
+package de.is24.util.monitoring.prometheus;
+
+import de.is24.util.monitoring.CorePlugin;
+import de.is24.util.monitoring.Counter;
+import de.is24.util.monitoring.Histogram;
+import de.is24.util.monitoring.HistorizableList;
+import de.is24.util.monitoring.MultiValueProvider;
+import de.is24.util.monitoring.ReportVisitor;
+import de.is24.util.monitoring.State;
+import de.is24.util.monitoring.StateValueProvider;
+import de.is24.util.monitoring.Timer;
+import de.is24.util.monitoring.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Renders the counters, timers, state values and multi values of a {@link CorePlugin} in the Prometheus text
+ * exposition format (version 0.0.4).
+ *
+ * Counters become counters named {@code <name>_total}, timers become summaries without quantiles named
+ * {@code <name>_milliseconds}, or after their unit if they do not keep milliseconds, e.g. {@code <name>_nanoseconds},
+ * state values and the states of multi values become gauges. Characters not allowed in Prometheus metric names are
+ * replaced by underscores.
+ *
+ * As different appmon4j names may end up with the same Prometheus name, like {@code a.b} and {@code a_b}, or a
+ * counter {@code x} and a state value {@code x_total}, the names written are tracked per scrape. Prometheus rejects
+ * a scrape containing a metric twice, so later metrics with an already written name are skipped, which is logged
+ * once per name.
+ *
+ * The output is written into a byte array reused for every scrape. The encoded TYPE line and sample name of each
+ * metric are cached, so a scrape only appends cached bytes and the digits of the values. Instances are not thread
+ * safe.
+ */
+final class PrometheusEncoder implements ReportVisitor {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PrometheusEncoder.class);
+  static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final int INITIAL_CAPACITY = 64 * 1024;
+  private static final int MIN_CACHE_SIZE = 1024;
+  private static final byte[] LONG_MIN_VALUE = String.valueOf(Long.MIN_VALUE).getBytes(UTF_8);
+
+  private final Map<String, Family> counterPrefixes = new HashMap<String, Family>();
+  private final Map<String, Family> timerPrefixes = new HashMap<String, Family>();
+  private final Map<String, Family> gaugePrefixes = new HashMap<String, Family>();
+  private final Set<String> written = new HashSet<String>();
+  private final Set<String> reportedDuplicates = new HashSet<String>();
+  private byte[] buffer = new byte[INITIAL_CAPACITY];
+  private int length;
+  private int series;
+
+  /**
+   * Replaces the content of the buffer by the current values of the plugin.
+   */
+  void encode(CorePlugin corePlugin) {
+    length = 0;
+    series = 0;
+    written.clear();
+    corePlugin.reportInto(this);
+    trimCaches();
+  }
+
+  byte[] getBuffer() {
+    return buffer;
+  }
+
+  int getLength() {
+    return length;
+  }
+
+  @Override
+  public void reportCounter(Counter counter) {
+    Family family = counterPrefixes.get(counter.getName());
+    if (family == null) {
+      String name = sanitize(counter.getName()) + "_total";
+      family = new Family(new String[] { name }, ("# TYPE " + name + " counter\n" + name + " ").getBytes(UTF_8));
+      counterPrefixes.put(counter.getName(), family);
+    }
+    if (!claim(counter.getName(), family)) {
+      return;
+    }
+    append(family.prefixes[0]);
+    appendLong(counter.getCount());
+    appendNewline();
+    series++;
+  }
+
+  @Override
+  public void reportTimer(Timer timer) {
+    Family family = timerPrefixes.get(timer.getName());
+    if (family == null) {
+      String name = sanitize(timer.getName()) + "_" + timer.getUnit().name().toLowerCase(Locale.ENGLISH);
+      family = new Family(new String[] { name, name + "_count", name + "_sum" },
+        ("# TYPE " + name + " summary\n" + name + "_count ").getBytes(UTF_8),
+        (name + "_sum ").getBytes(UTF_8));
+      timerPrefixes.put(timer.getName(), family);
+    }
+    if (!claim(timer.getName(), family)) {
+      return;
+    }
+    append(family.prefixes[0]);
+    appendLong(timer.getCount());
+    appendNewline();
+    append(family.prefixes[1]);
+    appendLong(timer.getTimerSum());
+    appendNewline();
+    series += 2;
+  }
+
+  @Override
+  public void reportStateValue(StateValueProvider stateValueProvider) {
+    appendGauge(stateValueProvider.getName(), stateValueProvider.getValue());
+  }
+
+  @Override
+  public void reportMultiValue(MultiValueProvider multiValueProvider) {
+    for (State state : multiValueProvider.getValues()) {
+      appendGauge(state.name, state.value);
+    }
+  }
+
+  @Override
+  public void reportHistogram(Histogram histogram) {
+  }
+
+  @Override
+  public void reportHistorizableList(HistorizableList historizableList) {
+  }
+
+  @Override
+  public void reportVersion(Version version) {
+  }
+
+  private void appendGauge(String key, long value) {
+    Family family = gaugePrefixes.get(key);
+    if (family == null) {
+      String name = sanitize(key);
+      family = new Family(new String[] { name }, ("# TYPE " + name + " gauge\n" + name + " ").getBytes(UTF_8));
+      gaugePrefixes.put(key, family);
+    }
+    if (!claim(key, family)) {
+      return;
+    }
+    append(family.prefixes[0]);
+    appendLong(value);
+    appendNewline();
+    series++;
+  }
+
+  /**
+   * @return true if none of the names of the family was written in this scrape yet, the names are then taken
+   */
+  private boolean claim(String key, Family family) {
+    for (String name : family.names) {
+      if (written.contains(name)) {
+        if (reportedDuplicates.add(key)) {
+          LOGGER.warn("skipping {}, its Prometheus name {} is already taken by another metric", key, name);
+        }
+        return false;
+      }
+    }
+    for (String name : family.names) {
+      written.add(name);
+    }
+    return true;
+  }
+
+  /**
+   * Drops the cached prefixes once they are clearly outnumbering the metrics, e.g. after the plugin was reset or
+   * multi values changed their state names.
+   */
+  private void trimCaches() {
+    int cached = counterPrefixes.size() + (2 * timerPrefixes.size()) + gaugePrefixes.size();
+    if (cached > java.lang.Math.max(MIN_CACHE_SIZE, 2 * series)) {
+      counterPrefixes.clear();
+      timerPrefixes.clear();
+      gaugePrefixes.clear();
+    }
+    if (reportedDuplicates.size() > MIN_CACHE_SIZE) {
+      reportedDuplicates.clear();
+    }
+  }
+
+  static String sanitize(String name) {
+    StringBuilder result = new StringBuilder(name.length() + 1);
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      boolean letter = ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')) || (c == '_') || (c == ':');
+      boolean digit = (c >= '0') && (c <= '9');
+      if ((i == 0) && digit) {
+        result.append('_');
+      }
+      result.append((letter || digit) ? c : '_');
+    }
+    return result.toString();
+  }
+
+  private void append(byte[] bytes) {
+    ensureCapacity(bytes.length);
+    System.arraycopy(bytes, 0, buffer, length, bytes.length);
+    length += bytes.length;
+  }
+
+  private void appendNewline() {
+    ensureCapacity(1);
+    buffer[length++] = '\n';
+  }
+
+  void appendLong(long value) {
+    if (value == Long.MIN_VALUE) {
+      append(LONG_MIN_VALUE);
+      return;
+    }
+
+    // at most 19 digits and the sign
+    ensureCapacity(20);
+
+    long remaining = value;
+    if (remaining < 0) {
+      buffer[length++] = '-';
+      remaining = -remaining;
+    }
+
+    int end = length + digits(remaining);
+    int position = end;
+    do {
+      buffer[--position] = (byte) ('0' + (remaining % 10));
+      remaining /= 10;
+    } while (remaining > 0);
+    length = end;
+  }
+
+  private static int digits(long value) {
+    int result = 1;
+    long remaining = value;
+    while (remaining >= 10) {
+      remaining /= 10;
+      result++;
+    }
+    return result;
+  }
+
+  private void ensureCapacity(int additional) {
+    if ((length + additional) > buffer.length) {
+      buffer = Arrays.copyOf(buffer, java.lang.Math.max(2 * buffer.length, length + additional));
+    }
+  }
+
+  /**
+   * The Prometheus names of the samples of a metric and the encoded text in front of their values.
+   */
+  private static final class Family {
+    private final String[] names;
+    private final byte[][] prefixes;
+
+    private Family(String[] names, byte[]... prefixes) {
+      this.names = names;
+      this.prefixes = prefixes;
+    }
+  }
+}
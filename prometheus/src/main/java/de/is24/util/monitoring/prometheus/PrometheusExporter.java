@@ -0,0 +1,155 @@
+package de.is24.util.monitoring.prometheus;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import de.is24.util.monitoring.CorePlugin;
+import de.is24.util.monitoring.InApplicationMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * Serves the metrics of a {@link CorePlugin} for Prometheus on {@code http://<host>:<port>/metrics}, using the
+ * http server of the JDK. Responses are gzip compressed if the client accepts it.
+ *
+ * Scrapes are answered one after the other by a single daemon thread, which lets all of them share the same
+ * buffers, see {@link PrometheusEncoder}.
+ *
+ * In a spring configuration use it like this:
+ * <pre>
+ *   &lt;bean class="de.is24.util.monitoring.prometheus.PrometheusExporter" init-method="start" destroy-method="stop"&gt;
+ *     &lt;constructor-arg value="${prometheus.port}"/&gt;
+ *   &lt;/bean&gt;
+ * </pre>
+ */
+public class PrometheusExporter {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PrometheusExporter.class);
+  public static final String PATH = "/metrics";
+  static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private final CorePlugin corePlugin;
+  private final InetSocketAddress address;
+  private final PrometheusEncoder encoder = new PrometheusEncoder();
+  private final GzipBuffer gzipBuffer = new GzipBuffer();
+  private HttpServer server;
+  private ExecutorService executor;
+
+  /**
+   * exports the metrics of the {@link CorePlugin} of the {@link InApplicationMonitor} on all interfaces
+   */
+  public PrometheusExporter(int port) {
+    this(InApplicationMonitor.getInstance().getCorePlugin(), new InetSocketAddress(port));
+  }
+
+  /**
+   * @param corePlugin the plugin to export the metrics of
+   * @param address the address to listen on, a port of 0 selects a free port
+   */
+  public PrometheusExporter(CorePlugin corePlugin, InetSocketAddress address) {
+    this.corePlugin = corePlugin;
+    this.address = address;
+  }
+
+  public synchronized void start() throws IOException {
+    if (server != null) {
+      return;
+    }
+
+    executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "appmon4j-prometheus-exporter");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    server = HttpServer.create(address, 0);
+    server.createContext(PATH, new ScrapeHandler());
+    server.setExecutor(executor);
+    server.start();
+    LOGGER.info("exporting metrics for prometheus on {}", server.getAddress());
+  }
+
+  public synchronized void stop() {
+    if (server == null) {
+      return;
+    }
+
+    server.stop(0);
+    executor.shutdown();
+    server = null;
+    executor = null;
+  }
+
+  /**
+   * @return the port the exporter is listening on, -1 if it is not started
+   */
+  public synchronized int getPort() {
+    return (server == null) ? -1 : server.getAddress().getPort();
+  }
+
+  private static boolean acceptsGzip(HttpExchange exchange) {
+    List<String> encodings = exchange.getRequestHeaders().get("Accept-Encoding");
+    if (encodings != null) {
+      for (String encoding : encodings) {
+        if (encoding.contains("gzip")) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private class ScrapeHandler implements HttpHandler {
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      try {
+        String method = exchange.getRequestMethod();
+        boolean head = "HEAD".equals(method);
+        if (!head && !"GET".equals(method)) {
+          exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+          exchange.sendResponseHeaders(405, -1);
+          return;
+        }
+
+        // a restarted exporter may briefly overlap with the thread of its previous server
+        synchronized (encoder) {
+          encoder.encode(corePlugin);
+
+          byte[] body = encoder.getBuffer();
+          int length = encoder.getLength();
+          exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+          if (acceptsGzip(exchange)) {
+            gzipBuffer.compress(body, length);
+            body = gzipBuffer.getBuffer();
+            length = gzipBuffer.getLength();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+          }
+
+          if (head) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+          }
+          exchange.sendResponseHeaders(200, length);
+
+          OutputStream out = exchange.getResponseBody();
+          out.write(body, 0, length);
+          out.close();
+        }
+      } catch (RuntimeException e) {
+        LOGGER.warn("could not render metrics", e);
+        exchange.sendResponseHeaders(500, -1);
+      } finally {
+        exchange.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package de.is24.util.monitoring.prometheus;
+
+import org.junit.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class GzipBufferTest {
+  @Test
+  public void shouldBeReadableByGzipInputStreamWhenReused() throws IOException {
+    GzipBuffer gzipBuffer = new GzipBuffer();
+    Random random = new Random(42);
+    for (int size : new int[] { 0, 100, 200000, 10 }) {
+      byte[] input = new byte[size + 7];
+      random.nextBytes(input);
+
+      gzipBuffer.compress(input, size);
+
+      byte[] output = gunzip(Arrays.copyOf(gzipBuffer.getBuffer(), gzipBuffer.getLength()));
+      assertThat(output).isEqualTo(Arrays.copyOf(input, size));
+    }
+  }
+
+  private byte[] gunzip(byte[] compressed) throws IOException {
+    GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] chunk = new byte[4096];
+    int read;
+    while ((read = in.read(chunk)) > 0) {
+      out.write(chunk, 0, read);
+    }
+    in.close();
+    return out.toByteArray();
+  }
+}
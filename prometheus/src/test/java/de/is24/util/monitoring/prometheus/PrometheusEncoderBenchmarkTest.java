@@ -0,0 +1,70 @@
+package de.is24.util.monitoring.prometheus;
+
+import de.is24.util.monitoring.CorePlugin;
+import de.is24.util.monitoring.SimpleStateValueProvider;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+/**
+ * Measures rendering 50k series with a warmed up encoder, once plain and once gzip compressed. Prints timings, runs
+ * only with -Dappmon4j.benchmarks=true.
+ */
+public class PrometheusEncoderBenchmarkTest {
+  private static final int COUNTERS = 20000;
+  private static final int TIMERS = 10000;
+  private static final int STATE_VALUES = 10000;
+  private static final int SERIES = COUNTERS + (2 * TIMERS) + STATE_VALUES;
+  private static final int SCRAPES = 50;
+
+  @Test
+  public void measureScrapeOf50kSeries() {
+    Assume.assumeTrue(Boolean.getBoolean("appmon4j.benchmarks"));
+
+    CorePlugin corePlugin = new CorePlugin(null, null);
+    for (int i = 0; i < COUNTERS; i++) {
+      corePlugin.incrementCounter("benchmark.counter." + i, i);
+    }
+    for (int i = 0; i < TIMERS; i++) {
+      corePlugin.addTimerMeasurement("benchmark.timer." + i, i);
+    }
+    for (int i = 0; i < STATE_VALUES; i++) {
+      corePlugin.registerStateValue(new SimpleStateValueProvider("benchmark.state." + i, i));
+    }
+
+    PrometheusEncoder encoder = new PrometheusEncoder();
+    GzipBuffer gzipBuffer = new GzipBuffer();
+    for (int i = 0; i < SCRAPES; i++) {
+      encoder.encode(corePlugin);
+      gzipBuffer.compress(encoder.getBuffer(), encoder.getLength());
+    }
+
+    int series = 0;
+    for (String line : new String(encoder.getBuffer(), 0, encoder.getLength(), PrometheusEncoder.UTF_8).split("\n")) {
+      if (line.startsWith("benchmark_")) {
+        series++;
+      }
+    }
+    assertThat(series).isEqualTo(SERIES);
+
+    long begin = System.nanoTime();
+    for (int i = 0; i < SCRAPES; i++) {
+      encoder.encode(corePlugin);
+    }
+
+    long plainNanos = System.nanoTime() - begin;
+
+    begin = System.nanoTime();
+    for (int i = 0; i < SCRAPES; i++) {
+      encoder.encode(corePlugin);
+      gzipBuffer.compress(encoder.getBuffer(), encoder.getLength());
+    }
+
+    long gzipNanos = System.nanoTime() - begin;
+
+    System.out.println("Render " + SERIES + " series (" + encoder.getLength() + " bytes): " +
+      (plainNanos / SCRAPES / 1000) + " us per scrape, gzip compressed to " + gzipBuffer.getLength() + " bytes " +
+      (gzipNanos / SCRAPES / 1000) + " us per scrape.");
+  }
+}
@@ -0,0 +1,130 @@
+package de.is24.util.monitoring.prometheus;
+
+import de.is24.util.monitoring.CorePlugin;
+import de.is24.util.monitoring.MultiValueProvider;
+import de.is24.util.monitoring.SimpleStateValueProvider;
+import de.is24.util.monitoring.State;
+import org.junit.Before;
+import org.junit.Test;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+public class PrometheusEncoderTest {
+  private CorePlugin corePlugin;
+  private PrometheusEncoder encoder;
+
+  @Before
+  public void setUp() {
+    corePlugin = new CorePlugin(null, null);
+    encoder = new PrometheusEncoder();
+  }
+
+  @Test
+  public void shouldRenderCounters() {
+    corePlugin.incrementCounter("lala.ok", 3);
+
+    assertThat(encode()).contains("# TYPE lala_ok_total counter\nlala_ok_total 3\n");
+  }
+
+  @Test
+  public void shouldRenderTimersAsSummaries() {
+    corePlugin.addTimerMeasurement("request.time", 5);
+    corePlugin.addTimerMeasurement("request.time", 7);
+
+    assertThat(encode()).contains("# TYPE request_time_milliseconds summary\n" +
+      "request_time_milliseconds_count 2\n" +
+      "request_time_milliseconds_sum 12\n");
+  }
+
+  @Test
+  public void shouldNameTimersAfterTheirUnit() {
+    corePlugin.setTimerUnit("cache.get", TimeUnit.NANOSECONDS);
+    corePlugin.addTimerMeasurement("cache.get", 1500, TimeUnit.NANOSECONDS);
+
+    assertThat(encode()).contains("# TYPE cache_get_nanoseconds summary\n" +
+      "cache_get_nanoseconds_count 1\n" +
+      "cache_get_nanoseconds_sum 1500\n");
+  }
+
+  @Test
+  public void shouldRenderStateValuesAndMultiValuesAsGauges() {
+    corePlugin.registerStateValue(new SimpleStateValueProvider("queue.size", -42));
+    corePlugin.registerMultiValueProvider(new MultiValueProvider() {
+        @Override
+        public Collection<State> getValues() {
+          return Arrays.asList(new State("pool", "active", 4), new State("pool", "idle", Long.MIN_VALUE));
+        }
+
+        @Override
+        public String getName() {
+          return "pool";
+        }
+
+        @Override
+        public void accept(de.is24.util.monitoring.ReportVisitor visitor) {
+          visitor.reportMultiValue(this);
+        }
+      });
+
+    String text = encode();
+    assertThat(text).contains("# TYPE queue_size gauge\nqueue_size -42\n");
+    assertThat(text).contains("# TYPE pool_active gauge\npool_active 4\n" +
+      "# TYPE pool_idle gauge\npool_idle -9223372036854775808\n");
+  }
+
+  @Test
+  public void shouldReflectChangedValuesWhenReused() {
+    corePlugin.incrementCounter("counter", 9);
+    encode();
+
+    corePlugin.incrementCounter("counter", 1);
+    for (int i = 0; i < 5000; i++) {
+      corePlugin.incrementCounter("counter." + i, i);
+    }
+
+    String text = encode();
+    assertThat(text).contains("\ncounter_total 10\n");
+    assertThat(text).contains("\ncounter_4999_total 4999\n");
+    assertThat(text.length()).isEqualTo(encoder.getLength());
+  }
+
+  @Test
+  public void shouldWriteEachNameOnlyOnce() {
+    corePlugin.incrementCounter("a.b", 1);
+    corePlugin.incrementCounter("a_b", 2);
+    corePlugin.incrementCounter("x", 3);
+    corePlugin.registerStateValue(new SimpleStateValueProvider("x_total", 4));
+    corePlugin.addTimerMeasurement("t", 5);
+    corePlugin.registerStateValue(new SimpleStateValueProvider("t.milliseconds.count", 6));
+
+    String text = encode();
+    assertThat(occurrences(text, "# TYPE a_b_total counter\n")).isEqualTo(1);
+    assertThat(occurrences(text, "\na_b_total ")).isEqualTo(1);
+    assertThat(occurrences(text, "# TYPE x_total ")).isEqualTo(1);
+    assertThat(text).contains("# TYPE x_total counter\nx_total 3\n");
+    assertThat(occurrences(text, "t_milliseconds_count ")).isEqualTo(1);
+    assertThat(occurrences(encode(), "# TYPE a_b_total counter\n")).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldSanitizeNames() {
+    assertThat(PrometheusEncoder.sanitize("de.is24.foo-bar:baz")).isEqualTo("de_is24_foo_bar:baz");
+    assertThat(PrometheusEncoder.sanitize("1min.rate")).isEqualTo("_1min_rate");
+  }
+
+  private static int occurrences(String text, String part) {
+    int result = 0;
+    for (int index = text.indexOf(part); index >= 0; index = text.indexOf(part, index + 1)) {
+      result++;
+    }
+    return result;
+  }
+
+  private String encode() {
+    encoder.encode(corePlugin);
+    return new String(encoder.getBuffer(), 0, encoder.getLength(), PrometheusEncoder.UTF_8);
+  }
+}
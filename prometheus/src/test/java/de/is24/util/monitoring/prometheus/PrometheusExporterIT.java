@@ -0,0 +1,103 @@
+package de.is24.util.monitoring.prometheus;
+
+import de.is24.util.monitoring.CorePlugin;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.fest.assertions.Assertions.assertThat;
+
+
+/**
+ * Scrapes a running exporter with curl, skipped if curl is not installed.
+ */
+public class PrometheusExporterIT {
+  private CorePlugin corePlugin;
+  private PrometheusExporter exporter;
+
+  @Before
+  public void setUp() throws Exception {
+    Assume.assumeTrue(curlAvailable());
+    corePlugin = new CorePlugin(null, null);
+    exporter = new PrometheusExporter(corePlugin, new InetSocketAddress("localhost", 0));
+    exporter.start();
+  }
+
+  @After
+  public void tearDown() {
+    if (exporter != null) {
+      exporter.stop();
+    }
+  }
+
+  @Test
+  public void shouldServeMetrics() throws Exception {
+    corePlugin.incrementCounter("lala.ok", 2);
+    corePlugin.addTimerMeasurement("lala.time", 4);
+
+    String response = curl("-s", "-i", url());
+
+    assertThat(response).startsWith("HTTP/1.1 200");
+    assertThat(response).contains("Content-type: text/plain; version=0.0.4; charset=utf-8");
+    assertThat(response).contains("\nlala_ok_total 2\n");
+    assertThat(response).contains("\nlala_time_milliseconds_count 1\nlala_time_milliseconds_sum 4\n");
+  }
+
+  @Test
+  public void shouldServeGzipCompressedMetricsWhenAccepted() throws Exception {
+    corePlugin.incrementCounter("lala.ok", 2);
+
+    String headers = curl("-s", "-o", "/dev/null", "-D", "-", "-H", "Accept-Encoding: gzip", url());
+    String body = curl("-s", "--compressed", url());
+
+    assertThat(headers).contains("Content-encoding: gzip");
+    assertThat(body).contains("# TYPE lala_ok_total counter\nlala_ok_total 2\n");
+  }
+
+  @Test
+  public void shouldRejectOtherMethods() throws Exception {
+    assertThat(curl("-s", "-o", "/dev/null", "-w", "%{http_code}", "-X", "POST", url())).isEqualTo("405");
+  }
+
+  private String url() {
+    return "http://localhost:" + exporter.getPort() + PrometheusExporter.PATH;
+  }
+
+  private static boolean curlAvailable() {
+    try {
+      curl("--version");
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static String curl(String... arguments) throws IOException {
+    List<String> command = new ArrayList<String>();
+    command.add("curl");
+    command.addAll(Arrays.asList(arguments));
+
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    InputStream in = process.getInputStream();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] chunk = new byte[4096];
+    int read;
+    while ((read = in.read(chunk)) > 0) {
+      out.write(chunk, 0, read);
+    }
+    in.close();
+    try {
+      process.waitFor();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return out.toString("UTF-8").replace("\r\n", "\n");
+  }
+}
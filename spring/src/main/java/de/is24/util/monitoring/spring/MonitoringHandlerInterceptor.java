@@ -8,10 +8,14 @@ import org.springframework.web.servlet.HandlerInterceptor;
 import org.springframework.web.servlet.ModelAndView;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 
-/** {@link org.springframework.web.servlet.HandlerInterceptor} to monitor duration of request processing **/
+/**
+ * {@link org.springframework.web.servlet.HandlerInterceptor} to monitor duration of request processing, in
+ * milliseconds or, with {@link #setNanoTiming(boolean) nano timing}, in nanoseconds of {@link System#nanoTime()}.
+ **/
 public class MonitoringHandlerInterceptor implements HandlerInterceptor {
   private static final Logger LOG = LoggerFactory.getLogger(MonitoringHandlerInterceptor.class);
   private static final String PREFIX = "MonitoringHandlerInterceptor.";
@@ -25,6 +29,16 @@ public class MonitoringHandlerInterceptor implements HandlerInterceptor {
   private static final String DUPLICATE_HANDLER = ".duplicateHandler";
   private InApplicationMonitor monitor = InApplicationMonitor.getInstance();
   private static final Pattern CGLIB_PATTERN = Pattern.compile("[$]*EnhancerByCGLIB[0-9a-z$]*");
+  private volatile TimeUnit unit = TimeUnit.MILLISECONDS;
+
+  /**
+   * @param nanoTiming true to measure nanoseconds. The timers keep them if declared by
+   *                   {@link de.is24.util.monitoring.CorePlugin#setTimerUnit(String, TimeUnit)}, e.g. for
+   *                   {@code MonitoringHandlerInterceptor.*}, otherwise they are converted to milliseconds
+   */
+  public void setNanoTiming(boolean nanoTiming) {
+    unit = nanoTiming ? TimeUnit.NANOSECONDS : TimeUnit.MILLISECONDS;
+  }
 
   @Override
   public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
@@ -34,18 +48,17 @@ public class MonitoringHandlerInterceptor implements HandlerInterceptor {
         " Handler Info: " + prefix);
       monitor.incrementCounter(prefix + DUPLICATE_HANDLER);
     }
-    request.setAttribute(START_TIME, System.currentTimeMillis());
+    request.setAttribute(START_TIME, currentTime());
     return true;
   }
 
   @Override
   public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
                          ModelAndView modelAndView) throws Exception {
-    long currentTime = System.currentTimeMillis();
+    long currentTime = currentTime();
     long startTime = (Long) request.getAttribute(START_TIME);
 
-    monitor.addTimerMeasurement(getPrefix(handler) + HANDLING,
-      startTime, currentTime);
+    addTimerMeasurement(getPrefix(handler) + HANDLING, startTime, currentTime);
     request.setAttribute(POST_HANDLE_TIME, currentTime);
   }
 
@@ -56,7 +69,7 @@ public class MonitoringHandlerInterceptor implements HandlerInterceptor {
   @Override
   public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex)
                        throws Exception {
-    long currentTime = System.currentTimeMillis();
+    long currentTime = currentTime();
     String measurementPrefix = getPrefix(handler);
 
     Object startTimeAttribute = getAndRemoveAttribute(request, START_TIME);
@@ -70,17 +83,29 @@ public class MonitoringHandlerInterceptor implements HandlerInterceptor {
 
     long startTime = (Long) startTimeAttribute;
     if (ex != null) {
-      monitor.addTimerMeasurement(measurementPrefix + ERROR, startTime, currentTime);
+      addTimerMeasurement(measurementPrefix + ERROR, startTime, currentTime);
     } else {
       if (postHandleObject != null) {
         long postHandleTime = (Long) postHandleObject;
 
-        monitor.addTimerMeasurement(measurementPrefix + RENDERING, postHandleTime, currentTime);
-        monitor.addTimerMeasurement(measurementPrefix + COMPLETE, startTime, currentTime);
+        addTimerMeasurement(measurementPrefix + RENDERING, postHandleTime, currentTime);
+        addTimerMeasurement(measurementPrefix + COMPLETE, startTime, currentTime);
       }
     }
   }
 
+  private long currentTime() {
+    return (unit == TimeUnit.NANOSECONDS) ? System.nanoTime() : System.currentTimeMillis();
+  }
+
+  private void addTimerMeasurement(String name, long startTime, long endTime) {
+    if (unit == TimeUnit.NANOSECONDS) {
+      monitor.addTimerMeasurement(name, endTime - startTime, TimeUnit.NANOSECONDS);
+    } else {
+      monitor.addTimerMeasurement(name, startTime, endTime);
+    }
+  }
+
   private Object getAndRemoveAttribute(HttpServletRequest request, String attributeName) {
     Object attribute = request.getAttribute(attributeName);
     if (attribute != null) {
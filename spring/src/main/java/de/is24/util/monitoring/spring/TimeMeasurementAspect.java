@@ -6,12 +6,28 @@ import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
 import org.springframework.stereotype.Component;
+import java.util.concurrent.TimeUnit;
 import static java.lang.System.currentTimeMillis;
 
 
+/**
+ * Measures the methods annotated with {@link TimeMeasurement} in milliseconds or, with
+ * {@link #setNanoTiming(boolean) nano timing}, in nanoseconds of {@link System#nanoTime()}.
+ */
 @Aspect
 @Component
 public class TimeMeasurementAspect {
+  private volatile boolean nanoTiming;
+
+  /**
+   * @param nanoTiming true to measure nanoseconds. The timers keep them if declared by
+   *                   {@link de.is24.util.monitoring.CorePlugin#setTimerUnit(String, TimeUnit)}, otherwise they
+   *                   are converted to milliseconds
+   */
+  public void setNanoTiming(boolean nanoTiming) {
+    this.nanoTiming = nanoTiming;
+  }
+
   @Pointcut("@annotation(de.is24.util.monitoring.spring.TimeMeasurement)")
   private void timeMeasurementMethods() {
   }
@@ -30,6 +46,10 @@ public class TimeMeasurementAspect {
 
   @Around("timeMeasurementMethods() || publicMethodsInTimeMeasuredTypes()")
   public java.lang.Object doBasicProfiling(ProceedingJoinPoint pjp) throws Throwable {
+    if (nanoTiming) {
+      return doNanoProfiling(pjp);
+    }
+
     long startTime = currentTimeMillis();
     try {
       return pjp.proceed();
@@ -39,4 +59,15 @@ public class TimeMeasurementAspect {
       InApplicationMonitor.getInstance().addTimerMeasurement(name, startTime, endTime);
     }
   }
+
+  private java.lang.Object doNanoProfiling(ProceedingJoinPoint pjp) throws Throwable {
+    long startTime = System.nanoTime();
+    try {
+      return pjp.proceed();
+    } finally {
+      long duration = System.nanoTime() - startTime;
+      String name = pjp.getSignature().getDeclaringTypeName() + "." + pjp.getSignature().getName();
+      InApplicationMonitor.getInstance().addTimerMeasurement(name, duration, TimeUnit.NANOSECONDS);
+    }
+  }
 }
@@ -10,6 +10,7 @@ import org.springframework.mock.web.MockHttpServletRequest;
 import javax.servlet.http.HttpServletRequest;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import static de.is24.util.monitoring.spring.MonitoringHandlerInterceptor.POST_HANDLE_TIME;
 import static de.is24.util.monitoring.spring.MonitoringHandlerInterceptor.START_TIME;
 import static org.hamcrest.Matchers.is;
@@ -64,6 +65,25 @@ public class MonitoringHandlerInterceptorTest {
     assertTimer(timerMap, handlerInstance, COMPLETE, 2 * SLEEP_TIME);
   }
 
+  @Test
+  public void shouldMeasureNanosecondsIfEnabled() throws Exception {
+    HttpServletRequest request = new MockHttpServletRequest();
+    Object handlerInstance = new StringBuilder();
+    interceptor.setNanoTiming(true);
+    monitor.getCorePlugin().setTimerUnit(PREFIX + "*", TimeUnit.NANOSECONDS);
+
+    interceptor.preHandle(request, null, handlerInstance);
+    Thread.sleep(SLEEP_TIME);
+    interceptor.postHandle(request, null, handlerInstance, null);
+    interceptor.afterCompletion(request, null, handlerInstance, null);
+
+    fillCounterAndTimerMap();
+
+    Timer timer = timerMap.get(PREFIX + handlerInstance.getClass().getName() + HANDLING);
+    assertThat(timer.getUnit(), is(TimeUnit.NANOSECONDS));
+    assertTrue(timer.getTimerSum() >= TimeUnit.MILLISECONDS.toNanos(SLEEP_TIME));
+  }
+
   @Test
   public void shouldStripOfCGLIBEnhancerIdFromKey() {
     Object handlerClass = new FeedbackController$$EnhancerByCGLIB$$700793d4();
@@ -5,6 +5,7 @@ import de.is24.util.monitoring.InApplicationMonitor;
 import de.is24.util.monitoring.MonitorPlugin;
 import de.is24.util.monitoring.TestingInApplicationMonitor;
 import de.is24.util.monitoring.state2graphite.StateValuesToGraphite;
+import de.is24.util.monitoring.tools.LinuxProcessMetrics;
 import org.fest.assertions.Assertions;
 import org.junit.Before;
 import org.junit.Test;
@@ -47,7 +48,7 @@ public class SpringXmlFragmentIT {
     Assertions.assertThat(
       ((StateValuesToGraphite) classPathXmlApplicationContext.getBean("appmon4j.stateValuesToGraphite"))
       .multiValueProviderCount())
-    .isEqualTo(2);
+    .isEqualTo((LinuxProcessMetrics.getInstance() != null) ? 3 : 2);
   }
 
   @Test
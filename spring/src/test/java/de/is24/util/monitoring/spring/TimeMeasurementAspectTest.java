@@ -2,6 +2,7 @@ package de.is24.util.monitoring.spring;
 
 import de.is24.util.monitoring.InApplicationMonitor;
 import de.is24.util.monitoring.MonitorPlugin;
+import de.is24.util.monitoring.UnitAwareMonitorPlugin;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -9,6 +10,7 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import java.util.concurrent.TimeUnit;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
@@ -27,6 +29,7 @@ public class TimeMeasurementAspectTest {
   @After
   public void cleanup() {
     InApplicationMonitor.getInstance().removeAllPlugins();
+    timeMeasurementAspect.setNanoTiming(false);
   }
 
   @Autowired
@@ -35,6 +38,9 @@ public class TimeMeasurementAspectTest {
   @Autowired
   private MethodAnnotated methodAnnotated;
 
+  @Autowired
+  private TimeMeasurementAspect timeMeasurementAspect;
+
 
   @Test
   public void methodAnnotatedTimerMeasurement() throws Exception {
@@ -71,4 +77,17 @@ public class TimeMeasurementAspectTest {
       anyLong());
 
   }
+
+  @Test
+  public void nanoTimerMeasurement() throws Exception {
+    UnitAwareMonitorPlugin monitorPlugin = mock(UnitAwareMonitorPlugin.class);
+    InApplicationMonitor.getInstance().registerPlugin(monitorPlugin);
+    timeMeasurementAspect.setNanoTiming(true);
+
+    methodAnnotated.methodOne();
+
+    verify(monitorPlugin, times(1)).addTimerMeasurement(eq(
+        "de.is24.util.monitoring.spring.MethodAnnotated.methodOne"),
+      anyLong(), eq(TimeUnit.NANOSECONDS));
+  }
 }
@@ -101,11 +101,13 @@ public class TestingInApplicationMonitor extends InApplicationMonitor {
     CopyOnWriteArrayList<MonitorPlugin> monitorPlugins = new CopyOnWriteArrayList<MonitorPlugin>();
     monitorPlugins.add(corePlugin);
     threadLocalPluginsList.set(monitorPlugins);
+    configurationChanged();
   }
 
   @Override
   public void resetThreadLocalState() {
     threadLocalCorePlugin.remove();
     threadLocalPluginsList.remove();
+    configurationChanged();
   }
 }
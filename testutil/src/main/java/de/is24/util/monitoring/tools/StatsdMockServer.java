@@ -7,39 +7,58 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import static java.lang.String.format;
 import static java.lang.Thread.sleep;
 
 
 /**
  * Mock for a statsd server using non-blocking IO according to http://www.onjava.com/pub/a/onjava/2002/09/04/nio.html?page=2
+ *
+ * Besides tcp connections the mock listens for udp datagrams on the same port and records each received
+ * line, see {@link #getReceivedMessages()}.
  */
 public class StatsdMockServer extends ExternalResource implements Runnable {
   private static final Logger LOG = LoggerFactory.getLogger(StatsdMockServer.class);
 
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final int MAX_DATAGRAM_SIZE = 65536;
+
   private ServerSocketChannel server;
+  private DatagramChannel datagramChannel;
+  private final ConcurrentLinkedQueue<String> receivedMessages = new ConcurrentLinkedQueue<String>();
   private int port;
   private Selector selector;
   private Thread thread;
 
   @Override
   public void before() throws Throwable {
-    server = ServerSocketChannel.open();
-    server.configureBlocking(false);
-
     int maxTries = 3;
     int sleepInSec = 2;
     for (int i = 0; i < maxTries; i++) {
       try {
         port = Network.getFreeServerPort();
+        server = ServerSocketChannel.open();
+        server.configureBlocking(false);
         server.socket().bind(new InetSocketAddress(port));
+        datagramChannel = DatagramChannel.open();
+        datagramChannel.configureBlocking(false);
+        datagramChannel.socket().setReceiveBufferSize(4 * 1024 * 1024);
+        datagramChannel.socket().bind(new InetSocketAddress(port));
         LOG.info("StatsdMockServer started : port={}", port);
+        break;
       } catch (Throwable e) {
+        closeChannels();
         int lastTry = maxTries - 1;
         if (i < lastTry) {
           LOG.warn(format("Starting StatsdMockServer: try %s of %s failed. Retry after %s seconds.", i + 1, maxTries,
@@ -54,6 +73,7 @@ public class StatsdMockServer extends ExternalResource implements Runnable {
 
     selector = Selector.open();
     server.register(selector, SelectionKey.OP_ACCEPT);
+    datagramChannel.register(selector, SelectionKey.OP_READ);
 
     thread = new Thread(this);
     thread.start();
@@ -69,8 +89,20 @@ public class StatsdMockServer extends ExternalResource implements Runnable {
       selector.close();
     } catch (IOException e) {
     }
+    closeChannels();
+  }
+
+  private void closeChannels() {
     try {
-      server.close();
+      if (server != null) {
+        server.close();
+      }
+    } catch (Exception e) {
+    }
+    try {
+      if (datagramChannel != null) {
+        datagramChannel.close();
+      }
     } catch (Exception e) {
     }
   }
@@ -79,6 +111,37 @@ public class StatsdMockServer extends ExternalResource implements Runnable {
     return port;
   }
 
+  /**
+   * @return all lines received via udp so far, in order of arrival
+   */
+  public List<String> getReceivedMessages() {
+    return new ArrayList<String>(receivedMessages);
+  }
+
+  /**
+   * Waits until at least the given number of lines was received via udp.
+   *
+   * @param count number of lines to wait for
+   * @param timeout maximum time to wait
+   * @param unit unit of the timeout
+   * @return true if the lines were received in time
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public boolean awaitReceivedMessages(int count, long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+    while (receivedMessages.size() < count) {
+      if (System.currentTimeMillis() > deadline) {
+        return false;
+      }
+      sleep(10);
+    }
+    return true;
+  }
+
+  public void clearReceivedMessages() {
+    receivedMessages.clear();
+  }
+
   @Override
   public void run() {
     try {
@@ -100,6 +163,11 @@ public class StatsdMockServer extends ExternalResource implements Runnable {
               continue;
             }
 
+            if (key.isReadable() && (key.channel() == datagramChannel)) {
+              receiveDatagrams();
+              continue;
+            }
+
             if (key.isReadable()) {
               SocketChannel client = (SocketChannel) key.channel();
               int BUFFER_SIZE = 32;
@@ -121,4 +189,17 @@ public class StatsdMockServer extends ExternalResource implements Runnable {
 
 
   }
+
+  private void receiveDatagrams() throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+    while (datagramChannel.receive(buffer) != null) {
+      buffer.flip();
+      for (String line : UTF_8.decode(buffer).toString().split("\n")) {
+        if (line.length() > 0) {
+          receivedMessages.add(line);
+        }
+      }
+      buffer.clear();
+    }
+  }
 }